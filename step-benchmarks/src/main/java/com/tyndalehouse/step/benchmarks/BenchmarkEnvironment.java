@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+import org.crosswire.common.util.CWProject;
+
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.guice.StepCoreModule;
+import com.tyndalehouse.step.core.models.ClientSession;
+
+/**
+ * The services under test, wired up exactly as in the application. The benchmarks run against a home of their own,
+ * given by the step.benchmarks.home system property, rather than the user's STEP home, so that the data does not
+ * change between runs, nor get in the way of the user's. It holds the same modules (ESV_th, KJV, OSMHB, WHNU...)
+ * and entity indexes that the step-core tests rely on, installed there by the step-tools IndexAll.
+ *
+ * @author chrisburrell
+ */
+public final class BenchmarkEnvironment {
+    static final String HOME_PROPERTY = "step.benchmarks.home";
+    private static final String JSWORD_HOME_PROPERTY = "jsword.home";
+    private static Injector injector;
+
+    /**
+     * no op
+     */
+    private BenchmarkEnvironment() {
+        // no op
+    }
+
+    /**
+     * @param type the type of service
+     * @param <T>  the type of service
+     * @return the service, created on first use of the environment
+     */
+    public static synchronized <T> T getInstance(final Class<T> type) {
+        if (injector == null) {
+            System.setProperty(JSWORD_HOME_PROPERTY, getHome().getAbsolutePath());
+            CWProject.instance().setFrontendName("step");
+            injector = Guice.createInjector(new StepCoreModule(), new Module() {
+                @Override
+                public void configure(final Binder binder) {
+                    binder.bind(ClientSession.class).toProvider(new Provider<ClientSession>() {
+                        @Override
+                        public ClientSession get() {
+                            return new BenchmarkClientSession();
+                        }
+                    });
+                }
+            });
+        }
+        return injector.getInstance(type);
+    }
+
+    /**
+     * @return the home of the benchmarks
+     */
+    private static File getHome() {
+        final String home = System.getProperty(HOME_PROPERTY);
+        if (home == null || home.trim().isEmpty()) {
+            throw new StepInternalException("Please point -D" + HOME_PROPERTY
+                    + " at a JSword home holding the test modules and entity indexes");
+        }
+
+        final File homeDirectory = new File(home);
+        if (!homeDirectory.isDirectory()) {
+            throw new StepInternalException(homeDirectory.getAbsolutePath() + " is not a directory");
+        }
+        return homeDirectory;
+    }
+
+    /**
+     * An English speaking session, with no request behind it
+     */
+    private static final class BenchmarkClientSession implements ClientSession {
+        @Override
+        public String getSessionId() {
+            return "benchmark";
+        }
+
+        @Override
+        public String getIpAddress() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public String getLanguage() {
+            return "en";
+        }
+
+        @Override
+        public Locale getLocale() {
+            return Locale.ENGLISH;
+        }
+
+        @Override
+        public String getParam(final String name) {
+            return null;
+        }
+
+        @Override
+        public InputStream getAttachment(final String filePartName) throws IOException {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Routes a request to a controller method, first as the front controller used to (looking up the controller and the
+ * {@link Method} in maps keyed on the controller name, and on the controller name, method name and number of
+ * arguments, before invoking the method reflectively), then through a table of method handles built up front, as the
+ * front controller's dispatch table does. In both cases, methods are resolved once beforehand, so only the steady
+ * state is measured. The web module cannot be a dependency of the benchmarks, so the controller here stands in for
+ * the real ones: only the cost of routing is measured.
+ *
+ * @author chrisburrell
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControllerDispatchBenchmark {
+    @Param({ "0", "2", "3" })
+    public int arity;
+
+    private String methodName;
+    private Object[] args;
+    private Object controller;
+    private Map<String, Object> controllers;
+    private Map<String, Method> methodNames;
+    private Map<String, MethodHandle> routes;
+
+    /**
+     * Stands in for a controller, with overloads taking different numbers of strings
+     */
+    public static class BibleController {
+        /**
+         * @return a value
+         */
+        public String getAllFeatures() {
+            return "features";
+        }
+
+        /**
+         * @param version   the version
+         * @param reference the reference
+         * @return a value
+         */
+        public String getBibleText(final String version, final String reference) {
+            return version;
+        }
+
+        /**
+         * @param version   the version
+         * @param reference the reference
+         * @param options   the options
+         * @return a value
+         */
+        public String getBibleText(final String version, final String reference, final String options) {
+            return options;
+        }
+    }
+
+    /**
+     * Builds the controller and the routes, as done once when the front controller starts
+     *
+     * @throws Exception the methods could not be bound
+     */
+    @Setup
+    public void setUp() throws Exception {
+        this.methodName = this.arity == 0 ? "getAllFeatures" : "getBibleText";
+        this.args = new Object[this.arity];
+        for (int ii = 0; ii < this.arity; ii++) {
+            this.args[ii] = "arg" + ii;
+        }
+
+        this.controller = new BibleController();
+        this.controllers = new HashMap<String, Object>();
+        this.controllers.put("bible", this.controller);
+        this.methodNames = new HashMap<String, Method>();
+
+        final Map<String, MethodHandle> foundRoutes = new HashMap<String, MethodHandle>();
+        final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        for (final Method m : BibleController.class.getDeclaredMethods()) {
+            final int methodArity = m.getParameterTypes().length;
+            foundRoutes.put("bible/" + m.getName() + '/' + methodArity, lookup.unreflect(m)
+                    .asType(MethodType.genericMethodType(methodArity + 1))
+                    .asSpreader(Object[].class, methodArity));
+        }
+        this.routes = Collections.unmodifiableMap(foundRoutes);
+
+        // warms up the method cache, as the first request for each method did
+        reflection();
+    }
+
+    /**
+     * @return the value returned by the controller
+     * @throws Exception any exception
+     */
+    @Benchmark
+    public Object reflection() throws Exception {
+        final String controllerName = "bible";
+        final Object instance = this.controllers.get(controllerName);
+        final String cacheKey = new StringBuilder(controllerName.length() + this.methodName.length())
+                .append(controllerName).append(this.methodName).append(this.args.length).toString();
+
+        Method method = this.methodNames.get(cacheKey);
+        if (method == null) {
+            final Class<?>[] classes = new Class<?>[this.args.length];
+            for (int ii = 0; ii < this.args.length; ii++) {
+                classes[ii] = this.args[ii].getClass();
+            }
+            method = instance.getClass().getMethod(this.methodName, classes);
+            this.methodNames.put(cacheKey, method);
+        }
+        return method.invoke(instance, this.args);
+    }
+
+    /**
+     * @return the value returned by the controller
+     * @throws Throwable any exception
+     */
+    @Benchmark
+    public Object methodHandle() throws Throwable {
+        final MethodHandle route = this.routes.get("bible/" + this.methodName + '/' + this.args.length);
+        return (Object) route.invokeExact(this.controller, this.args);
+    }
+}
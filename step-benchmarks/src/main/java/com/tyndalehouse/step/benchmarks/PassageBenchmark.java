@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tyndalehouse.step.core.models.InterlinearMode;
+import com.tyndalehouse.step.core.models.LookupOption;
+import com.tyndalehouse.step.core.models.OsisWrapper;
+import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
+
+/**
+ * Retrieves and transforms passages, bypassing the cache of rendered passages.
+ *
+ * @author chrisburrell
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PassageBenchmark {
+    private static final String[] OLD_TESTAMENT = { "Gen.1", "Ps.119" };
+
+    @Param({ "ESV_th", "KJV" })
+    public String version;
+
+    @Param({ "Gen.1", "Ps.119", "John.3", "Rom.8" })
+    public String reference;
+
+    private JSwordPassageService passages;
+    private String interlinearVersion;
+
+    /**
+     * obtains the passage service
+     */
+    @Setup
+    public void setUp() {
+        this.passages = BenchmarkEnvironment.getInstance(JSwordPassageService.class);
+        this.interlinearVersion = Arrays.asList(OLD_TESTAMENT).contains(this.reference) ? "OSMHB" : "WHNU";
+    }
+
+    /**
+     * @return the passage with default options
+     */
+    @Benchmark
+    public OsisWrapper getOsisText() {
+        return this.passages.getOsisText(this.version, this.reference);
+    }
+
+    /**
+     * @return the passage as an interlinear with the original text, with the options used by the site
+     */
+    @Benchmark
+    public OsisWrapper getInterlinearOsisText() {
+        final ArrayList<LookupOption> options = new ArrayList<LookupOption>();
+        options.add(LookupOption.VERSE_NUMBERS);
+        options.add(LookupOption.HEADINGS);
+        options.add(LookupOption.NOTES);
+        options.add(LookupOption.ENGLISH_VOCAB);
+        options.add(LookupOption.MORPHOLOGY);
+        return this.passages.getOsisText(this.version, this.reference, options, this.interlinearVersion,
+                InterlinearMode.INTERLINEAR);
+    }
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.benchmarks;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.models.InterlinearMode;
+import com.tyndalehouse.step.core.models.search.SearchResult;
+import com.tyndalehouse.step.core.service.SearchService;
+import com.tyndalehouse.step.core.service.helpers.SearchResultCache;
+import com.tyndalehouse.step.core.service.impl.IndividualSearch;
+import com.tyndalehouse.step.core.service.impl.SearchQuery;
+import com.tyndalehouse.step.core.service.impl.SearchType;
+
+/**
+ * Runs each type of search against two versions from scratch. {@link Cached} pages through the results of a search
+ * that has already been run, for the types of search whose results the {@link SearchResultCache} keeps. The other
+ * types are never cached.
+ *
+ * @author chrisburrell
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+    private static final Map<SearchType, String> QUERIES = new HashMap<SearchType, String>();
+
+    static {
+        QUERIES.put(SearchType.TEXT, "love");
+        QUERIES.put(SearchType.SUBJECT_SIMPLE, "elijah");
+        QUERIES.put(SearchType.SUBJECT_EXTENDED, "elijah");
+        QUERIES.put(SearchType.SUBJECT_FULL, "elijah");
+        QUERIES.put(SearchType.SUBJECT_RELATED, "John.3.16");
+        QUERIES.put(SearchType.RELATED_VERSES, "John.3.16");
+        QUERIES.put(SearchType.TIMELINE_DESCRIPTION, "Moses");
+        QUERIES.put(SearchType.TIMELINE_REFERENCE, "Exod.1");
+        QUERIES.put(SearchType.ORIGINAL_MEANING, "love");
+        QUERIES.put(SearchType.EXACT_FORM, "λόγος");
+        QUERIES.put(SearchType.ORIGINAL_GREEK_FORMS, "G3056");
+        QUERIES.put(SearchType.ORIGINAL_GREEK_RELATED, "G3056");
+        QUERIES.put(SearchType.ORIGINAL_HEBREW_FORMS, "H0430");
+        QUERIES.put(SearchType.ORIGINAL_HEBREW_RELATED, "H0430");
+    }
+
+    @Param({ "TEXT", "SUBJECT_SIMPLE", "SUBJECT_EXTENDED", "SUBJECT_FULL", "SUBJECT_RELATED", "RELATED_VERSES",
+            "TIMELINE_DESCRIPTION", "TIMELINE_REFERENCE", "ORIGINAL_MEANING", "EXACT_FORM",
+            "ORIGINAL_GREEK_FORMS", "ORIGINAL_GREEK_RELATED", "ORIGINAL_HEBREW_FORMS", "ORIGINAL_HEBREW_RELATED" })
+    public SearchType searchType;
+
+    private SearchService searchService;
+    private SearchResultCache searchResults;
+
+    /**
+     * obtains the search service
+     */
+    @Setup
+    public void setUp() {
+        this.searchService = BenchmarkEnvironment.getInstance(SearchService.class);
+        this.searchResults = BenchmarkEnvironment.getInstance(SearchResultCache.class);
+    }
+
+    /**
+     * Forgets previous searches
+     */
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        this.searchResults.invalidateAll();
+    }
+
+    /**
+     * @return the first page of results
+     */
+    @Benchmark
+    public SearchResult search() {
+        return this.searchService.search(createQuery(this.searchType));
+    }
+
+    /**
+     * @param searchType the type of search
+     * @return the query for the first page of results of the type of search
+     */
+    static SearchQuery createQuery(final SearchType searchType) {
+        final IndividualSearch search = new IndividualSearch(searchType, Arrays.asList("ESV_th", "KJV"),
+                QUERIES.get(searchType), null, null);
+        return new SearchQuery(1, 0, InterlinearMode.NONE.name(), null, search);
+    }
+
+    /**
+     * Pages through the results of the searches that are cached, once they have been run
+     */
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 5)
+    @Measurement(iterations = 5, time = 5)
+    @Fork(1)
+    public static class Cached {
+        @Param({ "TEXT", "RELATED_VERSES", "ORIGINAL_MEANING", "EXACT_FORM", "ORIGINAL_GREEK_FORMS",
+                "ORIGINAL_GREEK_RELATED", "ORIGINAL_HEBREW_FORMS", "ORIGINAL_HEBREW_RELATED" })
+        public SearchType searchType;
+
+        private SearchService searchService;
+
+        /**
+         * runs the search once, so that it is cached, checking that it was
+         */
+        @Setup
+        public void setUp() {
+            this.searchService = BenchmarkEnvironment.getInstance(SearchService.class);
+            final SearchResultCache searchResults = BenchmarkEnvironment.getInstance(SearchResultCache.class);
+            searchResults.invalidateAll();
+
+            this.searchService.search(createQuery(this.searchType));
+            if (searchResults.get(SearchResultCache.getKey(createQuery(this.searchType))) == null) {
+                throw new StepInternalException(this.searchType + " searches are not cached");
+            }
+        }
+
+        /**
+         * @return the first page of results
+         */
+        @Benchmark
+        public SearchResult search() {
+            return this.searchService.search(createQuery(this.searchType));
+        }
+    }
+}
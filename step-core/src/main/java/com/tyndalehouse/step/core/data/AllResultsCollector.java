@@ -1,21 +1,24 @@
 package com.tyndalehouse.step.core.data;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.Scorer;
 
 /**
- * Simply accepts all results into a list
+ * Simply accepts all results into a growable array of primitive doc ids, so that broad queries do not box every
+ * hit.
  * 
  * @author chrisburrell
  * 
  */
 public class AllResultsCollector extends Collector {
-    private final List<Integer> docIds = new ArrayList<Integer>(32);
+    private static final int INITIAL_CAPACITY = 32;
+    private int[] docIds = new int[INITIAL_CAPACITY];
+    private int size;
+    private int docBase;
 
     @Override
     public void setScorer(final Scorer scorer) throws IOException {
@@ -24,12 +27,15 @@ public class AllResultsCollector extends Collector {
 
     @Override
     public void collect(final int doc) throws IOException {
-        this.docIds.add(doc);
+        if (this.size == this.docIds.length) {
+            this.docIds = Arrays.copyOf(this.docIds, this.docIds.length << 1);
+        }
+        this.docIds[this.size++] = this.docBase + doc;
     }
 
     @Override
     public void setNextReader(final IndexReader reader, final int docBase) throws IOException {
-        // not implemented
+        this.docBase = docBase;
     }
 
     @Override
@@ -38,9 +44,16 @@ public class AllResultsCollector extends Collector {
     }
 
     /**
-     * @return the docIds
+     * @return the number of documents collected
      */
-    public List<Integer> getDocIds() {
-        return this.docIds;
+    public int getTotalHits() {
+        return this.size;
+    }
+
+    /**
+     * @return the docIds, in the order in which they were collected
+     */
+    public int[] getDocIds() {
+        return Arrays.copyOf(this.docIds, this.size);
     }
 }
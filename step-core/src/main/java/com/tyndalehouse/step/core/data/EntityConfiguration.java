@@ -41,6 +41,7 @@ import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
@@ -53,6 +54,7 @@ import org.apache.lucene.util.Version;
 import org.crosswire.common.util.CWProject;
 
 import com.google.inject.Injector;
+import com.tyndalehouse.step.core.data.common.OrdinalRange;
 import com.tyndalehouse.step.core.data.create.PostProcessor;
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.utils.IOUtils;
@@ -258,4 +260,13 @@ public class EntityConfiguration {
     public Fieldable getField(final String fieldName, final String fieldValue) {
         return this.luceneFieldConfiguration.get(fieldName).getField(fieldValue);
     }
+
+    /**
+     * @param fieldName the name of the field
+     * @param ranges the verse ordinal ranges
+     * @return the fieldables to be added to the document
+     */
+    public List<Fieldable> getFields(final String fieldName, final List<OrdinalRange> ranges) {
+        return this.luceneFieldConfiguration.get(fieldName).getFields(ranges);
+    }
 }
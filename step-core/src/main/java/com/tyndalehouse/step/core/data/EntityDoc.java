@@ -11,6 +11,8 @@ import org.codehaus.jackson.annotate.JsonAnyGetter;
 import org.codehaus.jackson.annotate.JsonIgnore;
 
 /**
+ * A document read from one of the entity indexes. Depending on the query, it may hold only some of the stored
+ * fields of the entity.
  * 
  * @author chrisburrell
  * 
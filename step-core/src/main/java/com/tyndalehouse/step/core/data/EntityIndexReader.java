@@ -5,6 +5,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import com.tyndalehouse.step.core.data.common.OrdinalRange;
 import com.tyndalehouse.step.core.data.common.TermsAndMaxCount;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.queryParser.QueryParser;
@@ -160,6 +161,16 @@ public interface EntityIndexReader extends Closeable {
      */
     EntityDoc[] search(Query query);
 
+    /**
+     * Searches for all documents given by a query, loading only some of the stored fields of each document. Much
+     * cheaper than {@link #search(Query)} when a query matches many large documents but only a few fields are read.
+     *
+     * @param query        the query
+     * @param fieldsToLoad the names of the stored fields to load
+     * @return the list of all docs, holding only the requested fields
+     */
+    EntityDoc[] search(Query query, String... fieldsToLoad);
+
     /**
      * Searches with a given query
      *
@@ -325,4 +336,24 @@ public interface EntityIndexReader extends Closeable {
      * @return the query parser
      */
     QueryParser getQueryParser(boolean analyzePrefix, boolean useOrOperatorBetweenValues, String... defaultFields);
+
+    /**
+     * Runs the callback against the index as it currently is. The index is kept open until the callback returns, even
+     * if it is refreshed in the meantime.
+     *
+     * @param callback the callback
+     * @param <T>      the type of what is read
+     * @return what the callback has read
+     */
+    <T> T read(IndexReaderCallback<T> callback);
+
+    /**
+     * Finds the documents whose verse ordinal ranges overlap any of the given ranges. The query is made up of a
+     * pair of numeric range clauses per range, regardless of how many verses the ranges cover.
+     *
+     * @param fieldName the name of the field holding the ranges, see {@link OrdinalRange}
+     * @param ranges    the ranges to look up
+     * @return the documents that overlap the ranges
+     */
+    EntityDoc[] searchOverlappingRanges(String fieldName, List<OrdinalRange> ranges);
 }
@@ -1,5 +1,7 @@
 package com.tyndalehouse.step.core.data;
 
+import java.util.List;
+
 import com.tyndalehouse.step.core.data.entities.impl.EntityIndexWriterImpl;
 
 /**
@@ -17,16 +19,34 @@ public interface EntityManager {
     EntityConfiguration getConfig(String entityName);
 
     /**
+     * @return the names of all known entities
+     */
+    List<String> getEntityNames();
+
+    /**
+     * Re-opens the entity's index and notifies the {@link EntityChangeListener}s
+     *
      * @param entity the name of the entity to refresh
      */
     void refresh(String entity);
 
+    /**
+     * @param listener the listener to notify whenever an entity is refreshed
+     */
+    void addEntityChangeListener(EntityChangeListener listener);
+
     /**
      * @param entity the name of the entity
      * @return the reader of the index
      */
     EntityIndexReader getReader(String entity);
 
+    /**
+     * opens the readers of all known entities in parallel, in the background, so that the first requests do not
+     * pay for it. Returns straight away.
+     */
+    void warmUp();
+
     /**
      * closes everything held by the manager
      */
@@ -3,6 +3,9 @@ package com.tyndalehouse.step.core.data;
 import static com.tyndalehouse.step.core.utils.ConversionUtils.localDateTimeToEpochMinutes;
 import static com.tyndalehouse.step.core.utils.ConversionUtils.stringToEpochMinutes;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Index;
 import org.apache.lucene.document.Field.Store;
@@ -10,6 +13,7 @@ import org.apache.lucene.document.Fieldable;
 import org.apache.lucene.document.NumericField;
 import org.joda.time.LocalDateTime;
 
+import com.tyndalehouse.step.core.data.common.OrdinalRange;
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
 
 /**
@@ -20,6 +24,7 @@ import com.tyndalehouse.step.core.exceptions.StepInternalException;
  */
 public class FieldConfig {
     private static final String MINUTE = "minute";
+    private static final String ORDINAL_RANGE = "ordinalRange";
     private final Field.Store store;
     private final Field.Index index;
     private final String[] rawDataField;
@@ -118,6 +123,30 @@ public class FieldConfig {
         throw new StepInternalException("Unable to recognise type of field");
     }
 
+    /**
+     * Gets the fields for a list of verse ordinal ranges: a numeric start and end field for each range, indexed
+     * but not stored, and the ranges themselves stored, but not indexed, in this field. The stored ranges are
+     * needed to tell apart the ranges of documents that have several.
+     * 
+     * @param ranges the ranges
+     * @return the fieldables to be added to the document
+     */
+    public List<Fieldable> getFields(final List<OrdinalRange> ranges) {
+        if (!ORDINAL_RANGE.equals(this.type)) {
+            throw new StepInternalException("Unable to recognise type of field");
+        }
+
+        final List<Fieldable> fields = new ArrayList<Fieldable>(ranges.size() * 2 + 1);
+        for (final OrdinalRange range : ranges) {
+            fields.add(new NumericField(this.name + OrdinalRange.START_SUFFIX, Store.NO, true)
+                    .setIntValue(range.getStart()));
+            fields.add(new NumericField(this.name + OrdinalRange.END_SUFFIX, Store.NO, true)
+                    .setIntValue(range.getEnd()));
+        }
+        fields.add(new Field(this.name, OrdinalRange.format(ranges), Store.YES, Index.NO));
+        return fields;
+    }
+
     /**
      * @return the name
      */
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.data.common;
+
+import static com.tyndalehouse.step.core.utils.StringUtils.isBlank;
+import static com.tyndalehouse.step.core.utils.StringUtils.split;
+import static java.lang.Integer.parseInt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A range of verse ordinals, inclusive at both ends. Entities that refer to passages store them as ranges rather
+ * than as the list of every verse they contain, so that looking up the entities for a passage costs a few numeric
+ * range clauses, however long the passage.
+ * <p>
+ * Each range is indexed as two numeric fields, named after the field with {@link #START_SUFFIX} and
+ * {@link #END_SUFFIX}, and all the ranges of a document are stored together in the field itself, in the form
+ * "start-end start-end".
+ *
+ * @author chrisburrell
+ */
+public class OrdinalRange {
+    /**
+     * suffix of the numeric field holding the first ordinal of each range
+     */
+    public static final String START_SUFFIX = "Start";
+    /**
+     * suffix of the numeric field holding the last ordinal of each range
+     */
+    public static final String END_SUFFIX = "End";
+    private static final String RANGE_SEPARATOR = " ";
+    private static final String BOUND_SEPARATOR = "-";
+    private final int start;
+    private final int end;
+
+    /**
+     * @param start the first ordinal
+     * @param end   the last ordinal
+     */
+    public OrdinalRange(final int start, final int end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @param other the other range
+     * @return true if the two ranges share at least one ordinal
+     */
+    public boolean overlaps(final OrdinalRange other) {
+        return this.start <= other.end && this.end >= other.start;
+    }
+
+    /**
+     * @param ranges ranges
+     * @param others other ranges
+     * @return true if any of the ranges overlaps any of the others
+     */
+    public static boolean overlaps(final List<OrdinalRange> ranges, final List<OrdinalRange> others) {
+        for (final OrdinalRange range : ranges) {
+            for (final OrdinalRange other : others) {
+                if (range.overlaps(other)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param ranges the ranges
+     * @return the ranges, in the form in which they are stored
+     */
+    public static String format(final List<OrdinalRange> ranges) {
+        final StringBuilder sb = new StringBuilder(ranges.size() * 12);
+        for (final OrdinalRange range : ranges) {
+            if (sb.length() != 0) {
+                sb.append(RANGE_SEPARATOR);
+            }
+            sb.append(range.start).append(BOUND_SEPARATOR).append(range.end);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param stored the ranges, in the form in which they are stored
+     * @return the ranges
+     */
+    public static List<OrdinalRange> parse(final String stored) {
+        if (isBlank(stored)) {
+            return new ArrayList<OrdinalRange>(0);
+        }
+
+        final String[] parts = split(stored, RANGE_SEPARATOR);
+        final List<OrdinalRange> ranges = new ArrayList<OrdinalRange>(parts.length);
+        for (final String part : parts) {
+            final int separator = part.indexOf(BOUND_SEPARATOR);
+            ranges.add(new OrdinalRange(parseInt(part.substring(0, separator)),
+                    parseInt(part.substring(separator + 1))));
+        }
+        return ranges;
+    }
+
+    /**
+     * @return the first ordinal
+     */
+    public int getStart() {
+        return this.start;
+    }
+
+    /**
+     * @return the last ordinal
+     */
+    public int getEnd() {
+        return this.end;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof OrdinalRange)) {
+            return false;
+        }
+        final OrdinalRange other = (OrdinalRange) o;
+        return this.start == other.start && this.end == other.end;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.start * 31 + this.end;
+    }
+
+    @Override
+    public String toString() {
+        return this.start + BOUND_SEPARATOR + this.end;
+    }
+}
@@ -34,7 +34,13 @@ package com.tyndalehouse.step.core.data.create;
 
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -65,12 +71,14 @@ import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
  * The object that will be responsible for loading all the data into Lucene and downloading key versions of
  * the Bible.
  * <p/>
- * Note, this object is not thread-safe.
+ * Note, only one installation can run at a time, although the entities are built concurrently.
  *
  * @author chrisburrell
  */
 public class Loader {
     private static final Logger LOGGER = LoggerFactory.getLogger(Loader.class);
+    private static final int MAX_DEFAULT_INSTALL_THREADS = 4;
+    private static final int ENTITY_ITEMS = 10;
     private final JSwordPassageService jsword;
     private final Properties coreProperties;
     private final JSwordModuleService jswordModule;
@@ -83,8 +91,9 @@ public class Loader {
     private String runningAppVersion;
     private AppManagerService appManager;
     private WorkListener workListener;
-    private int totalProgress = 0;
-    private int totalItems = 6;
+    private final AtomicInteger totalProgress = new AtomicInteger();
+    private volatile int totalItems = ENTITY_ITEMS;
+    private volatile Locale updateLocale;
     private boolean inProgress = false;
 
     /**
@@ -122,7 +131,7 @@ public class Loader {
         if (this.inProgress) {
             return;
         }
-        this.totalProgress = 0;
+        this.totalProgress.set(0);
         try {
             this.inProgress = true;
             listenInJobs();
@@ -139,9 +148,7 @@ public class Loader {
                         BookCategory.COMMENTARY);
                 final String[] initials = new String[availableModules.size()];
 
-                // This may put too much stress on smaller systems, since indexing for all modules in
-                // package
-                // would result as happening at the same times
+                // indexes are queued and handed to JSword up to app.index.threads at a time
                 this.totalItems += availableModules.size() * 2;
                 for (int ii = 0; ii < availableModules.size(); ii++) {
                     final Book b = availableModules.get(ii);
@@ -189,10 +196,10 @@ public class Loader {
      */
     private void installAndIndex(final String version) {
         syncInstall(version);
-        this.totalProgress += 1;
+        this.totalProgress.incrementAndGet();
         this.addUpdate("install_making_version_searchable", version);
         this.jswordModule.reIndex(version);
-        this.totalProgress += 1;
+        this.totalProgress.incrementAndGet();
     }
 
     /**
@@ -229,28 +236,139 @@ public class Loader {
     }
 
     /**
-     * Loads the data into the database
+     * Loads the data into the database. Each entity is built into its own index, so they are built concurrently on
+     * a bounded pool, the size of which is given by app.install.threads.
      */
     private void loadData() {
         LOGGER.info("Loading initial data");
-        loadNave();
-        this.totalProgress += 1;
-        loadLexiconDefinitions();
-        this.totalProgress += 1;
-        loadSpecificForms();
-        this.totalProgress += 1;
-        loadRobinsonMorphology();
-        this.totalProgress += 1;
-        loadVersionInformation();
-        this.totalProgress += 1;
-        loadAlternativeTranslations();
-        this.totalProgress += 1;
-        loadOpenBibleGeography();
-
-        loadHotSpots();
-        loadTimeline();
-        loadAugmentedStrongs();
-        LOGGER.info("Finished loading...");
+        final long start = System.currentTimeMillis();
+
+        // the pool threads are outside of the request scope, so the locale is resolved once, here
+        this.updateLocale = getClientLocale();
+
+        // largest first, so that the longest builds are not left until last
+        final List<EntityLoad> loads = Arrays.asList(
+                new EntityLoad("definition") {
+                    @Override
+                    int load() {
+                        return loadLexiconDefinitions();
+                    }
+                }, new EntityLoad("specificForm") {
+                    @Override
+                    int load() {
+                        return loadSpecificForms();
+                    }
+                }, new EntityLoad("nave") {
+                    @Override
+                    int load() {
+                        return loadNave();
+                    }
+                }, new EntityLoad("obplace") {
+                    @Override
+                    int load() {
+                        return loadOpenBibleGeography();
+                    }
+                }, new EntityLoad("timelineEvent") {
+                    @Override
+                    int load() {
+                        return loadTimeline();
+                    }
+                }, new EntityLoad("augmentedStrongs") {
+                    @Override
+                    int load() {
+                        return loadAugmentedStrongs();
+                    }
+                }, new EntityLoad("morphology") {
+                    @Override
+                    int load() {
+                        return loadRobinsonMorphology();
+                    }
+                }, new EntityLoad("versionInfo") {
+                    @Override
+                    int load() {
+                        return loadVersionInformation();
+                    }
+                }, new EntityLoad("alternativeTranslations") {
+                    @Override
+                    int load() {
+                        return loadAlternativeTranslations();
+                    }
+                }, new EntityLoad("hotspot") {
+                    @Override
+                    int load() {
+                        return loadHotSpots();
+                    }
+                });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(loads.size(), getInstallThreads()));
+        try {
+            final List<Future<Integer>> results = new ArrayList<Future<Integer>>(loads.size());
+            for (final EntityLoad load : loads) {
+                results.add(executor.submit(load));
+            }
+
+            for (int ii = 0; ii < results.size(); ii++) {
+                try {
+                    results.get(ii).get();
+                } catch (final ExecutionException ex) {
+                    throw new StepInternalException("Unable to load " + loads.get(ii).entity, ex.getCause());
+                }
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StepInternalException("Interrupted while loading data", ex);
+        } finally {
+            executor.shutdownNow();
+            this.updateLocale = null;
+        }
+        LOGGER.info("Finished loading in {}ms", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return the number of threads used to build the entity indexes, defaulting to the number of processors, up to
+     * {@link #MAX_DEFAULT_INSTALL_THREADS}
+     */
+    int getInstallThreads() {
+        final String threads = this.coreProperties.getProperty("app.install.threads");
+        if (StringUtils.isNotBlank(threads)) {
+            try {
+                return Math.max(1, Integer.parseInt(threads.trim()));
+            } catch (final NumberFormatException ex) {
+                LOGGER.warn("Invalid number of install threads [{}]", threads);
+            }
+        }
+        return Math.max(1, Math.min(MAX_DEFAULT_INSTALL_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Builds a single entity index, timing it and counting it towards the total progress once it completes.
+     */
+    private abstract class EntityLoad implements Callable<Integer> {
+        private final String entity;
+
+        /**
+         * @param entity the name of the entity being built
+         */
+        EntityLoad(final String entity) {
+            this.entity = entity;
+        }
+
+        /**
+         * @return the number of entries loaded
+         */
+        abstract int load();
+
+        @Override
+        public Integer call() {
+            final long start = System.currentTimeMillis();
+            final int entries = load();
+            final long elapsed = System.currentTimeMillis() - start;
+
+            Loader.this.totalProgress.incrementAndGet();
+            LOGGER.info("Built [{}] with {} entries in {}ms", new Object[]{this.entity, entries, elapsed});
+            addUpdate("install_entity_timing", this.entity, entries, elapsed);
+            return entries;
+        }
     }
 
     int loadAugmentedStrongs() {
@@ -485,7 +603,7 @@ public class Loader {
      * @return the the total amount of progress of the installation so far
      */
     public int getTotalProgress() {
-        return (int) ((double) this.totalProgress / this.totalItems * 100);
+        return (int) ((double) this.totalProgress.get() / this.totalItems * 100);
     }
 
     /**
@@ -495,16 +613,22 @@ public class Loader {
      * @param args the args the arguments to use in the format
      */
     void addUpdate(final String key, final Object... args) {
-        Locale locale;
+        final Locale locale = this.updateLocale != null ? this.updateLocale : getClientLocale();
+        this.progress.offer(String.format(ResourceBundle.getBundle("SetupBundle", locale).getString(key),
+                args));
+    }
+
+    /**
+     * @return the locale of the user running the installation, or English if there isn't one
+     */
+    private Locale getClientLocale() {
         try {
-            locale = this.clientSessionProvider.get().getLocale();
+            return this.clientSessionProvider.get().getLocale();
         } catch (final ProvisionException ex) {
             LOGGER.debug("Loader can't get client session");
             LOGGER.trace("Unable to provision", ex);
-            locale = Locale.ENGLISH;
+            return Locale.ENGLISH;
         }
-        this.progress.offer(String.format(ResourceBundle.getBundle("SetupBundle", locale).getString(key),
-                args));
     }
 
     /**
@@ -518,7 +642,7 @@ public class Loader {
      * @param totalProgress the total amount of progress so far
      */
     void setTotalProgress(final int totalProgress) {
-        this.totalProgress = totalProgress;
+        this.totalProgress.set(totalProgress);
     }
 
     /**
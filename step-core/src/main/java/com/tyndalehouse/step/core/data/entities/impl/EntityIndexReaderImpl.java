@@ -11,11 +11,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import com.tyndalehouse.step.core.data.common.OrdinalRange;
 import com.tyndalehouse.step.core.data.common.TermsAndMaxCount;
 import com.tyndalehouse.step.core.utils.LuceneUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.MultiFieldQueryParser;
 import org.apache.lucene.queryParser.ParseException;
@@ -33,6 +36,7 @@ import com.tyndalehouse.step.core.data.AnalyzedPrefixSearchQueryParser;
 import com.tyndalehouse.step.core.data.EntityConfiguration;
 import com.tyndalehouse.step.core.data.EntityDoc;
 import com.tyndalehouse.step.core.data.EntityIndexReader;
+import com.tyndalehouse.step.core.data.IndexReaderCallback;
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.utils.IOUtils;
 
@@ -43,8 +47,11 @@ import com.tyndalehouse.step.core.utils.IOUtils;
  */
 public class EntityIndexReaderImpl implements EntityIndexReader {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(EntityIndexReaderImpl.class);
-    private IndexSearcher searcher;
-    private Directory directory;
+    /**
+     * the most ranges looked up individually, keeping well clear of the limit on boolean clauses
+     */
+    private static final int MAX_RANGE_CLAUSES = 128;
+    private final SearcherManager searchers = new SearcherManager();
     private final EntityConfiguration config;
     private boolean memoryMapped;
 
@@ -75,15 +82,21 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
     }
 
     /**
-     * Initialises the index reader
+     * Opens a new searcher on the index and makes it the current one. Queries running against the previous
+     * searcher complete before it is closed.
      */
     private void initialise() {
+        final Directory directory = openDirectory(this.config, this.memoryMapped);
+        if (directory == null) {
+            this.searchers.swap(null, null);
+            return;
+        }
+
         try {
-            openDirectory(this.config, this.memoryMapped);
-            if (this.directory != null) {
-                this.searcher = new IndexSearcher(this.directory, true);
-            }
+            this.searchers.swap(new IndexSearcher(directory, true), directory);
         } catch (final IOException e) {
+            IOUtils.closeQuietly(directory);
+            this.searchers.swap(null, null);
             LOGGER.warn("Index not readable - it may not yet have been created.");
             LOGGER.trace("Trace for exception:", e);
         }
@@ -91,14 +104,12 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
 
     @Override
     public void refresh() {
-        close();
         initialise();
     }
 
     @Override
     public void close() {
-        IOUtils.closeQuietly(this.searcher);
-        IOUtils.closeQuietly(this.directory);
+        this.searchers.close();
     }
 
     /**
@@ -106,25 +117,39 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
      *
      * @param configuration      config
      * @param memoryMapDirectory memory mapped directories
+     * @return the directory, or null if the index does not exist
      */
-    private void openDirectory(final EntityConfiguration configuration, final boolean memoryMapDirectory) {
+    private Directory openDirectory(final EntityConfiguration configuration, final boolean memoryMapDirectory) {
         try {
             final URI entityIndexPath = configuration.getLocation();
             final File path = new File(entityIndexPath);
             if (!path.exists()) {
-                return;
+                return null;
             }
 
             if (memoryMapDirectory) {
-                this.directory = MMapDirectory.open(path);
+                return MMapDirectory.open(path);
             }
 
-            this.directory = FSDirectory.open(path);
+            return FSDirectory.open(path);
         } catch (final IOException e) {
             throw new StepInternalException("Unable to read directory", e);
         }
     }
 
+    /**
+     * Acquires the current searcher, which must be released once the query has completed
+     *
+     * @return the reference to the searcher
+     */
+    private SearcherManager.SearcherReference acquire() {
+        final SearcherManager.SearcherReference reference = this.searchers.acquire();
+        if (reference == null) {
+            throw new StepInternalException("Index for " + this.config.getName() + " is not available");
+        }
+        return reference;
+    }
+
     @Override
     public EntityDoc[] searchExactTermBySingleField(final String fieldName, final int max,
                                                     final String... values) {
@@ -214,15 +239,21 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
 
             LOGGER.debug("Search query is [{}]", parsed);
 
-            if (sort != null) {
-                final TopFieldDocs search = this.searcher.search(parsed, filter,
-                        maxResults == null ? Integer.MAX_VALUE : maxResults, sort);
+            final SearcherManager.SearcherReference reference = acquire();
+            try {
+                final IndexSearcher searcher = reference.getSearcher();
+                if (sort != null) {
+                    final TopFieldDocs search = searcher.search(parsed, filter,
+                            maxResults == null ? Integer.MAX_VALUE : maxResults, sort);
 
-                return extractDocIds(search);
+                    return extractDocIds(searcher, search);
 
-            } else {
-                this.searcher.search(parsed, filter, collector);
-                return extractDocIds(collector);
+                } else {
+                    searcher.search(parsed, filter, collector);
+                    return extractDocIds(searcher, collector, null);
+                }
+            } finally {
+                reference.release();
             }
         } catch (final ParseException e) {
             throw new StepInternalException("Unable to parse query", e);
@@ -245,15 +276,21 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
             return hits;
         }
 
-        if (fieldNames.length == 1) {
-            return LuceneUtils.getAllTermsPrefixedWith(exact, trackMax, this.searcher, fieldNames[0], searchTerm, maxReturned);
-        }
+        final SearcherManager.SearcherReference reference = acquire();
+        try {
+            final IndexSearcher searcher = reference.getSearcher();
+            if (fieldNames.length == 1) {
+                return LuceneUtils.getAllTermsPrefixedWith(exact, trackMax, searcher, fieldNames[0], searchTerm, maxReturned);
+            }
 
-        hits.setTerms(new HashSet<String>(32));
-        for (int ii = 0; ii < fieldNames.length; ii++) {
-            final TermsAndMaxCount termsByField = LuceneUtils.getAllTermsPrefixedWith(exact, trackMax, this.searcher, fieldNames[ii], searchTerm, maxReturned);
-            hits.getTerms().addAll(termsByField.getTerms());
-            hits.setTotalCount(hits.getTotalCount() + termsByField.getTotalCount());
+            hits.setTerms(new HashSet<String>(32));
+            for (int ii = 0; ii < fieldNames.length; ii++) {
+                final TermsAndMaxCount termsByField = LuceneUtils.getAllTermsPrefixedWith(exact, trackMax, searcher, fieldNames[ii], searchTerm, maxReturned);
+                hits.getTerms().addAll(termsByField.getTerms());
+                hits.setTotalCount(hits.getTotalCount() + termsByField.getTotalCount());
+            }
+        } finally {
+            reference.release();
         }
 
         //total count, is count - the existing ters
@@ -264,15 +301,16 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
     /**
      * Extracts all the results
      *
+     * @param searcher the searcher that ran the query
      * @param results the results that have been collected
      * @return the results
      */
-    private EntityDoc[] extractDocIds(final TopDocs results) {
+    private EntityDoc[] extractDocIds(final IndexSearcher searcher, final TopDocs results) {
         try {
             final ScoreDoc[] scoreDocs = results.scoreDocs;
             final EntityDoc[] docs = new EntityDoc[scoreDocs.length];
             for (int ii = 0; ii < scoreDocs.length; ii++) {
-                docs[ii] = new EntityDoc(this.searcher.doc(scoreDocs[ii].doc));
+                docs[ii] = new EntityDoc(searcher.doc(scoreDocs[ii].doc));
             }
             return docs;
         } catch (final IOException e) {
@@ -298,28 +336,51 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
 
     @Override
     public EntityDoc[] search(final Query query) {
+        return search(query, (FieldSelector) null);
+    }
+
+    @Override
+    public EntityDoc[] search(final Query query, final String... fieldsToLoad) {
+        return search(query, new MapFieldSelector(fieldsToLoad));
+    }
+
+    /**
+     * Searches for all documents given by a query
+     *
+     * @param query         the query
+     * @param fieldSelector the stored fields to load, or null for all of them
+     * @return the list of all docs
+     */
+    private EntityDoc[] search(final Query query, final FieldSelector fieldSelector) {
         final AllResultsCollector collector = new AllResultsCollector();
+        final SearcherManager.SearcherReference reference = acquire();
         try {
             LOGGER.debug("Search query is [{}], with filter [{}]", query);
-            this.searcher.search(query, collector);
-            return extractDocIds(collector);
+            reference.getSearcher().search(query, collector);
+            return extractDocIds(reference.getSearcher(), collector, fieldSelector);
         } catch (final IOException e) {
             throw new StepInternalException("Unable to search", e);
+        } finally {
+            reference.release();
         }
     }
 
     /**
      * Extracts the query results into an entity doc
      *
-     * @param collector the collector with the results
+     * @param searcher      the searcher that ran the query
+     * @param collector     the collector with the results
+     * @param fieldSelector the stored fields to load, or null for all of them
      * @return all the entity documents
      */
-    private EntityDoc[] extractDocIds(final AllResultsCollector collector) {
+    private EntityDoc[] extractDocIds(final IndexSearcher searcher, final AllResultsCollector collector,
+                                      final FieldSelector fieldSelector) {
         try {
-            final List<Integer> docIds = collector.getDocIds();
-            final EntityDoc[] docs = new EntityDoc[docIds.size()];
-            for (int ii = 0; ii < docIds.size(); ii++) {
-                docs[ii] = new EntityDoc(this.searcher.doc(docIds.get(ii)));
+            final int[] docIds = collector.getDocIds();
+            final EntityDoc[] docs = new EntityDoc[docIds.length];
+            for (int ii = 0; ii < docIds.length; ii++) {
+                docs[ii] = new EntityDoc(fieldSelector == null ? searcher.doc(docIds[ii]) : searcher.doc(
+                        docIds[ii], fieldSelector));
             }
             return docs;
         } catch (final IOException e) {
@@ -330,22 +391,26 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
     @Override
     public EntityDoc[] search(final Query query, final int max, final Sort sortField, final Filter filter) {
         LOGGER.debug("Search query is [{}]", query);
+        final SearcherManager.SearcherReference reference = acquire();
         try {
+            final IndexSearcher searcher = reference.getSearcher();
             final TopDocs search;
             if (sortField != null) {
-                search = this.searcher.search(query, filter, max, sortField);
+                search = searcher.search(query, filter, max, sortField);
             } else {
-                search = this.searcher.search(query, filter, max);
+                search = searcher.search(query, filter, max);
             }
 
             final EntityDoc[] results = new EntityDoc[search.scoreDocs.length];
             for (int ii = 0; ii < search.scoreDocs.length; ii++) {
-                results[ii] = new EntityDoc(this.searcher.doc(search.scoreDocs[ii].doc));
+                results[ii] = new EntityDoc(searcher.doc(search.scoreDocs[ii].doc));
             }
 
             return results;
         } catch (final IOException e) {
             throw new StepInternalException("Failed to search", e);
+        } finally {
+            reference.release();
         }
     }
 
@@ -456,12 +521,76 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
 
     @Override
     public EntityDoc[] search(BooleanQuery query, Filter filter, TopFieldCollector collector) {
+        final SearcherManager.SearcherReference reference = acquire();
         try {
-            this.searcher.search(query, filter, collector);
-            return extractDocIds(collector.topDocs());
+            reference.getSearcher().search(query, filter, collector);
+            return extractDocIds(reference.getSearcher(), collector.topDocs());
         } catch (IOException e) {
             throw new StepInternalException(e.getMessage(), e);
+        } finally {
+            reference.release();
+        }
+    }
+
+    @Override
+    public <T> T read(final IndexReaderCallback<T> callback) {
+        final SearcherManager.SearcherReference reference = acquire();
+        try {
+            return callback.read(reference.getSearcher().getIndexReader());
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to read index for " + this.config.getName(), e);
+        } finally {
+            reference.release();
+        }
+    }
+
+    @Override
+    public EntityDoc[] searchOverlappingRanges(final String fieldName, final List<OrdinalRange> ranges) {
+        if (ranges.isEmpty()) {
+            return new EntityDoc[0];
+        }
+
+        final BooleanQuery query = new BooleanQuery();
+        for (final OrdinalRange range : getQueryRanges(ranges)) {
+            final BooleanQuery overlap = new BooleanQuery();
+            overlap.add(NumericRangeQuery.newIntRange(fieldName + OrdinalRange.START_SUFFIX, null, range.getEnd(),
+                    true, true), Occur.MUST);
+            overlap.add(NumericRangeQuery.newIntRange(fieldName + OrdinalRange.END_SUFFIX, range.getStart(), null,
+                    true, true), Occur.MUST);
+            query.add(overlap, Occur.SHOULD);
+        }
+
+        // documents with several ranges may start before the end of one range and finish after the start of
+        // another without overlapping either, so we check the stored ranges of each candidate
+        final EntityDoc[] candidates = search(query);
+        final List<EntityDoc> matches = new ArrayList<EntityDoc>(candidates.length);
+        for (final EntityDoc candidate : candidates) {
+            if (OrdinalRange.overlaps(OrdinalRange.parse(candidate.get(fieldName)), ranges)) {
+                matches.add(candidate);
+            }
+        }
+        return matches.toArray(new EntityDoc[matches.size()]);
+    }
+
+    /**
+     * @param ranges the ranges being looked up
+     * @return the ranges themselves, or a single range spanning all of them if there are too many to be queried
+     * individually. The results are checked against the ranges themselves, so nothing extra is returned.
+     */
+    private List<OrdinalRange> getQueryRanges(final List<OrdinalRange> ranges) {
+        if (ranges.size() <= MAX_RANGE_CLAUSES) {
+            return ranges;
+        }
+
+        int start = Integer.MAX_VALUE;
+        int end = Integer.MIN_VALUE;
+        for (final OrdinalRange range : ranges) {
+            start = Math.min(start, range.getStart());
+            end = Math.max(end, range.getEnd());
         }
+        final List<OrdinalRange> span = new ArrayList<OrdinalRange>(1);
+        span.add(new OrdinalRange(start, end));
+        return span;
     }
 
     @Override
@@ -483,6 +612,6 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
      * @param searcher the searcher to set
      */
     void setSearcher(final IndexSearcher searcher) {
-        this.searcher = searcher;
+        this.searchers.swap(searcher, null);
     }
 }
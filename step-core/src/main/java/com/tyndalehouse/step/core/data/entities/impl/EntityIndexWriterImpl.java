@@ -9,6 +9,7 @@ import java.util.Map.Entry;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriter.MaxFieldLength;
 import org.apache.lucene.store.Directory;
@@ -22,18 +23,28 @@ import org.slf4j.LoggerFactory;
 import com.tyndalehouse.step.core.data.EntityConfiguration;
 import com.tyndalehouse.step.core.data.EntityManager;
 import com.tyndalehouse.step.core.data.FieldConfig;
+import com.tyndalehouse.step.core.data.common.OrdinalRange;
 import com.tyndalehouse.step.core.data.create.PostProcessor;
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.IOUtils;
 
 /**
- * Reads a file and creates the equivalent Lucene index for it. This class is not thread safe.
+ * Reads a file and creates the equivalent Lucene index for it. By default (app.index.buildOnDisk), the index is built
+ * in a directory next to the live index, which is only swapped for it once complete. Otherwise, the index is built in
+ * memory and copied over the live index. This class is not thread safe.
  * 
  * @author chrisburrell
  * 
  */
 public class EntityIndexWriterImpl {
     private static final Logger LOGGER = LoggerFactory.getLogger(EntityIndexWriterImpl.class);
-    private final Directory ramDirectory;
+    private static final String BUILDING_SUFFIX = ".building";
+    private static final String OLD_SUFFIX = ".old";
+    private static final double RAM_BUFFER_MB = 48;
+    private static final int MERGE_FACTOR = 30;
+    private static final int MAX_SEGMENTS = 4;
+    private final boolean onDisk;
+    private final Directory directory;
     private IndexWriter writer;
     private final Map<String, List<FieldConfig>> luceneFieldConfigurationByRaw;
     private final EntityConfiguration config;
@@ -41,16 +52,28 @@ public class EntityIndexWriterImpl {
     private Document doc;
     private final EntityManager manager;
 
+    /**
+     * Responsible for writing items to an index, building it on disk.
+     * 
+     * @param entityManager the configuration for that entity
+     * @param entityName the name of the entity
+     */
+    public EntityIndexWriterImpl(final EntityManager entityManager, final String entityName) {
+        this(entityManager, entityName, true);
+    }
+
     /**
      * Responsible for writing items to an index.
      * 
      * @param entityManager the configuration for that entity
      * @param entityName the name of the entity
+     * @param onDisk true to build the index next to the live index, false to build it in memory
      */
     // we specifically allow a method to be overridden for testing purposes.
     @SuppressWarnings("PMD")
-    public EntityIndexWriterImpl(final EntityManager entityManager, final String entityName) {
+    public EntityIndexWriterImpl(final EntityManager entityManager, final String entityName, final boolean onDisk) {
         this.manager = entityManager;
+        this.onDisk = onDisk;
         this.config = entityManager.getConfig(entityName);
 
         final Map<String, FieldConfig> luceneFieldConfiguration = this.config.getLuceneFieldConfiguration();
@@ -71,56 +94,175 @@ public class EntityIndexWriterImpl {
             }
         }
 
-        this.ramDirectory = getNewRamDirectory();
+        this.directory = getNewDirectory();
         try {
-            this.writer = new IndexWriter(this.ramDirectory, this.config.getAnalyzerInstance(),
+            this.writer = new IndexWriter(this.directory, this.config.getAnalyzerInstance(),
                     MaxFieldLength.UNLIMITED);
+            if (onDisk) {
+                this.writer.setRAMBufferSizeMB(RAM_BUFFER_MB);
+                this.writer.setMergeFactor(MERGE_FACTOR);
+            }
         } catch (final IOException e) {
             throw new StepInternalException("Unable to initialise creation of index", e);
         }
     }
 
     /**
-     * @return a new ram directory
+     * On disk, the index is written next to the live index, so that the memory used is bounded by the writer's RAM
+     * buffer rather than by the size of the entity. Anything left over from a previous failed build is removed first.
+     * 
+     * @return the directory in which the new index is built
      */
-    Directory getNewRamDirectory() {
-        return new RAMDirectory();
+    Directory getNewDirectory() {
+        if (!this.onDisk) {
+            return new RAMDirectory();
+        }
+
+        final File building = getSibling(BUILDING_SUFFIX);
+        deleteIndex(building);
+        deleteIndex(getSibling(OLD_SUFFIX));
+        try {
+            return FSDirectory.open(building);
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to create index directory " + building, e);
+        }
     }
 
     /**
-     * writes the index to the relevant file location
+     * Finishes writing the index and puts it in place of the live index.
      * 
      * @return the number of entries in the index
      */
     public int close() {
         final int numEntries = getNumEntriesInIndex();
-        final File file = new File(this.config.getLocation());
-        Directory destination;
+        if (this.onDisk) {
+            closeOnDisk();
+        } else {
+            copyToLiveIndex();
+        }
+        this.manager.refresh(this.config.getName());
+        return numEntries;
+    }
+
+    /**
+     * Finishes the index built on disk and swaps it for the live index. The live index is only replaced once the new
+     * one has been written in full, so a failed build leaves it untouched.
+     */
+    private void closeOnDisk() {
+        try {
+            // we've finished writing entries now, so merge down to a few segments and close our writer
+            this.writer.optimize(MAX_SEGMENTS);
+            this.writer.close();
+            this.directory.close();
+        } catch (final IOException e) {
+            deleteIndex(getSibling(BUILDING_SUFFIX));
+            throw new StepInternalException("Unable to write index", e);
+        }
+        swapIndex();
+    }
+
+    /**
+     * Renames the live index out of the way, then renames the new index into its place. If either rename fails, the
+     * live index is put back as it was and the new index is discarded. Platforms that can't rename an index that is
+     * in use need app.index.buildOnDisk=false.
+     */
+    private void swapIndex() {
+        final File live = getLiveLocation();
+        final File building = getSibling(BUILDING_SUFFIX);
+        final File old = getSibling(OLD_SUFFIX);
+
+        final boolean hasLiveIndex = live.exists();
+        if (hasLiveIndex && !rename(live, old)) {
+            deleteIndex(building);
+            throw new StepInternalException("Unable to move index " + live + " out of the way, leaving it in place");
+        }
+
+        if (!rename(building, live)) {
+            // put back what we had, so that we don't lose the live index
+            if (hasLiveIndex && !rename(old, live)) {
+                LOGGER.error("Unable to restore index [{}] from [{}]", live, old);
+            }
+            deleteIndex(building);
+            throw new StepInternalException("Unable to move index " + building + " to " + live);
+        }
+        deleteIndex(old);
+    }
+
+    /**
+     * Writes the index built in memory over the live index
+     */
+    private void copyToLiveIndex() {
+        Directory destination = null;
         try {
             // we've finished writing entries now, so close our writer
             this.writer.close();
 
             // open up a location on disk
-            destination = FSDirectory.open(file);
+            destination = FSDirectory.open(getLiveLocation());
 
             final IndexWriter fsWriter = new IndexWriter(destination, this.config.getAnalyzerInstance(),
                     true, IndexWriter.MaxFieldLength.UNLIMITED);
-            fsWriter.addIndexesNoOptimize(new Directory[] { this.ramDirectory });
+            fsWriter.addIndexesNoOptimize(new Directory[] { this.directory });
             fsWriter.optimize();
             fsWriter.close();
-            destination.close();
-            this.ramDirectory.close();
-            this.manager.refresh(this.config.getName());
+            this.directory.close();
         } catch (final IOException e) {
             throw new StepInternalException("Unable to write index", e);
+        } finally {
+            IOUtils.closeQuietly(destination);
         }
-        return numEntries;
     }
 
     /**
-     * @return the writer of the index into RAM
+     * @param from the directory to rename
+     * @param to its new name
+     * @return true if the directory was renamed
+     */
+    boolean rename(final File from, final File to) {
+        return from.renameTo(to);
+    }
+
+    /**
+     * @return the location of the live index
      */
-    IndexWriter getRamWriter() {
+    File getLiveLocation() {
+        return new File(this.config.getLocation());
+    }
+
+    /**
+     * @param suffix the suffix to add to the entity's location
+     * @return a directory next to the live index
+     */
+    private File getSibling(final String suffix) {
+        final File live = getLiveLocation();
+        return new File(live.getParentFile(), live.getName() + suffix);
+    }
+
+    /**
+     * Deletes an index directory. Lucene indexes are flat, so there are no sub-directories to worry about.
+     * 
+     * @param location the location of the index
+     */
+    private static void deleteIndex(final File location) {
+        final File[] files = location.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (final File f : files) {
+            if (!f.delete()) {
+                LOGGER.warn("Unable to delete [{}]", f);
+            }
+        }
+        if (!location.delete()) {
+            LOGGER.warn("Unable to delete [{}]", location);
+        }
+    }
+
+    /**
+     * @return the writer of the index
+     */
+    IndexWriter getWriter() {
         return this.writer;
     }
 
@@ -179,6 +321,32 @@ public class EntityIndexWriterImpl {
         }
     }
 
+    /**
+     * Adds a list of verse ordinal ranges to the current document
+     * 
+     * @param fieldName the field name
+     * @param ranges the ranges
+     */
+    public void addFieldToCurrentDocument(final String fieldName, final List<OrdinalRange> ranges) {
+        if (ranges == null || ranges.isEmpty()) {
+            return;
+        }
+
+        ensureNewDocument();
+        final List<FieldConfig> fieldConfigs = this.luceneFieldConfigurationByRaw.get(fieldName);
+
+        if (fieldConfigs == null || fieldConfigs.size() == 0) {
+            LOGGER.trace("Skipping field: [{}]", fieldName);
+            return;
+        }
+
+        for (FieldConfig fieldConfig : fieldConfigs) {
+            for (final Fieldable field : fieldConfig.getFields(ranges)) {
+                this.doc.add(field);
+            }
+        }
+    }
+
     /**
      * Adds a field to the current document
      * 
@@ -33,77 +33,239 @@
 package com.tyndalehouse.step.core.data.entities.impl;
 
 import java.io.Closeable;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.google.inject.Injector;
+import com.tyndalehouse.step.core.data.EntityChangeListener;
 import com.tyndalehouse.step.core.data.EntityConfiguration;
 import com.tyndalehouse.step.core.data.EntityIndexReader;
 import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.cache.ComputeOnceMap;
 
 /**
+ * Registry of entity configurations and readers. Each is created exactly once per entity, and lookups of entities
+ * that have already been opened do not take any lock.
+ * 
  * @author chrisburrell
  * 
  */
 @Singleton
 public class EntityManagerImpl implements Closeable, EntityManager {
-    private final Map<String, EntityConfiguration> configs = new HashMap<String, EntityConfiguration>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityManagerImpl.class);
+    private static final String PROPERTIES_SUFFIX = ".properties";
     private final boolean memoryMapped;
+    private final boolean buildOnDisk;
     private final String indexPath;
-    private Map<String, EntityIndexReader> indexReaders = new HashMap<String, EntityIndexReader>();
     private final Injector injector;
+    private final List<EntityChangeListener> entityChangeListeners = new CopyOnWriteArrayList<EntityChangeListener>();
+    private final ComputeOnceMap<String, EntityConfiguration> configs = new ComputeOnceMap<String, EntityConfiguration>(
+            new ComputeOnceMap.Loader<String, EntityConfiguration>() {
+                @Override
+                public EntityConfiguration load(final String entityName) {
+                    return new EntityConfiguration(EntityManagerImpl.this.indexPath, entityName,
+                            EntityManagerImpl.this.injector);
+                }
+            });
+    private final ComputeOnceMap<String, EntityIndexReader> indexReaders = new ComputeOnceMap<String, EntityIndexReader>(
+            new ComputeOnceMap.Loader<String, EntityIndexReader>() {
+                @Override
+                public EntityIndexReader load(final String entity) {
+                    return createReader(entity);
+                }
+            });
 
     /**
      * Constructs the entity manager.
      * 
      * @param memoryMapped true to indicate indexes should be stored in memory
+     * @param buildOnDisk true to build new indexes on disk, false to build them in memory
      * @param indexPath path to index
      * @param injector the injector
      */
     @Inject
     public EntityManagerImpl(@Named("app.index.memoryMapped") final boolean memoryMapped,
+            @Named("app.index.buildOnDisk") final boolean buildOnDisk,
             @Named("app.index.path") final String indexPath, final Injector injector) {
         this.memoryMapped = memoryMapped;
+        this.buildOnDisk = buildOnDisk;
         this.indexPath = indexPath;
         this.injector = injector;
     }
 
     @Override
     public EntityConfiguration getConfig(final String entityName) {
-        EntityConfiguration entityConfiguration = this.configs.get(entityName);
-
-        if (entityConfiguration == null) {
-            entityConfiguration = new EntityConfiguration(this.indexPath, entityName, this.injector);
-            this.configs.put(entityName, entityConfiguration);
-        }
-        return entityConfiguration;
+        return this.configs.get(entityName);
     }
 
     @Override
     public void refresh(final String entity) {
-        final EntityIndexReader entityIndexReader = this.indexReaders.get(entity);
+        final EntityIndexReader entityIndexReader = this.indexReaders.getIfPresent(entity);
         if (entityIndexReader != null) {
             entityIndexReader.refresh();
         }
+
+        for (final EntityChangeListener listener : this.entityChangeListeners) {
+            listener.entityChanged(entity);
+        }
+    }
+
+    @Override
+    public void addEntityChangeListener(final EntityChangeListener listener) {
+        this.entityChangeListeners.add(listener);
     }
 
     @Override
     public EntityIndexReader getReader(final String entity) {
-        EntityIndexReader entityIndexReader = this.indexReaders.get(entity);
-        if (entityIndexReader == null) {
-            entityIndexReader = new EntityIndexReaderImpl(getConfig(entity), this.memoryMapped);
-            this.indexReaders.put(entity, entityIndexReader);
+        return this.indexReaders.get(entity);
+    }
+
+    /**
+     * Creates the reader for an entity. Called at most once per entity.
+     * 
+     * @param entity the entity name
+     * @return the reader
+     */
+    protected EntityIndexReader createReader(final String entity) {
+        return new EntityIndexReaderImpl(getConfig(entity), this.memoryMapped);
+    }
+
+    @Override
+    public void warmUp() {
+        final List<String> entities = getEntityNames();
+        if (entities.isEmpty()) {
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        final AtomicInteger remaining = new AtomicInteger(entities.size());
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+                Math.min(entities.size(), Runtime.getRuntime().availableProcessors())), new ThreadFactory() {
+                    private final AtomicInteger threadNumber = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "step-warm-up-" + this.threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        // requests arriving in the meantime share the readers being opened here, rather than open their own
+        for (final String entity : entities) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        getReader(entity);
+                    } catch (final RuntimeException ex) {
+                        LOGGER.warn("Unable to open entity [{}]", entity);
+                        LOGGER.trace("Trace for exception:", ex);
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            LOGGER.info("Opened {} entities in {}ms", entities.size(),
+                                    System.currentTimeMillis() - start);
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * @return the names of all entities that have a configuration file next to {@link EntityConfiguration}
+     */
+    @Override
+    public List<String> getEntityNames() {
+        final URL location = EntityConfiguration.class.getResource(EntityConfiguration.class.getSimpleName()
+                + ".class");
+        final String packagePath = EntityConfiguration.class.getPackage().getName().replace('.', '/') + '/';
+        final List<String> entities = new ArrayList<String>();
+        if (location == null) {
+            return entities;
+        }
+
+        try {
+            if ("jar".equals(location.getProtocol())) {
+                final URLConnection connection = location.openConnection();
+                connection.setUseCaches(false);
+                final JarFile jar = ((JarURLConnection) connection).getJarFile();
+                try {
+                    final Enumeration<JarEntry> jarEntries = jar.entries();
+                    while (jarEntries.hasMoreElements()) {
+                        final String name = jarEntries.nextElement().getName();
+                        if (name.startsWith(packagePath) && name.indexOf('/', packagePath.length()) == -1) {
+                            addEntityName(entities, name.substring(packagePath.length()));
+                        }
+                    }
+                } finally {
+                    jar.close();
+                }
+            } else if ("file".equals(location.getProtocol())) {
+                // resources and classes may be in different directories when running from the build tree
+                final Enumeration<URL> directories = EntityConfiguration.class.getClassLoader().getResources(
+                        packagePath);
+                while (directories.hasMoreElements()) {
+                    final URL directory = directories.nextElement();
+                    if ("file".equals(directory.getProtocol())) {
+                        final String[] files = new File(directory.toURI()).list();
+                        if (files != null) {
+                            for (final String file : files) {
+                                addEntityName(entities, file);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to list entity configurations", e);
+        } catch (final URISyntaxException e) {
+            throw new StepInternalException("Unable to list entity configurations", e);
+        }
+        return entities;
+    }
+
+    /**
+     * Adds the entity name if the file is an entity configuration
+     * 
+     * @param entities the list of entities so far
+     * @param fileName the name of the file
+     */
+    private void addEntityName(final List<String> entities, final String fileName) {
+        if (fileName.endsWith(PROPERTIES_SUFFIX)) {
+            final String entity = fileName.substring(0, fileName.length() - PROPERTIES_SUFFIX.length());
+            if (!entities.contains(entity)) {
+                entities.add(entity);
+            }
         }
-        return entityIndexReader;
     }
 
     @Override
     public EntityIndexWriterImpl getNewWriter(final String entity) {
-        return new EntityIndexWriterImpl(this, entity);
+        return new EntityIndexWriterImpl(this, entity, this.buildOnDisk);
     }
 
     @Override
@@ -112,11 +274,4 @@ public class EntityManagerImpl implements Closeable, EntityManager {
             reader.close();
         }
     }
-
-    /**
-     * @param indexReaders the indexReaders to set
-     */
-    void setIndexReaders(final Map<String, EntityIndexReader> indexReaders) {
-        this.indexReaders = indexReaders;
-    }
 }
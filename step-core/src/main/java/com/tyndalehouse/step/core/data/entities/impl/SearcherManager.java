@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.data.entities.impl;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
+
+import com.tyndalehouse.step.core.utils.IOUtils;
+
+/**
+ * Hands out the current searcher of an entity index to queries, counting the references to it. Swapping in a new
+ * searcher is atomic, and the old searcher (and its directory) is only closed once the last query that acquired it
+ * has released it, so that a refresh never closes an index from under a running query.
+ * <p/>
+ * Each {@link #acquire()} must be matched by a {@link SearcherReference#release()} in a finally block.
+ * 
+ * @author chrisburrell
+ */
+class SearcherManager implements Closeable {
+    private final AtomicReference<SearcherReference> current = new AtomicReference<SearcherReference>();
+
+    /**
+     * A searcher together with the number of queries using it
+     */
+    static final class SearcherReference {
+        private final IndexSearcher searcher;
+        private final Directory directory;
+        // the manager itself holds one reference until the searcher is swapped out
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        /**
+         * @param searcher the searcher
+         * @param directory the directory the searcher was opened on, closed with the searcher, may be null
+         */
+        SearcherReference(final IndexSearcher searcher, final Directory directory) {
+            this.searcher = searcher;
+            this.directory = directory;
+        }
+
+        /**
+         * @return the searcher
+         */
+        IndexSearcher getSearcher() {
+            return this.searcher;
+        }
+
+        /**
+         * @return true if a reference was taken, false if the searcher has already been closed
+         */
+        private boolean tryAcquire() {
+            int count;
+            do {
+                count = this.references.get();
+                if (count <= 0) {
+                    return false;
+                }
+            } while (!this.references.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        /**
+         * releases a reference, closing the searcher when no-one is using it any more
+         */
+        void release() {
+            if (this.references.decrementAndGet() == 0) {
+                IOUtils.closeQuietly(this.searcher);
+                IOUtils.closeQuietly(this.directory);
+            }
+        }
+    }
+
+    /**
+     * Acquires the current searcher.
+     * 
+     * @return the reference to the current searcher, or null if there is no searcher
+     */
+    SearcherReference acquire() {
+        while (true) {
+            final SearcherReference reference = this.current.get();
+            if (reference == null || reference.tryAcquire()) {
+                return reference;
+            }
+            // the searcher was swapped out and closed between the get and the acquire - try the new one
+        }
+    }
+
+    /**
+     * Makes the given searcher the current one. The previous searcher is closed once all the queries using it
+     * have completed.
+     * 
+     * @param searcher the new searcher, may be null
+     * @param directory the directory of the new searcher, may be null
+     */
+    void swap(final IndexSearcher searcher, final Directory directory) {
+        final SearcherReference next = searcher == null ? null : new SearcherReference(searcher, directory);
+        final SearcherReference previous = this.current.getAndSet(next);
+        if (previous != null) {
+            previous.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        swap(null, null);
+    }
+}
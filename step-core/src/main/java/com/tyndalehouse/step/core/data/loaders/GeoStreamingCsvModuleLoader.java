@@ -50,8 +50,8 @@ public class GeoStreamingCsvModuleLoader extends StreamingCsvModuleLoader {
         processCoordinate("longitude", line[3]);
         getWriter().addFieldToCurrentDocument("precision", this.precisionType);
 
-        getWriter().addFieldToCurrentDocument("references",
-                this.jsword.getAllReferences(line[4].replace("Sng", "Song"), "ESV_th").replace(',', ';'));
+        getWriter().addFieldToCurrentDocument("referenceRanges",
+                this.jsword.getOrdinalRanges(line[4].replace("Sng", "Song"), "ESV_th"));
     }
 
     /**
@@ -35,14 +35,18 @@ package com.tyndalehouse.step.core.data.processors;
 import javax.inject.Inject;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.tyndalehouse.step.core.data.EntityConfiguration;
+import com.tyndalehouse.step.core.data.common.OrdinalRange;
 import com.tyndalehouse.step.core.data.create.PostProcessor;
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -76,6 +80,9 @@ public class NaveProcessor implements PostProcessor {
             doc.add(config.getField("fullHeader", stripAlternatives(fullHeaderAnalyzed)));
         }
         doc.add(config.getField("expandedReferences", expandRefs(doc.get("references"))));
+        for (final Fieldable range : config.getFields("referenceRanges", getRanges(doc.get("references")))) {
+            doc.add(range);
+        }
         doc.add(config.getField("fullTerm", rootStem + " " + fullHeaderAnalyzed));
     }
 
@@ -104,4 +111,20 @@ public class NaveProcessor implements PostProcessor {
         }
         return refs;
     }
+
+    /**
+     * Works out the ranges of verse ordinals covered by the references
+     *
+     * @param refs the references
+     * @return the ranges, or none if the references can't be parsed
+     */
+    private List<OrdinalRange> getRanges(final String refs) {
+        try {
+            return this.jswordPassage.getOrdinalRanges(refs, "ESV_th");
+        } catch (final StepInternalException ex) {
+            LOGGER.error("Nave data: {}", ex.getMessage());
+            LOGGER.trace("Reference ranges failed", ex);
+        }
+        return new ArrayList<OrdinalRange>(0);
+    }
 }
@@ -34,6 +34,18 @@ public class KeyWrapper {
         this.osisKeyId = k.getOsisID();
     }
 
+    /**
+     * Copies another KeyWrapper, cloning its key
+     *
+     * @param other the wrapper to copy
+     */
+    public KeyWrapper(final KeyWrapper other) {
+        this.key = other.key == null ? null : other.key.clone();
+        this.name = other.name;
+        this.osisKeyId = other.osisKeyId;
+        this.lastChapter = other.lastChapter;
+    }
+
     /**
      * @return the osisKeyId
      */
@@ -14,6 +14,23 @@ public class LexiconSuggestion implements Serializable, PopularSuggestion {
     private String stepTransliteration;
     private String gloss;
 
+    /**
+     * for use by serialisation
+     */
+    public LexiconSuggestion() {
+        // for use by serialisation
+    }
+
+    /**
+     * @param other the suggestion to copy
+     */
+    public LexiconSuggestion(final LexiconSuggestion other) {
+        this.strongNumber = other.strongNumber;
+        this.matchingForm = other.matchingForm;
+        this.stepTransliteration = other.stepTransliteration;
+        this.gloss = other.gloss;
+    }
+
     /**
      * @return the stepTransliteration
      */
@@ -33,6 +33,8 @@
 package com.tyndalehouse.step.core.models;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -96,6 +98,80 @@ public class OsisWrapper extends AbstractComplexSearch implements Serializable {
         super.setSearchType(SearchType.PASSAGE);
     }
 
+    /**
+     * Creates a copy of another passage, so that a cached passage can be handed out to callers that go on
+     * to decorate it. The key, chapters and collections are copied too, so that changes to one copy never show up
+     * in another. The search tokens, signature and timings are not copied as they are specific to each request.
+     * 
+     * @param other the passage to copy
+     */
+    public OsisWrapper(final OsisWrapper other) {
+        this.value = other.value;
+        this.key = other.key == null ? null : other.key.clone();
+        this.reference = other.reference;
+        this.longName = other.longName;
+        this.osisId = other.osisId;
+        this.languageCode = other.languageCode == null ? null : other.languageCode.clone();
+        this.previousChapter = other.previousChapter == null ? null : new KeyWrapper(other.previousChapter);
+        this.nextChapter = other.nextChapter == null ? null : new KeyWrapper(other.nextChapter);
+        this.fragment = other.fragment;
+        this.multipleRanges = other.multipleRanges;
+        this.startRange = other.startRange;
+        this.endRange = other.endRange;
+        this.strongNumbers = copyStrongNumbers(other.strongNumbers);
+        this.options = other.options;
+        this.selectedOptions = other.selectedOptions;
+        this.removedOptions = copyRemovedOptions(other.removedOptions);
+        super.setInterlinearMode(other.getInterlinearMode());
+        super.setMasterVersion(other.getMasterVersion());
+        super.setExtraVersions(other.getExtraVersions());
+        super.setSearchType(other.getSearchType());
+    }
+
+    /**
+     * @param strongNumbers the strong numbers to copy, may be null
+     * @return a copy of the strong numbers and their suggestions
+     */
+    private static Map<String, List<LexiconSuggestion>> copyStrongNumbers(
+            final Map<String, List<LexiconSuggestion>> strongNumbers) {
+        if (strongNumbers == null) {
+            return null;
+        }
+
+        final Map<String, List<LexiconSuggestion>> copy = new LinkedHashMap<String, List<LexiconSuggestion>>(
+                strongNumbers.size() * 2);
+        for (final Map.Entry<String, List<LexiconSuggestion>> entry : strongNumbers.entrySet()) {
+            final List<LexiconSuggestion> suggestions = entry.getValue();
+            if (suggestions == null) {
+                copy.put(entry.getKey(), null);
+                continue;
+            }
+
+            final List<LexiconSuggestion> copiedSuggestions = new ArrayList<LexiconSuggestion>(suggestions.size());
+            for (final LexiconSuggestion suggestion : suggestions) {
+                copiedSuggestions.add(suggestion == null ? null : new LexiconSuggestion(suggestion));
+            }
+            copy.put(entry.getKey(), copiedSuggestions);
+        }
+        return copy;
+    }
+
+    /**
+     * @param removedOptions the trimmed options to copy, may be null
+     * @return a copy of the trimmed options
+     */
+    private static List<TrimmedLookupOption> copyRemovedOptions(final List<TrimmedLookupOption> removedOptions) {
+        if (removedOptions == null) {
+            return null;
+        }
+
+        final List<TrimmedLookupOption> copy = new ArrayList<TrimmedLookupOption>(removedOptions.size());
+        for (final TrimmedLookupOption option : removedOptions) {
+            copy.add(option == null ? null : new TrimmedLookupOption(option.getExplanation(), option.getOption()));
+        }
+        return copy;
+    }
+
     /**
      * @return the value to be returned
      */
@@ -26,6 +26,7 @@ public class SearchResult extends AbstractComplexSearch implements Serializable
     private int pageSize;
     private int pageNumber;
     private String searchRestriction;
+    private boolean partial;
 
     /**
      * @return the query
@@ -193,4 +194,18 @@ public class SearchResult extends AbstractComplexSearch implements Serializable
     public void setSearchRestriction(String searchRestriction) {
         this.searchRestriction = searchRestriction;
     }
+
+    /**
+     * @return true if some of the versions did not respond in time, and the results are therefore incomplete
+     */
+    public boolean isPartial() {
+        return this.partial;
+    }
+
+    /**
+     * @param partial true to indicate the results are incomplete
+     */
+    public void setPartial(final boolean partial) {
+        this.partial = partial;
+    }
 }
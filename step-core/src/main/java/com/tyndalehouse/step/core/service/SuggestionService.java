@@ -45,4 +45,9 @@ public interface SuggestionService {
      *                stored (input, search type, etc.)
      */
     SuggestionsSummary getFirstNSuggestions(SuggestionContext context);
+
+    /**
+     * stops the threads querying the providers
+     */
+    void close();
 }
@@ -0,0 +1,529 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.helpers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.data.EntityChangeListener;
+import com.tyndalehouse.step.core.data.EntityDoc;
+import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.data.IndexReaderCallback;
+import com.tyndalehouse.step.core.data.common.TermsAndMaxCount;
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.PackedPrefixTrie;
+
+/**
+ * The terms of the lexicon that the ancient word and meaning suggestions match against, held in memory as prefix
+ * tries, so that typing ahead does not run prefix queries against the definition index on every key stroke.
+ * <p/>
+ * Definitions are ranked by popularity, the most popular first, so that the best few matches of any prefix are kept
+ * against each node of the trie. The tries are built in the background on start up, and again whenever the
+ * definitions are re-indexed, in which case the previous tries are used until the new ones are ready.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class AncientSuggestionIndex implements EntityChangeListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AncientSuggestionIndex.class);
+    private static final String DEFINITION_ENTITY = "definition";
+    private static final String POPULARITY = "popularity";
+    private static final String STOP_WORD = "stopWord";
+    private static final int TOP_SIZE = 16;
+    private static final EntityDoc[] NO_DOCS = new EntityDoc[0];
+    private static final MapFieldSelector STORED_FIELDS = new MapFieldSelector(OriginalWordUtils.STRONG_NUMBER_FIELD,
+            "stepGloss", "accentedUnicode", "stepTransliteration", POPULARITY, STOP_WORD);
+    private final EntityManager manager;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "step-suggestion-tries");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private volatile Map<String, Lookup> lookups;
+    private long generation;
+    private Future<?> pending;
+
+    /**
+     * The kinds of suggestions, with the fields they match against, and the field they are otherwise sorted by
+     */
+    public enum Kind {
+        MEANINGS("stepGloss", "stepGloss", "translations"),
+        FORMS("stepTransliteration", "accentedUnicode", "betaAccented", "stepTransliteration", "twoLetter",
+                "otherTransliteration", "simplifiedStepTransliteration"),
+        STRONG_NUMBERS("stepTransliteration", OriginalWordUtils.STRONG_NUMBER_FIELD);
+
+        private final String sortField;
+        private final String[] fields;
+
+        /**
+         * @param sortField the field used when not sorting by popularity
+         * @param fields    the fields whose terms are matched
+         */
+        Kind(final String sortField, final String... fields) {
+            this.sortField = sortField;
+            this.fields = fields;
+        }
+    }
+
+    /**
+     * The definitions of one language, and the terms of one kind
+     */
+    public static final class Lookup {
+        private final PackedPrefixTrie trie;
+        private final EntityDoc[] docs;
+        private final int[] sortPositions;
+        private final int[] sortedRanks;
+
+        /**
+         * @param trie          the terms, and the ranks of the definitions they are found in
+         * @param docs          the definitions, by rank
+         * @param sortPositions the position of each definition, by rank, when sorted on the kind's sort field
+         */
+        Lookup(final PackedPrefixTrie trie, final EntityDoc[] docs, final int[] sortPositions) {
+            this.trie = trie;
+            this.docs = docs;
+            this.sortPositions = sortPositions;
+            this.sortedRanks = new int[sortPositions.length];
+            for (int rank = 0; rank < sortPositions.length; rank++) {
+                this.sortedRanks[sortPositions[rank]] = rank;
+            }
+        }
+
+        /**
+         * @param keys        the analyzed forms of the user's input
+         * @param max         the maximum number of definitions to return
+         * @param popularSort true to return the most popular first, false to sort them on the kind's sort field
+         * @return the definitions with a term equal to one of the keys
+         */
+        public EntityDoc[] getExactMatches(final List<String> keys, final int max, final boolean popularSort) {
+            final BitSet ranks = new BitSet(this.docs.length);
+            for (final String key : keys) {
+                final int node = this.trie.find(key);
+                if (node != PackedPrefixTrie.NOT_FOUND) {
+                    for (final int rank : this.trie.getExact(node)) {
+                        ranks.set(rank);
+                    }
+                }
+            }
+            return select(ranks, Collections.<String>emptySet(), max, popularSort);
+        }
+
+        /**
+         * @param keys        the analyzed forms of the user's input
+         * @param excluded    the strong numbers of definitions already retrieved, which are not returned again
+         * @param max         the maximum number of definitions to return
+         * @param popularSort true to return the most popular first, false to sort them on the kind's sort field
+         * @param counts      receives the number of definitions matched, other than those excluded
+         * @return the definitions with a term starting with one of the keys
+         */
+        public EntityDoc[] getPrefixMatches(final List<String> keys, final Set<String> excluded, final int max,
+                                            final boolean popularSort, final TermsAndMaxCount<EntityDoc> counts) {
+            final int[] nodes = findPrefixNodes(keys);
+            if (nodes.length == 0) {
+                counts.setTotalCount(0);
+                return NO_DOCS;
+            }
+
+            // the excluded definitions are exact matches, so they are always amongst the prefix matches
+            if (nodes.length == 1 && popularSort) {
+                final int count = this.trie.getCount(nodes[0]);
+                if (count <= this.trie.getTopSize() || max + excluded.size() <= this.trie.getTopSize()) {
+                    counts.setTotalCount(Math.max(0, count - excluded.size()));
+                    return pick(this.trie.getTop(nodes[0]), excluded, max);
+                }
+            }
+
+            final BitSet ranks = new BitSet(this.docs.length);
+            for (final int node : nodes) {
+                this.trie.collect(node, ranks);
+            }
+            counts.setTotalCount(Math.max(0, ranks.cardinality() - excluded.size()));
+            return select(ranks, excluded, max, popularSort);
+        }
+
+        /**
+         * @param keys the analyzed forms of the user's input
+         * @return the nodes of the keys, leaving out those under another key's node
+         */
+        private int[] findPrefixNodes(final List<String> keys) {
+            final int[] nodes = new int[keys.size()];
+            int size = 0;
+            for (final String key : keys) {
+                final int node = this.trie.find(key);
+                if (node == PackedPrefixTrie.NOT_FOUND) {
+                    continue;
+                }
+
+                boolean covered = false;
+                for (int ii = 0; ii < size && !covered; ii++) {
+                    covered = this.trie.contains(nodes[ii], node);
+                    if (!covered && this.trie.contains(node, nodes[ii])) {
+                        nodes[ii] = node;
+                        covered = true;
+                    }
+                }
+                if (!covered) {
+                    nodes[size++] = node;
+                }
+            }
+            return size == nodes.length ? nodes : Arrays.copyOf(nodes, size);
+        }
+
+        /**
+         * @param ranks       the ranks of the matching definitions
+         * @param excluded    the strong numbers of the definitions to leave out
+         * @param max         the maximum number of definitions to return
+         * @param popularSort true to return the most popular first, false to sort them on the kind's sort field
+         * @return the definitions
+         */
+        private EntityDoc[] select(final BitSet ranks, final Set<String> excluded, final int max,
+                                   final boolean popularSort) {
+            final int[] selected = new int[ranks.cardinality()];
+            int size = 0;
+            for (int rank = ranks.nextSetBit(0); rank >= 0; rank = ranks.nextSetBit(rank + 1)) {
+                selected[size++] = popularSort ? rank : this.sortPositions[rank];
+            }
+
+            if (!popularSort) {
+                Arrays.sort(selected);
+                for (int ii = 0; ii < selected.length; ii++) {
+                    selected[ii] = this.sortedRanks[selected[ii]];
+                }
+            }
+            return pick(selected, excluded, max);
+        }
+
+        /**
+         * @param ranks    the ranks of the matching definitions, in the order they are wanted
+         * @param excluded the strong numbers of the definitions to leave out
+         * @param max      the maximum number of definitions to return
+         * @return the definitions
+         */
+        private EntityDoc[] pick(final int[] ranks, final Set<String> excluded, final int max) {
+            final List<EntityDoc> picked = new ArrayList<EntityDoc>(Math.min(max, ranks.length));
+            for (int ii = 0; ii < ranks.length && picked.size() < max; ii++) {
+                final EntityDoc doc = this.docs[ranks[ii]];
+                if (!excluded.contains(doc.get(OriginalWordUtils.STRONG_NUMBER_FIELD))) {
+                    picked.add(doc);
+                }
+            }
+            return picked.toArray(new EntityDoc[picked.size()]);
+        }
+    }
+
+    /**
+     * @param manager the entity manager, which notifies us when the definitions are re-indexed
+     */
+    @Inject
+    public AncientSuggestionIndex(final EntityManager manager) {
+        this.manager = manager;
+        manager.addEntityChangeListener(this);
+        reload();
+    }
+
+    /**
+     * @param greek true for greek definitions, false for hebrew definitions
+     * @param kind  the kind of terms to match against
+     * @return the lookup
+     */
+    public Lookup get(final boolean greek, final Kind kind) {
+        Map<String, Lookup> current = this.lookups;
+        if (current == null) {
+            current = awaitLookups();
+        }
+        return current.get(getKey(greek, kind));
+    }
+
+    @Override
+    public void entityChanged(final String entity) {
+        if (DEFINITION_ENTITY.equals(entity)) {
+            LOGGER.debug("Definitions have been re-indexed, rebuilding suggestions in the background");
+            reload();
+        }
+    }
+
+    /**
+     * Waits for the first tries to be built, which only happens if they are asked for very early on
+     *
+     * @return the lookups
+     */
+    private Map<String, Lookup> awaitLookups() {
+        Map<String, Lookup> current = this.lookups;
+        while (current == null) {
+            final Future<?> load;
+            synchronized (this) {
+                load = this.pending;
+            }
+
+            try {
+                load.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new StepInternalException("Interrupted whilst loading the suggestion tries", e);
+            } catch (final ExecutionException e) {
+                // try again on next use
+                synchronized (this) {
+                    if (this.pending == load) {
+                        reload();
+                    }
+                }
+                throw new StepInternalException("Unable to load the suggestion tries", e.getCause());
+            }
+            current = this.lookups;
+        }
+        return current;
+    }
+
+    /**
+     * Builds the tries in the background, and swaps them in once they are built, unless the definitions were
+     * re-indexed in the meantime, in which case the tries that are built next are used instead.
+     */
+    private synchronized void reload() {
+        final long wanted = ++this.generation;
+        this.pending = this.loader.submit(new Runnable() {
+            @Override
+            public void run() {
+                final Map<String, Lookup> loaded;
+                try {
+                    loaded = load();
+                } catch (final RuntimeException e) {
+                    LOGGER.error("Unable to build the suggestion tries", e);
+                    throw e;
+                }
+                synchronized (AncientSuggestionIndex.this) {
+                    if (AncientSuggestionIndex.this.generation == wanted) {
+                        AncientSuggestionIndex.this.lookups = loaded;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the lookups of both languages and all kinds
+     */
+    private Map<String, Lookup> load() {
+        final long start = System.currentTimeMillis();
+        final Map<String, Lookup> loaded = this.manager.getReader(DEFINITION_ENTITY).read(
+                new IndexReaderCallback<Map<String, Lookup>>() {
+                    @Override
+                    public Map<String, Lookup> read(final IndexReader reader) throws IOException {
+                        return readLookups(reader);
+                    }
+                });
+        LOGGER.info("Loaded suggestion tries in [{}]ms", System.currentTimeMillis() - start);
+        return loaded;
+    }
+
+    /**
+     * Reads the definitions, leaving out stop words as the suggestion queries did, and then the terms of each kind
+     *
+     * @param reader the reader of the definition index
+     * @return the lookups, keyed on language and kind
+     * @throws IOException the index could not be read
+     */
+    static Map<String, Lookup> readLookups(final IndexReader reader) throws IOException {
+        final EntityDoc[] docs = new EntityDoc[reader.maxDoc()];
+        final int[] popularity = new int[docs.length];
+        final List<Integer> greekDocs = new ArrayList<Integer>(docs.length);
+        final List<Integer> hebrewDocs = new ArrayList<Integer>(docs.length);
+        for (int ii = 0; ii < docs.length; ii++) {
+            if (reader.isDeleted(ii)) {
+                continue;
+            }
+
+            final Document doc = reader.document(ii, STORED_FIELDS);
+            final String strongNumber = doc.get(OriginalWordUtils.STRONG_NUMBER_FIELD);
+            if (strongNumber == null || strongNumber.isEmpty() || "true".equalsIgnoreCase(doc.get(STOP_WORD))) {
+                continue;
+            }
+
+            final char language = Character.toUpperCase(strongNumber.charAt(0));
+            if (language == 'G') {
+                greekDocs.add(ii);
+            } else if (language == 'H') {
+                hebrewDocs.add(ii);
+            } else {
+                continue;
+            }
+            docs[ii] = new EntityDoc(doc);
+            popularity[ii] = parsePopularity(doc.get(POPULARITY));
+        }
+
+        final Map<String, Lookup> lookups = new HashMap<String, Lookup>(8);
+        for (final Kind kind : Kind.values()) {
+            lookups.put(getKey(true, kind), readLookup(reader, docs, popularity, greekDocs, kind));
+            lookups.put(getKey(false, kind), readLookup(reader, docs, popularity, hebrewDocs, kind));
+        }
+        return Collections.unmodifiableMap(lookups);
+    }
+
+    /**
+     * @param reader     the reader of the definition index
+     * @param docs       the definitions, by document number
+     * @param popularity the popularity of each definition, by document number
+     * @param docNumbers the document numbers of the definitions in this language
+     * @param kind       the kind of terms
+     * @return the lookup
+     * @throws IOException the index could not be read
+     */
+    private static Lookup readLookup(final IndexReader reader, final EntityDoc[] docs, final int[] popularity,
+                                     final List<Integer> docNumbers, final Kind kind) throws IOException {
+        // both sorts are stable, so that ties are broken on document number, as in lucene. Values are compared
+        // regardless of case, so that capitalised glosses are not all sorted ahead of the others
+        final Comparator<Integer> bySortField = new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer left, final Integer right) {
+                final String leftValue = docs[left].get(kind.sortField);
+                final String rightValue = docs[right].get(kind.sortField);
+                if (leftValue == null || rightValue == null) {
+                    return leftValue == null ? (rightValue == null ? 0 : -1) : 1;
+                }
+                return leftValue.compareToIgnoreCase(rightValue);
+            }
+        };
+        final Integer[] byName = docNumbers.toArray(new Integer[docNumbers.size()]);
+        Arrays.sort(byName, bySortField);
+        final Integer[] byRank = docNumbers.toArray(new Integer[docNumbers.size()]);
+        Arrays.sort(byRank, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer left, final Integer right) {
+                final int comparison = Integer.compare(popularity[right], popularity[left]);
+                return comparison != 0 ? comparison : bySortField.compare(left, right);
+            }
+        });
+
+        final int[] rankOf = new int[docs.length];
+        Arrays.fill(rankOf, -1);
+        final EntityDoc[] ranked = new EntityDoc[byRank.length];
+        for (int rank = 0; rank < byRank.length; rank++) {
+            rankOf[byRank[rank]] = rank;
+            ranked[rank] = docs[byRank[rank]];
+        }
+        final int[] sortPositions = new int[byName.length];
+        for (int position = 0; position < byName.length; position++) {
+            sortPositions[rankOf[byName[position]]] = position;
+        }
+
+        final PackedPrefixTrie.Builder builder = new PackedPrefixTrie.Builder();
+        for (final String field : kind.fields) {
+            addTerms(reader, field, rankOf, builder);
+        }
+        return new Lookup(builder.build(TOP_SIZE), ranked, sortPositions);
+    }
+
+    /**
+     * @param reader  the reader of the definition index
+     * @param field   the field whose terms are added
+     * @param rankOf  the rank of each document, or -1 if it is not of this language
+     * @param builder the trie being built
+     * @throws IOException the index could not be read
+     */
+    private static void addTerms(final IndexReader reader, final String field, final int[] rankOf,
+                                 final PackedPrefixTrie.Builder builder) throws IOException {
+        final TermEnum terms = reader.terms(new Term(field, ""));
+        final TermDocs termDocs = reader.termDocs();
+        try {
+            do {
+                final Term term = terms.term();
+                if (term == null || !field.equals(term.field())) {
+                    break;
+                }
+
+                termDocs.seek(terms);
+                while (termDocs.next()) {
+                    final int rank = rankOf[termDocs.doc()];
+                    if (rank != -1) {
+                        builder.add(term.text(), rank);
+                    }
+                }
+            } while (terms.next());
+        } finally {
+            termDocs.close();
+            terms.close();
+        }
+    }
+
+    /**
+     * @param value the stored popularity
+     * @return the popularity, or 0 if there isn't one
+     */
+    private static int parsePopularity(final String value) {
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param greek true for greek
+     * @param kind  the kind of terms
+     * @return the key of the lookup
+     */
+    private static String getKey(final boolean greek, final Kind kind) {
+        return (greek ? "G" : "H") + kind.name();
+    }
+}
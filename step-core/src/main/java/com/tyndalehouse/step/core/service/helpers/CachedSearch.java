@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.PassageTally;
+import org.crosswire.jsword.passage.VerseKey;
+
+import com.tyndalehouse.step.core.data.EntityDoc;
+import com.tyndalehouse.step.core.models.LexiconSuggestion;
+import com.tyndalehouse.step.core.service.impl.SearchType;
+
+/**
+ * Everything about a search that does not depend on the page being shown: the verses matched by the search (before
+ * any paging), the definitions that the search considered, and the metadata of the result. Callers always receive
+ * their own copies, since keys are re-ordered and lists are sorted as the page is built.
+ *
+ * @author chrisburrell
+ */
+public final class CachedSearch {
+    private static final int OVERHEAD_BYTES = 1024;
+    private static final int BYTES_PER_VERSE = 16;
+    private static final int BYTES_PER_DEFINITION = 512;
+    private final Key results;
+    private final String[] versions;
+    private final boolean allKeys;
+    private final SearchType searchType;
+    private final List<EntityDoc> queryDefinitions;
+    private final List<LexiconSuggestion> definitions;
+    private final List<String> strongHighlights;
+
+    /**
+     * @param results          the verses matched by the search, before paging
+     * @param versions         the versions the verses are retrieved from
+     * @param allKeys          true if the page is cut after the results are sorted
+     * @param searchType       the search type reported to the user
+     * @param queryDefinitions the definitions that the search considered, may be null
+     * @param definitions      the definitions reported to the user, may be null
+     * @param strongHighlights the strong numbers to highlight, may be null
+     */
+    public CachedSearch(final Key results, final String[] versions, final boolean allKeys,
+                        final SearchType searchType, final List<EntityDoc> queryDefinitions,
+                        final List<LexiconSuggestion> definitions, final List<String> strongHighlights) {
+        this.results = results.clone();
+        this.versions = versions.clone();
+        this.allKeys = allKeys;
+        this.searchType = searchType;
+        this.queryDefinitions = copy(queryDefinitions);
+        this.definitions = copy(definitions);
+        this.strongHighlights = copy(strongHighlights);
+    }
+
+    /**
+     * @param list the list to be copied
+     * @param <T>  the type of element
+     * @return a copy of the list, or null if the list was null
+     */
+    private static <T> List<T> copy(final List<T> list) {
+        return list == null ? null : new ArrayList<T>(list);
+    }
+
+    /**
+     * @return an approximation of the number of bytes taken up by this search
+     */
+    public long getWeight() {
+        long weight = OVERHEAD_BYTES;
+        if (this.results instanceof PassageTally) {
+            // tallies hold a counter for every verse in the versification
+            weight += 4L * ((VerseKey) this.results).getVersification().maximumOrdinal();
+        } else {
+            weight += (long) BYTES_PER_VERSE * this.results.getCardinality();
+        }
+
+        if (this.queryDefinitions != null) {
+            weight += (long) BYTES_PER_DEFINITION * this.queryDefinitions.size();
+        }
+        if (this.definitions != null) {
+            weight += (long) BYTES_PER_DEFINITION * this.definitions.size();
+        }
+        return weight;
+    }
+
+    /**
+     * @return a copy of the verses matched by the search
+     */
+    public Key getResults() {
+        return this.results.clone();
+    }
+
+    /**
+     * @return the versions the verses are retrieved from
+     */
+    public String[] getVersions() {
+        return this.versions.clone();
+    }
+
+    /**
+     * @return true if the page is cut after the results are sorted
+     */
+    public boolean isAllKeys() {
+        return this.allKeys;
+    }
+
+    /**
+     * @return the search type reported to the user
+     */
+    public SearchType getSearchType() {
+        return this.searchType;
+    }
+
+    /**
+     * @return a copy of the definitions that the search considered
+     */
+    public List<EntityDoc> getQueryDefinitions() {
+        return copy(this.queryDefinitions);
+    }
+
+    /**
+     * @return a copy of the definitions reported to the user
+     */
+    public List<LexiconSuggestion> getDefinitions() {
+        return copy(this.definitions);
+    }
+
+    /**
+     * @return a copy of the strong numbers to highlight
+     */
+    public List<String> getStrongHighlights() {
+        return copy(this.strongHighlights);
+    }
+}
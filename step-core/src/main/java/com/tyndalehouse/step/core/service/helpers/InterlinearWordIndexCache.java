@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.helpers;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
+import com.tyndalehouse.step.core.service.jsword.ModuleChangeListener;
+import com.tyndalehouse.step.core.utils.cache.BoundedCache;
+import com.tyndalehouse.step.core.utils.cache.ComputeOnceMap;
+import com.tyndalehouse.step.core.utils.cache.LoadingCache;
+import com.tyndalehouse.step.core.xsl.impl.InterlinearWordIndex;
+
+/**
+ * Holds the words of recently interlineared chapters, keyed by version and chapter. Each chapter is read from the
+ * OSIS XML once, however many requests ask for it at the same time, and the resulting index is then shared by all
+ * of them. The cache is bounded by an estimate of the memory taken up by the words it holds, and is emptied whenever a
+ * module is installed, removed or re-indexed.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class InterlinearWordIndexCache implements ModuleChangeListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InterlinearWordIndexCache.class);
+    private static final int OVERHEAD_BYTES = 256;
+    private static final int BYTES_PER_WORD = 192;
+    private final LoadingCache<ChapterKey, InterlinearWordIndex> chapters;
+
+    /**
+     * Identifies a chapter of a version. The book and versification are carried along so that the chapter can be
+     * read, but only the initials of the book take part in the identity of the key.
+     */
+    private static final class ChapterKey {
+        private final Book book;
+        private final Versification versification;
+        private final BibleBook bibleBook;
+        private final int chapter;
+
+        /**
+         * @param book          the version
+         * @param versification the versification of the version
+         * @param bibleBook     the book of the bible
+         * @param chapter       the chapter
+         */
+        private ChapterKey(final Book book, final Versification versification, final BibleBook bibleBook,
+                           final int chapter) {
+            this.book = book;
+            this.versification = versification;
+            this.bibleBook = bibleBook;
+            this.chapter = chapter;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ChapterKey)) {
+                return false;
+            }
+            final ChapterKey other = (ChapterKey) o;
+            return this.chapter == other.chapter && this.bibleBook == other.bibleBook
+                    && this.book.getInitials().equals(other.book.getInitials());
+        }
+
+        @Override
+        public int hashCode() {
+            return (this.book.getInitials().hashCode() * 31 + this.bibleBook.hashCode()) * 31 + this.chapter;
+        }
+
+        @Override
+        public String toString() {
+            return this.book.getInitials() + " " + this.bibleBook.getOSIS() + "." + this.chapter;
+        }
+    }
+
+    /**
+     * @param moduleService the module service, which notifies us of changes to modules
+     * @param maxBytes      the approximate number of bytes the words of recent chapters may take up
+     */
+    @Inject
+    public InterlinearWordIndexCache(final JSwordModuleService moduleService,
+                                     @Named("app.cache.interlinear.maxBytes") final long maxBytes) {
+        this.chapters = new LoadingCache<ChapterKey, InterlinearWordIndex>(maxBytes,
+                new BoundedCache.Weigher<InterlinearWordIndex>() {
+                    @Override
+                    public long weigh(final InterlinearWordIndex index) {
+                        return OVERHEAD_BYTES + (long) BYTES_PER_WORD * index.size();
+                    }
+                }, new ComputeOnceMap.Loader<ChapterKey, InterlinearWordIndex>() {
+                    @Override
+                    public InterlinearWordIndex load(final ChapterKey key) {
+                        final long start = System.currentTimeMillis();
+                        final InterlinearWordIndex index = InterlinearWordIndex.read(key.book, key.versification,
+                                key.bibleBook, key.chapter);
+                        LOGGER.debug("Indexed [{}] words of [{}] in [{}]ms", index.size(), key,
+                                System.currentTimeMillis() - start);
+                        return index;
+                    }
+                });
+        this.chapters.registerMetrics(InterlinearWordIndexCache.class, "interlinearChapters");
+        moduleService.addModuleChangeListener(this);
+    }
+
+    /**
+     * @param book          the version
+     * @param versification the versification of the version
+     * @param bibleBook     the book of the bible
+     * @param chapter       the chapter
+     * @return the words of the chapter, which are shared with other requests
+     */
+    public InterlinearWordIndex getChapter(final Book book, final Versification versification,
+                                           final BibleBook bibleBook, final int chapter) {
+        return this.chapters.get(new ChapterKey(book, versification, bibleBook, chapter));
+    }
+
+    @Override
+    public void moduleChanged(final String initials) {
+        LOGGER.debug("Clearing interlinear words following change to [{}]: {}", initials, this.chapters);
+        this.chapters.invalidateAll();
+    }
+}
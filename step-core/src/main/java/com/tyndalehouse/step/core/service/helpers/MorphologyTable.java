@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.helpers;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.data.EntityChangeListener;
+import com.tyndalehouse.step.core.data.EntityDoc;
+import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.utils.cache.ReloadableValue;
+
+/**
+ * The Robinson morphology codes, read once from the morphology entity and kept in memory, since they are looked up
+ * for every tagged word that is rendered. Each code also carries its colour coding classes, including the
+ * tense/voice/mood suffix for verbs, so that nothing needs working out while rendering.
+ * <p>
+ * The table is built on first use and is rebuilt whenever the morphology entity is refreshed.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class MorphologyTable implements EntityChangeListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MorphologyTable.class);
+    private static final String MORPHOLOGY_ENTITY = "morphology";
+    private final EntityManager manager;
+    private final ReloadableValue<Map<String, Morphology>> morphologies =
+            new ReloadableValue<Map<String, Morphology>>() {
+                @Override
+                protected Map<String, Morphology> load() {
+                    return MorphologyTable.this.load();
+                }
+            };
+
+    /**
+     * A single morphology code
+     */
+    public static final class Morphology {
+        private final EntityDoc doc;
+        private final String colorClass;
+
+        /**
+         * @param doc        the morphology as stored in the index
+         * @param colorClass the colour coding classes
+         */
+        Morphology(final EntityDoc doc, final String colorClass) {
+            this.doc = doc;
+            this.colorClass = colorClass;
+        }
+
+        /**
+         * @return the morphology as stored in the index
+         */
+        public EntityDoc getDoc() {
+            return this.doc;
+        }
+
+        /**
+         * @return the colour coding classes, or null if there are none
+         */
+        public String getColorClass() {
+            return this.colorClass;
+        }
+    }
+
+    /**
+     * @param manager the entity manager, which notifies us when the morphology is re-indexed
+     */
+    @Inject
+    public MorphologyTable(final EntityManager manager) {
+        this.manager = manager;
+        manager.addEntityChangeListener(this);
+    }
+
+    /**
+     * @param code the robinson code, without any prefix
+     * @return the morphology, or null if the code is not known
+     */
+    public Morphology get(final String code) {
+        return this.morphologies.get().get(code);
+    }
+
+    @Override
+    public void entityChanged(final String entity) {
+        if (MORPHOLOGY_ENTITY.equals(entity)) {
+            LOGGER.debug("Morphology has been re-indexed, rebuilding table on next use");
+            this.morphologies.invalidate();
+        }
+    }
+
+    /**
+     * Reads all codes from the index. Many codes share the same classes, so those are only held once.
+     *
+     * @return the table of codes
+     */
+    private Map<String, Morphology> load() {
+        final long start = System.currentTimeMillis();
+        final EntityDoc[] docs = this.manager.getReader(MORPHOLOGY_ENTITY).search(new MatchAllDocsQuery());
+        final Map<String, Morphology> table = new HashMap<String, Morphology>(docs.length * 2);
+        final Map<String, String> classes = new HashMap<String, String>(64);
+        for (final EntityDoc doc : docs) {
+            final String code = doc.get("code");
+            if (code == null || table.containsKey(code)) {
+                continue;
+            }
+
+            final String colorClass = getColorClass(doc);
+            String internedClass = colorClass == null ? null : classes.get(colorClass);
+            if (internedClass == null && colorClass != null) {
+                classes.put(colorClass, colorClass);
+                internedClass = colorClass;
+            }
+            table.put(code, new Morphology(doc, internedClass));
+        }
+        LOGGER.debug("Loaded [{}] morphology codes in [{}]ms", table.size(), System.currentTimeMillis() - start);
+        return Collections.unmodifiableMap(table);
+    }
+
+    /**
+     * Works out the colour coding classes, verbs additionally get a class made up from their tense, voice and mood,
+     * e.g. vpai for present active indicative.
+     *
+     * @param doc the morphology
+     * @return the classes
+     */
+    static String getColorClass(final EntityDoc doc) {
+        final String classes = doc.get("cssClasses");
+        final String function = doc.get("function");
+        if (function == null || !"verb".equals(function.toLowerCase())) {
+            return classes;
+        }
+
+        final String tenseField = doc.get("tense");
+        final String voiceField = doc.get("voice");
+        final String moodField = doc.get("mood");
+        if (tenseField == null || voiceField == null || moodField == null) {
+            return classes;
+        }
+
+        String tense = tenseField.toLowerCase();
+        final String voice = voiceField.toLowerCase();
+        final String mood = moodField.toLowerCase();
+        if (tense.isEmpty() || mood.isEmpty()) {
+            return classes;
+        }
+
+        // annotate 2nd Aorist as Aorist, 2nd Future as Future, 2nd Perfect as Perfect, 2nd Pluperfect...
+        if (tense.startsWith("2nd ")) {
+            tense = tense.substring(4);
+        } else if ("indefinite tense".equals(tense)) {
+            tense = "indefinite";
+        }
+        return classes + " v" + getShortCodeTense(tense) + getShortCodeVoice(voice) + getShortCodeMood(mood);
+    }
+
+    /**
+     * @param voice the voice of the verb
+     * @return p for passive, m for middle, a for everything else, which is displayed as active
+     */
+    private static String getShortCodeVoice(final String voice) {
+        if ("passive".equals(voice) || "either middle or passive".equals(voice)) {
+            return "p";
+        } else if ("middle".equals(voice)) {
+            return "m";
+        } else if (voice.indexOf("active") == -1 && voice.indexOf("deponent") == -1
+                && voice.indexOf("indefinite") == -1) {
+            LOGGER.warn("cannot identify voice [{}]", voice);
+        }
+        return "a";
+    }
+
+    /**
+     * @param tense the tense of the verb
+     * @return the single letter code for the tense
+     */
+    private static String getShortCodeTense(final String tense) {
+        if ("aorist".equals(tense)) {
+            return "a";
+        } else if ("present".equals(tense)) {
+            return "p";
+        } else if ("perfect".equals(tense)) {
+            return "r";
+        } else if ("pluperfect".equals(tense)) {
+            return "l";
+        } else if ("future".equals(tense)) {
+            return "f";
+        } else if ("imperfect".equals(tense)) {
+            return "i";
+        } else if ("indefinite".equals(tense)) {
+            return "x";
+        }
+        LOGGER.warn("cannot identify tense for [{}]", tense);
+        return "";
+    }
+
+    /**
+     * @param mood the mood of the verb
+     * @return the single letter code for the mood
+     */
+    private static String getShortCodeMood(final String mood) {
+        if ("indicative".equals(mood)) {
+            return "i";
+        } else if ("imperative".equals(mood)) {
+            return "m";
+        } else if ("participle".equals(mood)) {
+            return "p";
+        } else if ("infinitive".equals(mood)) {
+            return "n";
+        } else if ("subjunctive".equals(mood)) {
+            return "s";
+        } else if ("optative".equals(mood)) {
+            return "o";
+        }
+        LOGGER.warn("cannot identify mood for [{}]", mood);
+        return "";
+    }
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.helpers;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.models.OsisWrapper;
+import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
+import com.tyndalehouse.step.core.service.jsword.ModuleChangeListener;
+import com.tyndalehouse.step.core.utils.cache.BoundedCache;
+
+/**
+ * Holds recently rendered passages. Traffic is dominated by a few hundred popular chapters, so keeping the
+ * finished result saves re-reading and re-transforming the OSIS. The cache is bounded by the approximate size of
+ * the passages it holds, and is emptied whenever a module is installed, removed or re-indexed.
+ * <p>
+ * Callers always receive their own copy of a passage, since passages are decorated after the lookup.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class PassageCache implements ModuleChangeListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PassageCache.class);
+    private static final int OVERHEAD_BYTES = 512;
+    private final BoundedCache<PassageCacheKey, OsisWrapper> passages;
+
+    /**
+     * @param maxBytes     the approximate number of bytes the cached passages may take up
+     * @param moduleService the module service, which notifies us of changes to modules
+     */
+    @Inject
+    public PassageCache(@Named("app.cache.passages.maxBytes") final long maxBytes,
+                        final JSwordModuleService moduleService) {
+        this.passages = new BoundedCache<PassageCacheKey, OsisWrapper>(maxBytes,
+                new BoundedCache.Weigher<OsisWrapper>() {
+                    @Override
+                    public long weigh(final OsisWrapper passage) {
+                        final String value = passage.getValue();
+                        return OVERHEAD_BYTES + (value == null ? 0 : 2L * value.length());
+                    }
+                });
+        this.passages.registerMetrics(PassageCache.class, "passages");
+        moduleService.addModuleChangeListener(this);
+    }
+
+    /**
+     * @param key the key identifying the passage
+     * @return a copy of the cached passage, or null if we don't have it
+     */
+    public OsisWrapper get(final PassageCacheKey key) {
+        final OsisWrapper cached = this.passages.get(key);
+        return cached == null ? null : new OsisWrapper(cached);
+    }
+
+    /**
+     * @return the generation to read before rendering a passage, and to pass to
+     * {@link #put(PassageCacheKey, OsisWrapper, long)}
+     */
+    public long getGeneration() {
+        return this.passages.getGeneration();
+    }
+
+    /**
+     * Keeps a passage, unless a module has changed since it started being rendered
+     *
+     * @param key        the key identifying the passage
+     * @param passage    the fully decorated passage
+     * @param generation the {@link #getGeneration()} read before the passage started being rendered
+     */
+    public void put(final PassageCacheKey key, final OsisWrapper passage, final long generation) {
+        this.passages.put(key, new OsisWrapper(passage), generation);
+    }
+
+    @Override
+    public void moduleChanged(final String initials) {
+        LOGGER.debug("Clearing passage cache following change to [{}]: {}", initials, this.passages);
+        this.passages.invalidateAll();
+    }
+
+    /**
+     * @return the number of lookups served from the cache
+     */
+    public long getHitCount() {
+        return this.passages.getHitCount();
+    }
+
+    /**
+     * @return the number of lookups that were not in the cache
+     */
+    public long getMissCount() {
+        return this.passages.getMissCount();
+    }
+
+    /**
+     * @return the number of passages evicted to make room for others
+     */
+    public long getEvictionCount() {
+        return this.passages.getEvictionCount();
+    }
+}
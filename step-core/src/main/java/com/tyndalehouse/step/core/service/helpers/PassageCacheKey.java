@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.helpers;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.tyndalehouse.step.core.models.InterlinearMode;
+import com.tyndalehouse.step.core.models.LookupOption;
+
+/**
+ * Identifies a rendered passage: every input that can change the outcome of a passage lookup is part of the key.
+ *
+ * @author chrisburrell
+ */
+public final class PassageCacheKey {
+    private final List<String> versions;
+    private final String reference;
+    private final Set<LookupOption> options;
+    private final InterlinearMode displayMode;
+    private final Locale locale;
+    private final int hashCode;
+
+    /**
+     * @param versions    the normalised list of versions, master version first
+     * @param reference   the normalised OSIS reference
+     * @param options     the options requested by the user, in any order
+     * @param displayMode the display mode
+     * @param locale      the locale of the user, as it affects the explanations of trimmed options
+     */
+    public PassageCacheKey(final List<String> versions, final String reference,
+                           final Collection<LookupOption> options, final InterlinearMode displayMode,
+                           final Locale locale) {
+        this.versions = versions;
+        this.reference = reference;
+        this.options = options.isEmpty() ? EnumSet.noneOf(LookupOption.class) : EnumSet.copyOf(options);
+        this.displayMode = displayMode;
+        this.locale = locale;
+
+        int hash = versions.hashCode();
+        hash = 31 * hash + reference.hashCode();
+        hash = 31 * hash + this.options.hashCode();
+        hash = 31 * hash + (displayMode == null ? 0 : displayMode.hashCode());
+        hash = 31 * hash + (locale == null ? 0 : locale.hashCode());
+        this.hashCode = hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this) {
+            return true;
+        }
+
+        if (!(obj instanceof PassageCacheKey)) {
+            return false;
+        }
+
+        final PassageCacheKey other = (PassageCacheKey) obj;
+        return this.hashCode == other.hashCode
+                && this.displayMode == other.displayMode
+                && this.reference.equals(other.reference)
+                && this.versions.equals(other.versions)
+                && this.options.equals(other.options)
+                && (this.locale == null ? other.locale == null : this.locale.equals(other.locale));
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s-%s-%s-%s-%s", this.versions, this.reference, this.options, this.displayMode,
+                this.locale);
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.helpers;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.service.impl.IndividualSearch;
+import com.tyndalehouse.step.core.service.impl.SearchQuery;
+import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
+import com.tyndalehouse.step.core.service.jsword.ModuleChangeListener;
+import com.tyndalehouse.step.core.utils.StringUtils;
+import com.tyndalehouse.step.core.utils.cache.BoundedCache;
+
+/**
+ * Holds the outcome of recent searches, so that moving to another page, changing the amount of context or the
+ * display mode only retrieves the passages for the new page rather than running the search again. Searches are
+ * identified by the searches, versions, ranges and filters that the user's tokens resolve to, along with the sort.
+ * <p>
+ * The cache is bounded by the approximate size of the searches it holds, entries expire after a while, and the
+ * whole cache is emptied whenever a module is installed, removed or re-indexed.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class SearchResultCache implements ModuleChangeListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchResultCache.class);
+    private final BoundedCache<String, CachedSearch> searches;
+
+    /**
+     * @param maxBytes      the approximate number of bytes the cached searches may take up
+     * @param expireMillis  the time after which a cached search is run again
+     * @param moduleService the module service, which notifies us of changes to modules
+     */
+    @Inject
+    public SearchResultCache(@Named("app.cache.searches.maxBytes") final long maxBytes,
+                             @Named("app.cache.searches.expireMillis") final long expireMillis,
+                             final JSwordModuleService moduleService) {
+        this.searches = new BoundedCache<String, CachedSearch>(maxBytes, expireMillis,
+                new BoundedCache.Weigher<CachedSearch>() {
+                    @Override
+                    public long weigh(final CachedSearch search) {
+                        return search.getWeight();
+                    }
+                });
+        this.searches.registerMetrics(SearchResultCache.class, "searches");
+        moduleService.addModuleChangeListener(this);
+    }
+
+    /**
+     * The key identifying a search, regardless of the page, context or display mode. Must be called before the
+     * search is run, since running the search rewrites the queries.
+     *
+     * @param sq the search query
+     * @return the key
+     */
+    public static String getKey(final SearchQuery sq) {
+        final StringBuilder key = new StringBuilder(128);
+        key.append(sq.getSortOrder()).append('|').append(sq.isRanked()).append('|').append(sq.isAllKeys());
+        for (final IndividualSearch is : sq.getSearches()) {
+            key.append('|').append(is.getType()).append(':').append(is.getQuery())
+                    .append('@').append(StringUtils.join(is.getVersions()))
+                    .append('[').append(is.getMainRange())
+                    .append(';').append(is.getSecondaryRange())
+                    .append(';').append(is.getSubRange()).append(']');
+            if (is.getOriginalFilter() != null) {
+                key.append('{').append(StringUtils.join(is.getOriginalFilter())).append('}');
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param key the key identifying the search
+     * @return the cached search, or null if we don't have it
+     */
+    public CachedSearch get(final String key) {
+        return this.searches.get(key);
+    }
+
+    /**
+     * @param key    the key identifying the search
+     * @param search the outcome of the search
+     */
+    public void put(final String key, final CachedSearch search) {
+        this.searches.put(key, search);
+    }
+
+    @Override
+    public void moduleChanged(final String initials) {
+        LOGGER.debug("Clearing search cache following change to [{}]: {}", initials, this.searches);
+        this.searches.invalidateAll();
+    }
+
+    /**
+     * Forgets all searches
+     */
+    public void invalidateAll() {
+        this.searches.invalidateAll();
+    }
+
+    /**
+     * @return the number of searches served from the cache
+     */
+    public long getHitCount() {
+        return this.searches.getHitCount();
+    }
+
+    /**
+     * @return the number of searches that were not in the cache
+     */
+    public long getMissCount() {
+        return this.searches.getMissCount();
+    }
+}
@@ -32,12 +32,14 @@
  ******************************************************************************/
 package com.tyndalehouse.step.core.service.impl;
 
+import com.google.inject.ProvisionException;
 import com.tyndalehouse.step.core.data.DirectoryInstaller;
 import com.tyndalehouse.step.core.data.EntityManager;
 import com.tyndalehouse.step.core.data.StepHttpSwordInstaller;
 import com.tyndalehouse.step.core.models.BibleInstaller;
 import com.tyndalehouse.step.core.models.BibleVersion;
 import com.tyndalehouse.step.core.models.BookName;
+import com.tyndalehouse.step.core.models.ClientSession;
 import com.tyndalehouse.step.core.models.EnrichedLookupOption;
 import com.tyndalehouse.step.core.models.InterlinearMode;
 import com.tyndalehouse.step.core.models.KeyWrapper;
@@ -48,13 +50,15 @@ import com.tyndalehouse.step.core.models.search.StrongCountsAndSubjects;
 import com.tyndalehouse.step.core.service.BibleInformationService;
 import com.tyndalehouse.step.core.service.PassageOptionsValidationService;
 import com.tyndalehouse.step.core.service.StrongAugmentationService;
+import com.tyndalehouse.step.core.service.helpers.PassageCache;
+import com.tyndalehouse.step.core.service.helpers.PassageCacheKey;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
 import com.tyndalehouse.step.core.service.jsword.JSwordMetadataService;
 import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
-import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.service.jsword.helpers.JSwordStrongNumberHelper;
+import com.tyndalehouse.step.core.service.jsword.helpers.StrongFrequencyTable;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import com.yammer.metrics.annotation.Timed;
 import org.crosswire.jsword.book.Book;
@@ -62,6 +66,7 @@ import org.crosswire.jsword.book.BookCategory;
 import org.crosswire.jsword.book.install.Installer;
 import org.crosswire.jsword.passage.KeyUtil;
 import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.PassageKeyFactory;
 import org.crosswire.jsword.passage.Verse;
 import org.crosswire.jsword.passage.VerseFactory;
 import org.crosswire.jsword.versification.Versification;
@@ -70,6 +75,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -97,11 +103,13 @@ public class BibleInformationServiceImpl implements BibleInformationService {
     private final JSwordPassageService jswordPassage;
     private final JSwordModuleService jswordModule;
     private final JSwordMetadataService jswordMetadata;
-    private final JSwordSearchService jswordSearch;
+    private final StrongFrequencyTable strongFrequencies;
     private final EntityManager entityManager;
     private final JSwordVersificationService jswordVersification;
     private final VersionResolver resolver;
     private final StrongAugmentationService strongAugmentationService;
+    private final PassageCache passageCache;
+    private final Provider<ClientSession> clientSessionProvider;
 
     /**
      * The bible information service, retrieving content and meta data.
@@ -111,29 +119,35 @@ public class BibleInformationServiceImpl implements BibleInformationService {
      * @param jswordModule              provides information and handles information relating to module installation,
      *                                  etc.
      * @param jswordMetadata            provides metadata on jsword modules
-     * @param jswordSearch
+     * @param strongFrequencies         the number of occurrences of each strong number
      * @param entityManager             the entity manager
      * @param jswordVersification       the jsword versification
      * @param strongAugmentationService to augment strong numbers
+     * @param passageCache              the cache of rendered passages
+     * @param clientSessionProvider     the client session, used to identify the user's locale
      */
     @Inject
     public BibleInformationServiceImpl(@Named("defaultVersions") final List<String> defaultVersions,
                                        final PassageOptionsValidationService optionsValidationService,
                                        final JSwordPassageService jswordPassage, final JSwordModuleService jswordModule,
-                                       final JSwordMetadataService jswordMetadata, final JSwordSearchService jswordSearch,
+                                       final JSwordMetadataService jswordMetadata, final StrongFrequencyTable strongFrequencies,
                                        final EntityManager entityManager, final JSwordVersificationService jswordVersification,
                                        final StrongAugmentationService strongAugmentationService,
-                                       final VersionResolver resolver) {
+                                       final VersionResolver resolver,
+                                       final PassageCache passageCache,
+                                       final Provider<ClientSession> clientSessionProvider) {
         this.optionsValidationService = optionsValidationService;
         this.jswordPassage = jswordPassage;
         this.defaultVersions = defaultVersions;
         this.jswordModule = jswordModule;
         this.jswordMetadata = jswordMetadata;
-        this.jswordSearch = jswordSearch;
+        this.strongFrequencies = strongFrequencies;
         this.entityManager = entityManager;
         this.jswordVersification = jswordVersification;
         this.strongAugmentationService = strongAugmentationService;
         this.resolver = resolver;
+        this.passageCache = passageCache;
+        this.clientSessionProvider = clientSessionProvider;
     }
 
     /**
@@ -193,10 +207,19 @@ public class BibleInformationServiceImpl implements BibleInformationService {
 
         final List<String> extraVersions = getExtraVersionsFromString(interlinearVersion);
         final InterlinearMode desiredModeOfDisplay = this.optionsValidationService.getDisplayMode(interlinearMode, version, extraVersions);
+        final List<LookupOption> inputLookupOptions = this.optionsValidationService.getLookupOptions(options);
+
+        final PassageCacheKey cacheKey = new PassageCacheKey(getNormalisedVersions(version, extraVersions),
+                getNormalisedReference(version, reference), inputLookupOptions, desiredModeOfDisplay,
+                getClientLocale());
+        final long generation = this.passageCache.getGeneration();
+        final OsisWrapper cachedPassage = this.passageCache.get(cacheKey);
+        if (cachedPassage != null) {
+            return cachedPassage;
+        }
 
         OsisWrapper passageText;
         final List<TrimmedLookupOption> removedOptions = new ArrayList<TrimmedLookupOption>(4);
-        final List<LookupOption> inputLookupOptions = this.optionsValidationService.getLookupOptions(options);
         final InterlinearMode realModeOfDisplay = this.optionsValidationService.determineDisplayMode(inputLookupOptions, desiredModeOfDisplay, true);
         final Set<LookupOption> lookupOptions = this.optionsValidationService.trim(inputLookupOptions, version, extraVersions,
                 desiredModeOfDisplay, realModeOfDisplay, removedOptions);
@@ -219,9 +242,56 @@ public class BibleInformationServiceImpl implements BibleInformationService {
 
         //the passage lookup wasn't made with the removed options, however, the client needs to think these were selected.
         passageText.setSelectedOptions(this.optionsValidationService.optionsToString(lookupOptions) + getRemovedOptions(removedOptions));
+        this.passageCache.put(cacheKey, passageText, generation);
         return passageText;
     }
 
+    /**
+     * @return the locale of the user making the request, or English when called outside of a request, for example
+     * when warming up or from the tools
+     */
+    private Locale getClientLocale() {
+        try {
+            return this.clientSessionProvider.get().getLocale();
+        } catch (final ProvisionException ex) {
+            LOGGER.debug("No client session, so caching passage under the default locale");
+            LOGGER.trace("Unable to provision", ex);
+            return Locale.ENGLISH;
+        }
+    }
+
+    /**
+     * @param version       the master version
+     * @param extraVersions any other versions
+     * @return the list of long version names, in upper case, master version first
+     */
+    private List<String> getNormalisedVersions(final String version, final List<String> extraVersions) {
+        final List<String> versions = new ArrayList<String>(extraVersions.size() + 1);
+        versions.add(this.resolver.getLongName(version.trim()).toUpperCase());
+        for (final String extra : extraVersions) {
+            if (isNotBlank(extra)) {
+                versions.add(this.resolver.getLongName(extra.trim()).toUpperCase());
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * @param version   the version against which the reference is parsed
+     * @param reference the reference as entered by the user
+     * @return the OSIS reference, or the reference as is if it cannot be parsed, so that the lookup can report the
+     * error
+     */
+    private String getNormalisedReference(final String version, final String reference) {
+        try {
+            return PassageKeyFactory.instance().getKey(
+                    this.jswordVersification.getVersificationForVersion(version), reference).getOsisRef();
+        } catch (final NoSuchKeyException e) {
+            LOGGER.trace("Unable to normalise reference", e);
+            return reference.trim();
+        }
+    }
+
     /**
      * Gets the removed option lookup options and returns their representation.
      *
@@ -267,7 +337,7 @@ public class BibleInformationServiceImpl implements BibleInformationService {
         }
 
         final StrongCountsAndSubjects verseStrongs = new JSwordStrongNumberHelper(this.entityManager,
-                key, this.jswordVersification, this.jswordSearch, this.strongAugmentationService).getVerseStrongs();
+                key, this.jswordVersification, this.strongFrequencies, this.strongAugmentationService).getVerseStrongs();
         verseStrongs.setVerse(key.getName());
         verseStrongs.setMultipleVerses(true);
         return verseStrongs;
@@ -486,16 +556,17 @@ public class BibleInformationServiceImpl implements BibleInformationService {
     }
 
     /**
-     * Index all.
+     * Index all, queuing every module before waiting for them, so that several are indexed at once.
      */
     @Override
     public void indexAll() {
         final List<Book> installedModules = this.jswordModule.getInstalledModules(BookCategory.BIBLE);
-        for (final Book b : installedModules) {
-            final String initials = b.getInitials();
-            LOGGER.error("Indexing [{}]", initials);
-            this.jswordModule.index(b.getInitials());
-            this.jswordModule.waitForIndexes(initials);
+        final String[] initials = new String[installedModules.size()];
+        for (int ii = 0; ii < initials.length; ii++) {
+            initials[ii] = installedModules.get(ii).getInitials();
+            LOGGER.info("Indexing [{}]", initials[ii]);
+            this.jswordModule.index(initials[ii]);
         }
+        this.jswordModule.waitForIndexes(initials);
     }
 }
@@ -35,7 +35,6 @@ package com.tyndalehouse.step.core.service.impl;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import org.apache.lucene.queryParser.QueryParser.Operator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -74,7 +73,7 @@ public class GeographyServiceImpl implements GeographyService {
     public EntityDoc[] getPlaces(final String reference) {
         LOG.debug("Returning places for reference [{}]", reference);
 
-        final String allReferences = this.jsword.getAllReferences(reference, OPEN_BIBLE_VERSION);
-        return this.openBiblePlaces.searchSingleColumn("references", allReferences, Operator.OR, false);
+        return this.openBiblePlaces.searchOverlappingRanges("referenceRanges",
+                this.jsword.getOrdinalRanges(reference, OPEN_BIBLE_VERSION));
     }
 }
@@ -40,13 +40,9 @@ import java.util.List;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import com.tyndalehouse.step.core.data.EntityDoc;
-import com.tyndalehouse.step.core.data.EntityIndexReader;
-import com.tyndalehouse.step.core.data.EntityManager;
 import com.tyndalehouse.step.core.service.MorphologyService;
+import com.tyndalehouse.step.core.service.helpers.MorphologyTable;
 
 /**
  * Provides quick access to the morphology from a code found in the xsl transformation
@@ -57,18 +53,17 @@ import com.tyndalehouse.step.core.service.MorphologyService;
 @Singleton
 public class MorphologyServiceImpl implements MorphologyService {
     private static final String SPACE_SEPARATOR = " ";
-    private static final Logger LOGGER = LoggerFactory.getLogger(MorphologyServiceImpl.class);
     private static final String ROBINSON_PREFIX = "robinson:";
     private static final int ROBINSON_PREFIX_LENGTH = ROBINSON_PREFIX.length();
     private static final String NON_BREAKING_SPACE = "&nbsp;";
-    private final EntityIndexReader morphology;
+    private final MorphologyTable morphologies;
 
     /**
-     * @param manager the entity manager
+     * @param morphologies the morphology codes
      */
     @Inject
-    public MorphologyServiceImpl(final EntityManager manager) {
-        this.morphology = manager.getReader("morphology");
+    public MorphologyServiceImpl(final MorphologyTable morphologies) {
+        this.morphologies = morphologies;
     }
 
     @Override
@@ -77,7 +72,6 @@ public class MorphologyServiceImpl implements MorphologyService {
         final String[] codes = split(code, SPACE_SEPARATOR);
         final List<EntityDoc> morphs = new ArrayList<EntityDoc>(codes.length);
         for (final String c : codes) {
-            // check cache for key, otherwise obtain from database
             final EntityDoc item = retrieveMorphologyByLongName(c);
 
             if (item != null) {
@@ -94,19 +88,15 @@ public class MorphologyServiceImpl implements MorphologyService {
     }
 
     /**
-     * Cache-based method, retrieves morphology information
+     * Retrieves morphology information from the in-memory table
      * 
      * @param code long code including scheme (e.g. robinson:) to the morphology item
      * @return the morphology of interest
      */
-    @SuppressWarnings("PMD")
     private EntityDoc retrieveMorphologyByLongName(final String code) {
         final String key = code.startsWith(ROBINSON_PREFIX) ? code.substring(ROBINSON_PREFIX_LENGTH) : code;
-
-        final long currentTimeNanos = System.nanoTime();
-        final EntityDoc[] entry = this.morphology.searchExactTermBySingleField("code", 1, key);
-        LOGGER.debug("Took [{}] nano-seconds", System.nanoTime() - currentTimeNanos);
-        return entry.length > 0 ? entry[0] : null;
+        final MorphologyTable.Morphology morphology = this.morphologies.get(key);
+        return morphology != null ? morphology.getDoc() : null;
     }
 
     /**
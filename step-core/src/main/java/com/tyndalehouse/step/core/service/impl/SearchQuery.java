@@ -35,6 +35,7 @@ package com.tyndalehouse.step.core.service.impl;
 import com.tyndalehouse.step.core.data.EntityDoc;
 import com.tyndalehouse.step.core.service.search.impl.SearchServiceImpl;
 import com.tyndalehouse.step.core.utils.StringUtils;
+import org.crosswire.jsword.passage.Key;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -60,6 +61,8 @@ public class SearchQuery {
     private List<EntityDoc> definitions;
     private String interlinearMode;
     private String augmentedRange;
+    private boolean partial;
+    private Key unpagedResults;
 
     /**
      * @param searchQuery the query to be run
@@ -329,4 +332,32 @@ public class SearchQuery {
     public void setAugmentedRange(String augmentedRange) {
         this.augmentedRange = augmentedRange;
     }
+
+    /**
+     * @return true if any of the searches ran out of time before all versions had been searched
+     */
+    public boolean isPartial() {
+        return this.partial;
+    }
+
+    /**
+     * @param partial true to indicate that some versions were not searched in time
+     */
+    public void setPartial(final boolean partial) {
+        this.partial = partial;
+    }
+
+    /**
+     * @return all the verses matched by the search, before they were cut down to the requested page
+     */
+    public Key getUnpagedResults() {
+        return this.unpagedResults;
+    }
+
+    /**
+     * @param unpagedResults all the verses matched by the search, before they were cut down to the requested page
+     */
+    public void setUnpagedResults(final Key unpagedResults) {
+        this.unpagedResults = unpagedResults;
+    }
 }
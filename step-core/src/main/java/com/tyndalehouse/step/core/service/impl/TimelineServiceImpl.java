@@ -39,6 +39,7 @@ import static org.apache.lucene.search.NumericRangeQuery.newLongRange;
 
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -54,6 +55,7 @@ import org.slf4j.LoggerFactory;
 import com.tyndalehouse.step.core.data.EntityDoc;
 import com.tyndalehouse.step.core.data.EntityIndexReader;
 import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.data.common.OrdinalRange;
 import com.tyndalehouse.step.core.data.entities.aggregations.TimelineEventsAndDate;
 import com.tyndalehouse.step.core.models.EnhancedTimelineEvent;
 import com.tyndalehouse.step.core.models.OsisWrapper;
@@ -157,15 +159,11 @@ public class TimelineServiceImpl implements TimelineService {
     @Override
     public EntityDoc[] lookupEventsMatchingReference(final String reference) {
         // first get the kjv reference
-        final String allReferences = this.jsword.getAllReferences(reference, "ESV_th");
-
-        if (isBlank(allReferences)) {
-            return new EntityDoc[0];
-        }
+        final List<OrdinalRange> ranges = this.jsword.getOrdinalRanges(reference, "ESV_th");
 
         // let's assume for now we look up all references
-        LOGGER.debug("Finding events for [{}]", allReferences);
-        return this.timelineEvents.searchSingleColumn("references", allReferences);
+        LOGGER.debug("Finding events for [{}]", ranges);
+        return this.timelineEvents.searchOverlappingRanges("referenceRanges", ranges);
     }
 
     @Override
@@ -32,6 +32,7 @@
  ******************************************************************************/
 package com.tyndalehouse.step.core.service.impl;
 
+import com.tyndalehouse.step.core.data.EntityChangeListener;
 import com.tyndalehouse.step.core.data.EntityDoc;
 import com.tyndalehouse.step.core.data.EntityIndexReader;
 import com.tyndalehouse.step.core.data.EntityManager;
@@ -44,17 +45,22 @@ import com.tyndalehouse.step.core.service.helpers.OriginalWordUtils;
 import com.tyndalehouse.step.core.utils.SortingUtils;
 import com.tyndalehouse.step.core.utils.StringConversionUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
-import org.codehaus.jackson.map.util.LRUMap;
+import com.tyndalehouse.step.core.utils.cache.BoundedCache;
+import com.tyndalehouse.step.core.utils.cache.ComputeOnceMap;
+import com.tyndalehouse.step.core.utils.cache.LoadingCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -68,15 +74,22 @@ import static com.tyndalehouse.step.core.utils.ValidateUtils.notBlank;
  * @author chrisburrell
  */
 @Singleton
-public class VocabularyServiceImpl implements VocabularyService {
+public class VocabularyServiceImpl implements VocabularyService, EntityChangeListener {
     private static final String MULTI_WORD_SEPARATOR = " | ";
     private static final Logger LOGGER = LoggerFactory.getLogger(VocabularyServiceImpl.class);
     private static final String STRONG_SEPARATORS = "[ ,]+";
     private static final String HIGHER_STRONG = "STRONG:";
     private static final String LOWER_STRONG = "strong:";
     private static final int START_STRONG_KEY = HIGHER_STRONG.length();
-    private static final LRUMap<String, EntityDoc[]> DEFINITIION_CACHE = new LRUMap<>(128, 256);
+    private static final EntityDoc[] NO_DEFINITION = new EntityDoc[0];
+    private static final BoundedCache.Weigher<EntityDoc[]> ONE_PER_STRONG = new BoundedCache.Weigher<EntityDoc[]>() {
+        @Override
+        public long weigh(final EntityDoc[] value) {
+            return 1;
+        }
+    };
     private final EntityIndexReader definitions;
+    private final LoadingCache<String, EntityDoc[]> definitionsByStrong;
 
     // define a few extraction methods
     private final LexiconDataProvider transliterationProvider = new LexiconDataProvider() {
@@ -100,13 +113,27 @@ public class VocabularyServiceImpl implements VocabularyService {
     private final StrongAugmentationService strongAugmentationService;
 
     /**
-     * @param manager the entity manager
+     * @param manager                   the entity manager
+     * @param strongAugmentationService the service augmenting strong numbers based on the reference
+     * @param maxCachedDefinitions      the maximum number of strong numbers for which definitions are cached
      */
     @Inject
     public VocabularyServiceImpl(final EntityManager manager,
-                                 final StrongAugmentationService strongAugmentationService) {
+                                 final StrongAugmentationService strongAugmentationService,
+                                 @Named("app.cache.definitions.maxEntries") final long maxCachedDefinitions) {
         this.strongAugmentationService = strongAugmentationService;
         this.definitions = manager.getReader("definition");
+        this.definitionsByStrong = new LoadingCache<String, EntityDoc[]>(maxCachedDefinitions, ONE_PER_STRONG,
+                new ComputeOnceMap.Loader<String, EntityDoc[]>() {
+                    @Override
+                    public EntityDoc[] load(final String strongNumber) {
+                        final EntityDoc[] docs = VocabularyServiceImpl.this.definitions
+                                .searchUniqueBySingleField("strongNumber", strongNumber);
+                        return docs.length == 0 ? NO_DEFINITION : docs;
+                    }
+                });
+        this.definitionsByStrong.registerMetrics(VocabularyServiceImpl.class, "definitions");
+        manager.addEntityChangeListener(this);
     }
 
     /**
@@ -149,10 +176,7 @@ public class VocabularyServiceImpl implements VocabularyService {
         final String[] strongList = this.strongAugmentationService.augment(version, reference, getKeys(vocabIdentifiers)).getStrongList();
 
         if (strongList.length != 0) {
-            final EntityDoc[] strongDefs = this.definitions.searchUniqueBySingleField("strongNumber",
-                    strongList);
-
-            final EntityDoc[] definitions = reOrder(strongList, strongDefs);
+            final EntityDoc[] definitions = getCachedDefinitions(strongList);
             final Map<String, List<LexiconSuggestion>> relatedWords = readRelatedWords(definitions);
             return new VocabResponse(definitions, relatedWords);
         }
@@ -225,39 +249,13 @@ public class VocabularyServiceImpl implements VocabularyService {
         return results;
     }
 
-    /**
-     * Re-orders based on the input.
-     *
-     * @param strongList the order list of stongs
-     * @param strongDefs the definitions that have been found
-     * @return the entity doc[]
-     */
-    private EntityDoc[] reOrder(final String[] strongList, final EntityDoc[] strongDefs) {
-        final Map<String, EntityDoc> entitiesByStrong = new HashMap<>(strongList.length * 2);
-        for (final EntityDoc def : strongDefs) {
-            entitiesByStrong.put(def.get("strongNumber"), def);
-        }
-
-        final EntityDoc[] results = new EntityDoc[strongDefs.length];
-        int current = 0;
-        for (final String strong : strongList) {
-            final EntityDoc entityDoc = entitiesByStrong.get(strong);
-            if (entityDoc != null) {
-                results[current++] = entityDoc;
-            }
-        }
-
-        return results;
-    }
-
     @Override
     public VocabResponse getQuickDefinitions(final String version, final String reference, final String vocabIdentifiers) {
         notBlank(vocabIdentifiers, "Vocab identifiers was null", UserExceptionType.SERVICE_VALIDATION_ERROR);
         final String[] strongList = this.strongAugmentationService.augment(version, reference, getKeys(vocabIdentifiers)).getStrongList();
 
         if (strongList.length != 0) {
-            EntityDoc[] strongNumbers = this.definitions.searchUniqueBySingleField("strongNumber", strongList);
-            return new VocabResponse(strongNumbers);
+            return new VocabResponse(getCachedDefinitions(strongList));
         }
         return new VocabResponse();
     }
@@ -320,34 +318,43 @@ public class VocabularyServiceImpl implements VocabularyService {
     }
 
     @Override
-    public synchronized EntityDoc[] getLexiconDefinitions(final String vocabIdentifiers, final String version, final String reference) {
+    public EntityDoc[] getLexiconDefinitions(final String vocabIdentifiers, final String version, final String reference) {
         final String[] keys = this.strongAugmentationService.augment(version, reference, getKeys(vocabIdentifiers)).getStrongList();
         if (keys.length == 0) {
-            return new EntityDoc[0];
-        }
-
-        final String cacheKey = getCacheKey(version, reference, vocabIdentifiers);
-
-        final EntityDoc[] entityDocs = DEFINITIION_CACHE.get(cacheKey);
-        if (entityDocs != null) {
-            return entityDocs;
+            return NO_DEFINITION;
         }
-
-        final EntityDoc[] strongNumbers = this.definitions.searchUniqueBySingleField("strongNumber", keys);
-        DEFINITIION_CACHE.put(cacheKey, strongNumbers);
-        return strongNumbers;
+        return getCachedDefinitions(keys);
     }
 
     /**
-     * Simple cache key that concatenates all the variables passed in
+     * Assembles the definitions of several strong numbers from the cache, each strong number being looked up in the
+     * index only the first time it is seen.
      *
-     * @param version          the version
-     * @param reference        the reference
-     * @param vocabIdentifiers the vocabulary identifiers
-     * @return the cache key
+     * @param strongNumbers the augmented strong numbers
+     * @return the definitions that exist, in the order of the strong numbers, without duplicates
      */
-    private String getCacheKey(final String version, final String reference, final String vocabIdentifiers) {
-        return new StringBuilder(32).append(version).append('-').append(reference).append('-').append(vocabIdentifiers).toString();
+    private EntityDoc[] getCachedDefinitions(final String[] strongNumbers) {
+        if (strongNumbers.length == 1) {
+            return this.definitionsByStrong.get(strongNumbers[0]);
+        }
+
+        final List<EntityDoc> docs = new ArrayList<>(strongNumbers.length);
+        final Set<String> seen = new HashSet<>(strongNumbers.length * 2);
+        for (final String strongNumber : strongNumbers) {
+            if (seen.add(strongNumber)) {
+                for (final EntityDoc doc : this.definitionsByStrong.get(strongNumber)) {
+                    docs.add(doc);
+                }
+            }
+        }
+        return docs.toArray(new EntityDoc[docs.size()]);
+    }
+
+    @Override
+    public void entityChanged(final String entity) {
+        if ("definition".equals(entity)) {
+            this.definitionsByStrong.invalidateAll();
+        }
     }
 
     /**
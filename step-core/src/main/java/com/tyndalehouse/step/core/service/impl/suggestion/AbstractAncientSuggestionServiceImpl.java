@@ -2,77 +2,96 @@ package com.tyndalehouse.step.core.service.impl.suggestion;
 
 import com.tyndalehouse.step.core.data.EntityDoc;
 import com.tyndalehouse.step.core.data.EntityIndexReader;
-import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.data.common.TermsAndMaxCount;
 import com.tyndalehouse.step.core.models.LexiconSuggestion;
 import com.tyndalehouse.step.core.models.search.PopularSuggestion;
 import com.tyndalehouse.step.core.service.SingleTypeSuggestionService;
+import com.tyndalehouse.step.core.service.helpers.AncientSuggestionIndex;
+import com.tyndalehouse.step.core.service.helpers.OriginalWordUtils;
 import com.tyndalehouse.step.core.service.helpers.SuggestionContext;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.Filter;
-import org.apache.lucene.search.PrefixQuery;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.Sort;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopFieldCollector;
-
-import javax.swing.text.Highlighter;
-import java.io.IOException;
+
 import java.util.ArrayList;
-import java.util.Formatter;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static com.tyndalehouse.step.core.service.helpers.OriginalWordUtils.convertToSuggestion;
 
 /**
+ * Suggests definitions from the in-memory tries of the {@link AncientSuggestionIndex}, rather than running prefix
+ * queries against the definition index.
+ *
  * @author chrisburrell
  */
-public abstract class AbstractAncientSuggestionServiceImpl implements SingleTypeSuggestionService<EntityDoc, TopFieldCollector> {
+public abstract class AbstractAncientSuggestionServiceImpl implements SingleTypeSuggestionService<EntityDoc, AbstractAncientSuggestionServiceImpl.MatchCount> {
+    private static final EntityDoc[] NO_DOCS = new EntityDoc[0];
     private final EntityIndexReader reader;
-    private final Sort popularSort;
-    private final Sort sort;
-    private final Filter filter;
+    private final AncientSuggestionIndex index;
+    private final boolean greek;
+
+    /**
+     * Holds the total number of matches, and the order in which they are wanted
+     */
+    public static final class MatchCount extends TermsAndMaxCount<EntityDoc> {
+        private final boolean popularSort;
+
+        /**
+         * @param popularSort true to sort the matches by popularity
+         */
+        MatchCount(final boolean popularSort) {
+            this.popularSort = popularSort;
+        }
 
+        /**
+         * @return true to sort the matches by popularity
+         */
+        boolean isPopularSort() {
+            return this.popularSort;
+        }
+    }
 
-    protected AbstractAncientSuggestionServiceImpl(EntityIndexReader reader, final Filter filter, final Sort sort, final Sort popularSort) {
+    protected AbstractAncientSuggestionServiceImpl(final EntityIndexReader reader, final AncientSuggestionIndex index,
+                                                   final boolean greek) {
         this.reader = reader;
-        this.filter = filter;
-        this.sort = sort;
-        this.popularSort = popularSort;
+        this.index = index;
+        this.greek = greek;
     }
 
     @Override
     public EntityDoc[] getExactTerms(SuggestionContext context, final int max, final boolean popularSort) {
-        return context.getInput().indexOf(' ') != -1 ? new EntityDoc[0] : getTerms(context.getInput(), max, true, popularSort);
+        final String form = context.getInput();
+        if (form.indexOf(' ') != -1) {
+            return NO_DOCS;
+        }
+        return getLookup(form).getExactMatches(getKeys(form), max, popularSort);
     }
 
     @Override
-    public EntityDoc[] collectNonExactMatches(final TopFieldCollector collector, final SuggestionContext context, final EntityDoc[] alreadyRetrieved,
+    public EntityDoc[] collectNonExactMatches(final MatchCount collector, final SuggestionContext context, final EntityDoc[] alreadyRetrieved,
                                               final int leftToCollect) {
-        if(context.getInput().indexOf(' ') != -1) {
-            return new EntityDoc[0];
+        final String form = context.getInput();
+        if (form.indexOf(' ') != -1) {
+            return NO_DOCS;
         }
 
-
-        final BooleanQuery query = this.getQuery(context.getInput(), false);
-
+        //make sure we don't retrieve docs that have already been retrieved
+        final Set<String> excluded = new HashSet<String>();
         if (alreadyRetrieved != null) {
             for (EntityDoc doc : alreadyRetrieved) {
-                //make sure we don't retrieve docs that have already been retrieved
-                query.add(new TermQuery(new Term("strongNumber", doc.get("strongNumber"))), BooleanClause.Occur.MUST_NOT);
+                excluded.add(doc.get(OriginalWordUtils.STRONG_NUMBER_FIELD));
             }
         }
 
-        final EntityDoc[] search = this.reader.search(query, this.filter, collector);
-        
+        final EntityDoc[] search = getLookup(form).getPrefixMatches(getKeys(form), excluded,
+                leftToCollect > 0 ? leftToCollect : 1, collector.isPopularSort(), collector);
+
         //we're interested in the results if we wanted more, or if we're retrieving a single result (cos we don't want to display grouping)
-        if (leftToCollect > 0 || collector.getTotalHits() == 1) {
+        if (leftToCollect > 0 || collector.getTotalCount() == 1) {
             return search;
         }
 
         //not really interested, just interested in the count
-        return new EntityDoc[0];
+        return NO_DOCS;
     }
 
     @Override
@@ -84,16 +103,6 @@ public abstract class AbstractAncientSuggestionServiceImpl implements SingleType
         return suggestions;
     }
 
-    private EntityDoc[] getTerms(final String form, final int max, boolean exact, final boolean popularSort) {
-
-        final BooleanQuery masterQuery = getQuery(form, exact);
-        return this.reader.search(masterQuery, max, getSort(popularSort), this.filter);
-    }
-
-    protected Query getExactOrPrefixQuery(final boolean exact, final Term stepGlossTerm) {
-        return exact ? new TermQuery(stepGlossTerm) : new PrefixQuery(stepGlossTerm);
-    }
-
     /**
      * Takes EntityDocs representing Definition entities and converts them to a suggestion
      *
@@ -110,25 +119,50 @@ public abstract class AbstractAncientSuggestionServiceImpl implements SingleType
         return suggestions;
     }
 
-    protected abstract BooleanQuery getQuery(String form, boolean exact);
+    /**
+     * @param form the user's input
+     * @return the lookup to match the input against
+     */
+    private AncientSuggestionIndex.Lookup getLookup(final String form) {
+        return this.index.get(this.greek, getKind(form));
+    }
+
+    /**
+     * @param form the user's input
+     * @return the kind of terms the input should be matched against
+     */
+    protected abstract AncientSuggestionIndex.Kind getKind(String form);
 
-    protected Sort getSort(boolean popular) {
-        return popular ? this.popularSort : this.sort;
+    /**
+     * @param form the user's input
+     * @return the forms of the input to look up, as they would have been indexed
+     */
+    protected abstract List<String> getKeys(String form);
+
+    /**
+     * Analyzes the input as it would be for a given field, gathering the tokens without duplicates
+     *
+     * @param fieldName the field
+     * @param form      the input
+     * @param keys      the keys found so far
+     */
+    protected void addKeys(final String fieldName, final String form, final List<String> keys) {
+        for (final String token : this.reader.getAnalyzedTokens(fieldName, form, false)) {
+            if (!keys.contains(token)) {
+                keys.add(token);
+            }
+        }
     }
 
     @Override
-    public TopFieldCollector getNewCollector(final int leftToCollect, final boolean popularSort) {
-        try {
-            return TopFieldCollector.create(getSort(popularSort), leftToCollect > 0 ? leftToCollect : 1, false, false, false, false);
-        } catch (IOException ex) {
-            throw new StepInternalException(ex.getMessage(), ex);
-        }
+    public MatchCount getNewCollector(final int leftToCollect, final boolean popularSort) {
+        return new MatchCount(popularSort);
     }
 
     /**
-     * @return the reader associated with this suggestion service
+     * @return true if suggesting greek definitions
      */
-    protected EntityIndexReader getReader() {
-        return this.reader;
+    protected boolean isGreek() {
+        return this.greek;
     }
 }
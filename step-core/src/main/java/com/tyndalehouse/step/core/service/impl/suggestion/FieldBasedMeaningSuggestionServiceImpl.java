@@ -1,40 +1,33 @@
 package com.tyndalehouse.step.core.service.impl.suggestion;
 
 import com.tyndalehouse.step.core.data.EntityIndexReader;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.Filter;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.Sort;
+import com.tyndalehouse.step.core.service.helpers.AncientSuggestionIndex;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * @author chrisburrell
  */
 public abstract class FieldBasedMeaningSuggestionServiceImpl extends AbstractAncientSuggestionServiceImpl {
-    public FieldBasedMeaningSuggestionServiceImpl(final EntityIndexReader reader, final Filter filter,
-                                                  final Sort sort, final Sort popularSort) {
-        super(reader, filter, sort, popularSort);
+    public FieldBasedMeaningSuggestionServiceImpl(final EntityIndexReader reader, final AncientSuggestionIndex index,
+                                                  final boolean greek) {
+        super(reader, index, greek);
     }
 
     @Override
-    protected BooleanQuery getQuery(final String input, final boolean exact) {
-
+    protected AncientSuggestionIndex.Kind getKind(final String form) {
+        return AncientSuggestionIndex.Kind.MEANINGS;
+    }
 
-        final BooleanQuery masterQuery = new BooleanQuery();
+    @Override
+    protected List<String> getKeys(final String input) {
         final String[] fields = getFields();
+        final List<String> keys = new ArrayList<String>(fields.length);
         for (int jj = 0; jj < fields.length; jj++) {
-            final List<String> tokenItems = this.getReader().getAnalyzedTokens(fields[jj], input, true);
-            for (int ii = 0; ii < tokenItems.size(); ii++) {
-                final Term term = new Term(fields[jj], tokenItems.get(ii));
-                final Query clause = getExactOrPrefixQuery(exact, term);
-                masterQuery.add(new BooleanClause(clause, BooleanClause.Occur.SHOULD));
-
-            }
+            addKeys(fields[jj], input, keys);
         }
-        return masterQuery;
+        return keys;
     }
 
     public abstract String[] getFields();
@@ -1,6 +1,7 @@
 package com.tyndalehouse.step.core.service.impl.suggestion;
 
 import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.service.helpers.AncientSuggestionIndex;
 
 import javax.inject.Inject;
 
@@ -9,7 +10,7 @@ import javax.inject.Inject;
  */
 public class GreekAncientLanguageServiceImpl extends AncientLanguageSuggestionServiceImpl {
     @Inject
-    public GreekAncientLanguageServiceImpl(final EntityManager entityManager) {
-        super(true, entityManager);
+    public GreekAncientLanguageServiceImpl(final EntityManager entityManager, final AncientSuggestionIndex index) {
+        super(true, entityManager, index);
     }
 }
@@ -1,6 +1,7 @@
 package com.tyndalehouse.step.core.service.impl.suggestion;
 
 import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.service.helpers.AncientSuggestionIndex;
 
 import javax.inject.Inject;
 
@@ -11,7 +12,7 @@ import javax.inject.Inject;
  */
 public class GreekAncientMeaningServiceImpl extends AncientMeaningSuggestionServiceImpl {
     @Inject
-    public GreekAncientMeaningServiceImpl(final EntityManager entityManager) {
-        super(true, entityManager);
+    public GreekAncientMeaningServiceImpl(final EntityManager entityManager, final AncientSuggestionIndex index) {
+        super(true, entityManager, index);
     }
 }
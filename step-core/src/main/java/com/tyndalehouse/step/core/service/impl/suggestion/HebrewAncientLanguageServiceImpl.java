@@ -1,6 +1,7 @@
 package com.tyndalehouse.step.core.service.impl.suggestion;
 
 import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.service.helpers.AncientSuggestionIndex;
 
 import javax.inject.Inject;
 
@@ -9,7 +10,7 @@ import javax.inject.Inject;
  */
 public class HebrewAncientLanguageServiceImpl extends AncientLanguageSuggestionServiceImpl {
     @Inject
-    public HebrewAncientLanguageServiceImpl(final EntityManager entityManager) {
-        super(false, entityManager);
+    public HebrewAncientLanguageServiceImpl(final EntityManager entityManager, final AncientSuggestionIndex index) {
+        super(false, entityManager, index);
     }
 }
@@ -1,6 +1,7 @@
 package com.tyndalehouse.step.core.service.impl.suggestion;
 
 import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.service.helpers.AncientSuggestionIndex;
 
 import javax.inject.Inject;
 
@@ -11,7 +12,7 @@ import javax.inject.Inject;
  */
 public class HebrewAncientMeaningServiceImpl extends AncientMeaningSuggestionServiceImpl {
     @Inject
-    public HebrewAncientMeaningServiceImpl(final EntityManager entityManager) {
-        super(false, entityManager);
+    public HebrewAncientMeaningServiceImpl(final EntityManager entityManager, final AncientSuggestionIndex index) {
+        super(false, entityManager, index);
     }
 }
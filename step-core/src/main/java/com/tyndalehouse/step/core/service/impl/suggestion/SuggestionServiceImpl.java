@@ -15,14 +15,40 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Suggestion service, helping the auto suggestion search dropdown.
+ * <p/>
+ * The providers are queried concurrently, each for as many results as it could ever show. The slots are then shared
+ * out between the providers in order, as if they had been queried one after the other. A provider that does not
+ * return in time, or cannot be queried because the pool is busy, shows as having more results available, rather than
+ * holding up the others.
+ * <p/>
+ * The reference provider is queried on the request thread, while the others run, since JSword works out the
+ * language of the book names from the request, which the pool threads cannot see. It is not bound by the deadline,
+ * as it cannot be abandoned part way through, but it only parses the input against the book names held in memory,
+ * without reading any index. The time it takes counts towards the deadline of the other providers.
  *
  * @author chrisburrell
  */
@@ -33,9 +59,34 @@ public class SuggestionServiceImpl implements SuggestionService {
     private static final int MAX_RESULTS = 3;
     //determines how many values are shown on expanding line 'see 7 more, e.g. abc def'
     private static final int PREVIEW_GROUP = 2;
+    private static final int QUEUED_QUERIES_PER_THREAD = 16;
     private final Map<String, SingleTypeSuggestionService> queryProviders = new LinkedHashMap<String, SingleTypeSuggestionService>();
     private final Map<String, String[]> dependencies = new HashMap<String, String[]>(8);
     private final Map<String, Integer> extraSlots = new HashMap<String, Integer>(4);
+    private final Set<String> requestThreadProviders = new HashSet<String>(2);
+    private final ExecutorService suggestionExecutor;
+    private final long timeoutMillis;
+
+    /**
+     * The results of a single provider, before the slots have been shared out
+     */
+    private static final class ProviderResult {
+        private final List<? extends PopularSuggestion> suggestions;
+        private final Object collector;
+        private final int extraDocs;
+
+        /**
+         * @param suggestions the suggestions, exact matches first
+         * @param collector   the collector holding the total number of hits
+         * @param extraDocs   the number of non-exact matches that were collected
+         */
+        private ProviderResult(final List<? extends PopularSuggestion> suggestions, final Object collector,
+                               final int extraDocs) {
+            this.suggestions = suggestions;
+            this.collector = collector;
+            this.extraDocs = extraDocs;
+        }
+    }
 
     @Inject
     public SuggestionServiceImpl(final HebrewAncientMeaningServiceImpl hebrewAncientMeaningService,
@@ -45,8 +96,12 @@ public class SuggestionServiceImpl implements SuggestionService {
                                  final MeaningSuggestionServiceImpl meaningSuggestionService,
                                  final SubjectSuggestionServiceImpl subjectSuggestionService,
                                  final ReferenceSuggestionServiceImpl referenceSuggestionService,
-                                 final TextSuggestionServiceImpl textSuggestionService
+                                 final TextSuggestionServiceImpl textSuggestionService,
+                                 @Named("app.suggestions.threads") final int threads,
+                                 @Named("app.suggestions.timeoutMillis") final long timeoutMillis
     ) {
+        this.suggestionExecutor = createSuggestionExecutor(Math.max(1, threads));
+        this.timeoutMillis = timeoutMillis;
         queryProviders.put(SearchToken.REFERENCE, referenceSuggestionService);
         queryProviders.put(SearchToken.GREEK_MEANINGS, greekAncientMeaningService);
         queryProviders.put(SearchToken.HEBREW_MEANINGS, hebrewAncientMeaningService);
@@ -56,6 +111,9 @@ public class SuggestionServiceImpl implements SuggestionService {
         queryProviders.put(SearchToken.SUBJECT_SEARCH, subjectSuggestionService);
         queryProviders.put(SearchToken.TEXT_SEARCH, textSuggestionService);
 
+        //book names are parsed and displayed in the user's language, which is only known to the request thread
+        requestThreadProviders.add(SearchToken.REFERENCE);
+
         //the following lines mean we won't pull extra words for all data sources.
         //e.g. if we have 2 greek meanings, we will only pull 1 one more hebrew meaning 
         //this is not a full map, as processing is dependent on the order set out above
@@ -74,36 +132,105 @@ public class SuggestionServiceImpl implements SuggestionService {
         extraSlots.put(SearchToken.HEBREW, 1);
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Creates the pool that queries the providers. Its threads are daemons, so that they never hold up the shutdown
+     * of the application. Queries are rejected if the queue is full, rather than run on the request thread without
+     * a deadline.
+     *
+     * @param threads the maximum number of threads
+     * @return the executor
+     */
+    private static ExecutorService createSuggestionExecutor(final int threads) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(threads * QUEUED_QUERIES_PER_THREAD), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "step-suggest-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public void close() {
+        this.suggestionExecutor.shutdownNow();
+    }
+
     @Override
     public SuggestionsSummary getTopSuggestions(final SuggestionContext context) {
         final SuggestionsSummary summary = new SuggestionsSummary();
         final Map<String, SingleSuggestionsSummary> results = new LinkedHashMap<String, SingleSuggestionsSummary>();
 
-        //go through each search type
-        for (Map.Entry<String, SingleTypeSuggestionService> query : queryProviders.entrySet()) {
-            final SingleTypeSuggestionService searchService = query.getValue();
+        //query all search types at once, each for the most it could show
+        final Map<String, Future<ProviderResult>> queries = new LinkedHashMap<String, Future<ProviderResult>>();
+        final List<FutureTask<ProviderResult>> requestThreadQueries = new ArrayList<FutureTask<ProviderResult>>(2);
+        for (final Map.Entry<String, SingleTypeSuggestionService> query : queryProviders.entrySet()) {
+            final int maxToRetrieve = MAX_RESULTS + getSpareSlotCapacity(query.getKey()) + PREVIEW_GROUP;
+            final Callable<ProviderResult> retrieval = new Callable<ProviderResult>() {
+                @Override
+                public ProviderResult call() {
+                    return retrieve(query.getValue(), context, maxToRetrieve);
+                }
+            };
 
-            //run exact query against index
-            final int groupTotal = this.getGroupTotal(query.getKey(), results);
-            final int totalGroupLeftToRetrieve = MAX_RESULTS - groupTotal + PREVIEW_GROUP;
-            Object[] docs = totalGroupLeftToRetrieve > 0 ? searchService.getExactTerms(context, totalGroupLeftToRetrieve, true) : null;
-            int docLength = docs != null ? docs.length : 0;
-
-            //how many do we need to collect
-            int leftToCollect = docLength < totalGroupLeftToRetrieve ? totalGroupLeftToRetrieve - docLength : 0;
-
-            //create collector to collect some more results, if required, but also the total hit count
-            Object o = searchService.getNewCollector(leftToCollect, true);
-            final Object[] extraDocs = searchService.collectNonExactMatches(o, context, docs, leftToCollect);
-            final List<? extends PopularSuggestion> suggestions = searchService.convertToSuggestions(docs, extraDocs);
+            if (this.requestThreadProviders.contains(query.getKey())) {
+                final FutureTask<ProviderResult> task = new FutureTask<ProviderResult>(retrieval);
+                requestThreadQueries.add(task);
+                queries.put(query.getKey(), task);
+            } else {
+                try {
+                    queries.put(query.getKey(), this.suggestionExecutor.submit(retrieval));
+                } catch (final RejectedExecutionException ex) {
+                    //the pool is saturated, so this provider is left out, as if it had timed out
+                    LOGGER.warn("Suggestions of type [{}] for [{}] were rejected as too many are queued",
+                            query.getKey(), context.getInput());
+                    queries.put(query.getKey(), null);
+                }
+            }
+        }
 
-            final SingleSuggestionsSummary singleTypeSummary = new SingleSuggestionsSummary();
-            setSuggestionsAndExamples(singleTypeSummary, suggestions, groupTotal);
-            fillInTotalHits(o, extraDocs.length, singleTypeSummary);
+        //then share out the slots, in order, having run the remaining queries ourselves
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeoutMillis);
+        for (final FutureTask<ProviderResult> task : requestThreadQueries) {
+            task.run();
+        }
+        try {
+            for (final Map.Entry<String, Future<ProviderResult>> query : queries.entrySet()) {
+                final SingleSuggestionsSummary singleTypeSummary = new SingleSuggestionsSummary();
+                if (query.getValue() == null) {
+                    setUnavailable(singleTypeSummary);
+                } else {
+                    try {
+                        final ProviderResult result = query.getValue().get(
+                                Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                        final int groupTotal = this.getGroupTotal(query.getKey(), results);
+                        fillInSummary(singleTypeSummary, result, groupTotal);
+                    } catch (final TimeoutException ex) {
+                        //don't interrupt, as lucene doesn't take kindly to it - the result is simply ignored
+                        query.getValue().cancel(false);
+                        LOGGER.warn("Suggestions of type [{}] for [{}] did not complete in time", query.getKey(),
+                                context.getInput());
+                        setUnavailable(singleTypeSummary);
+                    }
+                }
 
-            singleTypeSummary.setSearchType(query.getKey());
-            results.put(query.getKey(), singleTypeSummary);
+                singleTypeSummary.setSearchType(query.getKey());
+                results.put(query.getKey(), singleTypeSummary);
+            }
+        } catch (final InterruptedException ex) {
+            cancelAll(queries.values());
+            Thread.currentThread().interrupt();
+            throw new StepInternalException("Interrupted while retrieving suggestions for " + context.getInput(), ex);
+        } catch (final ExecutionException ex) {
+            cancelAll(queries.values());
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new StepInternalException("Unable to retrieve suggestions for " + context.getInput(), ex.getCause());
         }
 
         //return results
@@ -111,6 +238,69 @@ public class SuggestionServiceImpl implements SuggestionService {
         return summary;
     }
 
+    /**
+     * Runs the exact query against the index, topping up with non-exact matches if there aren't enough
+     *
+     * @param searchService the provider
+     * @param context       the context of the request
+     * @param maxToRetrieve the number of suggestions to retrieve
+     * @return the suggestions and the collector holding the total hit count
+     */
+    @SuppressWarnings("unchecked")
+    private ProviderResult retrieve(final SingleTypeSuggestionService searchService, final SuggestionContext context,
+                                    final int maxToRetrieve) {
+        final Object[] docs = searchService.getExactTerms(context, maxToRetrieve, true);
+        final int docLength = docs != null ? docs.length : 0;
+
+        //how many do we need to collect
+        final int leftToCollect = docLength < maxToRetrieve ? maxToRetrieve - docLength : 0;
+
+        //create collector to collect some more results, if required, but also the total hit count
+        final Object o = searchService.getNewCollector(leftToCollect, true);
+        final Object[] extraDocs = searchService.collectNonExactMatches(o, context, docs, leftToCollect);
+        return new ProviderResult(searchService.convertToSuggestions(docs, extraDocs), o, extraDocs.length);
+    }
+
+    /**
+     * Keeps as many suggestions as the provider would have retrieved had it been queried after the providers it
+     * depends on. Anything over counts towards the number of results left to see.
+     *
+     * @param singleTypeSummary the summary to fill in
+     * @param result            the results of the provider
+     * @param groupTotal        the number of slots already taken by the group
+     */
+    private void fillInSummary(final SingleSuggestionsSummary singleTypeSummary, final ProviderResult result,
+                               final int groupTotal) {
+        final int totalGroupLeftToRetrieve = Math.max(0, MAX_RESULTS - groupTotal + PREVIEW_GROUP);
+        final List<? extends PopularSuggestion> suggestions = result.suggestions;
+        final int retrieved = Math.min(totalGroupLeftToRetrieve, suggestions.size());
+
+        setSuggestionsAndExamples(singleTypeSummary, suggestions.subList(0, retrieved), groupTotal);
+        fillInTotalHits(result.collector, result.extraDocs - (suggestions.size() - retrieved), singleTypeSummary);
+    }
+
+    /**
+     * Shows a provider that could not be queried in time as having more results, but none to show yet
+     *
+     * @param singleTypeSummary the summary to fill in
+     */
+    private void setUnavailable(final SingleSuggestionsSummary singleTypeSummary) {
+        singleTypeSummary.setPopularSuggestions(Collections.<PopularSuggestion>emptyList());
+        singleTypeSummary.setExtraExamples(new ArrayList<PopularSuggestion>(0));
+        singleTypeSummary.setMoreResults(MAX_RESULTS_NON_GROUPED);
+    }
+
+    /**
+     * @param queries the queries to cancel, some of which may never have been submitted
+     */
+    private void cancelAll(final Iterable<Future<ProviderResult>> queries) {
+        for (final Future<ProviderResult> query : queries) {
+            if (query != null) {
+                query.cancel(false);
+            }
+        }
+    }
+
     /**
      * Total number of results retrieved so far in a particular grouping of providers
      *
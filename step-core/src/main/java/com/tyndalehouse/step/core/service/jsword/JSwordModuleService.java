@@ -118,7 +118,7 @@ public interface JSwordModuleService {
     void reloadInstallers();
 
     /**
-     * indexes a book
+     * queues a book for indexing, up to app.index.threads books being handed to JSword at a time
      *
      * @param initials the initials of the book to index
      */
@@ -162,7 +162,7 @@ public interface JSwordModuleService {
     void removeModule(String initials);
 
     /**
-     * Provides a way of waiting for indexes to be created
+     * Waits for indexes to be created, queuing any that have not been asked for
      *
      * @param versions versions to be waited upon
      */
@@ -175,4 +175,11 @@ public interface JSwordModuleService {
      * @return the directory installer index
      */
     BibleInstaller addDirectoryInstaller(String directoryPath);
+
+    /**
+     * Registers a listener to be told about modules being installed, removed or indexed
+     *
+     * @param listener the listener
+     */
+    void addModuleChangeListener(ModuleChangeListener listener);
 }
@@ -34,6 +34,7 @@ package com.tyndalehouse.step.core.service.jsword;
 
 import java.util.List;
 
+import com.tyndalehouse.step.core.data.common.OrdinalRange;
 import com.tyndalehouse.step.core.models.*;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.passage.Key;
@@ -177,6 +178,15 @@ public interface JSwordPassageService {
      */
     StringAndCount getAllReferencesAndCounts(String references, String version);
 
+    /**
+     * Gets the ordinals of the references, in the versification of the version, as a list of contiguous ranges.
+     *
+     * @param references the list of references
+     * @param version the version
+     * @return the ranges of verse ordinals covered by the references
+     */
+    List<OrdinalRange> getOrdinalRanges(String references, String version);
+
     /**
      * @param key the big key
      * @param book the book
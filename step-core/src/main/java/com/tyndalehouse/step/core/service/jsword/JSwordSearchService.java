@@ -90,4 +90,9 @@ public interface JSwordSearchService {
      * @return the index searcher
      */
     IndexSearcher getIndexSearcher(String version);
+
+    /**
+     * stops the threads searching versions concurrently
+     */
+    void close();
 }
@@ -0,0 +1,583 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import static com.tyndalehouse.step.core.utils.StringUtils.split;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.crosswire.common.util.CWProject;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookData;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.OSISUtil;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.data.EntityChangeListener;
+import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.models.stats.StatType;
+import com.tyndalehouse.step.core.service.StrongAugmentationService;
+import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.ModuleChangeListener;
+import com.tyndalehouse.step.core.utils.IOUtils;
+import com.tyndalehouse.step.core.utils.StringConversionUtils;
+import com.tyndalehouse.step.core.utils.cache.BoundedCache;
+import com.tyndalehouse.step.core.utils.cache.ComputeOnceMap;
+import com.tyndalehouse.step.core.utils.cache.LoadingCache;
+
+/**
+ * The number of occurrences of each word ({@link StatType#TEXT}) or strong number ({@link StatType#WORD}) in every
+ * chapter of a version, used to build the word clouds. Stats for whole chapters, groups of chapters and books are
+ * worked out by adding up the counts of each chapter, rather than reading the text again.
+ * <p>
+ * The counts for a book are worked out the first time any of its chapters is needed, and saved next to the entity
+ * indexes so that subsequent starts only read them back. Recently requested stats are also kept, keyed on the
+ * version and the passage they cover. Both caches are bounded by an estimate of the memory they take up, and neither
+ * keeps, nor saves, counts that were being worked out when the version or the strong numbers changed.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class ChapterStatsTable implements ModuleChangeListener, EntityChangeListener {
+    /** splits the canonical text of a passage into words */
+    public static final String WORD_SPLIT = "[,./<>?!;:'\\[\\]\\{\\}!\"\\-\u2013 ()]+";
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChapterStatsTable.class);
+    private static final int FORMAT_VERSION = 1;
+    private static final String AUGMENTED_STRONGS = "augmentedStrongs";
+    private static final String STATS_DIRECTORY = "chapterStats";
+    private static final String FILE_SUFFIX = ".dat";
+    private static final int OVERHEAD_BYTES = 128;
+    private static final int BYTES_PER_WORD = 96;
+    private static final BoundedCache.Weigher<Map<String, Integer>> PASSAGE_BYTES =
+            new BoundedCache.Weigher<Map<String, Integer>>() {
+                @Override
+                public long weigh(final Map<String, Integer> value) {
+                    return OVERHEAD_BYTES + (long) BYTES_PER_WORD * value.size();
+                }
+            };
+    private static final BoundedCache.Weigher<Map<Integer, Map<String, Integer>>> BOOK_BYTES =
+            new BoundedCache.Weigher<Map<Integer, Map<String, Integer>>>() {
+                @Override
+                public long weigh(final Map<Integer, Map<String, Integer>> value) {
+                    long weight = OVERHEAD_BYTES;
+                    for (final Map<String, Integer> chapter : value.values()) {
+                        weight += PASSAGE_BYTES.weigh(chapter);
+                    }
+                    return weight;
+                }
+            };
+    private final JSwordVersificationService versificationService;
+    private final StrongAugmentationService strongAugmentationService;
+    private final String indexPath;
+    private final File statsDirectory;
+    private final LoadingCache<BookKey, Map<Integer, Map<String, Integer>>> chaptersByBook;
+    private final BoundedCache<String, Map<String, Integer>> statsByPassage;
+
+    /**
+     * Identifies the counts for one book of a version
+     */
+    static final class BookKey {
+        private final StatType statType;
+        private final String version;
+        private final BibleBook book;
+
+        /**
+         * @param statType the type of counts
+         * @param version  the version
+         * @param book     the book
+         */
+        BookKey(final StatType statType, final String version, final BibleBook book) {
+            this.statType = statType;
+            this.version = version;
+            this.book = book;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BookKey)) {
+                return false;
+            }
+            final BookKey other = (BookKey) o;
+            return this.statType == other.statType && this.book == other.book && this.version.equals(other.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return (this.statType.hashCode() * 31 + this.version.hashCode()) * 31 + this.book.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return this.statType + " " + this.version + " " + this.book.getOSIS();
+        }
+    }
+
+    /**
+     * @param versificationService      the versification service, resolving versions
+     * @param strongAugmentationService the service to augment strong numbers
+     * @param entityManager             the entity manager, which notifies us of new augmented strong numbers
+     * @param moduleService             the module service, which notifies us of re-installed versions
+     * @param indexPath                 the location of the entity indexes, next to which the counts are saved
+     * @param maxChapterBytes           the approximate number of bytes the counts of each chapter may take up
+     * @param maxPassageBytes           the approximate number of bytes the counts of recent passages may take up
+     */
+    @Inject
+    public ChapterStatsTable(final JSwordVersificationService versificationService,
+                             final StrongAugmentationService strongAugmentationService,
+                             final EntityManager entityManager, final JSwordModuleService moduleService,
+                             @Named("app.index.path") final String indexPath,
+                             @Named("app.cache.chapterStats.maxBytes") final long maxChapterBytes,
+                             @Named("app.cache.passageStats.maxBytes") final long maxPassageBytes) {
+        this(versificationService, strongAugmentationService, entityManager, moduleService, indexPath, null,
+                maxChapterBytes, maxPassageBytes);
+    }
+
+    /**
+     * Saves the counts in the given directory, rather than in the STEP home
+     *
+     * @param versificationService      the versification service, resolving versions
+     * @param strongAugmentationService the service to augment strong numbers
+     * @param entityManager             the entity manager, which notifies us of new augmented strong numbers
+     * @param moduleService             the module service, which notifies us of re-installed versions
+     * @param directory                 the directory in which the counts are saved
+     * @param maxChapterBytes           the approximate number of bytes the counts of each chapter may take up
+     * @param maxPassageBytes           the approximate number of bytes the counts of recent passages may take up
+     */
+    ChapterStatsTable(final JSwordVersificationService versificationService,
+                      final StrongAugmentationService strongAugmentationService,
+                      final EntityManager entityManager, final JSwordModuleService moduleService,
+                      final File directory, final long maxChapterBytes, final long maxPassageBytes) {
+        this(versificationService, strongAugmentationService, entityManager, moduleService, null, directory,
+                maxChapterBytes, maxPassageBytes);
+    }
+
+    /**
+     * @param versificationService      the versification service, resolving versions
+     * @param strongAugmentationService the service to augment strong numbers
+     * @param entityManager             the entity manager, which notifies us of new augmented strong numbers
+     * @param moduleService             the module service, which notifies us of re-installed versions
+     * @param indexPath                 the location of the entity indexes, used if no directory is given
+     * @param directory                 the directory in which the counts are saved, may be null
+     * @param maxChapterBytes           the approximate number of bytes the counts of each chapter may take up
+     * @param maxPassageBytes           the approximate number of bytes the counts of recent passages may take up
+     */
+    private ChapterStatsTable(final JSwordVersificationService versificationService,
+                              final StrongAugmentationService strongAugmentationService,
+                              final EntityManager entityManager, final JSwordModuleService moduleService,
+                              final String indexPath, final File directory,
+                              final long maxChapterBytes, final long maxPassageBytes) {
+        this.versificationService = versificationService;
+        this.strongAugmentationService = strongAugmentationService;
+        this.indexPath = indexPath;
+        this.statsDirectory = directory;
+        this.chaptersByBook = new LoadingCache<BookKey, Map<Integer, Map<String, Integer>>>(maxChapterBytes,
+                BOOK_BYTES, new ComputeOnceMap.Loader<BookKey, Map<Integer, Map<String, Integer>>>() {
+                    @Override
+                    public Map<Integer, Map<String, Integer>> load(final BookKey key) {
+                        return loadBook(key);
+                    }
+                });
+        this.statsByPassage = new BoundedCache<String, Map<String, Integer>>(maxPassageBytes, PASSAGE_BYTES);
+        this.chaptersByBook.registerMetrics(ChapterStatsTable.class, "chapterStats");
+        this.statsByPassage.registerMetrics(ChapterStatsTable.class, "passageStats");
+        moduleService.addModuleChangeListener(this);
+        entityManager.addEntityChangeListener(this);
+    }
+
+    /**
+     * Counts the words or strong numbers in a passage. Passages made up of whole chapters are worked out from the
+     * counts of each chapter, other passages are read and counted directly.
+     *
+     * @param statType      {@link StatType#TEXT} to count words, or {@link StatType#WORD} to count strong numbers
+     * @param book          the version
+     * @param key           the passage
+     * @param wholeChapters true if the passage is made up of whole chapters
+     * @param stopList      the words or strong numbers (in upper case, unaccented) that are left out
+     * @return the number of occurrences of each word, which must not be modified
+     */
+    public Map<String, Integer> getStats(final StatType statType, final Book book, final Key key,
+                                         final boolean wholeChapters, final Set<String> stopList) {
+        final String cacheKey = statType + "|" + book.getInitials() + "|" + key.getOsisRef();
+        Map<String, Integer> stats = this.statsByPassage.get(cacheKey);
+        if (stats != null) {
+            return stats;
+        }
+
+        final long generation = this.statsByPassage.getGeneration();
+        final Map<String, Integer> counts;
+        if (wholeChapters && key instanceof VerseRange) {
+            counts = sumChapters(statType, book.getInitials(), (VerseRange) key);
+        } else {
+            counts = count(statType, book, key);
+        }
+
+        stats = Collections.unmodifiableMap(removeStopWords(statType, counts, stopList));
+        this.statsByPassage.put(cacheKey, stats, generation);
+        return stats;
+    }
+
+    @Override
+    public synchronized void moduleChanged(final String initials) {
+        LOGGER.debug("Discarding chapter stats for [{}]", initials);
+        this.chaptersByBook.invalidateAll();
+        this.statsByPassage.invalidateAll();
+        deleteFiles(getVersionDirectory(initials), null);
+    }
+
+    @Override
+    public synchronized void entityChanged(final String entity) {
+        if (!AUGMENTED_STRONGS.equals(entity)) {
+            return;
+        }
+
+        LOGGER.debug("Discarding all strong number chapter stats");
+        this.chaptersByBook.invalidateAll();
+        this.statsByPassage.invalidateAll();
+        final File[] versions = getDirectory().listFiles();
+        if (versions == null) {
+            return;
+        }
+        for (final File version : versions) {
+            deleteFiles(version, StatType.WORD.name());
+        }
+    }
+
+    /**
+     * Adds up the counts of each chapter in the range
+     *
+     * @param statType the type of counts
+     * @param version  the version
+     * @param range    the range, starting and ending on chapter boundaries
+     * @return the counts
+     */
+    private Map<String, Integer> sumChapters(final StatType statType, final String version, final VerseRange range) {
+        final Versification v11n = range.getVersification();
+        final Verse start = range.getStart();
+        final Verse end = range.getEnd();
+        final Map<String, Integer> sum = new HashMap<String, Integer>(1024);
+
+        BibleBook book = start.getBook();
+        while (book != null) {
+            final Map<Integer, Map<String, Integer>> chapters = this.chaptersByBook.get(
+                    new BookKey(statType, version, book));
+            final int firstChapter = book == start.getBook() ? start.getChapter() : 1;
+            final int lastChapter = book == end.getBook() ? end.getChapter() : v11n.getLastChapter(book);
+            for (int chapter = Math.max(1, firstChapter); chapter <= lastChapter; chapter++) {
+                final Map<String, Integer> chapterCounts = chapters.get(chapter);
+                if (chapterCounts != null) {
+                    add(sum, chapterCounts);
+                }
+            }
+
+            if (book == end.getBook()) {
+                break;
+            }
+            book = v11n.getNextBook(book);
+        }
+        return sum;
+    }
+
+    /**
+     * Works out the counts of every chapter in a book, reading them from disk if they have been saved
+     *
+     * @param key the book
+     * @return the counts for each chapter
+     */
+    private Map<Integer, Map<String, Integer>> loadBook(final BookKey key) {
+        final long generation = this.chaptersByBook.getGeneration();
+        final File file = getFile(key);
+        Map<Integer, Map<String, Integer>> chapters = read(file);
+        if (chapters != null) {
+            return chapters;
+        }
+
+        final long start = System.currentTimeMillis();
+        final Book book = this.versificationService.getBookFromVersion(key.version);
+        final Versification v11n = this.versificationService.getVersificationForVersion(book);
+        final int lastChapter = v11n.getLastChapter(key.book);
+        chapters = new HashMap<Integer, Map<String, Integer>>(lastChapter * 2);
+        for (int chapter = 1; chapter <= lastChapter; chapter++) {
+            final VerseRange range = new VerseRange(v11n, new Verse(v11n, key.book, chapter, 0),
+                    new Verse(v11n, key.book, chapter, v11n.getLastVerse(key.book, chapter)));
+            chapters.put(chapter, count(key.statType, book, range));
+        }
+        LOGGER.debug("Counted [{}] in [{}]ms", key, System.currentTimeMillis() - start);
+        save(file, chapters, generation);
+        return chapters;
+    }
+
+    /**
+     * Saves the counts, unless the files have been discarded since they started being worked out. Holding the lock
+     * stops the files from being discarded while they are being saved.
+     *
+     * @param file       the file
+     * @param chapters   the counts for each chapter
+     * @param generation the generation of the chapter counts when they started being worked out
+     */
+    private synchronized void save(final File file, final Map<Integer, Map<String, Integer>> chapters,
+                                   final long generation) {
+        if (generation == this.chaptersByBook.getGeneration()) {
+            write(file, chapters);
+        } else {
+            LOGGER.debug("Not saving [{}] as the counts have been discarded", file);
+        }
+    }
+
+    /**
+     * Reads a passage and counts the words or strong numbers in it
+     *
+     * @param statType the type of counts
+     * @param book     the version
+     * @param key      the passage
+     * @return the counts, including the words on the stop lists
+     */
+    Map<String, Integer> count(final StatType statType, final Book book, final Key key) {
+        final Map<String, Integer> counts = new HashMap<String, Integer>(256);
+        try {
+            final BookData data = new BookData(book, key);
+            if (statType == StatType.TEXT) {
+                for (final String word : split(OSISUtil.getCanonicalText(data.getOsisFragment()), WORD_SPLIT)) {
+                    increment(counts, word, 1);
+                }
+                return counts;
+            }
+
+            final String ref = key.getOsisRef();
+            final String version = book.getInitials();
+            for (final String unaugmentedWord : split(OSISUtil.getStrongsNumbers(data.getOsisFragment()))) {
+                final StrongAugmentationService.AugmentedStrongs strongs =
+                        this.strongAugmentationService.augment(version, ref, unaugmentedWord);
+                for (final String word : strongs.getStrongList()) {
+                    increment(counts, StringConversionUtils.getStrongPaddedKey(word), 1);
+                }
+            }
+            return counts;
+        } catch (final BookException e) {
+            throw new StepInternalException("Unable to read passage text", e);
+        }
+    }
+
+    /**
+     * @param statType the type of counts
+     * @param counts   the counts
+     * @param stopList the words or strong numbers to leave out
+     * @return the counts without the words on the stop list
+     */
+    Map<String, Integer> removeStopWords(final StatType statType, final Map<String, Integer> counts,
+                                         final Set<String> stopList) {
+        final Map<String, Integer> stats = new HashMap<String, Integer>(counts.size() * 2);
+        for (final Entry<String, Integer> entry : counts.entrySet()) {
+            final String word = entry.getKey();
+            final String stopWord = statType == StatType.TEXT
+                    ? StringConversionUtils.unAccent(word.toUpperCase(), true) : word.toUpperCase();
+            if (!stopList.contains(stopWord)) {
+                stats.put(word, entry.getValue());
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @param sum    the running total
+     * @param counts the counts to add
+     */
+    private void add(final Map<String, Integer> sum, final Map<String, Integer> counts) {
+        for (final Entry<String, Integer> entry : counts.entrySet()) {
+            increment(sum, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @param counts the counts
+     * @param word   the word
+     * @param by     the number of occurrences to add
+     */
+    private void increment(final Map<String, Integer> counts, final String word, final int by) {
+        final Integer count = counts.get(word);
+        counts.put(word, count == null ? by : count + by);
+    }
+
+    /**
+     * @param file the file
+     * @return the counts saved on disk, or null if there are none
+     */
+    private Map<Integer, Map<String, Integer>> read(final File file) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            final int chapterCount = in.readInt();
+            final Map<Integer, Map<String, Integer>> chapters = new HashMap<Integer, Map<String, Integer>>(
+                    chapterCount * 2);
+            for (int ii = 0; ii < chapterCount; ii++) {
+                final int chapter = in.readInt();
+                final int size = in.readInt();
+                final Map<String, Integer> counts = new HashMap<String, Integer>(size * 2);
+                for (int jj = 0; jj < size; jj++) {
+                    counts.put(in.readUTF(), in.readInt());
+                }
+                chapters.put(chapter, counts);
+            }
+            return chapters;
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to read chapter stats from [{}], counting again", file);
+            LOGGER.trace("Trace for exception:", e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Saves the counts, writing to a temporary file first so that a partially written file is never read back
+     *
+     * @param file     the file
+     * @param chapters the counts for each chapter
+     */
+    private void write(final File file, final Map<Integer, Map<String, Integer>> chapters) {
+        final File directory = file.getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) {
+            LOGGER.warn("Unable to create [{}]", directory);
+            return;
+        }
+
+        final File temp = new File(directory, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(chapters.size());
+            for (final Entry<Integer, Map<String, Integer>> chapter : chapters.entrySet()) {
+                out.writeInt(chapter.getKey());
+                out.writeInt(chapter.getValue().size());
+                for (final Entry<String, Integer> count : chapter.getValue().entrySet()) {
+                    out.writeUTF(count.getKey());
+                    out.writeInt(count.getValue());
+                }
+            }
+            out.close();
+            out = null;
+
+            if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+                LOGGER.warn("Unable to save chapter stats to [{}]", file);
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to save chapter stats to [{}]", file);
+            LOGGER.trace("Trace for exception:", e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * @param directory the directory
+     * @param prefix    the prefix of the files to delete, or null to delete all files
+     */
+    private void deleteFiles(final File directory, final String prefix) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File f : files) {
+            if ((prefix == null || f.getName().startsWith(prefix)) && !f.delete()) {
+                LOGGER.warn("Unable to delete [{}]", f);
+            }
+        }
+    }
+
+    /**
+     * @param key the book
+     * @return the file in which the counts for the book are saved
+     */
+    private File getFile(final BookKey key) {
+        return new File(getVersionDirectory(key.version), key.statType.name() + "-" + key.book.getOSIS()
+                + FILE_SUFFIX);
+    }
+
+    /**
+     * @param version the version
+     * @return the directory holding the counts of the version
+     */
+    private File getVersionDirectory(final String version) {
+        return new File(getDirectory(), version);
+    }
+
+    /**
+     * @return the directory holding the counts of all versions
+     */
+    private File getDirectory() {
+        if (this.statsDirectory != null) {
+            return this.statsDirectory;
+        }
+
+        try {
+            return new File(CWProject.instance().getWriteableProjectSubdir(this.indexPath, true), STATS_DIRECTORY);
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to create step directory", e);
+        }
+    }
+}
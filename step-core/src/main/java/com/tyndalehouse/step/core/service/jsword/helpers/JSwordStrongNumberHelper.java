@@ -35,27 +35,20 @@ package com.tyndalehouse.step.core.service.jsword.helpers;
 import com.tyndalehouse.step.core.data.EntityDoc;
 import com.tyndalehouse.step.core.data.EntityIndexReader;
 import com.tyndalehouse.step.core.data.EntityManager;
-import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.models.LexiconSuggestion;
 import com.tyndalehouse.step.core.models.search.BookAndBibleCount;
 import com.tyndalehouse.step.core.models.search.StrongCountsAndSubjects;
 import com.tyndalehouse.step.core.service.StrongAugmentationService;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
-import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.utils.JSwordUtils;
 import com.tyndalehouse.step.core.utils.StringConversionUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.index.TermDocs;
-import org.apache.lucene.search.IndexSearcher;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.book.BookData;
 import org.crosswire.jsword.book.BookException;
 import org.crosswire.jsword.book.Books;
 import org.crosswire.jsword.book.OSISUtil;
-import org.crosswire.jsword.index.lucene.LuceneIndex;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.NoSuchKeyException;
 import org.crosswire.jsword.passage.Verse;
@@ -66,7 +59,6 @@ import org.crosswire.jsword.versification.VersificationsMapper;
 import org.jdom2.Element;
 import org.slf4j.Logger;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -88,7 +80,7 @@ public class JSwordStrongNumberHelper {
     private static volatile Versification ntV11n;
     private static volatile Versification otV11n;
     private final JSwordVersificationService versification;
-    private final JSwordSearchService jSwordSearchService;
+    private final StrongFrequencyTable strongFrequencies;
     private final StrongAugmentationService strongAugmentationService;
     private final EntityIndexReader definitions;
     private final Verse reference;
@@ -102,14 +94,15 @@ public class JSwordStrongNumberHelper {
      * @param manager                   the manager that helps look up references
      * @param reference                 the reference in the KJV versification equivalent
      * @param versification             the versification service to lookup the versification of the reference book
+     * @param strongFrequencies         the number of occurrences of each strong number
      * @param strongAugmentationService the strong augmentation service
      */
     public JSwordStrongNumberHelper(final EntityManager manager, final Verse reference,
                                     final JSwordVersificationService versification,
-                                    final JSwordSearchService jSwordSearchService,
+                                    final StrongFrequencyTable strongFrequencies,
                                     final StrongAugmentationService strongAugmentationService) {
         this.versification = versification;
-        this.jSwordSearchService = jSwordSearchService;
+        this.strongFrequencies = strongFrequencies;
         this.strongAugmentationService = strongAugmentationService;
         this.definitions = manager.getReader("definition");
         this.reference = reference;
@@ -154,7 +147,6 @@ public class JSwordStrongNumberHelper {
 
             final Book preferredCountBook = getPreferredCountBook(this.isOT);
             final List<Element> elements = JSwordUtils.getOsisElements(new BookData(preferredCountBook, key));
-            Map<String, EntityDoc> augmentedReferences = new HashMap<>(16);
             for (final Element e : elements) {
                 final String verseRef = e.getAttributeValue(OSISUtil.OSIS_ATTR_OSISID);
                 final String strongsNumbers = OSISUtil.getStrongsNumbers(e);
@@ -167,17 +159,10 @@ public class JSwordStrongNumberHelper {
                 final StrongAugmentationService.AugmentedStrongs augmentedStrongs = strongAugmentationService.augment(preferredCountBook.getInitials(), verseRef, strongQuery);
                 final String augmentedStrongNumbers = StringUtils.join(augmentedStrongs.getStrongList(), ' ');
                 readDataFromLexicon(this.definitions, verseRef, augmentedStrongNumbers);
-
-                //build references that apply to each augmented strong number
-                final EntityDoc[] entityDocs = augmentedStrongs.getEntityDocs();
-                for(EntityDoc ed : entityDocs) {
-                    final String augmentedStrong = ed.get("augmentedStrong");
-                    augmentedReferences.put(augmentedStrong, ed);
-                }
             }
 
             // now get counts in the relevant portion of text
-            applySearchCounts(getBookFromKey(key), augmentedReferences);
+            applySearchCounts(preferredCountBook.getInitials(), getBookFromKey(key));
         } catch (final NoSuchKeyException ex) {
             LOG.warn("Unable to enhance verse numbers.", ex);
         } catch (final BookException ex) {
@@ -203,58 +188,20 @@ public class JSwordStrongNumberHelper {
     }
 
     /**
-     * Applies the search counts for every strong number.
+     * Applies the search counts for every strong number, from the precomputed table of counts.
      *
+     * @param version  the version in which strong numbers are counted
      * @param bookName the book name
-     * @param augmentedByStrong the augmented strongs found in the original augmentation querys
      */
-    private void applySearchCounts(final String bookName, final Map<String, EntityDoc> augmentedByStrong) {
-
-        try {
-            final IndexSearcher is = jSwordSearchService.getIndexSearcher(
-                    this.isOT ? STRONG_OT_VERSION_BOOK.getInitials() : STRONG_NT_VERSION_BOOK.getInitials());
-            final TermDocs termDocs = is.getIndexReader().termDocs();
-            for (final Entry<String, BookAndBibleCount> strong : this.allStrongs.entrySet()) {
-                final String strongKey = strong.getKey();
-                termDocs.seek(new Term(LuceneIndex.FIELD_STRONG, this.strongAugmentationService.reduce(strongKey)));
-                final EntityDoc entityDoc = augmentedByStrong.get(strongKey);
-                final String references = entityDoc != null ? entityDoc.get("references") : null;
-
-                // we'll never need more than 200 documents as this is the cut off point
-                int bible = 0;
-                int book = 0;
-                while (termDocs.next()) {
-                    final int freq = termDocs.freq();
-
-                    final Document doc = is.doc(termDocs.doc());
-                    final String docRef = doc.get(LuceneIndex.FIELD_KEY);
-                    if ((references == null || augmentedVersionInVerse(docRef, references))) {
-                        if (docRef != null && docRef.startsWith(bookName)) {
-                            book += freq;
-                        }
-                        bible += freq;
-                    }
-                }
-
-                final BookAndBibleCount value = strong.getValue();
-                value.setBible(bible);
-                value.setBook(book);
-            }
-        } catch (final IOException e) {
-            throw new StepInternalException(e.getMessage(), e);
+    private void applySearchCounts(final String version, final String bookName) {
+        for (final Entry<String, BookAndBibleCount> strong : this.allStrongs.entrySet()) {
+            final BookAndBibleCount counts = this.strongFrequencies.getCounts(version, strong.getKey(), bookName);
+            final BookAndBibleCount value = strong.getValue();
+            value.setBible(counts.getBible());
+            value.setBook(counts.getBook());
         }
     }
 
-    /**
-     * A simple 'contains' but that takes count of the bounds, rather than doing a regular expression
-     * @param docRef
-     * @param references
-     * @return
-     */
-    private boolean augmentedVersionInVerse(final String docRef, final String references) {
-        return references.endsWith(docRef) || references.contains(docRef + ' ');
-    }
-
     /**
      * Read data from lexicon.
      *
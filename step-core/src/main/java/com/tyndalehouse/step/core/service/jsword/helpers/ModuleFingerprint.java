@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.Books;
+import org.crosswire.jsword.index.IndexManagerFactory;
+
+import com.tyndalehouse.step.core.data.EntityChangeListener;
+import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
+import com.tyndalehouse.step.core.service.jsword.ModuleChangeListener;
+
+/**
+ * A short digest of the installed modules, their versions and whether they are indexed, and of the timestamps of
+ * the entity indexes. It only depends on what is on disk, so it stays the same across restarts and across servers
+ * sharing the same data. Responses that only depend on the installed modules can be identified by it.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class ModuleFingerprint implements ModuleChangeListener, EntityChangeListener {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final EntityManager entityManager;
+    private volatile String fingerprint;
+    private volatile long generation;
+
+    /**
+     * @param moduleService the module service, which notifies us of changed modules
+     * @param entityManager the entity manager, which notifies us of reloaded entities
+     */
+    @Inject
+    public ModuleFingerprint(final JSwordModuleService moduleService, final EntityManager entityManager) {
+        this.entityManager = entityManager;
+        moduleService.addModuleChangeListener(this);
+        entityManager.addEntityChangeListener(this);
+    }
+
+    /**
+     * @return the fingerprint of the installed modules
+     */
+    public String getFingerprint() {
+        final String current = this.fingerprint;
+        if (current != null) {
+            return current;
+        }
+        return computeFingerprint();
+    }
+
+    @Override
+    public void moduleChanged(final String initials) {
+        reset();
+    }
+
+    @Override
+    public void entityChanged(final String entity) {
+        reset();
+    }
+
+    /**
+     * Works out the fingerprint again. It is only kept if no module or entity changed in the meantime, since it may
+     * then describe the state from before the change.
+     *
+     * @return the fingerprint
+     */
+    private String computeFingerprint() {
+        final long startGeneration = this.generation;
+        final List<String> state = new ArrayList<String>(256);
+        for (final Book book : Books.installed().getBooks()) {
+            state.add(book.getInitials() + ':' + book.getBookMetaData().getProperty("Version") + ':'
+                    + IndexManagerFactory.getIndexManager().isIndexed(book));
+        }
+        for (final String entity : this.entityManager.getEntityNames()) {
+            state.add(entity + ':'
+                    + new File(this.entityManager.getConfig(entity).getLocation()).lastModified());
+        }
+        Collections.sort(state);
+
+        final String computed = digest(state.toString());
+        synchronized (this) {
+            if (this.generation == startGeneration) {
+                this.fingerprint = computed;
+            }
+        }
+        return computed;
+    }
+
+    /**
+     * Forgets the fingerprint, so that it is worked out again next time
+     */
+    private synchronized void reset() {
+        this.generation++;
+        this.fingerprint = null;
+    }
+
+    /**
+     * @param value the value
+     * @return the hexadecimal SHA-1 digest of the value
+     */
+    public static String digest(final String value) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(UTF_8));
+            return String.format("%040x", new BigInteger(1, digest));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new StepInternalException("Unable to compute digest", e);
+        }
+    }
+}
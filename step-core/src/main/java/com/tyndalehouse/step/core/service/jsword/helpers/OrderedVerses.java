@@ -0,0 +1,308 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.PassageTally;
+import org.crosswire.jsword.passage.PassageTally.Order;
+import org.crosswire.jsword.passage.RestrictionType;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.Versification;
+
+/**
+ * Pages through search results without walking or sorting the whole result set where it can be avoided:
+ * <ul>
+ * <li>unranked results skip whole verse ranges until the start of the page is reached</li>
+ * <li>ranked results keep only the best verses up to the end of the page in a bounded heap</li>
+ * <li>once a search is paged beyond its first page, its results are materialised as an array of ordinals in
+ * display order, so that further pages are a simple slice of it</li>
+ * </ul>
+ * Ranked results are ordered as JSword orders them: highest tally first, then in biblical order. Unranked results,
+ * including tallies of unranked searches, are in biblical order. The ordering of the tallies passed in is left as it
+ * was found.
+ *
+ * @author chrisburrell
+ */
+public final class OrderedVerses {
+    private static final long ORDINAL_MASK = 0x7FFFFFFFL;
+    private final Versification versification;
+    private final int[] ordinals;
+
+    /**
+     * @param versification the versification of the ordinals
+     * @param ordinals the ordinals in display order
+     */
+    private OrderedVerses(final Versification versification, final int[] ordinals) {
+        this.versification = versification;
+        this.ordinals = ordinals;
+    }
+
+    /**
+     * Materialises all the results in display order
+     *
+     * @param passage the results
+     * @param ranked true if the results are to be ranked, in which case they must be a {@link PassageTally}
+     * @return the ordered verses
+     */
+    public static OrderedVerses of(final Passage passage, final boolean ranked) {
+        final Versification versification = passage.getVersification();
+        if (ranked && passage instanceof PassageTally) {
+            final long[] best = rank((PassageTally) passage, Integer.MAX_VALUE);
+            final int[] ordinals = new int[best.length];
+            for (int ii = 0; ii < best.length; ii++) {
+                ordinals[ii] = ordinalOf(best[ii]);
+            }
+            return new OrderedVerses(versification, ordinals);
+        }
+
+        int[] ordinals = new int[passage.getCardinality()];
+        int size = 0;
+        for (final Key verse : passage) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, Math.max(16, size << 1));
+            }
+            ordinals[size++] = KeyUtil.getVerse(verse).getOrdinal();
+        }
+        return new OrderedVerses(versification, size == ordinals.length ? ordinals : Arrays.copyOf(ordinals, size));
+    }
+
+    /**
+     * @return the number of verses
+     */
+    public int size() {
+        return this.ordinals.length;
+    }
+
+    /**
+     * @param from the index of the first verse of the page, starting at 0
+     * @param count the number of verses in the page
+     * @return the verses of the page
+     */
+    public Passage getPage(final int from, final int count) {
+        final Passage page = createEmptyPassage(this.versification);
+        final int to = Math.min(this.ordinals.length, from + count);
+        for (int ii = Math.max(0, from); ii < to; ii++) {
+            page.addAll(this.versification.decodeOrdinal(this.ordinals[ii]));
+        }
+        return page;
+    }
+
+    /**
+     * Gets a page of results without materialising all of them
+     *
+     * @param passage the results
+     * @param from the index of the first verse of the page, starting at 0
+     * @param count the number of verses in the page
+     * @param ranked true if the results are to be ranked, in which case they must be a {@link PassageTally}
+     * @return the verses of the page
+     */
+    public static Passage getPage(final Passage passage, final int from, final int count, final boolean ranked) {
+        if (ranked && passage instanceof PassageTally) {
+            return getRankedPage((PassageTally) passage, from, count);
+        }
+        return getUnrankedPage(passage, from, count);
+    }
+
+    /**
+     * Skips over whole ranges of verses until the page is reached
+     *
+     * @param passage the results
+     * @param from the index of the first verse of the page
+     * @param count the number of verses in the page
+     * @return the verses of the page
+     */
+    private static Passage getUnrankedPage(final Passage passage, final int from, final int count) {
+        final Versification versification = passage.getVersification();
+        final Passage page = createEmptyPassage(versification);
+        final int to = from + count;
+        int position = 0;
+        final Iterator<VerseRange> ranges = passage.rangeIterator(RestrictionType.NONE);
+        while (ranges.hasNext() && position < to) {
+            final VerseRange range = ranges.next();
+            final int rangeSize = range.getCardinality();
+            if (position + rangeSize > from) {
+                final int start = range.getStart().getOrdinal();
+                final int first = Math.max(from - position, 0);
+                final int last = Math.min(to - position, rangeSize);
+                for (int ii = first; ii < last; ii++) {
+                    page.addAll(versification.decodeOrdinal(start + ii));
+                }
+            }
+            position += rangeSize;
+        }
+        return page;
+    }
+
+    /**
+     * Keeps only the best verses up to the end of the page
+     *
+     * @param tally the ranked results
+     * @param from the index of the first verse of the page
+     * @param count the number of verses in the page
+     * @return the verses of the page
+     */
+    private static Passage getRankedPage(final PassageTally tally, final int from, final int count) {
+        final Versification versification = tally.getVersification();
+        final Passage page = createEmptyPassage(versification);
+        final long[] best = rank(tally, from + count);
+        for (int ii = Math.max(0, from); ii < best.length; ii++) {
+            page.addAll(versification.decodeOrdinal(ordinalOf(best[ii])));
+        }
+        return page;
+    }
+
+    /**
+     * Ranks the verses of a tally, keeping the best ones only
+     *
+     * @param tally the tally
+     * @param limit the maximum number of verses to return
+     * @return the encoded tally and ordinal of the best verses, best first
+     */
+    private static long[] rank(final PassageTally tally, final int limit) {
+        final int capacity = Math.max(0, Math.min(limit, tally.getCardinality()));
+        final long[] heap = new long[capacity];
+        int size = 0;
+        if (capacity == 0) {
+            return heap;
+        }
+
+        // iterate in biblical order, which walks the tally board without sorting it, putting back the caller's
+        // ordering afterwards
+        final Order ordering = tally.getOrdering();
+        tally.setOrdering(Order.BIBLICAL);
+        try {
+            for (final Key key : tally) {
+                final Verse verse = KeyUtil.getVerse(key);
+                final long score = score(tally.getTallyOf(verse), verse.getOrdinal());
+                if (size < capacity) {
+                    heap[size] = score;
+                    siftUp(heap, size++);
+                } else if (score > heap[0]) {
+                    heap[0] = score;
+                    siftDown(heap, size);
+                }
+            }
+        } finally {
+            tally.setOrdering(ordering);
+        }
+
+        final long[] best = size == heap.length ? heap : Arrays.copyOf(heap, size);
+        Arrays.sort(best);
+        for (int ii = 0, jj = best.length - 1; ii < jj; ii++, jj--) {
+            final long swap = best[ii];
+            best[ii] = best[jj];
+            best[jj] = swap;
+        }
+        return best;
+    }
+
+    /**
+     * Encodes a verse so that better verses have higher scores: higher tallies first, then earlier verses
+     *
+     * @param tally the tally of the verse
+     * @param ordinal the ordinal of the verse
+     * @return the score
+     */
+    private static long score(final int tally, final int ordinal) {
+        return ((long) tally << 32) | (ORDINAL_MASK - ordinal);
+    }
+
+    /**
+     * @param score the score of a verse
+     * @return the ordinal of the verse
+     */
+    private static int ordinalOf(final long score) {
+        return (int) (ORDINAL_MASK - (score & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Restores the min-heap property after adding an element at the end of the heap
+     *
+     * @param heap the heap
+     * @param index the index of the added element
+     */
+    private static void siftUp(final long[] heap, final int index) {
+        int child = index;
+        final long value = heap[child];
+        while (child > 0) {
+            final int parent = (child - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[child] = heap[parent];
+            child = parent;
+        }
+        heap[child] = value;
+    }
+
+    /**
+     * Restores the min-heap property after replacing the root of the heap
+     *
+     * @param heap the heap
+     * @param size the number of elements in the heap
+     */
+    private static void siftDown(final long[] heap, final int size) {
+        int parent = 0;
+        final long value = heap[0];
+        while (true) {
+            int child = (parent << 1) + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (value <= heap[child]) {
+                break;
+            }
+            heap[parent] = heap[child];
+            parent = child;
+        }
+        heap[parent] = value;
+    }
+
+    /**
+     * @param versification the versification
+     * @return an empty passage
+     */
+    private static Passage createEmptyPassage(final Versification versification) {
+        return (Passage) PassageKeyFactory.instance().createEmptyKeyList(versification);
+    }
+}
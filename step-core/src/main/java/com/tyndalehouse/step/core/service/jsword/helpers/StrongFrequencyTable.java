@@ -0,0 +1,498 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.crosswire.common.util.CWProject;
+import org.crosswire.jsword.index.lucene.LuceneIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.data.EntityChangeListener;
+import com.tyndalehouse.step.core.data.EntityDoc;
+import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.models.search.BookAndBibleCount;
+import com.tyndalehouse.step.core.service.StrongAugmentationService;
+import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
+import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
+import com.tyndalehouse.step.core.service.jsword.ModuleChangeListener;
+import com.tyndalehouse.step.core.utils.IOUtils;
+import com.tyndalehouse.step.core.utils.StringUtils;
+
+/**
+ * The number of occurrences of each strong number, in the whole Bible and in each book, for the versions used to
+ * count strong numbers (see {@link JSwordStrongNumberHelper#getPreferredCountBook(boolean)}). Augmented strong
+ * numbers are only counted in the verses listed against them in the augmentedStrongs entity.
+ * <p>
+ * The counts are worked out from the version's index the first time they are needed, and saved next to the entity
+ * indexes so that subsequent starts only read them back. They are worked out again whenever the version is
+ * re-indexed or the augmented strong numbers change.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class StrongFrequencyTable implements ModuleChangeListener, EntityChangeListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StrongFrequencyTable.class);
+    private static final int FORMAT_VERSION = 1;
+    private static final String AUGMENTED_STRONGS = "augmentedStrongs";
+    private static final String FILE_PREFIX = "strongCounts-";
+    private static final String FILE_SUFFIX = ".dat";
+    private final JSwordSearchService searchService;
+    private final StrongAugmentationService strongAugmentationService;
+    private final EntityManager entityManager;
+    private final String indexPath;
+    private final ConcurrentMap<String, StrongCounts> countsByVersion = new ConcurrentHashMap<String, StrongCounts>();
+
+    /**
+     * The counts for a single version. Each strong number maps to an array holding the count in the whole Bible,
+     * followed by the count in each book.
+     */
+    static final class StrongCounts {
+        private final long indexVersion;
+        private final Map<String, Integer> books;
+        private final Map<String, int[]> strongs;
+        private final Map<String, int[]> augmentedStrongs;
+
+        /**
+         * @param indexVersion     the version of the index the counts were taken from
+         * @param books            the position of each book in the arrays of counts
+         * @param strongs          the counts for each strong number found in the index
+         * @param augmentedStrongs the counts for each augmented strong number
+         */
+        StrongCounts(final long indexVersion, final Map<String, Integer> books, final Map<String, int[]> strongs,
+                     final Map<String, int[]> augmentedStrongs) {
+            this.indexVersion = indexVersion;
+            this.books = books;
+            this.strongs = strongs;
+            this.augmentedStrongs = augmentedStrongs;
+        }
+
+        /**
+         * @param strong        the strong number
+         * @param reducedStrong the strong number without its augmentation
+         * @return the counts
+         */
+        private int[] getCounts(final String strong, final String reducedStrong) {
+            final int[] augmented = this.augmentedStrongs.get(strong);
+            return augmented != null ? augmented : this.strongs.get(reducedStrong);
+        }
+    }
+
+    /**
+     * @param searchService             the search service giving access to the indexes of the versions
+     * @param strongAugmentationService the service to reduce augmented strong numbers
+     * @param entityManager             the entity manager, giving access to the augmented strong numbers
+     * @param moduleService             the module service, which notifies us of re-indexed versions
+     * @param indexPath                 the location of the entity indexes, next to which the counts are saved
+     */
+    @Inject
+    public StrongFrequencyTable(final JSwordSearchService searchService,
+                                final StrongAugmentationService strongAugmentationService,
+                                final EntityManager entityManager, final JSwordModuleService moduleService,
+                                @Named("app.index.path") final String indexPath) {
+        this.searchService = searchService;
+        this.strongAugmentationService = strongAugmentationService;
+        this.entityManager = entityManager;
+        this.indexPath = indexPath;
+        moduleService.addModuleChangeListener(this);
+        entityManager.addEntityChangeListener(this);
+    }
+
+    /**
+     * @param version the version in which to count
+     * @param strong  the (possibly augmented) strong number
+     * @param book    the OSIS name of the book
+     * @return the counts in the whole Bible and in the book
+     */
+    public BookAndBibleCount getCounts(final String version, final String strong, final String book) {
+        return getCounts(getStrongCounts(version), strong, book);
+    }
+
+    /**
+     * @param counts the counts for a version
+     * @param strong the (possibly augmented) strong number
+     * @param book   the OSIS name of the book
+     * @return the counts in the whole Bible and in the book
+     */
+    BookAndBibleCount getCounts(final StrongCounts counts, final String strong, final String book) {
+        final int[] strongCounts = counts.getCounts(strong, this.strongAugmentationService.reduce(strong));
+        final BookAndBibleCount bookAndBibleCount = new BookAndBibleCount();
+        if (strongCounts != null) {
+            final Integer bookIndex = counts.books.get(book);
+            bookAndBibleCount.setBible(strongCounts[0]);
+            bookAndBibleCount.setBook(bookIndex != null ? strongCounts[bookIndex + 1] : 0);
+        }
+        return bookAndBibleCount;
+    }
+
+    @Override
+    public void moduleChanged(final String initials) {
+        if (this.countsByVersion.remove(initials) != null || getFile(initials).exists()) {
+            LOGGER.debug("Discarding strong counts for [{}]", initials);
+            deleteFile(initials);
+        }
+    }
+
+    @Override
+    public void entityChanged(final String entity) {
+        if (!AUGMENTED_STRONGS.equals(entity)) {
+            return;
+        }
+
+        LOGGER.debug("Discarding all strong counts");
+        this.countsByVersion.clear();
+        final File[] files = getDirectory().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File f : files) {
+            if (f.getName().startsWith(FILE_PREFIX) && !f.delete()) {
+                LOGGER.warn("Unable to delete [{}]", f);
+            }
+        }
+    }
+
+    /**
+     * @param version the version
+     * @return the counts for the version, read from disk or worked out from its index if necessary
+     */
+    private StrongCounts getStrongCounts(final String version) {
+        final StrongCounts counts = this.countsByVersion.get(version);
+        if (counts != null) {
+            return counts;
+        }
+        return loadStrongCounts(version);
+    }
+
+    /**
+     * Loads the counts for a version, only one thread doing so at a time
+     *
+     * @param version the version
+     * @return the counts
+     */
+    private synchronized StrongCounts loadStrongCounts(final String version) {
+        StrongCounts counts = this.countsByVersion.get(version);
+        if (counts != null) {
+            return counts;
+        }
+
+        final IndexReader reader = this.searchService.getIndexSearcher(version).getIndexReader();
+        final long indexVersion = reader.getVersion();
+        counts = read(version, indexVersion);
+        if (counts == null) {
+            final long start = System.currentTimeMillis();
+            counts = count(reader, indexVersion);
+            LOGGER.info("Counted [{}] strong numbers in [{}] in [{}]ms", new Object[]{counts.strongs.size(),
+                    version, System.currentTimeMillis() - start});
+            write(version, counts);
+        }
+        this.countsByVersion.put(version, counts);
+        return counts;
+    }
+
+    /**
+     * Counts the occurrences of every strong number in the index, and of every augmented strong number in the verses
+     * it applies to.
+     *
+     * @param reader       the index reader
+     * @param indexVersion the version of the index
+     * @return the counts
+     */
+    StrongCounts count(final IndexReader reader, final long indexVersion) {
+        try {
+            // first work out the reference and book of every verse
+            final int maxDoc = reader.maxDoc();
+            final String[] references = new String[maxDoc];
+            final int[] bookOfDoc = new int[maxDoc];
+            final Map<String, Integer> books = new LinkedHashMap<String, Integer>(128);
+            final MapFieldSelector keyOnly = new MapFieldSelector(new String[]{LuceneIndex.FIELD_KEY});
+            for (int doc = 0; doc < maxDoc; doc++) {
+                bookOfDoc[doc] = -1;
+                if (reader.isDeleted(doc)) {
+                    continue;
+                }
+
+                final Document document = reader.document(doc, keyOnly);
+                final String reference = document.get(LuceneIndex.FIELD_KEY);
+                if (reference == null) {
+                    continue;
+                }
+                references[doc] = reference;
+
+                final int firstDot = reference.indexOf('.');
+                final String book = firstDot == -1 ? reference : reference.substring(0, firstDot);
+                Integer bookIndex = books.get(book);
+                if (bookIndex == null) {
+                    bookIndex = books.size();
+                    books.put(book, bookIndex);
+                }
+                bookOfDoc[doc] = bookIndex;
+            }
+
+            // then every strong number in the index
+            final Map<String, int[]> strongs = new HashMap<String, int[]>(16384);
+            final TermDocs termDocs = reader.termDocs();
+            final TermEnum terms = reader.terms(new Term(LuceneIndex.FIELD_STRONG, ""));
+            try {
+                do {
+                    final Term term = terms.term();
+                    if (term == null || !LuceneIndex.FIELD_STRONG.equals(term.field())) {
+                        break;
+                    }
+                    termDocs.seek(terms);
+                    strongs.put(term.text(), countDocs(termDocs, bookOfDoc, books.size(), null, null));
+                } while (terms.next());
+            } finally {
+                terms.close();
+            }
+
+            // and finally the augmented strong numbers, which only apply to some of the verses
+            final Map<String, int[]> augmentedStrongs = new HashMap<String, int[]>(4096);
+            final EntityDoc[] augmented = this.entityManager.getReader(AUGMENTED_STRONGS).search(
+                    new MatchAllDocsQuery(), "augmentedStrong", "references");
+            for (final EntityDoc doc : augmented) {
+                final String augmentedStrong = doc.get("augmentedStrong");
+                final String augmentedReferences = doc.get("references");
+                if (augmentedStrong == null || augmentedReferences == null) {
+                    continue;
+                }
+
+                final String reduced = this.strongAugmentationService.reduce(augmentedStrong);
+                if (!strongs.containsKey(reduced)) {
+                    continue;
+                }
+
+                final Set<String> verses = new HashSet<String>(StringUtils.split(augmentedReferences).length * 2);
+                for (final String verse : StringUtils.split(augmentedReferences)) {
+                    verses.add(verse);
+                }
+                termDocs.seek(new Term(LuceneIndex.FIELD_STRONG, reduced));
+                augmentedStrongs.put(augmentedStrong, countDocs(termDocs, bookOfDoc, books.size(), references,
+                        verses));
+            }
+            termDocs.close();
+            return new StrongCounts(indexVersion, books, strongs, augmentedStrongs);
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to count strong numbers", e);
+        }
+    }
+
+    /**
+     * @param termDocs   the documents containing the strong number
+     * @param bookOfDoc  the book of each document
+     * @param bookCount  the number of books
+     * @param references the reference of each document, or null if all documents are to be counted
+     * @param verses     the verses to be counted, or null if all documents are to be counted
+     * @return the count in the whole Bible, followed by the count in each book
+     * @throws IOException the index could not be read
+     */
+    private int[] countDocs(final TermDocs termDocs, final int[] bookOfDoc, final int bookCount,
+                            final String[] references, final Set<String> verses) throws IOException {
+        final int[] counts = new int[bookCount + 1];
+        while (termDocs.next()) {
+            final int doc = termDocs.doc();
+            if (verses != null && !verses.contains(references[doc])) {
+                continue;
+            }
+
+            final int freq = termDocs.freq();
+            counts[0] += freq;
+            if (bookOfDoc[doc] != -1) {
+                counts[bookOfDoc[doc] + 1] += freq;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @param version      the version
+     * @param indexVersion the version of the index that the counts must have been taken from
+     * @return the counts saved on disk, or null if there are none or they are out of date
+     */
+    private StrongCounts read(final String version, final long indexVersion) {
+        final File file = getFile(version);
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION || in.readLong() != indexVersion) {
+                LOGGER.debug("Strong counts for [{}] are out of date", version);
+                return null;
+            }
+
+            final int bookCount = in.readInt();
+            final Map<String, Integer> books = new LinkedHashMap<String, Integer>(bookCount * 2);
+            for (int ii = 0; ii < bookCount; ii++) {
+                books.put(in.readUTF(), ii);
+            }
+            final Map<String, int[]> strongs = readCounts(in, bookCount);
+            final Map<String, int[]> augmentedStrongs = readCounts(in, bookCount);
+            return new StrongCounts(indexVersion, books, strongs, augmentedStrongs);
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to read strong counts for [{}], counting again", version);
+            LOGGER.trace("Trace for exception:", e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * @param in        the stream
+     * @param bookCount the number of books
+     * @return the counts for each strong number
+     * @throws IOException the file could not be read
+     */
+    private Map<String, int[]> readCounts(final DataInputStream in, final int bookCount) throws IOException {
+        final int size = in.readInt();
+        final Map<String, int[]> counts = new HashMap<String, int[]>(size * 2);
+        for (int ii = 0; ii < size; ii++) {
+            final String strong = in.readUTF();
+            final int[] strongCounts = new int[bookCount + 1];
+            for (int jj = 0; jj < strongCounts.length; jj++) {
+                strongCounts[jj] = in.readInt();
+            }
+            counts.put(strong, strongCounts);
+        }
+        return counts;
+    }
+
+    /**
+     * Saves the counts, writing to a temporary file first so that a partially written file is never read back
+     *
+     * @param version the version
+     * @param counts  the counts
+     */
+    private void write(final String version, final StrongCounts counts) {
+        final File file = getFile(version);
+        final File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(counts.indexVersion);
+            out.writeInt(counts.books.size());
+            for (final String book : counts.books.keySet()) {
+                out.writeUTF(book);
+            }
+            writeCounts(out, counts.strongs);
+            writeCounts(out, counts.augmentedStrongs);
+            out.close();
+            out = null;
+
+            if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+                LOGGER.warn("Unable to save strong counts to [{}]", file);
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to save strong counts for [{}]", version);
+            LOGGER.trace("Trace for exception:", e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * @param out    the stream
+     * @param counts the counts for each strong number
+     * @throws IOException the file could not be written
+     */
+    private void writeCounts(final DataOutputStream out, final Map<String, int[]> counts) throws IOException {
+        out.writeInt(counts.size());
+        for (final Entry<String, int[]> entry : counts.entrySet()) {
+            out.writeUTF(entry.getKey());
+            for (final int count : entry.getValue()) {
+                out.writeInt(count);
+            }
+        }
+    }
+
+    /**
+     * @param version the version
+     */
+    private void deleteFile(final String version) {
+        final File file = getFile(version);
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Unable to delete [{}]", file);
+        }
+    }
+
+    /**
+     * @param version the version
+     * @return the file in which the counts for the version are saved
+     */
+    private File getFile(final String version) {
+        return new File(getDirectory(), FILE_PREFIX + version + FILE_SUFFIX);
+    }
+
+    /**
+     * @return the directory holding the entity indexes
+     */
+    private File getDirectory() {
+        try {
+            return new File(CWProject.instance().getWriteableProjectSubdir(this.indexPath, true));
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to create step directory", e);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.util.BitSet;
+
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.VerseKey;
+import org.crosswire.jsword.versification.Versification;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+
+/**
+ * A set of verses held as a bitset of ordinals in a single versification. Intersections, unions and differences
+ * are done a machine word at a time, and keys from other versifications are converted through the precomputed
+ * tables of the {@link VersificationOrdinalMapper}.
+ * <p/>
+ * Not thread-safe.
+ *
+ * @author chrisburrell
+ */
+public final class VerseBitSet {
+    private final Versification versification;
+    private final BitSet ordinals;
+
+    /**
+     * Creates an empty set of verses
+     *
+     * @param versification the versification that the ordinals refer to
+     */
+    public VerseBitSet(final Versification versification) {
+        this(versification, new BitSet(versification.maximumOrdinal() + 1));
+    }
+
+    /**
+     * @param versification the versification that the ordinals refer to
+     * @param ordinals the ordinals
+     */
+    private VerseBitSet(final Versification versification, final BitSet ordinals) {
+        this.versification = versification;
+        this.ordinals = ordinals;
+    }
+
+    /**
+     * Creates the set of verses contained in a key, in the versification of the key itself
+     *
+     * @param key the key, which must be a verse key
+     * @return the set of verses
+     */
+    public static VerseBitSet fromKey(final Key key) {
+        return fromKey(key, getVersification(key));
+    }
+
+    /**
+     * Creates the set of verses contained in a key, mapping them to the given versification if required.
+     *
+     * @param key the key, which must be a verse key
+     * @param versification the versification of the set
+     * @return the set of verses
+     */
+    public static VerseBitSet fromKey(final Key key, final Versification versification) {
+        final VerseBitSet verses = new VerseBitSet(versification);
+        if (key == null) {
+            return verses;
+        }
+
+        final Versification keyVersification = getVersification(key);
+        if (keyVersification.equals(versification)) {
+            addOrdinals(key, verses.ordinals);
+        } else {
+            final BitSet source = new BitSet(keyVersification.maximumOrdinal() + 1);
+            addOrdinals(key, source);
+            VersificationOrdinalMapper.instance().getMapping(keyVersification, versification)
+                    .mapInto(source, verses.ordinals);
+        }
+        return verses;
+    }
+
+    /**
+     * Sets the ordinals of all the verses of the key
+     *
+     * @param key the key
+     * @param ordinals the bits to set
+     */
+    private static void addOrdinals(final Key key, final BitSet ordinals) {
+        for (final Key verse : key) {
+            ordinals.set(KeyUtil.getVerse(verse).getOrdinal());
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return the versification of the key
+     */
+    private static Versification getVersification(final Key key) {
+        if (!(key instanceof VerseKey)) {
+            throw new StepInternalException("Trying to combine versified key with non-versified key.");
+        }
+        return ((VerseKey) key).getVersification();
+    }
+
+    /**
+     * Keeps only the verses that are also in the other set
+     *
+     * @param other the other set
+     * @return this set
+     */
+    public VerseBitSet and(final VerseBitSet other) {
+        this.ordinals.and(inThisVersification(other));
+        return this;
+    }
+
+    /**
+     * Adds all the verses of the other set
+     *
+     * @param other the other set
+     * @return this set
+     */
+    public VerseBitSet or(final VerseBitSet other) {
+        this.ordinals.or(inThisVersification(other));
+        return this;
+    }
+
+    /**
+     * Removes all the verses of the other set
+     *
+     * @param other the other set
+     * @return this set
+     */
+    public VerseBitSet andNot(final VerseBitSet other) {
+        this.ordinals.andNot(inThisVersification(other));
+        return this;
+    }
+
+    /**
+     * @param other the other set
+     * @return the ordinals of the other set, mapped to the versification of this set if need be
+     */
+    private BitSet inThisVersification(final VerseBitSet other) {
+        if (other.versification.equals(this.versification)) {
+            return other.ordinals;
+        }
+
+        final BitSet mapped = new BitSet(this.versification.maximumOrdinal() + 1);
+        VersificationOrdinalMapper.instance().getMapping(other.versification, this.versification)
+                .mapInto(other.ordinals, mapped);
+        return mapped;
+    }
+
+    /**
+     * @return the number of verses in the set
+     */
+    public int cardinality() {
+        return this.ordinals.cardinality();
+    }
+
+    /**
+     * @return true if there are no verses in the set
+     */
+    public boolean isEmpty() {
+        return this.ordinals.isEmpty();
+    }
+
+    /**
+     * @param ordinal the ordinal of a verse in the versification of this set
+     * @return true if the verse is in the set
+     */
+    public boolean contains(final int ordinal) {
+        return this.ordinals.get(ordinal);
+    }
+
+    /**
+     * @return the versification of the set
+     */
+    public Versification getVersification() {
+        return this.versification;
+    }
+
+    /**
+     * @return a new passage holding all the verses of the set
+     */
+    public Passage toPassage() {
+        final Passage passage = (Passage) PassageKeyFactory.instance().createEmptyKeyList(this.versification);
+        for (int ordinal = this.ordinals.nextSetBit(0); ordinal >= 0; ordinal = this.ordinals
+                .nextSetBit(ordinal + 1)) {
+            passage.addAll(this.versification.decodeOrdinal(ordinal));
+        }
+        return passage;
+    }
+}
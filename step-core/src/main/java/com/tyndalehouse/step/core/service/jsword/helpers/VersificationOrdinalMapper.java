@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.util.BitSet;
+
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.VersificationsMapper;
+import org.crosswire.jsword.versification.system.Versifications;
+
+import com.tyndalehouse.step.core.utils.cache.ComputeOnceMap;
+
+/**
+ * Maps verse ordinals from one versification to another through tables that are computed once per pair of
+ * versifications, so that converting a large set of verses costs an array lookup per verse rather than a trip
+ * through the {@link VersificationsMapper}.
+ *
+ * @author chrisburrell
+ */
+public final class VersificationOrdinalMapper {
+    private static final VersificationOrdinalMapper INSTANCE = new VersificationOrdinalMapper();
+    private static final char SEPARATOR = '>';
+    private final ComputeOnceMap<String, OrdinalMapping> mappings = new ComputeOnceMap<String, OrdinalMapping>(
+            new ComputeOnceMap.Loader<String, OrdinalMapping>() {
+                @Override
+                public OrdinalMapping load(final String key) {
+                    final int separator = key.indexOf(SEPARATOR);
+                    final Versifications versifications = Versifications.instance();
+                    return new OrdinalMapping(versifications.getVersification(key.substring(0, separator)),
+                            versifications.getVersification(key.substring(separator + 1)));
+                }
+            });
+
+    /**
+     * The ordinals of the target versification that each ordinal of the source versification maps to, held as
+     * one array of targets and an array of offsets into it.
+     */
+    static final class OrdinalMapping {
+        private final int[] offsets;
+        private final int[] targets;
+
+        /**
+         * @param source the source versification
+         * @param target the target versification
+         */
+        OrdinalMapping(final Versification source, final Versification target) {
+            final VersificationsMapper mapper = VersificationsMapper.instance();
+            final int maximum = source.maximumOrdinal();
+            this.offsets = new int[maximum + 2];
+
+            int[] mapped = new int[maximum + 1];
+            int size = 0;
+            for (int ordinal = 0; ordinal <= maximum; ordinal++) {
+                this.offsets[ordinal] = size;
+                for (final Key verse : mapper.mapVerse(source.decodeOrdinal(ordinal), target)) {
+                    if (size == mapped.length) {
+                        final int[] larger = new int[mapped.length + (mapped.length >> 1)];
+                        System.arraycopy(mapped, 0, larger, 0, size);
+                        mapped = larger;
+                    }
+                    mapped[size++] = KeyUtil.getVerse(verse).getOrdinal();
+                }
+            }
+            this.offsets[maximum + 1] = size;
+            this.targets = new int[size];
+            System.arraycopy(mapped, 0, this.targets, 0, size);
+        }
+
+        /**
+         * Sets the bits of all target ordinals that the source ordinal maps to
+         *
+         * @param ordinal the source ordinal
+         * @param into the bits of the target versification
+         */
+        void mapInto(final int ordinal, final BitSet into) {
+            if (ordinal < 0 || ordinal >= this.offsets.length - 1) {
+                return;
+            }
+            for (int ii = this.offsets[ordinal]; ii < this.offsets[ordinal + 1]; ii++) {
+                into.set(this.targets[ii]);
+            }
+        }
+
+        /**
+         * Maps all the set bits of the source into the target
+         *
+         * @param source the ordinals in the source versification
+         * @param into the ordinals in the target versification
+         */
+        void mapInto(final BitSet source, final BitSet into) {
+            for (int ordinal = source.nextSetBit(0); ordinal >= 0; ordinal = source.nextSetBit(ordinal + 1)) {
+                mapInto(ordinal, into);
+            }
+        }
+    }
+
+    /**
+     * prevent instantiation
+     */
+    private VersificationOrdinalMapper() {
+        // no op
+    }
+
+    /**
+     * @return the singleton instance
+     */
+    public static VersificationOrdinalMapper instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param source the versification to map from
+     * @param target the versification to map to
+     * @return the mapping table between the two versifications, computed on first use
+     */
+    OrdinalMapping getMapping(final Versification source, final Versification target) {
+        return this.mappings.get(source.getName() + SEPARATOR + target.getName());
+    }
+}
@@ -32,21 +32,17 @@
  ******************************************************************************/
 package com.tyndalehouse.step.core.service.jsword.impl;
 
-import static com.tyndalehouse.step.core.utils.StringUtils.split;
-
 import javax.inject.Inject;
 import javax.inject.Named;
 
 import com.tyndalehouse.step.core.models.stats.ScopeType;
-import com.tyndalehouse.step.core.service.StrongAugmentationService;
+import com.tyndalehouse.step.core.models.stats.StatType;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
-import com.tyndalehouse.step.core.utils.StringConversionUtils;
+import com.tyndalehouse.step.core.service.jsword.helpers.ChapterStatsTable;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.book.BookData;
-import org.crosswire.jsword.book.BookException;
-import org.crosswire.jsword.book.OSISUtil;
 import org.crosswire.jsword.passage.*;
 
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
@@ -62,7 +58,7 @@ import java.util.*;
  * @author chrisburrell
  */
 public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
-    static final String WORD_SPLIT = "[,./<>?!;:'\\[\\]\\{\\}!\"\\-\u2013 ()]+";
+    static final String WORD_SPLIT = ChapterStatsTable.WORD_SPLIT;
     private static final String LANGUAGE_STOP_LIST = "analysis.stopWords.%s";
     private final JSwordVersificationService versification;
     private final Map<String, Set<String>> stopWords = new HashMap<String, Set<String>>(32);
@@ -70,21 +66,22 @@ public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
     private final Versification strongsV11n;
     private final Book strongsBook;
     private final Properties stopWordsProperties;
-    private StrongAugmentationService strongAugmentationService;
+    private final ChapterStatsTable chapterStats;
 
     /**
      * Instantiates a new jsword analysis service impl.
      *
      * @param versification the versification
+     * @param chapterStats  the counts of words and strong numbers in each chapter
      */
     @Inject
     public JSwordAnalysisServiceImpl(final JSwordVersificationService versification,
                                      @Named("StepCoreProperties") final Properties stopWordsProperties,
                                      @Named("analysis.stopStrongs") final String configuredStopStrongs,
-                                     final StrongAugmentationService strongAugmentationService) {
+                                     final ChapterStatsTable chapterStats) {
         this.versification = versification;
         this.stopWordsProperties = stopWordsProperties;
-        this.strongAugmentationService = strongAugmentationService;
+        this.chapterStats = chapterStats;
         stopStrongs = StringUtils.createSet(configuredStopStrongs);
         strongsBook = this.versification.getBookFromVersion(JSwordPassageService.REFERENCE_BOOK);
         strongsV11n = this.versification.getVersificationForVersion(strongsBook);
@@ -92,38 +89,29 @@ public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
 
     @Override
     public PassageStat getWordStats(final Key reference, final ScopeType scopeType) {
-        try {
-            //change the reference to match what we need
-            final BookData expandedBook = getExpandedBookData(reference, scopeType, strongsV11n, strongsBook);
-            return getStatsFromStrongArray(expandedBook.getFirstBook().getInitials(), expandedBook.getKey(), split(OSISUtil.getStrongsNumbers(expandedBook.getOsisFragment())));
-        } catch (final BookException e) {
-            throw new StepInternalException("Unable to read passage text", e);
-        }
+        //change the reference to match what we need
+        final BookData expandedBook = getExpandedBookData(reference, scopeType, strongsV11n, strongsBook);
+        return toPassageStat(this.chapterStats.getStats(StatType.WORD, strongsBook, expandedBook.getKey(),
+                scopeType != ScopeType.PASSAGE, this.stopStrongs));
     }
 
     @Override
     public PassageStat getTextStats(final String version, final Key reference, final ScopeType scopeType) {
-        try {
-            final Book book = this.versification.getBookFromVersion(version);
-            final Versification av11n = this.versification.getVersificationForVersion(book);
-            final BookData bookData = getExpandedBookData(reference, scopeType, av11n, book);
-
-            final String canonicalText = OSISUtil.getCanonicalText(bookData.getOsisFragment());
-            final String[] words = split(canonicalText, WORD_SPLIT);
-
-            Set<String> languageStopWords = getLanguageStopList(book);
+        final Book book = this.versification.getBookFromVersion(version);
+        final Versification av11n = this.versification.getVersificationForVersion(book);
+        final BookData bookData = getExpandedBookData(reference, scopeType, av11n, book);
+        return toPassageStat(this.chapterStats.getStats(StatType.TEXT, book, bookData.getKey(),
+                scopeType != ScopeType.PASSAGE, getLanguageStopList(book)));
+    }
 
-            final PassageStat stat = new PassageStat();
-            for (final String word : words) {
-                //only add word if not in STOP list
-                if (!languageStopWords.contains(StringConversionUtils.unAccent(word.toUpperCase(), true))) {
-                    stat.addWord(word);
-                }
-            }
-            return stat;
-        } catch (final BookException e) {
-            throw new StepInternalException("Unable to read passage text", e);
-        }
+    /**
+     * @param counts the cached counts, which are copied as the stats get trimmed
+     * @return the stats
+     */
+    private PassageStat toPassageStat(final Map<String, Integer> counts) {
+        final PassageStat stat = new PassageStat();
+        stat.setStats(new HashMap<String, Integer>(counts));
+        return stat;
     }
 
     /**
@@ -229,29 +217,6 @@ public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
 
     }
 
-    /**
-     * Gets the stats from word array, counting words one by one and using the {@link PassageStat} to do the
-     * incrementing word by word
-     *
-     * @param words the words
-     * @return the stats from word array
-     */
-    private PassageStat getStatsFromStrongArray(final String version, final Key reference, final String[] words) {
-        final PassageStat stat = new PassageStat();
-        //slight annoyance that we are deserializing the key to re-serialise later
-        final String ref = reference.getOsisRef();
-        for (final String unaugmentedWord : words) {
-            StrongAugmentationService.AugmentedStrongs strongs = this.strongAugmentationService.augment(version, ref, unaugmentedWord);
-            for(String word : strongs.getStrongList()) {
-                final String paddedStrongNumber = StringConversionUtils.getStrongPaddedKey(word);
-                if (!this.stopStrongs.contains(paddedStrongNumber.toUpperCase())) {
-                    stat.addWord(paddedStrongNumber);
-                }
-            }
-        }
-        return stat;
-    }
-
     /**
      * @return access tot he default v11n for analysis
      */
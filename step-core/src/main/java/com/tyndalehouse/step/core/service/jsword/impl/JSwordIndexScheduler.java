@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.jsword.impl;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.index.IndexManagerFactory;
+import org.crosswire.jsword.index.IndexStatus;
+import org.crosswire.jsword.index.IndexStatusEvent;
+import org.crosswire.jsword.index.IndexStatusListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the search indexes of modules, handing up to app.index.threads of them to JSword at a time. JSword builds
+ * each index on a thread of its own, so each of our threads hands a module over to JSword and then waits to be told
+ * that the index has been built (or has failed) before taking on the next one.
+ * <p>
+ * JSword's LuceneIndex holds a static lock while it writes an index, so within one JVM the indexes themselves are
+ * still written one after the other, whatever the number of threads. The log shows when each module is handed to
+ * JSword and when its index is finished, so this can be checked against other versions of JSword. Building indexes
+ * in parallel takes several JVMs, which is what step-tools' IndexAll does.
+ * <p>
+ * A module whose index is not built within app.index.timeoutMillis is given up on and marked as failed, so that a
+ * JSword job that hangs does not hold up the modules behind it.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class JSwordIndexScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JSwordIndexScheduler.class);
+    private final ConcurrentMap<String, IndexTask> tasks = new ConcurrentHashMap<String, IndexTask>();
+    private final Set<String> failed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ExecutorService indexExecutor;
+    private final long timeoutMillis;
+
+    /**
+     * @param threads       the number of modules indexed concurrently
+     * @param timeoutMillis the time allowed for the index of a module to be built, or waited for
+     */
+    @Inject
+    public JSwordIndexScheduler(@Named("app.index.threads") final int threads,
+                                @Named("app.index.timeoutMillis") final long timeoutMillis) {
+        this.indexExecutor = createIndexExecutor(Math.max(1, threads));
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Creates the pool that indexes modules. Its threads are daemons, so that they never hold up the shutdown of
+     * the application. The queue is unbounded, as a queued module costs nothing until its turn comes.
+     *
+     * @param threads the maximum number of threads
+     * @return the executor
+     */
+    private static ExecutorService createIndexExecutor(final int threads) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "step-index-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Queues a module for indexing, unless it is already queued or being indexed. A module that has been indexed by
+     * the time its turn comes is skipped.
+     *
+     * @param book     the module to index
+     * @param listener told of the module's changes of index status, may be null
+     */
+    public void schedule(final Book book, final IndexStatusListener listener) {
+        schedule(book, listener, false);
+    }
+
+    /**
+     * Queues a module for its index to be built again, even if it already has one, unless it is already queued or
+     * being indexed
+     *
+     * @param book     the module to index
+     * @param listener told of the module's changes of index status, may be null
+     */
+    public void scheduleRebuild(final Book book, final IndexStatusListener listener) {
+        schedule(book, listener, true);
+    }
+
+    /**
+     * @param book     the module to index
+     * @param listener told of the module's changes of index status, may be null
+     * @param rebuild  true to build the index even if the module already has one
+     */
+    private void schedule(final Book book, final IndexStatusListener listener, final boolean rebuild) {
+        final IndexTask task = new IndexTask(book, listener, rebuild);
+        if (this.tasks.putIfAbsent(book.getInitials(), task) == null) {
+            LOGGER.debug("Queuing [{}] for indexing", book.getInitials());
+            this.failed.remove(book.getInitials());
+            this.indexExecutor.execute(task);
+        }
+    }
+
+    /**
+     * @param initials the initials of the module
+     * @return true if the module is waiting for, or undergoing, indexing
+     */
+    public boolean isPending(final String initials) {
+        return this.tasks.containsKey(initials);
+    }
+
+    /**
+     * @param initials the initials of the module
+     * @return true if the module is waiting for its turn to be indexed
+     */
+    public boolean isQueued(final String initials) {
+        final IndexTask task = this.tasks.get(initials);
+        return task != null && !task.started;
+    }
+
+    /**
+     * @param initials the initials of the module
+     * @return true if the last attempt at indexing the module failed or was given up on
+     */
+    public boolean hasFailed(final String initials) {
+        return this.failed.contains(initials);
+    }
+
+    /**
+     * Waits, up to app.index.timeoutMillis, for a module that is pending to have been indexed, returning straight
+     * away if it isn't pending
+     *
+     * @param initials the initials of the module
+     * @return false if the module was still pending when the time was up
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean await(final String initials) throws InterruptedException {
+        final IndexTask task = this.tasks.get(initials);
+        return task == null || task.finished.await(this.timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param book the module
+     * @return true if the module has an index
+     */
+    boolean isIndexed(final Book book) {
+        return IndexManagerFactory.getIndexManager().isIndexed(book);
+    }
+
+    /**
+     * Asks JSword to build the index of a module, on a thread of its own
+     *
+     * @param book the module
+     */
+    void startIndexing(final Book book) {
+        IndexManagerFactory.getIndexManager().scheduleIndexCreation(book);
+    }
+
+    /**
+     * Indexes a single module, occupying one of the pool's threads until JSword reports it is finished
+     */
+    private final class IndexTask implements Runnable, IndexStatusListener {
+        private final Book book;
+        private final IndexStatusListener listener;
+        private final boolean rebuild;
+        private final long queuedAt = System.currentTimeMillis();
+        private final CountDownLatch indexed = new CountDownLatch(1);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile boolean started;
+
+        /**
+         * @param book     the module to index
+         * @param listener the listener to pass status changes on to, may be null
+         * @param rebuild  true to build the index even if the module already has one
+         */
+        private IndexTask(final Book book, final IndexStatusListener listener, final boolean rebuild) {
+            this.book = book;
+            this.listener = listener;
+            this.rebuild = rebuild;
+        }
+
+        @Override
+        public void run() {
+            this.started = true;
+            final long start = System.currentTimeMillis();
+            try {
+                // the module may have been indexed since it was queued, e.g. by a request waiting for it
+                if (!this.rebuild && isIndexed(this.book)) {
+                    LOGGER.debug("[{}] has been indexed since it was queued", this.book.getInitials());
+                    return;
+                }
+
+                LOGGER.info("Indexing [{}] after waiting [{}] ms for its turn", this.book.getInitials(),
+                        start - this.queuedAt);
+                this.book.addIndexStatusListener(this);
+                startIndexing(this.book);
+                if (!this.indexed.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    LOGGER.error("Giving up on [{}], whose index was not built within [{}] ms",
+                            this.book.getInitials(), timeoutMillis);
+                    failed.add(this.book.getInitials());
+                    return;
+                }
+
+                LOGGER.info("Indexing [{}] finished with status [{}] in [{}] ms", new Object[]{
+                        this.book.getInitials(), this.book.getIndexStatus(), System.currentTimeMillis() - start});
+                if (!isIndexed(this.book)) {
+                    failed.add(this.book.getInitials());
+                }
+            } catch (final InterruptedException e) {
+                LOGGER.warn("Interrupted while indexing [{}]", this.book.getInitials());
+                failed.add(this.book.getInitials());
+                Thread.currentThread().interrupt();
+            } catch (final RuntimeException e) {
+                LOGGER.error("Unable to index [" + this.book.getInitials() + "]", e);
+                failed.add(this.book.getInitials());
+            } finally {
+                this.book.removeIndexStatusListener(this);
+                tasks.remove(this.book.getInitials(), this);
+                this.finished.countDown();
+            }
+        }
+
+        @Override
+        public void statusChanged(final IndexStatusEvent ev) {
+            if (this.listener != null) {
+                this.listener.statusChanged(ev);
+            }
+
+            final IndexStatus status = ev.getIndexStatus();
+            if (status != IndexStatus.SCHEDULED && status != IndexStatus.CREATING) {
+                this.indexed.countDown();
+            }
+        }
+    }
+}
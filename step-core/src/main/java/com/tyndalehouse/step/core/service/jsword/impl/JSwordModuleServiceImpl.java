@@ -7,6 +7,7 @@ import com.tyndalehouse.step.core.models.BibleInstaller;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
 import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.ModuleChangeListener;
 import com.tyndalehouse.step.core.utils.JSwordUtils;
 import com.tyndalehouse.step.core.utils.ValidateUtils;
 import org.crosswire.common.progress.JobManager;
@@ -17,10 +18,15 @@ import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.book.BookCategory;
 import org.crosswire.jsword.book.BookFilter;
 import org.crosswire.jsword.book.Books;
+import org.crosswire.jsword.book.BooksEvent;
+import org.crosswire.jsword.book.BooksListener;
 import org.crosswire.jsword.book.install.InstallException;
 import org.crosswire.jsword.book.install.Installer;
 import org.crosswire.jsword.index.IndexManager;
 import org.crosswire.jsword.index.IndexManagerFactory;
+import org.crosswire.jsword.index.IndexStatus;
+import org.crosswire.jsword.index.IndexStatusEvent;
+import org.crosswire.jsword.index.IndexStatusListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +38,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static com.tyndalehouse.step.core.exceptions.UserExceptionType.SERVICE_VALIDATION_ERROR;
 import static com.tyndalehouse.step.core.utils.ValidateUtils.notBlank;
@@ -44,7 +51,6 @@ import static java.lang.String.format;
  */
 @Singleton
 public class JSwordModuleServiceImpl implements JSwordModuleService {
-    private static final int INDEX_WAITING = 1000;
     private static final Logger LOGGER = LoggerFactory.getLogger(JSwordModuleServiceImpl.class);
     private static final String CURRENT_BIBLE_INDEX_JOB = "Creating index. Processing %s";
 
@@ -53,22 +59,35 @@ public class JSwordModuleServiceImpl implements JSwordModuleService {
     private final List<Installer> offlineInstallers;
     private final JSwordVersificationService versificationService;
     private final VersionResolver versionResolver;
+    private final JSwordIndexScheduler indexScheduler;
+    private final List<ModuleChangeListener> moduleChangeListeners = new CopyOnWriteArrayList<ModuleChangeListener>();
+    private final IndexStatusListener indexStatusListener = new IndexStatusListener() {
+        @Override
+        public void statusChanged(final IndexStatusEvent ev) {
+            if (ev.getIndexStatus() == IndexStatus.DONE) {
+                fireModuleChanged(((Book) ev.getSource()).getInitials());
+            }
+        }
+    };
     private boolean offline = false;
 
 
     /**
      * @param installers        a list of installers to use to download books
      * @param offlineInstallers the set of installers to use offline, rather than online
+     * @param indexScheduler    builds the indexes of several modules at once
      */
     @Inject
     public JSwordModuleServiceImpl(@Named("onlineInstallers") final List<Installer> installers,
                                    @Named("offlineInstallers") final List<Installer> offlineInstallers,
                                    final JSwordVersificationService versificationService,
-                                   final VersionResolver versionResolver) {
+                                   final VersionResolver versionResolver,
+                                   final JSwordIndexScheduler indexScheduler) {
         this.bookInstallers = installers;
         this.offlineInstallers = offlineInstallers;
         this.versificationService = versificationService;
         this.versionResolver = versionResolver;
+        this.indexScheduler = indexScheduler;
 
         // add a handler to be notified of all job progresses
         JobManager.addWorkListener(new WorkListener() {
@@ -86,6 +105,19 @@ public class JSwordModuleServiceImpl implements JSwordModuleService {
                         job.getTotalWork()});
             }
         });
+
+        // installations complete asynchronously, so rely on JSword to tell us when books come and go
+        Books.installed().addBooksListener(new BooksListener() {
+            @Override
+            public void bookAdded(final BooksEvent ev) {
+                fireModuleChanged(ev.getBook().getInitials());
+            }
+
+            @Override
+            public void bookRemoved(final BooksEvent ev) {
+                fireModuleChanged(ev.getBook().getInitials());
+            }
+        });
     }
 
     // CHECKSTYLE:OFF
@@ -123,7 +155,7 @@ public class JSwordModuleServiceImpl implements JSwordModuleService {
         final IndexManager indexManager = IndexManagerFactory.getIndexManager();
         final Book book = this.versificationService.getBookFromVersion(initials);
         if (!indexManager.isIndexed(book)) {
-            indexManager.scheduleIndexCreation(book);
+            this.indexScheduler.schedule(book, this.indexStatusListener);
         }
     }
 
@@ -136,7 +168,8 @@ public class JSwordModuleServiceImpl implements JSwordModuleService {
             LOGGER.info("Error deleting index. Attempting to rebuild index all the same");
             LOGGER.trace("Error deleting index. Attempting to rebuild index all the same", e);
         }
-        IndexManagerFactory.getIndexManager().scheduleIndexCreation(book);
+        fireModuleChanged(book.getInitials());
+        this.indexScheduler.scheduleRebuild(book, this.indexStatusListener);
     }
 
 
@@ -243,6 +276,12 @@ public class JSwordModuleServiceImpl implements JSwordModuleService {
             return 1;
         }
 
+        // still waiting for a free indexing thread
+        final String initials = this.versificationService.getBookFromVersion(bookName).getInitials();
+        if (this.indexScheduler.isQueued(initials)) {
+            return 0;
+        }
+
         // not yet installed (or at least wasn't on the lines above, so check job list
         String longVersionName = this.versionResolver.getLongName(bookName);
         final Iterator<Progress> iterator = JobManager.iterator();
@@ -263,6 +302,15 @@ public class JSwordModuleServiceImpl implements JSwordModuleService {
             return 1;
         }
 
+        // handed over to JSword, which has yet to register the job
+        if (this.indexScheduler.isPending(initials)) {
+            return 0;
+        }
+
+        if (this.indexScheduler.hasFailed(initials)) {
+            throw new StepInternalException("Unable to index " + initials);
+        }
+
         throw new StepInternalException(
                 "An unknown error has occurred: the job has disappeared of the job list, "
                         + "but the module is not installed"
@@ -397,18 +445,34 @@ public class JSwordModuleServiceImpl implements JSwordModuleService {
                 // book wasn't found probably
                 LOGGER.warn("Deleting book failed: " + initials, e);
             }
+            fireModuleChanged(book.getInitials());
         }
     }
 
     @Override
     public void waitForIndexes(final String... versions) {
         for (final String s : versions) {
-            while (!this.isIndexed(s)) {
-                try {
-                    Thread.sleep(INDEX_WAITING);
-                } catch (final InterruptedException e) {
-                    LOGGER.warn("Interrupted exception", e);
+            if (this.isIndexed(s)) {
+                continue;
+            }
+
+            // nobody asked for the index, so we ask for it here, rather than wait for ever
+            final Book book = this.versificationService.getBookFromVersion(s);
+            if (!this.indexScheduler.isPending(book.getInitials())) {
+                this.indexScheduler.schedule(book, this.indexStatusListener);
+            }
+
+            try {
+                if (!this.indexScheduler.await(book.getInitials())) {
+                    LOGGER.error("Gave up waiting for [{}] to be indexed", s);
                 }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new StepInternalException("Interrupted while waiting for indexes", e);
+            }
+
+            if (!this.isIndexed(s)) {
+                LOGGER.error("Unable to index [{}]", s);
             }
         }
     }
@@ -420,4 +484,21 @@ public class JSwordModuleServiceImpl implements JSwordModuleService {
 
         return new BibleInstaller(this.bookInstallers.size() - 1, installer.getInstallerName(), false);
     }
+
+    @Override
+    public void addModuleChangeListener(final ModuleChangeListener listener) {
+        this.moduleChangeListeners.add(listener);
+    }
+
+    /**
+     * Tells all listeners that a module has changed
+     *
+     * @param initials the initials of the module
+     */
+    private void fireModuleChanged(final String initials) {
+        LOGGER.debug("Module [{}] has changed", initials);
+        for (final ModuleChangeListener listener : this.moduleChangeListeners) {
+            listener.moduleChanged(initials);
+        }
+    }
 }
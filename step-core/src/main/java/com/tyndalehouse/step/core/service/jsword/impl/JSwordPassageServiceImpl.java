@@ -32,6 +32,7 @@
  ******************************************************************************/
 package com.tyndalehouse.step.core.service.jsword.impl;
 
+import com.tyndalehouse.step.core.data.common.OrdinalRange;
 import com.tyndalehouse.step.core.exceptions.LocalisedException;
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.exceptions.TranslatedException;
@@ -43,6 +44,7 @@ import com.tyndalehouse.step.core.models.OsisWrapper;
 import com.tyndalehouse.step.core.models.StringAndCount;
 import com.tyndalehouse.step.core.service.PassageOptionsValidationService;
 import com.tyndalehouse.step.core.service.VocabularyService;
+import com.tyndalehouse.step.core.service.helpers.InterlinearWordIndexCache;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
 import com.tyndalehouse.step.core.service.impl.MorphologyServiceImpl;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
@@ -55,10 +57,10 @@ import com.tyndalehouse.step.core.xsl.XslConversionType;
 import com.tyndalehouse.step.core.xsl.impl.ColorCoderProviderImpl;
 import com.tyndalehouse.step.core.xsl.impl.InterleavingProviderImpl;
 import com.tyndalehouse.step.core.xsl.impl.MultiInterlinearProviderImpl;
-import org.crosswire.common.xml.Converter;
+import com.tyndalehouse.step.core.xsl.impl.TransformerSAXEventProvider;
+import com.tyndalehouse.step.core.xsl.impl.XslTemplatesCache;
 import org.crosswire.common.xml.JDOMSAXEventProvider;
 import org.crosswire.common.xml.SAXEventProvider;
-import org.crosswire.common.xml.TransformingSAXEventProvider;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.book.BookData;
 import org.crosswire.jsword.book.BookException;
@@ -89,9 +91,6 @@ import org.xml.sax.SAXException;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import javax.xml.transform.TransformerException;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -132,8 +131,10 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
     private final ColorCoderProviderImpl colorCoder;
     private final VersionResolver resolver;
     private final PassageOptionsValidationService optionsValidationService;
+    private final InterlinearWordIndexCache interlinearWordIndexCache;
     private final Book kjvaBook;
     private final Book esvBook;
+    private final XslTemplatesCache templatesCache = new XslTemplatesCache(JSwordPassageServiceImpl.class);
 
     /**
      * constructs the jsword service.
@@ -144,18 +145,21 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
      * @param colorCoder               the service to color code a passage
      * @param resolver                 the resolver
      * @param optionsValidationService
+     * @param interlinearWordIndexCache the words of each chapter, used to build interlinears
      */
     @Inject
     public JSwordPassageServiceImpl(final JSwordVersificationService versificationService,
                                     final MorphologyServiceImpl morphologyProvider, final VocabularyService vocabProvider,
                                     final ColorCoderProviderImpl colorCoder, final VersionResolver resolver,
-                                    final PassageOptionsValidationService optionsValidationService) {
+                                    final PassageOptionsValidationService optionsValidationService,
+                                    final InterlinearWordIndexCache interlinearWordIndexCache) {
         this.versificationService = versificationService;
         this.morphologyProvider = morphologyProvider;
         this.vocabProvider = vocabProvider;
         this.colorCoder = colorCoder;
         this.resolver = resolver;
         this.optionsValidationService = optionsValidationService;
+        this.interlinearWordIndexCache = interlinearWordIndexCache;
 
         kjvaBook = Books.installed().getBook("KJVA");
         esvBook = Books.installed().getBook(JSwordPassageService.REFERENCE_BOOK);
@@ -794,7 +798,7 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
             key = normalize(key, versification);
             final SAXEventProvider osissep = bookData.getSAXEventProvider();
 
-            final TransformingSAXEventProvider htmlsep = executeStyleSheet(versification, options, interlinearVersion,
+            final TransformerSAXEventProvider htmlsep = executeStyleSheet(versification, options, interlinearVersion,
                     bookData, osissep, displayMode);
 
             final OsisWrapper osisWrapper = new OsisWrapper(writeToString(htmlsep), key,
@@ -845,8 +849,6 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
             throw new LocalisedException(e, e.getMessage());
         } catch (final SAXException e) {
             throw new StepInternalException(e.getMessage(), e);
-        } catch (final TransformerException e) {
-            throw new StepInternalException(e.getMessage(), e);
         } catch (final NoSuchKeyException e) {
             throw new TranslatedException(e, "invalid_reference_in_book", bookData.getKey().getName(), book.getInitials());
         }
@@ -859,7 +861,7 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
      * @param mode     the mode of interlinear used
      * @param htmlsep  the transformer
      */
-    private String[] getLanguages(final Book mainBook, final InterlinearMode mode, final TransformingSAXEventProvider htmlsep, List<LookupOption> options) {
+    private String[] getLanguages(final Book mainBook, final InterlinearMode mode, final TransformerSAXEventProvider htmlsep, List<LookupOption> options) {
         if (mode == InterlinearMode.INTERLINEAR) {
             return getLanguagesForInterlinear(mainBook, htmlsep);
         } else {
@@ -873,7 +875,7 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
      * @param htmlsep the transformer
      * @return the list of language codes
      */
-    private String[] getLanguagesForInterleaved(final Book mainBook, final TransformingSAXEventProvider htmlsep) {
+    private String[] getLanguagesForInterleaved(final Book mainBook, final TransformerSAXEventProvider htmlsep) {
         final InterleavingProviderImpl interleavingProvider = (InterleavingProviderImpl) htmlsep.getParameter("interleavingProvider");
         if (interleavingProvider == null) {
             return new String[]{mainBook.getLanguage().getCode()};
@@ -894,7 +896,7 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
      * @param transformer the transforer
      * @return the array of languages
      */
-    private String[] getLanguagesForInterlinear(final Book mainBook, final TransformingSAXEventProvider transformer) {
+    private String[] getLanguagesForInterlinear(final Book mainBook, final TransformerSAXEventProvider transformer) {
         final String interlinearVersion = (String) transformer.getParameter("interlinearVersion");
         final String[] versions = StringUtils.split(interlinearVersion, ", ?");
         final String[] totalVersions = new String[versions.length + 1];
@@ -947,7 +949,7 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
         try {
             setUnaccenter(data, displayMode);
 
-            final TransformingSAXEventProvider transformer = executeStyleSheet(v11n, options, null, data,
+            final TransformerSAXEventProvider transformer = executeStyleSheet(v11n, options, null, data,
                     data.getSAXEventProvider(), displayMode);
 
             String[] languages = new String[books.length];
@@ -960,8 +962,6 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
                     languages, v11n, resolver.getShortName(versions[0]), displayMode,
                     StringUtils.join(versions, 1)
             );
-        } catch (final TransformerException e) {
-            throw new StepInternalException(e.getMessage(), e);
         } catch (final SAXException e) {
             throw new StepInternalException(e.getMessage(), e);
         } catch (final BookException e) {
@@ -1161,42 +1161,27 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
      * @param bookData            the book data, containing book and reference
      * @param osissep             the XML SAX provider
      * @param displayMode         the display mode
-     * @return a Transforming SAX event provider, from which can be transformed into HTML
-     * @throws TransformerException an exception in the stylesheet that is being executed
+     * @return a SAX event provider, from which can be transformed into HTML
      */
-    private TransformingSAXEventProvider executeStyleSheet(
+    private TransformerSAXEventProvider executeStyleSheet(
             final Versification masterVersification,
             final List<LookupOption> options,
             final String interlinearVersion, final BookData bookData, final SAXEventProvider osissep,
-            final InterlinearMode displayMode) throws TransformerException {
+            final InterlinearMode displayMode) {
         final XslConversionType requiredTransformation = identifyStyleSheet(options, displayMode);
-
-        return (TransformingSAXEventProvider) new Converter() {
-            @Override
-            public SAXEventProvider convert(final SAXEventProvider provider) throws TransformerException {
-                try {
-                    final String file = requiredTransformation.getFile();
-                    final URI resourceURI = getClass().getResource(file).toURI();
-
-                    final TransformingSAXEventProvider tsep = new TransformingSAXEventProvider(resourceURI,
-                            osissep);
-
-                    // set parameters here
-                    setOptions(tsep, options, bookData.getBooks());
-                    setInterlinearOptions(tsep,
-                            bookData.getBooks()[0].getInitials(),
-                            masterVersification,
-                            getInterlinearVersion(interlinearVersion),
-                            bookData.getKey()
-                                    .getOsisID(), displayMode, bookData.getKey(), options);
-                    setInterleavingOptions(tsep, displayMode, bookData);
-                    return tsep;
-                } catch (final URISyntaxException e) {
-                    throw new StepInternalException("Failed to load resource correctly", e);
-                }
-            }
-        }.convert(osissep);
-
+        final TransformerSAXEventProvider tsep = new TransformerSAXEventProvider(
+                this.templatesCache.newTransformer(requiredTransformation), osissep);
+
+        // set parameters here
+        setOptions(tsep, options, bookData.getBooks());
+        setInterlinearOptions(tsep,
+                bookData.getBooks()[0].getInitials(),
+                masterVersification,
+                getInterlinearVersion(interlinearVersion),
+                bookData.getKey()
+                        .getOsisID(), displayMode, bookData.getKey(), options);
+        setInterleavingOptions(tsep, displayMode, bookData);
+        return tsep;
     }
 
     /**
@@ -1244,7 +1229,7 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
      * @param key                 the key to the passage
      * @param options             the list of options to be applied (used to determine accenting
      */
-    private MultiInterlinearProvider setInterlinearOptions(final TransformingSAXEventProvider tsep,
+    private MultiInterlinearProvider setInterlinearOptions(final TransformerSAXEventProvider tsep,
                                                            final String masterVersion,
                                                            final Versification masterVersification,
                                                            final String interlinearVersion,
@@ -1281,7 +1266,7 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
             }
 
             final MultiInterlinearProviderImpl multiInterlinear = new MultiInterlinearProviderImpl(masterVersion, masterVersification,
-                    interlinearVersion, reference, this.versificationService, this.vocabProvider, stripGreekAccents, stripHebrewAccents, stripVowels);
+                    interlinearVersion, reference, this.versificationService, this.interlinearWordIndexCache, this.vocabProvider, stripGreekAccents, stripHebrewAccents, stripVowels);
             tsep.setParameter("interlinearProvider", multiInterlinear);
             return multiInterlinear;
         }
@@ -1295,7 +1280,7 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
      * @param bookData    the book data object containing the list of books we are interested in.
      * @param displayMode the display mode that we are interested in
      */
-    private void setInterleavingOptions(final TransformingSAXEventProvider tsep,
+    private void setInterleavingOptions(final TransformerSAXEventProvider tsep,
                                         final InterlinearMode displayMode, final BookData bookData) {
         // so long as we're not NONE or INTERLINEAR, we almost always need an InterlinearProvider
         final Book[] books = bookData.getBooks();
@@ -1329,7 +1314,7 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
      * @param options the options available
      * @param books   the version to initialise a potential interlinear with
      */
-    protected void setOptions(final TransformingSAXEventProvider tsep, final List<LookupOption> options,
+    protected void setOptions(final TransformerSAXEventProvider tsep, final List<LookupOption> options,
                               final Book[] books) {
         final boolean isHebrew = JSwordUtils.isAncientHebrewBook(books);
         final boolean isGreek = JSwordUtils.isAncientGreekBook(books);
@@ -1430,6 +1415,23 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
         }
     }
 
+    @Override
+    public List<OrdinalRange> getOrdinalRanges(final String references, final String version) {
+        final Versification av11n = this.versificationService.getVersificationForVersion(version);
+        try {
+            final Passage passage = KeyUtil.getPassage(PassageKeyFactory.instance().getKey(av11n, references));
+            final List<OrdinalRange> ranges = new ArrayList<OrdinalRange>(passage.countRanges(RestrictionType.NONE));
+            final Iterator<VerseRange> iterator = passage.rangeIterator(RestrictionType.NONE);
+            while (iterator.hasNext()) {
+                final VerseRange range = iterator.next();
+                ranges.add(new OrdinalRange(range.getStart().getOrdinal(), range.getEnd().getOrdinal()));
+            }
+            return ranges;
+        } catch (final NoSuchKeyException e) {
+            throw new TranslatedException(e, "invalid_reference_in_book", references, version);
+        }
+    }
+
 
     /**
      * sanitizes the strings, removing leading commas and spaces
@@ -37,7 +37,20 @@ import java.util.*;
 import java.util.Map.Entry;
 import java.util.regex.Pattern;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 import com.tyndalehouse.step.core.exceptions.LuceneSearchException;
@@ -56,7 +69,6 @@ import org.crosswire.jsword.index.search.DefaultSearchRequest;
 import org.crosswire.jsword.passage.*;
 import org.crosswire.jsword.passage.PassageTally.Order;
 import org.crosswire.jsword.versification.Versification;
-import org.crosswire.jsword.versification.VersificationsMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,11 +78,17 @@ import com.tyndalehouse.step.core.models.OsisWrapper;
 import com.tyndalehouse.step.core.models.search.SearchEntry;
 import com.tyndalehouse.step.core.models.search.SearchResult;
 import com.tyndalehouse.step.core.models.search.VerseSearchEntry;
+import com.tyndalehouse.step.core.service.helpers.SearchResultCache;
 import com.tyndalehouse.step.core.service.impl.IndividualSearch;
 import com.tyndalehouse.step.core.service.impl.SearchQuery;
+import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.ModuleChangeListener;
+import com.tyndalehouse.step.core.service.jsword.helpers.OrderedVerses;
+import com.tyndalehouse.step.core.service.jsword.helpers.VerseBitSet;
+import com.tyndalehouse.step.core.utils.cache.BoundedCache;
 
 /**
  * API to search across the data
@@ -78,25 +96,99 @@ import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
  * @author chrisburrell
  */
 @Singleton
-public class JSwordSearchServiceImpl implements JSwordSearchService {
+public class JSwordSearchServiceImpl implements JSwordSearchService, ModuleChangeListener {
     private static final Logger LOGGER = LoggerFactory.getLogger(JSwordSearchServiceImpl.class);
     private static final int MAX_RESULTS = 50000;
     private static final Pattern GEN_REV_RANGE = Pattern.compile("(\\+)\\[Gen-Rev\\]");
+    private static final int DEFAULT_SEARCH_THREADS = 4;
+    private static final long DEFAULT_SEARCH_TIMEOUT_MILLIS = 30000;
+    private static final int QUEUED_SEARCHES_PER_THREAD = 8;
+    private static final long DEFAULT_PAGE_CACHE_MAX_BYTES = 16 * 1024 * 1024;
     private final JSwordVersificationService av11nService;
     private final JSwordMetadataService metadataService;
     private final JSwordPassageService jsword;
+    private final ExecutorService searchExecutor;
+    private final long searchTimeoutMillis;
+    private final BoundedCache<String, OrderedVerses> orderedResults;
+
+    /**
+     * @param av11nService  the versification service
+     * @param jsword        the jsword lookup service to retrieve the references
+     * @param moduleService the module service, which notifies us of changes to modules
+     */
+    public JSwordSearchServiceImpl(final JSwordVersificationService av11nService,
+                                   final JSwordMetadataService metadataService,
+                                   final JSwordPassageService jsword,
+                                   final JSwordModuleService moduleService) {
+        this(av11nService, metadataService, jsword, moduleService, DEFAULT_SEARCH_THREADS,
+                DEFAULT_SEARCH_TIMEOUT_MILLIS, DEFAULT_PAGE_CACHE_MAX_BYTES);
+    }
 
     /**
-     * @param av11nService the versification service
-     * @param jsword       the jsword lookup service to retrieve the references
+     * @param av11nService        the versification service
+     * @param metadataService     the metadata service
+     * @param jsword              the jsword lookup service to retrieve the references
+     * @param moduleService       the module service, which notifies us of changes to modules
+     * @param searchThreads       the number of threads searching versions concurrently
+     * @param searchTimeoutMillis the time allowed for all the versions of a search to return
+     * @param pageCacheMaxBytes   approximate upper bound on the memory taken by results being paged through
      */
     @Inject
     public JSwordSearchServiceImpl(final JSwordVersificationService av11nService,
                                    final JSwordMetadataService metadataService,
-                                   final JSwordPassageService jsword) {
+                                   final JSwordPassageService jsword,
+                                   final JSwordModuleService moduleService,
+                                   @Named("app.search.threads") final int searchThreads,
+                                   @Named("app.search.timeoutMillis") final long searchTimeoutMillis,
+                                   @Named("app.cache.searchPages.maxBytes") final long pageCacheMaxBytes) {
         this.av11nService = av11nService;
         this.metadataService = metadataService;
         this.jsword = jsword;
+        this.searchTimeoutMillis = searchTimeoutMillis;
+        this.searchExecutor = createSearchExecutor(Math.max(1, searchThreads));
+        this.orderedResults = new BoundedCache<String, OrderedVerses>(pageCacheMaxBytes,
+                new BoundedCache.Weigher<OrderedVerses>() {
+                    @Override
+                    public long weigh(final OrderedVerses value) {
+                        return 64 + 4L * value.size();
+                    }
+                });
+        moduleService.addModuleChangeListener(this);
+    }
+
+    @Override
+    public void moduleChanged(final String initials) {
+        LOGGER.debug("Clearing ordered search results following change to [{}]", initials);
+        this.orderedResults.invalidateAll();
+    }
+
+    /**
+     * Creates the pool that searches individual versions. Its threads are daemons, so that they never hold up
+     * the shutdown of the application. Searches are rejected if the queue is full, rather than run on the request
+     * thread without a deadline.
+     *
+     * @param threads the maximum number of threads
+     * @return the executor
+     */
+    private static ExecutorService createSearchExecutor(final int threads) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(threads * QUEUED_SEARCHES_PER_THREAD), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "step-search-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public void close() {
+        this.searchExecutor.shutdownNow();
+    }
 
     }
 
@@ -113,10 +205,6 @@ public class JSwordSearchServiceImpl implements JSwordSearchService {
     @Override
     public Key searchKeys(final SearchQuery sq) {
         final DefaultSearchModifier modifier = new DefaultSearchModifier();
-
-        // we have a linked hashmap, because we want to preserve the order of the versions we're looking up
-        // this was we end up with the results in the correct versification
-        final Map<String, Key> resultsPerVersion = new LinkedHashMap<String, Key>();
         modifier.setRanked(sq.isRanked());
 
         // need to set to something sensible, other we may experience a
@@ -126,10 +214,8 @@ public class JSwordSearchServiceImpl implements JSwordSearchService {
         final IndividualSearch currentSearch = sq.getCurrentSearch();
         final boolean searchOnTaggedText = currentSearch.getType().isOriginalSearch();
         
-        
-        boolean searchExecuted = false;
+        final List<Book> bibles = new ArrayList<Book>(currentSearch.getVersions().length);
         for (final String version : currentSearch.getVersions()) {
-            // now for each version, we do the search and store it in a map
             final Book bible = this.av11nService.getBookFromVersion(version);
         
             //if we're looking at only running searches on tagged texts, then we skip those 
@@ -141,41 +227,138 @@ public class JSwordSearchServiceImpl implements JSwordSearchService {
                     continue;
                 }
             }
-
-            doSearch(modifier, resultsPerVersion, currentSearch, bible);
-            searchExecuted = true;
+            bibles.add(bible);
         }
         
-        if(searchOnTaggedText && !searchExecuted) {
-            Book bible = this.av11nService.getBookFromVersion(JSwordPassageService.REFERENCE_BOOK);
-            doSearch(modifier, resultsPerVersion, currentSearch, bible);
+        if(searchOnTaggedText && bibles.isEmpty()) {
+            bibles.add(this.av11nService.getBookFromVersion(JSwordPassageService.REFERENCE_BOOK));
         }
 
         // we then need to merge the keys together
         // otherwise, we are into the realm of searching across multiple versions
         // no need to rank, since it won't be possible to rank accurately across versions
-        return mergeSearches(resultsPerVersion);
+        return mergeSearches(searchAllVersions(sq, modifier, currentSearch, bibles));
     }
 
-    private void doSearch(final DefaultSearchModifier modifier, final Map<String, Key> resultsPerVersion, 
-                          final IndividualSearch currentSearch, final Book bible) {
+    /**
+     * Searches each of the versions concurrently. Versions that have not returned by the deadline, or that could
+     * not be queued because too many searches are waiting, are given empty results and the search query is marked
+     * as partial. Late searches are left to finish and their results
+     * thrown away: interrupting a thread while Lucene reads from a FileChannel closes the channel shared by the
+     * searcher, breaking all later searches on that version.
+     *
+     * @param sq            the search query
+     * @param modifier      the search modifier
+     * @param currentSearch the current search
+     * @param bibles        the versions to search
+     * @return the results of each version, in the same order as the versions
+     */
+    private Map<String, Key> searchAllVersions(final SearchQuery sq, final DefaultSearchModifier modifier,
+                                               final IndividualSearch currentSearch, final List<Book> bibles) {
+        // we have a linked hashmap, because we want to preserve the order of the versions we're looking up
+        // this was we end up with the results in the correct versification
+        final Map<String, Key> resultsPerVersion = new LinkedHashMap<String, Key>();
+        if (bibles.size() == 1) {
+            final Book bible = bibles.get(0);
+            resultsPerVersion.put(bible.getInitials(), doSearch(modifier, currentSearch, bible));
+            return resultsPerVersion;
+        }
+
+        final List<Future<Key>> searches = new ArrayList<Future<Key>>(bibles.size());
+        for (final Book bible : bibles) {
+            try {
+                searches.add(this.searchExecutor.submit(new Callable<Key>() {
+                    @Override
+                    public Key call() {
+                        return doSearch(modifier, currentSearch, bible);
+                    }
+                }));
+            } catch (final RejectedExecutionException ex) {
+                LOGGER.warn("Search for [{}] in [{}] was rejected as too many searches are queued",
+                        currentSearch.getQuery(), bible.getInitials());
+                searches.add(null);
+            }
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.searchTimeoutMillis);
+        try {
+            for (int ii = 0; ii < bibles.size(); ii++) {
+                final Book bible = bibles.get(ii);
+                final Future<Key> search = searches.get(ii);
+                if (search == null) {
+                    sq.setPartial(true);
+                    resultsPerVersion.put(bible.getInitials(), getEmptyKey(bible));
+                    continue;
+                }
+
+                try {
+                    resultsPerVersion.put(bible.getInitials(),
+                            search.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } catch (final TimeoutException ex) {
+                    search.cancel(false);
+                    LOGGER.warn("Search for [{}] in [{}] did not complete in time", currentSearch.getQuery(),
+                            bible.getInitials());
+                    sq.setPartial(true);
+                    resultsPerVersion.put(bible.getInitials(), getEmptyKey(bible));
+                }
+            }
+        } catch (final InterruptedException ex) {
+            cancelAll(searches);
+            Thread.currentThread().interrupt();
+            throw new LuceneSearchException("Interrupted while searching for " + currentSearch.getQuery(), ex);
+        } catch (final ExecutionException ex) {
+            cancelAll(searches);
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new LuceneSearchException("Unable to search for " + currentSearch.getQuery(), ex.getCause());
+        }
+        return resultsPerVersion;
+    }
+
+    /**
+     * @param searches the searches to cancel, some of which may never have been queued
+     */
+    private void cancelAll(final List<Future<Key>> searches) {
+        for (final Future<Key> search : searches) {
+            if (search != null) {
+                search.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * @param bible the bible
+     * @return an empty key in the versification of the bible
+     */
+    private Key getEmptyKey(final Book bible) {
+        return PassageKeyFactory.instance().createEmptyKeyList(this.av11nService.getVersificationForVersion(bible));
+    }
+
+    /**
+     * Searches a single version
+     *
+     * @param modifier      the search modifier
+     * @param currentSearch the current search
+     * @param bible         the version to search
+     * @return the results of the search
+     */
+    Key doSearch(final DefaultSearchModifier modifier, final IndividualSearch currentSearch,
+                         final Book bible) {
         String version = bible.getInitials();
         if (bible.getIndexStatus().equals(IndexStatus.DONE)) {
-            final Key luceneSearchResults;
             try {
                 String query = currentSearch.getQuery();
                 //small optimization and cater for versions that don't support Gen-Rev as a range:
                 query = GEN_REV_RANGE.matcher(query).replaceAll("");
-                luceneSearchResults = bible.find(new DefaultSearchRequest(query, modifier));
+                return bible.find(new DefaultSearchRequest(query, modifier));
             } catch (final BookException e) {
                 throw new LuceneSearchException("Unable to search for " + currentSearch.getQuery()
                         + " with Bible " + version, e);
             }
-
-            resultsPerVersion.put(version, luceneSearchResults);
         } else {
             LOGGER.error("Module [{}] is not indexed.", version);
-            resultsPerVersion.put(version, PassageKeyFactory.instance().createEmptyKeyList(av11nService.getVersificationForVersion(bible)));
+            return getEmptyKey(bible);
         }
     }
 
@@ -188,6 +371,7 @@ public class JSwordSearchServiceImpl implements JSwordSearchService {
     private Key mergeSearches(final Map<String, Key> resultsPerVersion) {
         Key all = null;
         Versification allVersification = null;
+        VerseBitSet allVerses = null;
 
         for (final Entry<String, Key> entry : resultsPerVersion.entrySet()) {
             final Key value = entry.getValue();
@@ -199,6 +383,12 @@ public class JSwordSearchServiceImpl implements JSwordSearchService {
                 if(all instanceof VerseKey) {
                     allVersification = ((VerseKey) all).getVersification();
                 }
+            } else if (all instanceof VerseKey && !(all instanceof PassageTally)) {
+                // plain sets of verses are unioned as bitsets, in the versification of the first version
+                if (allVerses == null) {
+                    allVerses = VerseBitSet.fromKey(all);
+                }
+                allVerses.or(VerseBitSet.fromKey(value, allVersification));
             } else {
                 boolean valueIsVerseKey = value instanceof VerseKey;
                 if(valueIsVerseKey && allVersification == null) {
@@ -208,18 +398,17 @@ public class JSwordSearchServiceImpl implements JSwordSearchService {
                 //i.e. and allVersification != null
                 Key convertedKey = value;
                 if(valueIsVerseKey) {
-                    final VerseKey versifiedResults = (VerseKey) value;
-                    final Passage versifiedPassageResults = KeyUtil.getPassage(versifiedResults);
-                    convertedKey = VersificationsMapper.instance().map(versifiedPassageResults, allVersification);
+                    convertedKey = VerseBitSet.fromKey(value, allVersification).toPassage();
                 }
 
                 all.addAll(convertedKey);
             }
-            LOGGER.debug("Combined result-set has [{}] entries", all.getCardinality());
+            LOGGER.debug("Combined result-set has [{}] entries", allVerses != null ? allVerses.cardinality() : all.getCardinality());
         }
 
-        return all;
+        return allVerses != null ? allVerses.toPassage() : all;
     }
+
     @Override
     public SearchResult search(final SearchQuery sq, final String version,  
                                final LookupOption... options) {
@@ -356,35 +545,48 @@ public class JSwordSearchServiceImpl implements JSwordSearchService {
         final Passage passage = (Passage) results;
         if (!sq.isAllKeys()) {
             // we need the first pageNumber*PAGE_SIZE results, so remove anything beyond that.
-            return getPage(sq.getPageNumber(), sq.getPageSize(), passage);
+            return getPage(sq, passage);
         }
         return results;
     }
 
     /**
-     * @param pageNumber the page number, 1 indexed
-     * @param pageSize the size of the page
-     * @param passage the passage we want to trim down
-     * @return the new results
+     * Gets the requested page of results. The first page is obtained without ordering all of the results. Later
+     * pages order all the results once, and keep them so that further pages of the same search are a slice of them.
+     *
+     * @param sq      the search query, giving the page number and page size
+     * @param passage the results
+     * @return the results on the requested page
      */
-    private Passage getPage(final int pageNumber, final int pageSize, final Passage passage) {
-        Passage results = (Passage) PassageKeyFactory.instance().createEmptyKeyList(passage.getVersification());
-        Iterator<Key> verses = passage.iterator();
-        
-        //page 1 = 1-60
-        //page 2 = 61-120
-        int from = (pageNumber-1) * pageSize + 1;
-        int to = from + pageSize - 1;
-        int currentCount = 1;
-        while(verses.hasNext()) {
-            final Key verse = verses.next();
-            if(currentCount >= from && currentCount <= to) {
-                results.addAll(verse);
-            }
-            currentCount++;
+    private Passage getPage(final SearchQuery sq, final Passage passage) {
+        //page 1 = 0-59
+        //page 2 = 60-119
+        final int from = (sq.getPageNumber() - 1) * sq.getPageSize();
+        if (sq.getPageNumber() <= 1) {
+            return OrderedVerses.getPage(passage, from, sq.getPageSize(), sq.isRanked());
         }
-        
-        return results;
+
+        final String cacheKey = getOrderedResultsKey(sq, passage);
+        OrderedVerses ordered = this.orderedResults.get(cacheKey);
+        if (ordered == null) {
+            ordered = OrderedVerses.of(passage, sq.isRanked());
+            this.orderedResults.put(cacheKey, ordered);
+        }
+        return ordered.getPage(from, sq.getPageSize());
+    }
+
+    /**
+     * The key identifying the results of a search, across the pages of that search. This is the key of the search in
+     * the {@link SearchResultCache}, so it covers the versions, ranges and filters of each search, along with the
+     * versification and size of the results.
+     *
+     * @param sq      the search query
+     * @param passage the results
+     * @return the key
+     */
+    static String getOrderedResultsKey(final SearchQuery sq, final Passage passage) {
+        return SearchResultCache.getKey(sq) + '|' + passage.getVersification().getName() + '|'
+                + passage.getCardinality();
     }
 
     /**
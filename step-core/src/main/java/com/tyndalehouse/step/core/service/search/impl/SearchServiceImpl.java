@@ -63,7 +63,9 @@ import com.tyndalehouse.step.core.service.LexiconDefinitionService;
 import com.tyndalehouse.step.core.service.SearchService;
 import com.tyndalehouse.step.core.service.StrongAugmentationService;
 import com.tyndalehouse.step.core.service.TimelineService;
+import com.tyndalehouse.step.core.service.helpers.CachedSearch;
 import com.tyndalehouse.step.core.service.helpers.GlossComparator;
+import com.tyndalehouse.step.core.service.helpers.SearchResultCache;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
 import com.tyndalehouse.step.core.service.impl.AbortQueryException;
 import com.tyndalehouse.step.core.service.impl.IndividualSearch;
@@ -73,6 +75,7 @@ import com.tyndalehouse.step.core.service.jsword.JSwordMetadataService;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.helpers.VerseBitSet;
 import com.tyndalehouse.step.core.service.search.SubjectSearchService;
 import com.tyndalehouse.step.core.utils.StringConversionUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
@@ -86,7 +89,6 @@ import org.apache.lucene.util.Version;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.passage.*;
 import org.crosswire.jsword.versification.Versification;
-import org.crosswire.jsword.versification.VersificationsMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -145,6 +147,7 @@ public class SearchServiceImpl implements SearchService {
     private final SubjectSearchService subjects;
     private final BibleInformationService bibleInfoService;
     private final StrongAugmentationService strongAugmentationService;
+    private final SearchResultCache searchResults;
     private VersionResolver versionResolver;
     private LexiconDefinitionService lexiconDefinitionService;
     private JSwordRelatedVersesService relatedVerseService;
@@ -157,6 +160,7 @@ public class SearchServiceImpl implements SearchService {
      * @param entityManager             the manager for all entities stored in lucene
      * @param relatedVerseService       the related verse service
      * @param strongAugmentationService the service to deal with augmentation of strong numbers
+     * @param searchResults             the cache of recent searches, used when paging through results
      */
     @Inject
     public SearchServiceImpl(final JSwordSearchService jswordSearch,
@@ -168,7 +172,8 @@ public class SearchServiceImpl implements SearchService {
                              final VersionResolver versionResolver,
                              final LexiconDefinitionService lexiconDefinitionService,
                              final JSwordRelatedVersesService relatedVerseService,
-                             final StrongAugmentationService strongAugmentationService) {
+                             final StrongAugmentationService strongAugmentationService,
+                             final SearchResultCache searchResults) {
         this.jswordSearch = jswordSearch;
         this.jswordMetadata = jswordMetadata;
         this.versificationService = versificationService;
@@ -179,6 +184,7 @@ public class SearchServiceImpl implements SearchService {
         this.lexiconDefinitionService = lexiconDefinitionService;
         this.relatedVerseService = relatedVerseService;
         this.strongAugmentationService = strongAugmentationService;
+        this.searchResults = searchResults;
         this.definitions = entityManager.getReader("definition");
         this.specificForms = entityManager.getReader("specificForm");
         this.timelineEvents = entityManager.getReader("timelineEvent");
@@ -560,6 +566,13 @@ public class SearchServiceImpl implements SearchService {
     private SearchResult doSearch(final SearchQuery sq) {
         final long start = System.currentTimeMillis();
 
+        // a search we have run recently only needs the passages for the requested page
+        final String cacheKey = SearchResultCache.getKey(sq);
+        final CachedSearch cached = this.searchResults.get(cacheKey);
+        if (cached != null) {
+            return completeResult(sq, getSearchResultFromCache(sq, cached), cached.getSearchType(), start);
+        }
+
         SearchResult result;
         // if we've only got one search, we want to retrieve the keys, the page, etc. all in one go
         try {
@@ -580,11 +593,32 @@ public class SearchServiceImpl implements SearchService {
         // join the keys
         // return the results
 
-        result.setSearchType(getBestSearchType(sq));
+        final SearchType searchType = getBestSearchType(sq);
+        if (sq.getUnpagedResults() != null && !sq.isPartial()) {
+            this.searchResults.put(cacheKey, new CachedSearch(sq.getUnpagedResults(),
+                    sq.getCurrentSearch().getVersions(), sq.isAllKeys(), searchType, sq.getDefinitions(),
+                    result.getDefinitions(), result.getStrongHighlights()));
+        }
+        return completeResult(sq, result, searchType, start);
+    }
+
+    /**
+     * Sets up the parts of the result that are common to all searches
+     *
+     * @param sq         the search query
+     * @param result     the result
+     * @param searchType the type of search reported to the user
+     * @param start      the time at which the search started
+     * @return the completed result
+     */
+    private SearchResult completeResult(final SearchQuery sq, final SearchResult result,
+                                        final SearchType searchType, final long start) {
+        result.setSearchType(searchType);
         result.setPageSize(sq.getPageSize());
         result.setPageNumber(sq.getPageNumber());
         result.setTimeTookTotal(System.currentTimeMillis() - start);
         result.setQuery(sq.getOriginalQuery());
+        result.setPartial(sq.isPartial());
         setBestRestriction(sq, result);
         final String[] allVersions = sq.getCurrentSearch().getVersions();
         result.setMasterVersion(this.versionResolver.getShortName(allVersions[0]));
@@ -594,6 +628,26 @@ public class SearchServiceImpl implements SearchService {
         return result;
     }
 
+    /**
+     * Rebuilds the result of a search from the cached verses, only retrieving the passages for the requested page
+     *
+     * @param sq     the search query
+     * @param cached the outcome of the same search, run earlier
+     * @return the search result
+     */
+    private SearchResult getSearchResultFromCache(final SearchQuery sq, final CachedSearch cached) {
+        sq.setAllKeys(cached.isAllKeys());
+        sq.setDefinitions(cached.getQueryDefinitions());
+
+        final Key results = cached.getResults();
+        final SearchResult result = this.jswordSearch.getResultsFromTrimmedKeys(sq, cached.getVersions(),
+                results.getCardinality(), this.jswordSearch.rankAndTrimResults(sq, results));
+        result.setTotal(this.jswordSearch.getTotal(results));
+        result.setDefinitions(cached.getDefinitions());
+        result.setStrongHighlights(cached.getStrongHighlights());
+        return result;
+    }
+
     private SearchType getBestSearchType(final SearchQuery sq) {
         IndividualSearch[] searches = sq.getSearches();
         for (IndividualSearch s : searches) {
@@ -886,48 +940,74 @@ public class SearchServiceImpl implements SearchService {
      */
     private Key runJoiningSearches(final SearchQuery sq) {
         Key results = null;
+        VerseBitSet verses = null;
         do {
+            final Key searchKeys;
             switch (sq.getCurrentSearch().getType()) {
                 case TEXT:
-                    results = intersect(results, this.jswordSearch.searchKeys(sq));
+                    searchKeys = this.jswordSearch.searchKeys(sq);
                     break;
                 case ORIGINAL_GREEK_FORMS:
                 case ORIGINAL_HEBREW_FORMS:
                     adaptQueryForStrongSearch(sq);
-                    results = intersect(results, this.jswordSearch.searchKeys(sq));
+                    searchKeys = this.jswordSearch.searchKeys(sq);
                     break;
                 case ORIGINAL_GREEK_RELATED:
                 case ORIGINAL_HEBREW_RELATED:
                     Set<String> strongs = adaptQueryForRelatedStrongSearch(sq);
-                    results = intersect(results, this.runStrongTextSearchKeys(sq, strongs));
+                    searchKeys = this.runStrongTextSearchKeys(sq, strongs);
                     break;
                 case ORIGINAL_MEANING:
                     adaptQueryForMeaningSearch(sq);
-                    results = intersect(results, this.jswordSearch.searchKeys(sq));
+                    searchKeys = this.jswordSearch.searchKeys(sq);
                     break;
                 case EXACT_FORM:
-                    results = intersect(results, getKeysFromOriginalText(sq));
+                    searchKeys = getKeysFromOriginalText(sq);
                     break;
                 case SUBJECT_SIMPLE:
                 case SUBJECT_EXTENDED:
                 case SUBJECT_FULL:
                     sq.getCurrentSearch().setType(SearchType.SUBJECT_FULL);
                     sq.getCurrentSearch().setQuery(sq.getCurrentSearch().getOriginalQuery());
-                    results = intersect(results, this.subjects.getKeys(sq));
+                    searchKeys = this.subjects.getKeys(sq);
                     break;
                 case SUBJECT_RELATED:
                     //no override for related topic searches
-                    results = intersect(results, this.subjects.getKeys(sq));
+                    searchKeys = this.subjects.getKeys(sq);
                     break;
                 case RELATED_VERSES:
-                    results = intersect(results, this.relatedVerseService.getRelatedVerses(sq.getCurrentSearch().getVersions()[0], sq.getCurrentSearch().getQuery()));
+                    searchKeys = this.relatedVerseService.getRelatedVerses(sq.getCurrentSearch().getVersions()[0], sq.getCurrentSearch().getQuery());
                     break;
                 default:
                     throw new TranslatedException("refinement_not_supported", sq.getOriginalQuery(), sq
                             .getCurrentSearch().getType().getLanguageKey());
             }
+
+            // verse sets are intersected as bitsets, only going back to a key at the very end
+            if (results == null) {
+                results = searchKeys;
+            } else if ((verses != null || isVerseSet(results)) && (searchKeys == null || searchKeys instanceof VerseKey)) {
+                if (verses == null) {
+                    verses = VerseBitSet.fromKey(results);
+                }
+                verses.and(VerseBitSet.fromKey(searchKeys, verses.getVersification()));
+            } else {
+                if (verses != null) {
+                    results = verses.toPassage();
+                    verses = null;
+                }
+                results = intersect(results, searchKeys);
+            }
         } while (sq.hasMoreSearches());
-        return results;
+        return verses != null ? verses.toPassage() : results;
+    }
+
+    /**
+     * @param key the key
+     * @return true if the key is a plain set of verses, i.e. not one where the ranking of the verses matters
+     */
+    private boolean isVerseSet(final Key key) {
+        return key instanceof VerseKey && !(key instanceof PassageTally);
     }
 
     /**
@@ -1048,7 +1128,9 @@ public class SearchServiceImpl implements SearchService {
         final String[] versions = is.getVersions();
 
         if (versions.length == 1) {
-            return this.jswordSearch.search(sq, versions[0]);
+            final Key results = this.jswordSearch.searchKeys(sq);
+            sq.setUnpagedResults(results);
+            return this.jswordSearch.retrieveResultsFromKeys(sq, results, versions[0]);
         }
 
         // build combined results
@@ -1499,7 +1581,7 @@ public class SearchServiceImpl implements SearchService {
             throw new TranslatedException(e, "search_invalid");
         }
 
-        final EntityDoc[] results = this.definitions.search(parsed);
+        final EntityDoc[] results = this.definitions.search(parsed, STRONG_NUMBER_FIELD);
 
         final Set<String> matchedStrongs = new HashSet<String>();
         for (final EntityDoc d : results) {
@@ -1567,7 +1649,7 @@ public class SearchServiceImpl implements SearchService {
 
         try {
             final Query luceneQuery = queryParser.parse("-stopWord:true " + lowerQuery);
-            final EntityDoc[] results = this.definitions.search(luceneQuery);
+            final EntityDoc[] results = this.definitions.search(luceneQuery, STRONG_NUMBER_FIELD);
 
             if (results.length == 0) {
                 throw new AbortQueryException("No definitions found for input");
@@ -1758,6 +1840,7 @@ public class SearchServiceImpl implements SearchService {
             adaptedResults = PassageKeyFactory.instance().createEmptyKeyList(this.versificationService.getVersificationForVersion(JSwordPassageService.BEST_VERSIFICATION));
         }
 
+        sq.setUnpagedResults(adaptedResults);
         int total = adaptedResults.getCardinality();
         final Key pagedKeys = this.jswordSearch.rankAndTrimResults(sq, adaptedResults);
 
@@ -1797,9 +1880,13 @@ public class SearchServiceImpl implements SearchService {
             }
 
             Versification v11nResults = resultVerses.getVersification();
+            if (isVerseSet(results)) {
+                return VerseBitSet.fromKey(results).and(VerseBitSet.fromKey(searchKeys, v11nResults)).toPassage();
+            }
+
             Versification v11nSearchKeys = searchVerses.getVersification();
             if (!v11nResults.equals(v11nSearchKeys)) {
-                versifiedSearchKeys = VersificationsMapper.instance().map(KeyUtil.getPassage(searchKeys), v11nResults);
+                versifiedSearchKeys = VerseBitSet.fromKey(searchKeys, v11nResults).toPassage();
             }
         }
 
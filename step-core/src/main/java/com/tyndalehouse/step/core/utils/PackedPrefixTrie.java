@@ -0,0 +1,391 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.utils;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable trie of keys, each key carrying a set of ranks (small non-negative integers, the lowest rank being the
+ * best match). It is packed into a handful of arrays: nodes are numbered in depth-first order, so the subtree of a
+ * node, and therefore every key starting with its prefix, is the contiguous range of nodes up to its end.
+ * <p/>
+ * Each node also holds the number of distinct ranks found under it, and the best few of those ranks, so that the
+ * best matches for a prefix are found by walking down the trie only.
+ *
+ * @author chrisburrell
+ */
+public final class PackedPrefixTrie {
+    public static final int NOT_FOUND = -1;
+    private static final int[] NO_RANKS = new int[0];
+    private final char[] labels;
+    private final int[] ends;
+    private final int[] counts;
+    private final int[] exactOffsets;
+    private final int[] exactRanks;
+    private final int[] topOffsets;
+    private final int[] topRanks;
+    private final int topSize;
+
+    /**
+     * Collects the keys and their ranks, before they are packed
+     */
+    public static final class Builder {
+        private final Map<String, IntList> keys = new HashMap<String, IntList>(1024);
+
+        /**
+         * @param key  the key
+         * @param rank the rank of an item found under the key
+         * @return this builder
+         */
+        public Builder add(final String key, final int rank) {
+            IntList ranks = this.keys.get(key);
+            if (ranks == null) {
+                ranks = new IntList(2);
+                this.keys.put(key, ranks);
+            }
+            ranks.add(rank);
+            return this;
+        }
+
+        /**
+         * @param topSize the number of best ranks to keep against each node
+         * @return the trie
+         */
+        public PackedPrefixTrie build(final int topSize) {
+            final String[] sortedKeys = this.keys.keySet().toArray(new String[this.keys.size()]);
+            Arrays.sort(sortedKeys);
+            final Packer packer = new Packer(this.keys, sortedKeys, topSize);
+            packer.pack(0, sortedKeys.length, 0, (char) 0);
+            return new PackedPrefixTrie(packer, topSize);
+        }
+    }
+
+    /**
+     * @param packer  the packed arrays
+     * @param topSize the number of best ranks kept against each node
+     */
+    private PackedPrefixTrie(final Packer packer, final int topSize) {
+        final int nodes = packer.labels.size();
+        this.labels = new char[nodes];
+        for (int ii = 0; ii < nodes; ii++) {
+            this.labels[ii] = (char) packer.labels.get(ii);
+        }
+        this.ends = packer.ends.toArray();
+        this.counts = packer.counts.toArray();
+        packer.exactOffsets.add(packer.exactRanks.size());
+        this.exactOffsets = packer.exactOffsets.toArray();
+        this.exactRanks = packer.exactRanks.toArray();
+        this.topOffsets = packer.topOffsets.toArray();
+        this.topRanks = packer.topRanks.toArray();
+        this.topSize = topSize;
+    }
+
+    /**
+     * @param key the key, or prefix of keys
+     * @return the node of the key, or {@link #NOT_FOUND}
+     */
+    public int find(final CharSequence key) {
+        int node = 0;
+        for (int ii = 0; ii < key.length(); ii++) {
+            final char c = key.charAt(ii);
+            int child = node + 1;
+            final int end = this.ends[node];
+            while (child < end && this.labels[child] != c) {
+                child = this.ends[child];
+            }
+            if (child >= end) {
+                return NOT_FOUND;
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * @param ancestor the possible ancestor
+     * @param node     the node
+     * @return true if the node is the ancestor itself, or is found under it
+     */
+    public boolean contains(final int ancestor, final int node) {
+        return node >= ancestor && node < this.ends[ancestor];
+    }
+
+    /**
+     * @param node the node
+     * @return the number of distinct ranks of all keys starting with the node's prefix
+     */
+    public int getCount(final int node) {
+        return this.counts[node];
+    }
+
+    /**
+     * @param node the node
+     * @return the ranks of the key that ends at the node, lowest first
+     */
+    public int[] getExact(final int node) {
+        return copy(this.exactRanks, this.exactOffsets[node], this.exactOffsets[node + 1]);
+    }
+
+    /**
+     * @param node the node
+     * @return the lowest ranks of the keys starting with the node's prefix, lowest first. These are all the ranks
+     *         if there are no more than {@link #getTopSize()} of them.
+     */
+    public int[] getTop(final int node) {
+        final int start = this.topOffsets[node];
+        return copy(this.topRanks, start, start + Math.min(this.counts[node], this.topSize));
+    }
+
+    /**
+     * Marks all the ranks of the keys starting with the node's prefix
+     *
+     * @param node  the node
+     * @param ranks the ranks found so far
+     */
+    public void collect(final int node, final BitSet ranks) {
+        final int end = this.exactOffsets[this.ends[node]];
+        for (int ii = this.exactOffsets[node]; ii < end; ii++) {
+            ranks.set(this.exactRanks[ii]);
+        }
+    }
+
+    /**
+     * @return the number of best ranks kept against each node
+     */
+    public int getTopSize() {
+        return this.topSize;
+    }
+
+    /**
+     * @return the number of nodes in the trie
+     */
+    public int size() {
+        return this.labels.length;
+    }
+
+    /**
+     * @param values the values
+     * @param start  the first value
+     * @param end    the end of the values, exclusive
+     * @return the values
+     */
+    private static int[] copy(final int[] values, final int start, final int end) {
+        return start == end ? NO_RANKS : Arrays.copyOfRange(values, start, end);
+    }
+
+    /**
+     * Lays the nodes out depth-first, working out the distinct ranks of each subtree on the way back up
+     */
+    private static final class Packer {
+        private final Map<String, IntList> keys;
+        private final String[] sortedKeys;
+        private final int topSize;
+        private final IntList labels = new IntList(1024);
+        private final IntList ends = new IntList(1024);
+        private final IntList counts = new IntList(1024);
+        private final IntList exactOffsets = new IntList(1024);
+        private final IntList exactRanks = new IntList(1024);
+        private final IntList topOffsets = new IntList(1024);
+        private final IntList topRanks = new IntList(1024);
+
+        /**
+         * @param keys       the keys and their ranks
+         * @param sortedKeys the keys in order
+         * @param topSize    the number of best ranks to keep against each node
+         */
+        private Packer(final Map<String, IntList> keys, final String[] sortedKeys, final int topSize) {
+            this.keys = keys;
+            this.sortedKeys = sortedKeys;
+            this.topSize = topSize;
+        }
+
+        /**
+         * Packs the node for a prefix, followed by all its children
+         *
+         * @param start the first key starting with the prefix
+         * @param end   the end of the keys starting with the prefix, exclusive
+         * @param depth the length of the prefix
+         * @param label the last character of the prefix
+         * @return the distinct ranks of the subtree, lowest first
+         */
+        private int[] pack(final int start, final int end, final int depth, final char label) {
+            final int node = this.labels.size();
+            this.labels.add(label);
+            this.ends.add(0);
+            this.counts.add(0);
+            this.topOffsets.add(0);
+            this.exactOffsets.add(this.exactRanks.size());
+
+            int first = start;
+            int[] ranks = NO_RANKS;
+            if (first < end && this.sortedKeys[first].length() == depth) {
+                ranks = this.keys.get(this.sortedKeys[first]).toSortedDistinctArray();
+                this.exactRanks.addAll(ranks);
+                first++;
+            }
+
+            while (first < end) {
+                final char c = this.sortedKeys[first].charAt(depth);
+                int last = first + 1;
+                while (last < end && this.sortedKeys[last].charAt(depth) == c) {
+                    last++;
+                }
+                ranks = merge(ranks, pack(first, last, depth + 1, c));
+                first = last;
+            }
+
+            this.ends.set(node, this.labels.size());
+            this.counts.set(node, ranks.length);
+            this.topOffsets.set(node, this.topRanks.size());
+            this.topRanks.addAll(ranks.length > this.topSize ? Arrays.copyOf(ranks, this.topSize) : ranks);
+            return ranks;
+        }
+
+        /**
+         * @param left  distinct ranks, lowest first
+         * @param right distinct ranks, lowest first
+         * @return the distinct ranks of both, lowest first
+         */
+        private static int[] merge(final int[] left, final int[] right) {
+            if (left.length == 0) {
+                return right;
+            }
+
+            final int[] merged = new int[left.length + right.length];
+            int ii = 0;
+            int jj = 0;
+            int size = 0;
+            while (ii < left.length && jj < right.length) {
+                if (left[ii] < right[jj]) {
+                    merged[size++] = left[ii++];
+                } else if (left[ii] > right[jj]) {
+                    merged[size++] = right[jj++];
+                } else {
+                    merged[size++] = left[ii++];
+                    jj++;
+                }
+            }
+            while (ii < left.length) {
+                merged[size++] = left[ii++];
+            }
+            while (jj < right.length) {
+                merged[size++] = right[jj++];
+            }
+            return size == merged.length ? merged : Arrays.copyOf(merged, size);
+        }
+    }
+
+    /**
+     * A growable list of ints, to avoid boxing while building
+     */
+    private static final class IntList {
+        private int[] values;
+        private int size;
+
+        /**
+         * @param capacity the initial capacity
+         */
+        private IntList(final int capacity) {
+            this.values = new int[capacity];
+        }
+
+        /**
+         * @param value the value to add
+         */
+        private void add(final int value) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2 + 1);
+            }
+            this.values[this.size++] = value;
+        }
+
+        /**
+         * @param added the values to add
+         */
+        private void addAll(final int[] added) {
+            if (this.size + added.length > this.values.length) {
+                this.values = Arrays.copyOf(this.values, Math.max(this.size * 2, this.size + added.length));
+            }
+            System.arraycopy(added, 0, this.values, this.size, added.length);
+            this.size += added.length;
+        }
+
+        /**
+         * @param index the index
+         * @return the value
+         */
+        private int get(final int index) {
+            return this.values[index];
+        }
+
+        /**
+         * @param index the index
+         * @param value the new value
+         */
+        private void set(final int index, final int value) {
+            this.values[index] = value;
+        }
+
+        /**
+         * @return the number of values
+         */
+        private int size() {
+            return this.size;
+        }
+
+        /**
+         * @return the values
+         */
+        private int[] toArray() {
+            return Arrays.copyOf(this.values, this.size);
+        }
+
+        /**
+         * @return the distinct values, lowest first
+         */
+        private int[] toSortedDistinctArray() {
+            final int[] sorted = toArray();
+            Arrays.sort(sorted);
+            int size = 0;
+            for (int ii = 0; ii < sorted.length; ii++) {
+                if (size == 0 || sorted[size - 1] != sorted[ii]) {
+                    sorted[size++] = sorted[ii];
+                }
+            }
+            return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+        }
+    }
+}
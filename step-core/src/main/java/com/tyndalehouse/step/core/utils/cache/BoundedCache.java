@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.utils.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+
+/**
+ * A least-recently-used cache bounded by the total weight of its values rather than their number, so that a few
+ * very large entries cannot push the heap over the edge. Entries may optionally expire a fixed time after they
+ * were added. Hits, misses and evictions are counted and can be published as metrics.
+ * <p>
+ * All operations are O(1) and hold the lock only for the map manipulation itself, never while values are being
+ * computed.
+ * 
+ * @param <K> the type of the key
+ * @param <V> the type of the cached values
+ * @author chrisburrell
+ */
+public class BoundedCache<K, V> {
+    private final long maxWeight;
+    private final long expireAfterMillis;
+    private final Weigher<? super V> weigher;
+    private final LinkedHashMap<K, WeightedValue<V>> entries = new LinkedHashMap<K, WeightedValue<V>>(16, 0.75f,
+            true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long totalWeight;
+    private long generation;
+
+    /**
+     * Computes the weight of a value, usually an approximation of its size in bytes
+     * 
+     * @param <V> the type of value
+     */
+    public interface Weigher<V> {
+        /**
+         * @param value the value to be weighed
+         * @return the weight of the value, must not be negative
+         */
+        long weigh(V value);
+    }
+
+    /**
+     * @param maxWeight the maximum total weight of all the values held in the cache
+     * @param weigher the weigher for the values
+     */
+    public BoundedCache(final long maxWeight, final Weigher<? super V> weigher) {
+        this(maxWeight, 0, weigher);
+    }
+
+    /**
+     * @param maxWeight the maximum total weight of all the values held in the cache
+     * @param expireAfterMillis the time after which an entry is discarded, or 0 to keep entries until evicted
+     * @param weigher the weigher for the values
+     */
+    public BoundedCache(final long maxWeight, final long expireAfterMillis, final Weigher<? super V> weigher) {
+        this.maxWeight = maxWeight;
+        this.expireAfterMillis = expireAfterMillis;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @param key the key
+     * @return the cached value, or null if absent
+     */
+    public V get(final K key) {
+        WeightedValue<V> value;
+        synchronized (this) {
+            value = this.entries.get(key);
+            if (value != null && value.expiresAt != 0 && value.expiresAt < System.currentTimeMillis()) {
+                this.entries.remove(key);
+                this.totalWeight -= value.weight;
+                value = null;
+            }
+        }
+
+        if (value == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        return value.value;
+    }
+
+    /**
+     * Adds a value to the cache, evicting the least recently used values if required. Values weighing more than
+     * the maximum weight are not cached at all.
+     * 
+     * @param key the key
+     * @param value the value
+     */
+    public void put(final K key, final V value) {
+        final long weight = this.weigher.weigh(value);
+        if (weight > this.maxWeight) {
+            return;
+        }
+
+        synchronized (this) {
+            store(key, value, weight);
+        }
+    }
+
+    /**
+     * Adds a value to the cache, unless the cache has been emptied since the value started being worked out. This
+     * stops a value computed from data that has since changed from outliving the {@link #invalidateAll()} that
+     * discarded everything else computed from that data.
+     * 
+     * @param key the key
+     * @param value the value
+     * @param generation the {@link #getGeneration()} read before the value started being worked out
+     * @return false if the value was discarded because the cache has been emptied in the meantime
+     */
+    public boolean put(final K key, final V value, final long generation) {
+        final long weight = this.weigher.weigh(value);
+        synchronized (this) {
+            if (generation != this.generation) {
+                return false;
+            }
+            if (weight <= this.maxWeight) {
+                store(key, value, weight);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Adds a value, evicting the least recently used values if required. Must be called holding the lock.
+     * 
+     * @param key the key
+     * @param value the value
+     * @param weight the weight of the value, no greater than the maximum weight
+     */
+    private void store(final K key, final V value, final long weight) {
+        final long expiresAt = this.expireAfterMillis == 0 ? 0 : System.currentTimeMillis() + this.expireAfterMillis;
+        final WeightedValue<V> previous = this.entries.put(key, new WeightedValue<V>(value, weight, expiresAt));
+        if (previous != null) {
+            this.totalWeight -= previous.weight;
+        }
+        this.totalWeight += weight;
+
+        final Iterator<WeightedValue<V>> lru = this.entries.values().iterator();
+        while (this.totalWeight > this.maxWeight && lru.hasNext()) {
+            this.totalWeight -= lru.next().weight;
+            lru.remove();
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param key the key to remove
+     */
+    public synchronized void invalidate(final K key) {
+        final WeightedValue<V> previous = this.entries.remove(key);
+        if (previous != null) {
+            this.totalWeight -= previous.weight;
+        }
+    }
+
+    /**
+     * Empties the cache and starts a new generation. Counters are left untouched.
+     */
+    public synchronized void invalidateAll() {
+        this.entries.clear();
+        this.totalWeight = 0;
+        this.generation++;
+    }
+
+    /**
+     * @return the number of times the cache has been emptied, to be passed to {@link #put(Object, Object, long)}
+     */
+    public synchronized long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * @return the number of entries in the cache
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the total weight of the entries in the cache
+     */
+    public synchronized long getWeight() {
+        return this.totalWeight;
+    }
+
+    /**
+     * @return the number of successful lookups
+     */
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of lookups that found nothing
+     */
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the number of entries evicted to make room for others
+     */
+    public long getEvictionCount() {
+        return this.evictions.get();
+    }
+
+    /**
+     * Publishes the counters of this cache as gauges, named after the owning class and the cache name
+     * 
+     * @param owner the class owning the cache
+     * @param name the name of the cache
+     */
+    public void registerMetrics(final Class<?> owner, final String name) {
+        Metrics.newGauge(owner, name + "-hits", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return getHitCount();
+            }
+        });
+        Metrics.newGauge(owner, name + "-misses", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return getMissCount();
+            }
+        });
+        Metrics.newGauge(owner, name + "-evictions", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return getEvictionCount();
+            }
+        });
+        Metrics.newGauge(owner, name + "-size", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return size();
+            }
+        });
+        Metrics.newGauge(owner, name + "-weight", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return getWeight();
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, evictions=%d, size=%d, weight=%d/%d", getHitCount(),
+                getMissCount(), getEvictionCount(), size(), getWeight(), this.maxWeight);
+    }
+
+    /**
+     * A value with its pre-computed weight and expiry time
+     * 
+     * @param <V> the type of value
+     */
+    private static final class WeightedValue<V> {
+        private final V value;
+        private final long weight;
+        private final long expiresAt;
+
+        /**
+         * @param value the value
+         * @param weight the weight of the value
+         * @param expiresAt the time at which the value expires, or 0 if it never does
+         */
+        private WeightedValue(final V value, final long weight, final long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
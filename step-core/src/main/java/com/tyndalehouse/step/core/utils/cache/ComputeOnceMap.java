@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.utils.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+
+/**
+ * A concurrent map whose values are computed at most once per key. Readers of a key that is already present never
+ * take a lock; concurrent requests for a key that is still being computed wait for that single computation rather
+ * than starting their own. A computation that fails is forgotten, so that the next request tries again.
+ * 
+ * @param <K> the type of the key
+ * @param <V> the type of the values
+ * @author chrisburrell
+ */
+public class ComputeOnceMap<K, V> {
+    private final ConcurrentMap<K, Future<V>> values = new ConcurrentHashMap<K, Future<V>>();
+    private final Loader<? super K, ? extends V> loader;
+
+    /**
+     * Computes the value for a key
+     * 
+     * @param <K> the type of the key
+     * @param <V> the type of the value
+     */
+    public interface Loader<K, V> {
+        /**
+         * @param key the key
+         * @return the value to be associated with the key, must not be null
+         */
+        V load(K key);
+    }
+
+    /**
+     * @param loader the loader used to compute absent values
+     */
+    public ComputeOnceMap(final Loader<? super K, ? extends V> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Returns the value associated with the key, computing it if this is the first request for it.
+     * 
+     * @param key the key
+     * @return the value
+     */
+    public V get(final K key) {
+        Future<V> future = this.values.get(key);
+        if (future == null) {
+            final FutureTask<V> task = new FutureTask<V>(new Callable<V>() {
+                @Override
+                public V call() {
+                    return ComputeOnceMap.this.loader.load(key);
+                }
+            });
+            future = this.values.putIfAbsent(key, task);
+            if (future == null) {
+                future = task;
+                task.run();
+            }
+        }
+        return await(key, future);
+    }
+
+    /**
+     * @param key the key
+     * @return the value associated with the key if it has already been computed successfully, null otherwise
+     */
+    public V getIfPresent(final K key) {
+        final Future<V> future = this.values.get(key);
+        if (future == null || !future.isDone()) {
+            return null;
+        }
+
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (final ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return a snapshot of all the values that have been computed successfully
+     */
+    public List<V> values() {
+        final List<V> computed = new ArrayList<V>(this.values.size());
+        for (final K key : this.values.keySet()) {
+            final V value = getIfPresent(key);
+            if (value != null) {
+                computed.add(value);
+            }
+        }
+        return computed;
+    }
+
+    /**
+     * Waits for the computation of a key to complete
+     * 
+     * @param key the key
+     * @param future the pending value
+     * @return the computed value
+     */
+    private V await(final K key, final Future<V> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StepInternalException("Interrupted while waiting for " + key, e);
+        } catch (final ExecutionException e) {
+            // forget the failure so that the next caller can try again
+            this.values.remove(key, future);
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new StepInternalException("Unable to compute value for " + key, cause);
+        }
+    }
+}
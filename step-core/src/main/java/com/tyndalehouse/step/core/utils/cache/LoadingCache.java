@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.utils.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+
+/**
+ * A {@link BoundedCache} that loads its own values. A value that is missing is loaded at most once, however many
+ * threads ask for it at the same time: the others wait for that single load rather than starting their own. A load
+ * that fails is not cached, so the next request tries again, and neither is a load that was under way when the cache
+ * was emptied, since it may have read the data that has just changed.
+ * <p>
+ * The loader must not return null - values that don't exist should be represented by an empty value so that they
+ * are cached too.
+ * 
+ * @param <K> the type of the key
+ * @param <V> the type of the cached values
+ * @author chrisburrell
+ */
+public class LoadingCache<K, V> {
+    private final BoundedCache<K, V> values;
+    private final ConcurrentMap<K, FutureTask<V>> loading = new ConcurrentHashMap<K, FutureTask<V>>();
+    private final ComputeOnceMap.Loader<? super K, ? extends V> loader;
+
+    /**
+     * @param maxWeight the maximum total weight of the values held in the cache
+     * @param weigher works out the weight of each value
+     * @param loader loads the values that are not in the cache
+     */
+    public LoadingCache(final long maxWeight, final BoundedCache.Weigher<? super V> weigher,
+            final ComputeOnceMap.Loader<? super K, ? extends V> loader) {
+        this.values = new BoundedCache<K, V>(maxWeight, weigher);
+        this.loader = loader;
+    }
+
+    /**
+     * @param key the key
+     * @return the cached value, loading it if necessary
+     */
+    public V get(final K key) {
+        final V value = this.values.get(key);
+        if (value != null) {
+            return value;
+        }
+
+        FutureTask<V> load = this.loading.get(key);
+        if (load == null) {
+            final FutureTask<V> task = new FutureTask<V>(new Callable<V>() {
+                @Override
+                public V call() {
+                    final long generation = LoadingCache.this.values.getGeneration();
+                    final V loaded = LoadingCache.this.loader.load(key);
+                    LoadingCache.this.values.put(key, loaded, generation);
+                    return loaded;
+                }
+            });
+            load = this.loading.putIfAbsent(key, task);
+            if (load == null) {
+                load = task;
+                try {
+                    task.run();
+                } finally {
+                    this.loading.remove(key, task);
+                }
+            }
+        }
+        return await(key, load);
+    }
+
+    /**
+     * Empties the cache. Threads already waiting for a load still receive its value, but later requests load the
+     * value again.
+     */
+    public void invalidateAll() {
+        this.values.invalidateAll();
+        this.loading.clear();
+    }
+
+    /**
+     * @return the number of times the cache has been emptied
+     * @see BoundedCache#getGeneration()
+     */
+    public long getGeneration() {
+        return this.values.getGeneration();
+    }
+
+    /**
+     * @return the number of values that were found in the cache
+     */
+    public long getHitCount() {
+        return this.values.getHitCount();
+    }
+
+    /**
+     * @return the number of values that had to be loaded, or waited for
+     */
+    public long getMissCount() {
+        return this.values.getMissCount();
+    }
+
+    /**
+     * Publishes the hits, misses, evictions, size and weight of the cache as gauges
+     * 
+     * @param owner the class owning the cache
+     * @param name the name of the cache
+     */
+    public void registerMetrics(final Class<?> owner, final String name) {
+        this.values.registerMetrics(owner, name);
+    }
+
+    /**
+     * @param key the key being loaded
+     * @param load the load
+     * @return the loaded value
+     */
+    private V await(final K key, final FutureTask<V> load) {
+        try {
+            return load.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StepInternalException("Interrupted while waiting for " + key, e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new StepInternalException("Unable to load value for " + key, cause);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.values.toString();
+    }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.utils.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A value that is loaded on first use and kept until it is invalidated, after which it is loaded again on next use.
+ * A value that was being loaded when it was invalidated is never returned to later callers, since it may have been
+ * read from the data that has just changed.
+ * 
+ * @param <V> the type of the value
+ * @author chrisburrell
+ */
+public abstract class ReloadableValue<V> {
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Loaded<V> loaded;
+
+    /**
+     * @return the value, loading it if it has not been loaded since it was last invalidated
+     */
+    public V get() {
+        Loaded<V> current = this.loaded;
+        if (current != null && current.generation == this.generation.get()) {
+            return current.value;
+        }
+
+        synchronized (this) {
+            current = this.loaded;
+            final long wanted = this.generation.get();
+            if (current == null || current.generation != wanted) {
+                current = new Loaded<V>(wanted, load());
+                this.loaded = current;
+            }
+            return current.value;
+        }
+    }
+
+    /**
+     * Discards the value, so that it is loaded again on next use
+     */
+    public void invalidate() {
+        this.generation.incrementAndGet();
+        this.loaded = null;
+    }
+
+    /**
+     * @return the value, must not be null
+     */
+    protected abstract V load();
+
+    /**
+     * A value along with the generation it was loaded in
+     * 
+     * @param <V> the type of the value
+     */
+    private static final class Loaded<V> {
+        private final long generation;
+        private final V value;
+
+        /**
+         * @param generation the generation in which the loading started
+         * @param value the value
+         */
+        private Loaded(final long generation, final V value) {
+            this.generation = generation;
+            this.value = value;
+        }
+    }
+}
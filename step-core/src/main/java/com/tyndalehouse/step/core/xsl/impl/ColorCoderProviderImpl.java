@@ -39,9 +39,7 @@ import javax.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.tyndalehouse.step.core.data.EntityDoc;
-import com.tyndalehouse.step.core.data.EntityIndexReader;
-import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.service.helpers.MorphologyTable;
 
 /**
  * A utility to provide colors to an xsl spreadsheet. This is a non-static utility since later on we may wish
@@ -82,14 +80,14 @@ public class ColorCoderProviderImpl {
     private static final int MINIMUM_MORPH_LENGTH = ROBINSON_PREFIX_UC.length() + 2;
 
     // css classes
-    private final EntityIndexReader morphology;
+    private final MorphologyTable morphologies;
 
     /**
-     * @param manager the manager from which to obtain an index reader for morphology information
+     * @param morphologies the morphology codes, along with their classes
      */
     @Inject
-    public ColorCoderProviderImpl(final EntityManager manager) {
-        this.morphology = manager.getReader("morphology");
+    public ColorCoderProviderImpl(final MorphologyTable morphologies) {
+        this.morphologies = morphologies;
     }
 
     /**
@@ -115,50 +113,9 @@ public class ColorCoderProviderImpl {
                 code = morph.substring(length);
             }
 
-            final EntityDoc[] results = this.morphology.searchExactTermBySingleField("code", 1, code);
-            if (results.length > 0) {
-                classes = results[0].get("cssClasses");
-                // Added on Feb 27, 2018 to annotate verbs
-				String funct;
-				try {
-					funct = results[0].get("function").toLowerCase();
-				}
-				catch (NullPointerException e) {
-					funct = "";
-				}
-                if (funct.equals("verb")) {					
-                	String tense, voice, mood;
-					try {
-						tense = results[0].get("tense").toLowerCase();
-						voice = results[0].get("voice").toLowerCase();
-						mood = results[0].get("mood").toLowerCase();
-					}
-					catch (NullPointerException e) {
-						tense = voice = mood = "";
-					}
-					if (!tense.isEmpty() && !mood.isEmpty()) {
-						// Annotate 2nd Aorist as Aorist, 2nd Future as Future, 2nd Perfect as Perfect, 2nd Pluperfect ...
-						if (tense.startsWith("2nd ")) {
-							tense = tense.substring(4);
-						} else if (tense.equals("indefinite tense")) {
-							tense = "indefinite";
-						}
-						if ( (voice.equals("passive")) || (voice.equals("either middle or passive")) ) {
-							voice = "p";
-						}
-						else if (voice.equals("middle") ) {
-							voice = "m";
-						}
-						else if ((voice.indexOf("active") > -1) || (voice.indexOf("deponent") > -1) || (voice.indexOf("indefinite") > -1) ) {
-							voice = "a";
-						}
-						else {
-							LOGGER.warn("cannot identify voice [{}]", voice);
-							voice = "a";
-						}
-						classes = classes + " v" + getShortCodeTense(tense) + voice + getShortCodeMood(mood);
-					}
-                }
+            final MorphologyTable.Morphology morphology = this.morphologies.get(code);
+            if (morphology != null) {
+                classes = morphology.getColorClass();
             }
             /* Added this section for the Chinese Bible which has the morphology on verbs */
             else if (code.length() > 4) {
@@ -199,32 +156,4 @@ public class ColorCoderProviderImpl {
         }
         return classes != null ? classes : "";
     }
-
-	public String getShortCodeTense(final String tense) {
-		if (tense.equals("aorist")) return "a";
-		else if (tense.equals("present")) return "p";
-		else if (tense.equals("perfect")) return "r";
-		else if (tense.equals("pluperfect")) return "l";
-		else if (tense.equals("future")) return "f";
-		else if (tense.equals("imperfect")) return "i";
-		else if (tense.equals("indefinite")) return "x";
-		else {
-			LOGGER.warn("cannot identify tense for [{}]", tense);
-			return "";
-		}
-	}
-
-	public String getShortCodeMood(final String mood) {
-		if (mood.equals("indicative")) return "i";
-		else if (mood.equals("imperative")) return "m";
-		else if (mood.equals("participle")) return "p";
-		else if (mood.equals("infinitive")) return "n";
-		else if (mood.equals("subjunctive")) return "s";
-		else if (mood.equals("optative")) return "o";
-		else {
-			LOGGER.warn("cannot identify mood for [{}]", mood);
-			return "";
-		}
-	}
-
 }
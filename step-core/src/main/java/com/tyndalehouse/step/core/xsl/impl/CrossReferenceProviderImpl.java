@@ -40,6 +40,7 @@ import javax.inject.Inject;
 import com.tyndalehouse.step.core.data.EntityDoc;
 import com.tyndalehouse.step.core.data.EntityIndexReader;
 import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 
 /**
  * Provides extra cross-references to be displayed next to the passage
@@ -47,15 +48,18 @@ import com.tyndalehouse.step.core.data.EntityManager;
 public class CrossReferenceProviderImpl {
 
     private final EntityIndexReader nave;
+    private final JSwordPassageService jswordPassage;
 
     /**
      * Instantiates a new cross reference provider impl.
      * 
      * @param manager the data manager
+     * @param jswordPassage the passage service, to work out the verse ordinals
      */
     @Inject
-    public CrossReferenceProviderImpl(final EntityManager manager) {
+    public CrossReferenceProviderImpl(final EntityManager manager, final JSwordPassageService jswordPassage) {
         this.nave = manager.getReader("nave");
+        this.jswordPassage = jswordPassage;
     }
 
     /**
@@ -65,7 +69,8 @@ public class CrossReferenceProviderImpl {
      * @return the references that have been found
      */
     public Set<String> getReferences(final String osisID) {
-        final EntityDoc[] results = this.nave.search("expandedReferences", osisID);
+        final EntityDoc[] results = this.nave.searchOverlappingRanges("referenceRanges",
+                this.jswordPassage.getOrdinalRanges(osisID, "ESV_th"));
         final Set<String> refs = new HashSet<String>(results.length * 2);
         for (int i = 0; i < results.length; i++) {
             refs.add(results[i].get("references"));
@@ -35,6 +35,7 @@ package com.tyndalehouse.step.core.xsl.impl;
 import com.tyndalehouse.step.core.data.EntityDoc;
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.service.VocabularyService;
+import com.tyndalehouse.step.core.service.helpers.InterlinearWordIndexCache;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.utils.JSwordUtils;
 import com.tyndalehouse.step.core.utils.StringConversionUtils;
@@ -46,9 +47,6 @@ import org.crosswire.jsword.versification.Testament;
 import org.crosswire.jsword.versification.Versification;
 import org.crosswire.jsword.versification.VersificationsMapper;
 import org.crosswire.jsword.versification.system.Versifications;
-import org.jdom2.Content;
-import org.jdom2.Element;
-import org.jdom2.Text;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,35 +57,41 @@ import static com.tyndalehouse.step.core.utils.StringUtils.*;
 import static java.lang.String.format;
 
 /**
- * This object is not purposed to be used as a singleton. It builds up textual information on initialisation, and is
- * specific to requests. On initialisation, the OSIS XML is retrieved and iterated through to find all strong/morph
- * candidates
+ * Hands out the interlinear words of one request from the immutable {@link InterlinearWordIndex} of each chapter,
+ * which are shared with other requests through the {@link InterlinearWordIndexCache}, keeping its own cursor into each
+ * list of words so that every word is only used once without the shared indexes ever being modified.
+ * <p>
+ * This object is not purposed to be used as a singleton, it is specific to requests.
  *
  * @author chrisburrell
  */
 public class InterlinearProviderImpl implements InterlinearProvider {
 
     public static final String NO_VERSE = "NO_VERSE";
+    /**
+     * The overriding mappings, regardless of whether the interlineared text contains a mapping
+     */
+    static final Map<String, String> HEBREW_DIRECT_MAPPING;
+    /**
+     * The mappings between strong numbers and their corresponding English, used if no link is found.
+     */
+    static final Map<String, String> HEBREW_INDIRECT_MAPPINGS;
     /**
      * The Constant LOGGER.
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(InterlinearProviderImpl.class);
     /**
-     * contains the set of tags that may contain biblical text, all lower case
+     * the words of each chapter covered by the request
      */
-    private static final Set<String> VALID_TEXT_ELEMENTS = new HashSet<String>();
+    private final List<InterlinearWordIndex> chapters;
     /**
-     * limited accuracy tries to do a location look up by using the verse number as part of the key.
+     * the position of the next unused word in each list of words, keyed by identity
      */
-    private final Map<DualKey<String, String>, Deque<Word>> limitedAccuracy = new HashMap<DualKey<String, String>, Deque<Word>>();
+    private final Map<Word[], int[]> cursors = new IdentityHashMap<Word[], int[]>();
     private final boolean originalLanguage;
     private boolean disabled = false;
     private Versification versification;
-    // a temporary, non-thread-safe, transient, working variable, which keeps track of the verse we're in.
-    private Verse currentVerse;
     private Book currentBook;
-    private Map<String, String> hebrewDirectMapping;
-    private Map<String, String> hebrewIndirectMappings;
     private Testament testament;
     private String masterVersion;
     private Versification masterVersification;
@@ -96,37 +100,41 @@ public class InterlinearProviderImpl implements InterlinearProvider {
     private boolean stripVowels = false;
 
     static {
-        VALID_TEXT_ELEMENTS.add("divinename");
-        VALID_TEXT_ELEMENTS.add("a");
-        VALID_TEXT_ELEMENTS.add("foreign");
-        VALID_TEXT_ELEMENTS.add("hi");
-        VALID_TEXT_ELEMENTS.add("name");
-        VALID_TEXT_ELEMENTS.add("q");
-        VALID_TEXT_ELEMENTS.add("w");
-        VALID_TEXT_ELEMENTS.add("seg");
-        VALID_TEXT_ELEMENTS.add("transChange");
-        VALID_TEXT_ELEMENTS.add("doxology");
-        VALID_TEXT_ELEMENTS.add("colophon");
-        VALID_TEXT_ELEMENTS.add("refrain");
-        VALID_TEXT_ELEMENTS.add("attribution");
+        final Map<String, String> direct = new HashMap<String, String>(4);
+        direct.put("853", "#the");
+        direct.put("854", "#the");
+        HEBREW_DIRECT_MAPPING = Collections.unmodifiableMap(direct);
+
+        final Map<String, String> indirect = new HashMap<String, String>(16);
+        indirect.put("1961", "#to be");
+        indirect.put("3588", "#that");
+        indirect.put("996", "#between");
+        indirect.put("413", "#to");
+        indirect.put("834", "#that");
+        indirect.put("3605", "#all");
+        indirect.put("3606", "#all");
+        indirect.put("5921", "#on");
+        indirect.put("4480", "#from");
+        indirect.put("3651", "#thus");
+        HEBREW_INDIRECT_MAPPINGS = Collections.unmodifiableMap(indirect);
     }
 
     /**
      * sets up the interlinear provider with the correct version and text scope.
      *
-     * @param versificationService   versification service
-     * @param version                the version to use to set up the interlinear
-     * @param versifiedKey           the text scope reference, defining the bounds of the lookup
-     * @param hebrewDirectMapping    the hebrew overriding mappings
-     * @param hebrewIndirectMappings the mappings used if no other mapping is found
+     * @param versificationService versification service
+     * @param version              the version to use to set up the interlinear
+     * @param versifiedKey         the text scope reference, defining the bounds of the lookup
+     * @param wordIndexCache       the cache of the words in each chapter
      */
     public InterlinearProviderImpl(final String masterVersion, Versification masterVersification, JSwordVersificationService versificationService,
-                                   final String version, final Key versifiedKey, final Map<String, String> hebrewDirectMapping,
-                                   final Map<String, String> hebrewIndirectMappings, final VocabularyService vocabProvider,
+                                   final String version, final Key versifiedKey, final InterlinearWordIndexCache wordIndexCache,
+                                   final VocabularyService vocabProvider,
                                    boolean stripGreekAccents, boolean stripHebrewAccents, boolean stripVowels) {
         this.masterVersion = masterVersion;
         this.masterVersification = masterVersification;
         this.vocabularyService = vocabProvider;
+        this.chapters = new ArrayList<InterlinearWordIndex>(2);
 
         // first check whether the values passed in are correct
         if (areAnyBlank(version)) {
@@ -134,13 +142,11 @@ public class InterlinearProviderImpl implements InterlinearProvider {
             return;
         }
 
-        this.hebrewIndirectMappings = hebrewIndirectMappings;
-        this.hebrewDirectMapping = hebrewDirectMapping;
         this.currentBook = versificationService.getBookFromVersion(version);
-        this.versification = versificationService.getVersificationForVersion(currentBook);
         if (this.currentBook == null) {
             throw new StepInternalException(format("Couldn't look up book: [%s]", version));
         }
+        this.versification = versificationService.getVersificationForVersion(currentBook);
 
         //mark the book as original language
         this.originalLanguage = JSwordUtils.isAncientBook(currentBook);
@@ -149,53 +155,45 @@ public class InterlinearProviderImpl implements InterlinearProvider {
                 stripHebrewAccents && ancientHebrewBook;
         this.stripVowels = ancientHebrewBook && this.stripAccents && stripVowels;
 
-        BookData bookData;
-        try {
-            setTestamentType(versifiedKey);
-
-            bookData = getBookDataWithVerse0(versifiedKey);
-            scanForTextualInformation(bookData.getOsisFragment(), null);
-        } catch (final BookException e) {
-            throw new StepInternalException(e.getMessage(), e);
+        setTestamentType(versifiedKey);
+
+        // whole chapters are read, including their pre-verse content, so that they can be shared across requests
+        final Passage passage = VersificationsMapper.instance().map(KeyUtil.getPassage(versifiedKey), this.versification);
+        final Iterator<VerseRange> ranges = passage.rangeIterator(RestrictionType.CHAPTER);
+        Verse lastChapter = null;
+        while (ranges.hasNext()) {
+            final Verse start = ranges.next().getStart();
+            if (lastChapter == null || lastChapter.getBook() != start.getBook() || lastChapter.getChapter() != start.getChapter()) {
+                this.chapters.add(wordIndexCache.getChapter(this.currentBook, this.versification, start.getBook(), start.getChapter()));
+                lastChapter = start;
+            }
         }
 
-        this.disabled = this.limitedAccuracy.size() == 0;
+        this.disabled = isEmpty(this.chapters);
     }
 
     /**
      * package private version for testing purposes.
+     *
+     * @param chapters the words of each chapter
      */
-    InterlinearProviderImpl() {
+    InterlinearProviderImpl(final InterlinearWordIndex... chapters) {
         // exposing package private constructor
         this.originalLanguage = false;
+        this.chapters = Arrays.asList(chapters);
     }
 
     /**
-     * For verse 0, we can't simply lookup verse 0, because that doesn't return the pre-verse content which sits in
-     * verse 1 so instead we need to replace the key to have verse 1 instead. For all purposes, such as verses 0-1, or
-     * verse 1, etc. then we continue as normal.
-     *
-     * @param versifiedKey the key from the original versification
-     * @return a bookdata with the correct verse
+     * @param chapters the words of each chapter
+     * @return true if none of the chapters contain any words
      */
-    private BookData getBookDataWithVerse0(final Key versifiedKey) {
-        final Iterator<Key> iterator = versifiedKey.iterator();
-        Verse v = (Verse) iterator.next();
-        if (v != null && !iterator.hasNext()) {
-            //then we're basically looking at a single verse... in this special case
-            // we need to check it doesn't not map to verse 0.
-            //if it did, we will need to return verse with 1.
-            final VerseKey mappedVerse = VersificationsMapper.instance().mapVerse(v, this.versification);
-            if (mappedVerse.getCardinality() == 1) {
-                final Verse next = (Verse) mappedVerse.iterator().next();
-                if (next.getVerse() == 0) {
-                    return new BookData(this.currentBook,
-                            new Verse(this.versification, next.getBook(), next.getChapter(), next.getVerse() + 1));
-                }
+    private static boolean isEmpty(final List<InterlinearWordIndex> chapters) {
+        for (final InterlinearWordIndex chapter : chapters) {
+            if (!chapter.isEmpty()) {
+                return false;
             }
         }
-
-        return new BookData(this.currentBook, versifiedKey);
+        return true;
     }
 
     @Override
@@ -290,10 +288,9 @@ public class InterlinearProviderImpl implements InterlinearProvider {
                 Verse v = (Verse) keyIterator.next();
                 String osisID = v.getVerse() == 0 ? NO_VERSE : v.getOsisID();
 
-                final DualKey<String, String> key = new DualKey<String, String>(strong, osisID);
-                final Deque<Word> list = this.limitedAccuracy.get(key);
-                if (list != null && !list.isEmpty()) {
-                    return retrieveWord(list);
+                final String word = retrieveWord(strong, osisID);
+                if (word != null) {
+                    return word;
                 }
             }
             if (followMapping) {
@@ -301,10 +298,9 @@ public class InterlinearProviderImpl implements InterlinearProvider {
             }
         } else if (strong != null) {
             //then we know we have a null verse, so assume we're in pre-verse mode...
-            final DualKey<String, String> key = new DualKey<String, String>(strong, NO_VERSE);
-            final Deque<Word> list = this.limitedAccuracy.get(key);
-            if (list != null && !list.isEmpty()) {
-                return retrieveWord(list);
+            final String word = retrieveWord(strong, NO_VERSE);
+            if (word != null) {
+                return word;
             }
         }
 
@@ -326,12 +322,12 @@ public class InterlinearProviderImpl implements InterlinearProvider {
         if (!originalLanguage) {
             // currently only supporting OLD Testament
             if (isOT) {
-                final String direct = this.hebrewDirectMapping.get(strong);
+                final String direct = HEBREW_DIRECT_MAPPING.get(strong);
                 if (direct != null) {
                     return direct;
                 }
 
-                final String indirect = this.hebrewIndirectMappings.get(strong);
+                final String indirect = HEBREW_INDIRECT_MAPPINGS.get(strong);
                 if (indirect != null) {
                     return indirect;
                 }
@@ -367,14 +363,42 @@ public class InterlinearProviderImpl implements InterlinearProvider {
     }
 
     /**
-     * Retrieves the first word from the list, and removes from the list. If the word is PARTIAL, then retrieves the
+     * Finds the first unused word tagged with the strong number in the verse, across all chapters
+     *
+     * @param strong the strong number
+     * @param osisID the verse
+     * @return the word, or null if all such words have been used already
+     */
+    private String retrieveWord(final String strong, final String osisID) {
+        for (final InterlinearWordIndex chapter : this.chapters) {
+            final Word[] words = chapter.getWords(strong, osisID);
+            if (words == null) {
+                continue;
+            }
+
+            int[] cursor = this.cursors.get(words);
+            if (cursor == null) {
+                cursor = new int[1];
+                this.cursors.put(words, cursor);
+            }
+
+            if (cursor[0] < words.length) {
+                return retrieveWord(words, cursor);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the next unused word from the list, and marks it as used. If the word is PARTIAL, then retrieves the
      * next one too, and concatenates
      *
-     * @param list a dequue containing all the items in question
+     * @param words  all the words in question
+     * @param cursor the position of the next unused word, which is moved on
      * @return the string
      */
-    private String retrieveWord(final Deque<Word> list) {
-        Word word = list.removeFirst();
+    private String retrieveWord(final Word[] words, final int[] cursor) {
+        Word word = words[cursor[0]++];
         if (!word.isPartial()) {
             return word.getUntaggedText() != null ? word.getUntaggedText() + word.getText() : word.getText();
         }
@@ -388,7 +412,7 @@ public class InterlinearProviderImpl implements InterlinearProvider {
             text.append(", ");
 
             // increment to next word
-            word = list.pollFirst();
+            word = cursor[0] < words.length ? words[cursor[0]++] : null;
         }
 
         // append the last word
@@ -398,209 +422,6 @@ public class InterlinearProviderImpl implements InterlinearProvider {
         return text.toString();
     }
 
-    /**
-     * TODO: can be optimized by not iterating through major elements such as Notes for example setups all the initial
-     * textual information for fast retrieval during XSL transformation.
-     *
-     * @param element element to start with.
-     */
-    @SuppressWarnings("unchecked")
-    private boolean scanForTextualInformation(final Element element, final String untaggedText) {
-        // check to see if we've hit a new verse, if so, we update the verse
-        updateVerseRef(element);
-
-        // check to see if we've hit a node of interest
-        if (element.getName().equals(OSISUtil.OSIS_ELEMENT_W)) {
-            extractTextualInfoFromNode(element, untaggedText);
-            return true;
-        }
-
-        //small optimization to remove processing of potentially verbose notes
-        if (element.getName().equals(OSISUtil.OSIS_ELEMENT_NOTE)) {
-            return false;
-        }
-
-        // iterate through all children and call recursively
-        Object data;
-        Element ele;
-        final Iterator<Content> contentIter = element.getContent().iterator();
-        StringBuilder untaggedContent = null;
-        while (contentIter.hasNext()) {
-            data = contentIter.next();
-            //we capture untagged content at the same level as the elements that we process
-            if (data instanceof Text) {
-                if (untaggedContent == null) {
-                    untaggedContent = new StringBuilder(32);
-                }
-
-                untaggedContent.append(((Text) data).getText());
-            }
-
-            if (data instanceof Element) {
-                ele = (Element) data;
-                if (untaggedContent != null) {
-                    if (scanForTextualInformation(ele, untaggedContent.toString())) {
-                        //we've consumed the untagged content, so remove it now
-                        untaggedContent = null;
-                    }
-                } else {
-                    scanForTextualInformation(ele, null);
-                }
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Gets the OSIS id if any
-     *
-     * @param element the osis element
-     */
-    private void updateVerseRef(final Element element) {
-        final boolean isVerseMarker = OSISUtil.OSIS_ELEMENT_VERSE.equals(element.getName());
-        if (isVerseMarker) {
-            final String osisId = element.getAttributeValue(OSISUtil.OSIS_ATTR_OSISID);
-            if (osisId != null)
-                try {
-                    currentVerse = VerseFactory.fromString(this.versification, osisId);
-                } catch (NoSuchVerseException ex) {
-                    LOGGER.trace("Unable to convert ref - probably not a verse reference.", ex);
-                }
-        }
-    }
-
-    /**
-     * retrieves textual information and adds it to the provider.
-     *
-     * @param element the element to extract information from
-     */
-    private void extractTextualInfoFromNode(final Element element, final String untaggedContent) {
-        final String strong = element.getAttributeValue(OSISUtil.ATTRIBUTE_W_LEMMA);
-        final String word = getText(element);
-
-        // do we need to do any manipulation? probably not because we are going to be
-        // comparing against other OSIS XML texts which should be formatted in the same way!
-        // however, some attributes may contain multiple strongs and morphs tagged to one word.
-        // therefore we do need to split the text.
-        final String[] strongs = split(strong);
-
-        if (strongs == null) {
-            return;
-        }
-
-        // there is no way of know which strong goes with which morph, and we only
-        // have one phrase anyway
-        final List<Word> words = new ArrayList<Word>(2);
-        boolean partial = false;
-        for (int ii = 0; ii < strongs.length; ii++) {
-            final String strongKey = getAnyKey(strongs[ii]);
-            if (!isH00(strongKey) && !blacklisted(strongKey)) {
-                words.add(addTextualInfo(currentVerse, strongKey, word, untaggedContent));
-            } else {
-                partial = true;
-            }
-        }
-
-        if (partial) {
-            for (final Word w : words) {
-                w.setPartial(true);
-            }
-        }
-    }
-
-    /**
-     * Gets the text of the element and its children
-     *
-     * @param element the element
-     * @return the text
-     */
-    private String getText(final Element element) {
-        // can contain <a> and <seg>, both of which we need to output
-        final StringBuilder sb = new StringBuilder(32);
-        getTextRecurively(sb, element);
-        return sb.toString();
-    }
-
-    /**
-     * Gets the text recurively.
-     *
-     * @param sb      the sb
-     * @param content the content
-     */
-    private void getTextRecurively(final StringBuilder sb, final Content content) {
-        if (content instanceof Text) {
-            sb.append(((Text) content).getText());
-            return;
-        }
-
-        if (content instanceof Element) {
-            // iterate through all children
-            final Element element = (Element) content;
-            // we only consider some elements
-            if (!VALID_TEXT_ELEMENTS.contains(element.getName().toLowerCase())) {
-                return;
-            }
-
-            final List<Content> children = element.getContent();
-            for (final Content c : children) {
-                getTextRecurively(sb, c);
-            }
-        }
-    }
-
-    /**
-     * Blacklisted, if the word is contained in a direct mapping for the relevant testament
-     *
-     * @param strongKey the strong key
-     * @return true, if successful
-     */
-    private boolean blacklisted(final String strongKey) {
-        return this.testament == Testament.OLD && this.hebrewDirectMapping.containsKey(strongKey);
-    }
-
-    /**
-     * Checks if is h00.
-     *
-     * @param currentStrong a strong number
-     * @return true, if is a single H followed by only 0s, which indicates that the strong numbers go with their next
-     * occurrence
-     */
-    private boolean isH00(final String currentStrong) {
-        for (int ii = 0; ii < currentStrong.length(); ii++) {
-            if (currentStrong.charAt(ii) != '0') {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
-    /**
-     * Finally, we have some information to add to this provider. We try and add it in an efficient fashion.
-     * <p/>
-     * So, how do we store this? The most meaningful piece of data is a STRONG number, since it identifies the word that
-     * we want to retrieve. Without the strong number, we don't have any information at all. Therefore, the first level
-     * of lookup should be by Strong number.
-     * <p/>
-     * Made package private for testing purposes only.
-     *
-     * @param verseReference the verse reference that specifies locality (least important factor)
-     * @param strongKey      the strong number (identifies the root/meaning of the word)
-     * @param word           the word to be stored
-     * @return the word that has been added
-     */
-    Word addTextualInfo(final Verse verseReference, final String strongKey, final String word, final String untaggedContent) {
-        final DualKey<String, String> strongVerseKey = new DualKey<String, String>(strongKey, verseReference == null ? NO_VERSE : verseReference.getOsisIDNoSubIdentifier());
-        Deque<Word> verseKeyedStrongs = this.limitedAccuracy.get(strongVerseKey);
-        if (verseKeyedStrongs == null) {
-            verseKeyedStrongs = new LinkedList<>();
-            this.limitedAccuracy.put(strongVerseKey, verseKeyedStrongs);
-        }
-        final Word w = new Word(word, untaggedContent);
-        verseKeyedStrongs.add(w);
-        return w;
-    }
-
     /**
      * Sets the testament, to be used to determine the indirect/direct mappings to use when generating the interlinear.
      *
@@ -0,0 +1,386 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.xsl.impl;
+
+import static com.tyndalehouse.step.core.utils.StringConversionUtils.getAnyKey;
+import static com.tyndalehouse.step.core.utils.StringUtils.split;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookData;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.OSISUtil;
+import org.crosswire.jsword.passage.NoSuchVerseException;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseFactory;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Testament;
+import org.crosswire.jsword.versification.Versification;
+import org.jdom2.Content;
+import org.jdom2.Element;
+import org.jdom2.Text;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+
+/**
+ * The words of one chapter of a version, keyed by strong number and verse, in the order in which they appear. The
+ * index is built once from the OSIS XML and never modified afterwards, so that it can be shared by all the
+ * interlinears rendering that chapter at the same time. Each {@link InterlinearProviderImpl} keeps track of the
+ * words it has already used.
+ *
+ * @author chrisburrell
+ */
+public final class InterlinearWordIndex {
+    /**
+     * An index without any words
+     */
+    public static final InterlinearWordIndex EMPTY = new InterlinearWordIndex(
+            Collections.<DualKey<String, String>, Word[]> emptyMap(), 0);
+    private static final Logger LOGGER = LoggerFactory.getLogger(InterlinearWordIndex.class);
+    /**
+     * contains the set of tags that may contain biblical text, all lower case
+     */
+    private static final Set<String> VALID_TEXT_ELEMENTS = new HashSet<String>();
+    private final Map<DualKey<String, String>, Word[]> words;
+    private final int size;
+
+    static {
+        VALID_TEXT_ELEMENTS.add("divinename");
+        VALID_TEXT_ELEMENTS.add("a");
+        VALID_TEXT_ELEMENTS.add("foreign");
+        VALID_TEXT_ELEMENTS.add("hi");
+        VALID_TEXT_ELEMENTS.add("name");
+        VALID_TEXT_ELEMENTS.add("q");
+        VALID_TEXT_ELEMENTS.add("w");
+        VALID_TEXT_ELEMENTS.add("seg");
+        VALID_TEXT_ELEMENTS.add("transChange");
+        VALID_TEXT_ELEMENTS.add("doxology");
+        VALID_TEXT_ELEMENTS.add("colophon");
+        VALID_TEXT_ELEMENTS.add("refrain");
+        VALID_TEXT_ELEMENTS.add("attribution");
+    }
+
+    /**
+     * @param words the words, keyed by strong number and verse
+     * @param size  the total number of words
+     */
+    private InterlinearWordIndex(final Map<DualKey<String, String>, Word[]> words, final int size) {
+        this.words = words;
+        this.size = size;
+    }
+
+    /**
+     * Reads the text of a chapter, including any content that precedes its first verse
+     *
+     * @param book      the version
+     * @param v11n      the versification of the version
+     * @param bibleBook the book of the bible
+     * @param chapter   the chapter
+     * @return the index of the words in the chapter
+     */
+    public static InterlinearWordIndex read(final Book book, final Versification v11n, final BibleBook bibleBook,
+                                            final int chapter) {
+        final Verse start = new Verse(v11n, bibleBook, chapter, 0);
+        final VerseRange range = new VerseRange(v11n, start,
+                new Verse(v11n, bibleBook, chapter, v11n.getLastVerse(bibleBook, chapter)));
+
+        final Builder builder = new Builder(v11n, v11n.getTestament(start.getOrdinal()) == Testament.OLD);
+        try {
+            builder.scanForTextualInformation(new BookData(book, range).getOsisFragment(), null);
+        } catch (final BookException e) {
+            throw new StepInternalException(e.getMessage(), e);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param strong the strong number
+     * @param osisID the verse, or {@link InterlinearProviderImpl#NO_VERSE}
+     * @return the words tagged with the strong number in that verse, in order, or null if there are none. The array
+     * must not be modified.
+     */
+    Word[] getWords(final String strong, final String osisID) {
+        return this.words.get(new DualKey<String, String>(strong, osisID));
+    }
+
+    /**
+     * @return the total number of words held in the index
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return true if the chapter doesn't contain any tagged words
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Iterates through the OSIS XML, finding all the words tagged with strong numbers. Not thread safe, since it
+     * keeps track of the verse we're in.
+     */
+    static final class Builder {
+        private final Map<DualKey<String, String>, List<Word>> words = new HashMap<DualKey<String, String>, List<Word>>();
+        private final Versification versification;
+        private final boolean oldTestament;
+        private Verse currentVerse;
+        private int size;
+
+        /**
+         * @param versification the versification of the text being read
+         * @param oldTestament  true if the text is from the Old Testament, where some strong numbers are mapped
+         *                      directly rather than looked up in the text
+         */
+        Builder(final Versification versification, final boolean oldTestament) {
+            this.versification = versification;
+            this.oldTestament = oldTestament;
+        }
+
+        /**
+         * @return the immutable index
+         */
+        InterlinearWordIndex build() {
+            if (this.size == 0) {
+                return EMPTY;
+            }
+
+            final Map<DualKey<String, String>, Word[]> index = new HashMap<DualKey<String, String>, Word[]>(
+                    this.words.size() * 4 / 3 + 1);
+            for (final Entry<DualKey<String, String>, List<Word>> entry : this.words.entrySet()) {
+                index.put(entry.getKey(), entry.getValue().toArray(new Word[entry.getValue().size()]));
+            }
+            return new InterlinearWordIndex(index, this.size);
+        }
+
+        /**
+         * Adds a word to the index. Words in verse 0 are keyed in the same way as words that precede any verse,
+         * since that is how they are looked up.
+         *
+         * @param verseReference  the verse reference that specifies locality (least important factor)
+         * @param strongKey       the strong number (identifies the root/meaning of the word)
+         * @param word            the word to be stored
+         * @param untaggedContent the untagged content preceding the word
+         * @return the word that has been added
+         */
+        Word addTextualInfo(final Verse verseReference, final String strongKey, final String word,
+                            final String untaggedContent) {
+            final String osisID = verseReference == null || verseReference.getVerse() == 0
+                    ? InterlinearProviderImpl.NO_VERSE : verseReference.getOsisIDNoSubIdentifier();
+            final DualKey<String, String> strongVerseKey = new DualKey<String, String>(strongKey, osisID);
+            List<Word> verseKeyedStrongs = this.words.get(strongVerseKey);
+            if (verseKeyedStrongs == null) {
+                verseKeyedStrongs = new ArrayList<Word>(2);
+                this.words.put(strongVerseKey, verseKeyedStrongs);
+            }
+            final Word w = new Word(word, untaggedContent);
+            verseKeyedStrongs.add(w);
+            this.size++;
+            return w;
+        }
+
+        /**
+         * Sets up all the textual information for fast retrieval during XSL transformation.
+         *
+         * @param element      element to start with.
+         * @param untaggedText the untagged text preceding the element
+         * @return true if the untagged text has been consumed
+         */
+        boolean scanForTextualInformation(final Element element, final String untaggedText) {
+            // check to see if we've hit a new verse, if so, we update the verse
+            updateVerseRef(element);
+
+            // check to see if we've hit a node of interest
+            if (element.getName().equals(OSISUtil.OSIS_ELEMENT_W)) {
+                extractTextualInfoFromNode(element, untaggedText);
+                return true;
+            }
+
+            //small optimization to remove processing of potentially verbose notes
+            if (element.getName().equals(OSISUtil.OSIS_ELEMENT_NOTE)) {
+                return false;
+            }
+
+            // iterate through all children and call recursively
+            StringBuilder untaggedContent = null;
+            for (final Content data : element.getContent()) {
+                //we capture untagged content at the same level as the elements that we process
+                if (data instanceof Text) {
+                    if (untaggedContent == null) {
+                        untaggedContent = new StringBuilder(32);
+                    }
+
+                    untaggedContent.append(((Text) data).getText());
+                }
+
+                if (data instanceof Element) {
+                    final Element ele = (Element) data;
+                    if (untaggedContent != null) {
+                        if (scanForTextualInformation(ele, untaggedContent.toString())) {
+                            //we've consumed the untagged content, so remove it now
+                            untaggedContent = null;
+                        }
+                    } else {
+                        scanForTextualInformation(ele, null);
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Gets the OSIS id if any
+         *
+         * @param element the osis element
+         */
+        private void updateVerseRef(final Element element) {
+            if (OSISUtil.OSIS_ELEMENT_VERSE.equals(element.getName())) {
+                final String osisId = element.getAttributeValue(OSISUtil.OSIS_ATTR_OSISID);
+                if (osisId != null) {
+                    try {
+                        this.currentVerse = VerseFactory.fromString(this.versification, osisId);
+                    } catch (final NoSuchVerseException ex) {
+                        LOGGER.trace("Unable to convert ref - probably not a verse reference.", ex);
+                    }
+                }
+            }
+        }
+
+        /**
+         * retrieves textual information and adds it to the index.
+         *
+         * @param element         the element to extract information from
+         * @param untaggedContent the untagged content preceding the element
+         */
+        private void extractTextualInfoFromNode(final Element element, final String untaggedContent) {
+            final String strong = element.getAttributeValue(OSISUtil.ATTRIBUTE_W_LEMMA);
+
+            // some attributes may contain multiple strongs and morphs tagged to one word.
+            // therefore we do need to split the text.
+            final String[] strongs = split(strong);
+            if (strongs == null) {
+                return;
+            }
+
+            // there is no way of know which strong goes with which morph, and we only
+            // have one phrase anyway
+            final String word = getText(element);
+            final List<Word> added = new ArrayList<Word>(2);
+            boolean partial = false;
+            for (final String s : strongs) {
+                final String strongKey = getAnyKey(s);
+                if (!isH00(strongKey) && !blacklisted(strongKey)) {
+                    added.add(addTextualInfo(this.currentVerse, strongKey, word, untaggedContent));
+                } else {
+                    partial = true;
+                }
+            }
+
+            if (partial) {
+                for (final Word w : added) {
+                    w.setPartial(true);
+                }
+            }
+        }
+
+        /**
+         * Gets the text of the element and its children
+         *
+         * @param element the element
+         * @return the text
+         */
+        private String getText(final Element element) {
+            // can contain <a> and <seg>, both of which we need to output
+            final StringBuilder sb = new StringBuilder(32);
+            getTextRecursively(sb, element);
+            return sb.toString();
+        }
+
+        /**
+         * @param sb      the text so far
+         * @param content the content
+         */
+        private void getTextRecursively(final StringBuilder sb, final Content content) {
+            if (content instanceof Text) {
+                sb.append(((Text) content).getText());
+                return;
+            }
+
+            if (content instanceof Element) {
+                // we only consider some elements
+                final Element element = (Element) content;
+                if (!VALID_TEXT_ELEMENTS.contains(element.getName().toLowerCase())) {
+                    return;
+                }
+
+                for (final Content c : element.getContent()) {
+                    getTextRecursively(sb, c);
+                }
+            }
+        }
+
+        /**
+         * @param strongKey the strong key
+         * @return true if the word is contained in a direct mapping for the relevant testament
+         */
+        private boolean blacklisted(final String strongKey) {
+            return this.oldTestament && InterlinearProviderImpl.HEBREW_DIRECT_MAPPING.containsKey(strongKey);
+        }
+
+        /**
+         * @param currentStrong a strong number
+         * @return true, if is a single H followed by only 0s, which indicates that the strong numbers go with their
+         * next occurrence
+         */
+        private boolean isH00(final String currentStrong) {
+            for (int ii = 0; ii < currentStrong.length(); ii++) {
+                if (currentStrong.charAt(ii) != '0') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -34,6 +34,7 @@ package com.tyndalehouse.step.core.xsl.impl;
 
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.service.VocabularyService;
+import com.tyndalehouse.step.core.service.helpers.InterlinearWordIndexCache;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import com.tyndalehouse.step.core.xsl.InterlinearProvider;
@@ -78,6 +79,7 @@ public class MultiInterlinearProviderImpl implements MultiInterlinearProvider {
      * @param textScope            the reference, or passage range that should be considered when setting up the
      *                             interlinear provider
      * @param versificationService the service for working with a book
+     * @param wordIndexCache       the cache of the words in each chapter, shared across requests
      * @param vocabProvider        the provider of vocabulary
      * @param stripGreekAccents    true to ensure Greek accents are stripped off Hebrew texts
      * @param stripHebrewAccents   true to ensure Hebrew accents are stripped off Hebrew texts
@@ -88,7 +90,8 @@ public class MultiInterlinearProviderImpl implements MultiInterlinearProvider {
             final Versification masterVersification,
             String versions,
             final String textScope,
-            final JSwordVersificationService versificationService, final VocabularyService vocabProvider,
+            final JSwordVersificationService versificationService, final InterlinearWordIndexCache wordIndexCache,
+            final VocabularyService vocabProvider,
             final boolean stripGreekAccents, final boolean stripHebrewAccents, final boolean stripVowels) {
         this.versificationService = versificationService;
 
@@ -98,8 +101,6 @@ public class MultiInterlinearProviderImpl implements MultiInterlinearProvider {
         }
 
         try {
-            final Map<String, String> hebrewDirectMapping = initHebrewDirectMapping();
-            final Map<String, String> hebrewIndirectMappings = initHebrewIndirectMappings();
             final String[] differentVersions = split(versions, VERSION_SEPARATOR);
 
             Key versifiedKey = PassageKeyFactory.instance().getKey(masterVersification, textScope);
@@ -108,8 +109,8 @@ public class MultiInterlinearProviderImpl implements MultiInterlinearProvider {
                 if (isNotBlank(version)) {
                     final String normalisedVersion = version.trim();
                     this.interlinearProviders.put(normalisedVersion, new InterlinearProviderImpl(masterVersion, masterVersification,
-                            versificationService, normalisedVersion, versifiedKey, hebrewDirectMapping,
-                            hebrewIndirectMappings, vocabProvider, stripGreekAccents, stripHebrewAccents, stripVowels));
+                            versificationService, normalisedVersion, versifiedKey, wordIndexCache,
+                            vocabProvider, stripGreekAccents, stripHebrewAccents, stripVowels));
                 }
             }
             // CHECKSTYLE:OFF
@@ -122,38 +123,6 @@ public class MultiInterlinearProviderImpl implements MultiInterlinearProvider {
 
     }
 
-    /**
-     * Inits the hebrew indirect mappings. These are used if no link is found.
-     *
-     * @return the mapping between the strong numbers and their corresponding English.
-     */
-    private Map<String, String> initHebrewIndirectMappings() {
-        final Map<String, String> hebrewLexicon = new HashMap<String, String>(9);
-        hebrewLexicon.put("1961", "#to be");
-        hebrewLexicon.put("3588", "#that");
-        hebrewLexicon.put("996", "#between");
-        hebrewLexicon.put("413", "#to");
-        hebrewLexicon.put("834", "#that");
-        hebrewLexicon.put("3605", "#all");
-        hebrewLexicon.put("3606", "#all");
-        hebrewLexicon.put("5921", "#on");
-        hebrewLexicon.put("4480", "#from");
-        hebrewLexicon.put("3651", "#thus");
-        return hebrewLexicon;
-    }
-
-    /**
-     * Inits the hebrew direct mapping. The override, regardless of whether the interlineared text contains a mapping
-     *
-     * @return the mappings between strong numbers and the words that should appear
-     */
-    private Map<String, String> initHebrewDirectMapping() {
-        final Map<String, String> blackList = new HashMap<String, String>(2);
-        blackList.put("853", "#the");
-        blackList.put("854", "#the");
-        return blackList;
-    }
-
     @Override
     public String getWord(final String version, final String verseNumber, final String strong,
                           final String morph) {
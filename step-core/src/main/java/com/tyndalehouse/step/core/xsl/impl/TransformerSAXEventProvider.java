@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.xsl.impl;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXSource;
+
+import org.crosswire.common.xml.SAXEventProvider;
+import org.crosswire.common.xml.SAXEventProviderInputSource;
+import org.crosswire.common.xml.SAXEventProviderXMLReader;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * A {@link SAXEventProvider} that runs the XML from another provider through a {@link Transformer} obtained from
+ * compiled templates. This is the equivalent of JSword's TransformingSAXEventProvider, but without the per-request
+ * stylesheet resolution.
+ * 
+ * @author chrisburrell
+ */
+public class TransformerSAXEventProvider implements SAXEventProvider {
+    private final Transformer transformer;
+    private final SAXEventProvider xmlsep;
+
+    /**
+     * @param transformer a transformer dedicated to this request
+     * @param xmlsep the source of the XML to be transformed
+     */
+    public TransformerSAXEventProvider(final Transformer transformer, final SAXEventProvider xmlsep) {
+        this.transformer = transformer;
+        this.xmlsep = xmlsep;
+    }
+
+    /**
+     * @param name the name of the XSLT parameter
+     * @param value the value of the parameter
+     */
+    public void setParameter(final String name, final Object value) {
+        this.transformer.setParameter(name, value);
+    }
+
+    /**
+     * @param name the name of the XSLT parameter
+     * @return the value that was set, or null
+     */
+    public Object getParameter(final String name) {
+        return this.transformer.getParameter(name);
+    }
+
+    @Override
+    public void provideSAXEvents(final ContentHandler handler) throws SAXException {
+        try {
+            final Source src = new SAXSource(new SAXEventProviderXMLReader(this.xmlsep),
+                    new SAXEventProviderInputSource());
+            this.transformer.transform(src, new SAXResult(handler));
+        } catch (final TransformerException ex) {
+            throw new SAXException(ex);
+        }
+    }
+}
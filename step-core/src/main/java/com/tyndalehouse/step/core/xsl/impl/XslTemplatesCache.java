@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.xsl.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import org.crosswire.common.xml.TransformingSAXEventProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.IOUtils;
+import com.tyndalehouse.step.core.xsl.XslConversionType;
+
+/**
+ * Holds one compiled {@link Templates} per {@link XslConversionType}. Compiling a stylesheet is expensive, but
+ * the compiled form is thread-safe, so we do it once and hand out a fresh (cheap) {@link Transformer} for each
+ * request.
+ * <p>
+ * When JSword is running in development mode (see {@link TransformingSAXEventProvider#setDevelopmentMode(boolean)}),
+ * stylesheets are recompiled on every request so that changes to the XSL files are picked up straight away.
+ * 
+ * @author chrisburrell
+ */
+public class XslTemplatesCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(XslTemplatesCache.class);
+    private final Map<XslConversionType, Templates> templates = new ConcurrentHashMap<XslConversionType, Templates>();
+    private final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+    private final Class<?> resourceAnchor;
+
+    /**
+     * @param resourceAnchor the class against which the stylesheet file names are resolved
+     */
+    public XslTemplatesCache(final Class<?> resourceAnchor) {
+        this.resourceAnchor = resourceAnchor;
+    }
+
+    /**
+     * @param type the type of conversion required
+     * @return a new transformer, ready to have its parameters set
+     */
+    public Transformer newTransformer(final XslConversionType type) {
+        try {
+            return getTemplates(type).newTransformer();
+        } catch (final TransformerConfigurationException e) {
+            throw new StepInternalException("Unable to create transformer for " + type.getFile(), e);
+        }
+    }
+
+    /**
+     * @param type the type of conversion required
+     * @return the compiled stylesheet, compiling it the first time round
+     */
+    Templates getTemplates(final XslConversionType type) {
+        if (TransformingSAXEventProvider.isDevelopmentMode()) {
+            return compile(type);
+        }
+
+        final Templates cached = this.templates.get(type);
+        if (cached != null) {
+            return cached;
+        }
+
+        // only ever compile once per type, subsequent readers never reach this lock
+        synchronized (this) {
+            Templates compiled = this.templates.get(type);
+            if (compiled == null) {
+                compiled = compile(type);
+                this.templates.put(type, compiled);
+            }
+            return compiled;
+        }
+    }
+
+    /**
+     * Compiles the stylesheet associated with the type
+     * 
+     * @param type the conversion type
+     * @return the compiled stylesheet
+     */
+    private Templates compile(final XslConversionType type) {
+        final URL resource = this.resourceAnchor.getResource(type.getFile());
+        if (resource == null) {
+            throw new StepInternalException("Unable to find stylesheet " + type.getFile());
+        }
+
+        LOGGER.debug("Compiling stylesheet [{}]", resource);
+        InputStream stream = null;
+        try {
+            stream = resource.openStream();
+            final StreamSource source = new StreamSource(stream, resource.toExternalForm());
+
+            // the factory is not guaranteed to be thread-safe
+            synchronized (this.transformerFactory) {
+                return this.transformerFactory.newTemplates(source);
+            }
+        } catch (final IOException e) {
+            throw new StepInternalException("Failed to load resource correctly", e);
+        } catch (final TransformerConfigurationException e) {
+            throw new StepInternalException("Unable to compile stylesheet " + type.getFile(), e);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+}
@@ -20,6 +20,7 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.tyndalehouse.step.core.service.jsword.impl.JSwordIndexScheduler;
 import com.tyndalehouse.step.core.service.jsword.impl.JSwordModuleServiceImpl;
 import com.tyndalehouse.step.core.utils.TestUtils;
 
@@ -51,7 +52,7 @@ public class DirectoryInstallerTest {
         }
 
         final JSwordModuleServiceImpl jSwordModuleServiceImpl = new JSwordModuleServiceImpl(null, installers,
-                TestUtils.mockVersificationService(), TestUtils.mockVersionResolver());
+                TestUtils.mockVersificationService(), TestUtils.mockVersionResolver(), new JSwordIndexScheduler(1, 3600000));
         jSwordModuleServiceImpl.setOffline(true);
         jSwordModuleServiceImpl.reloadInstallers();
 
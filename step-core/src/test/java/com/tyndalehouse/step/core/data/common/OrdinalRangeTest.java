@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.data.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the overlapping, storing and parsing of ordinal ranges
+ *
+ * @author chrisburrell
+ */
+public class OrdinalRangeTest {
+    /** ranges overlap if they share at least one ordinal, including their bounds */
+    @Test
+    public void testOverlaps() {
+        final OrdinalRange range = new OrdinalRange(10, 20);
+        assertTrue(range.overlaps(new OrdinalRange(15, 15)));
+        assertTrue(range.overlaps(new OrdinalRange(1, 10)));
+        assertTrue(range.overlaps(new OrdinalRange(20, 30)));
+        assertTrue(range.overlaps(new OrdinalRange(1, 30)));
+        assertFalse(range.overlaps(new OrdinalRange(1, 9)));
+        assertFalse(range.overlaps(new OrdinalRange(21, 30)));
+    }
+
+    /** a document spanning the query without overlapping any of its ranges is not a match */
+    @Test
+    public void testOverlapsBetweenRanges() {
+        final List<OrdinalRange> document = new ArrayList<OrdinalRange>();
+        document.add(new OrdinalRange(1, 2));
+        document.add(new OrdinalRange(100, 101));
+
+        final List<OrdinalRange> query = new ArrayList<OrdinalRange>();
+        query.add(new OrdinalRange(50, 60));
+        assertFalse(OrdinalRange.overlaps(document, query));
+
+        query.add(new OrdinalRange(101, 200));
+        assertTrue(OrdinalRange.overlaps(document, query));
+    }
+
+    /** ranges are read back as they were stored */
+    @Test
+    public void testFormatAndParse() {
+        final List<OrdinalRange> ranges = new ArrayList<OrdinalRange>();
+        ranges.add(new OrdinalRange(1, 1));
+        ranges.add(new OrdinalRange(23145, 23213));
+
+        final String stored = OrdinalRange.format(ranges);
+        assertEquals("1-1 23145-23213", stored);
+        assertEquals(ranges, OrdinalRange.parse(stored));
+        assertTrue(OrdinalRange.parse("").isEmpty());
+    }
+}
@@ -97,6 +97,21 @@ public class LoaderTest {
         assertEquals(100, l.getTotalProgress());
     }
 
+    /**
+     * the number of install threads is configurable, but never less than 1
+     */
+    @Test
+    public void testInstallThreads() {
+        final Properties properties = new Properties();
+        assertTrue(new Loader(null, null, properties, null, null, null).getInstallThreads() >= 1);
+
+        properties.setProperty("app.install.threads", "3");
+        assertEquals(3, new Loader(null, null, properties, null, null, null).getInstallThreads());
+
+        properties.setProperty("app.install.threads", "0");
+        assertEquals(1, new Loader(null, null, properties, null, null, null).getInstallThreads());
+    }
+
     /**
      * loads the nave module
      */
@@ -124,7 +139,11 @@ public class LoaderTest {
         getLoader("test.data.path.geography.openbible", "geography.tab").loadOpenBibleGeography();
         assertLoaded(1, "obplace", "esvName", "Ekron");
 
-        assertTrue(getEntities(1, "obplace", "references", "Isa.11.11").length > 0);
+        final EntityIndexReader reader = this.entityManager.getReader("obplace");
+        assertTrue(reader.searchOverlappingRanges("referenceRanges",
+                getPassageService().getOrdinalRanges("Isa.11.11", "ESV_th")).length > 0);
+        assertTrue(reader.searchOverlappingRanges("referenceRanges",
+                getPassageService().getOrdinalRanges("Isa", "ESV_th")).length > 0);
     }
 
     /**
@@ -240,12 +259,19 @@ public class LoaderTest {
     private Loader getLoader(final String key, final String file) {
         final Properties coreProperties = new Properties();
         coreProperties.put(key, file);
-        final JSwordVersificationService versificationService = TestUtils.mockVersificationService();
-        return new Loader(new JSwordPassageServiceImpl(versificationService, null, null, null,
-                mock(VersionResolver.class), null), null, coreProperties, this.entityManager,
+        return new Loader(getPassageService(), null, coreProperties, this.entityManager,
                 this.clientSessionProvider, mock(AppManagerService.class));
     }
 
+    /**
+     * @return a passage service that resolves references
+     */
+    private JSwordPassageServiceImpl getPassageService() {
+        final JSwordVersificationService versificationService = TestUtils.mockVersificationService();
+        return new JSwordPassageServiceImpl(versificationService, null, null, null,
+                mock(VersionResolver.class), null, null);
+    }
+
     /**
      * Uses an "exact term" approach
      * 
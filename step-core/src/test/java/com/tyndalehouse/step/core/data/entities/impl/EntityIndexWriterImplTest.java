@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.data.entities.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tyndalehouse.step.core.data.EntityConfiguration;
+import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+
+/**
+ * Tests that new entity indexes replace the live index in full, or not at all
+ *
+ * @author chrisburrell
+ */
+public class EntityIndexWriterImplTest {
+    private static final String ENTITY = "versionInfo";
+    @Rule
+    public TemporaryFolder indexes = new TemporaryFolder();
+    private EntityManager manager;
+    private File live;
+
+    /**
+     * sets up a live index in a temporary directory
+     */
+    @Before
+    public void setUp() {
+        this.manager = mock(EntityManager.class);
+        when(this.manager.getConfig(ENTITY)).thenReturn(new EntityConfiguration("test/step/entities/", ENTITY, null));
+        this.live = new File(this.indexes.getRoot(), ENTITY);
+        build(createWriter(true, null), "ESV");
+    }
+
+    /**
+     * a new index replaces the live index, leaving nothing else behind
+     */
+    @Test
+    public void testSwap() throws IOException {
+        build(createWriter(true, null), "KJV", "NIV");
+
+        assertEquals(Arrays.asList("KJV", "NIV"), getVersions());
+        assertEquals(Arrays.asList(ENTITY), Arrays.asList(this.indexes.getRoot().list()));
+    }
+
+    /**
+     * a build that fails before it is finished leaves the live index as it was, and is cleared up by the next build
+     */
+    @Test
+    public void testFailedBuild() throws IOException {
+        final EntityIndexWriterImpl writer = createWriter(true, null);
+        writer.addFieldToCurrentDocument("version", "KJV");
+        writer.save();
+
+        // the loader fails at this point, so the writer is abandoned rather than closed
+        writer.getWriter().rollback();
+        assertEquals(Arrays.asList("ESV"), getVersions());
+
+        build(createWriter(true, null), "NIV");
+        assertEquals(Arrays.asList("NIV"), getVersions());
+        assertEquals(Arrays.asList(ENTITY), Arrays.asList(this.indexes.getRoot().list()));
+    }
+
+    /**
+     * a new index that can't be moved into place is discarded, and the live index put back
+     */
+    @Test
+    public void testFailedSwap() throws IOException {
+        final EntityIndexWriterImpl writer = createWriter(true, ENTITY + ".building");
+        writer.addFieldToCurrentDocument("version", "KJV");
+        writer.save();
+        try {
+            writer.close();
+            fail("The new index should not have been moved into place");
+        } catch (final StepInternalException e) {
+            // expected
+        }
+
+        assertEquals(Arrays.asList("ESV"), getVersions());
+        assertEquals(Arrays.asList(ENTITY), Arrays.asList(this.indexes.getRoot().list()));
+        // only the live index built in setUp has been refreshed
+        verify(this.manager, times(1)).refresh(ENTITY);
+    }
+
+    /**
+     * a live index that can't be moved out of the way is left untouched
+     */
+    @Test
+    public void testLiveIndexInUse() throws IOException {
+        final EntityIndexWriterImpl writer = createWriter(true, ENTITY);
+        writer.addFieldToCurrentDocument("version", "KJV");
+        writer.save();
+        try {
+            writer.close();
+            fail("The live index should not have been replaced");
+        } catch (final StepInternalException e) {
+            // expected
+        }
+
+        assertEquals(Arrays.asList("ESV"), getVersions());
+        assertFalse(new File(this.indexes.getRoot(), ENTITY + ".building").exists());
+    }
+
+    /**
+     * an index built in memory is copied over the live index
+     */
+    @Test
+    public void testInMemory() throws IOException {
+        build(createWriter(false, null), "KJV");
+        assertEquals(Arrays.asList("KJV"), getVersions());
+    }
+
+    /**
+     * @param onDisk        true to build the index on disk
+     * @param unmovableName the name of a directory that can't be renamed, may be null
+     * @return a writer for the index in the temporary directory
+     */
+    private EntityIndexWriterImpl createWriter(final boolean onDisk, final String unmovableName) {
+        return new EntityIndexWriterImpl(this.manager, ENTITY, onDisk) {
+            @Override
+            File getLiveLocation() {
+                return EntityIndexWriterImplTest.this.live;
+            }
+
+            @Override
+            boolean rename(final File from, final File to) {
+                return !from.getName().equals(unmovableName) && super.rename(from, to);
+            }
+        };
+    }
+
+    /**
+     * @param writer   the writer
+     * @param versions the versions to add to the index, one per document
+     */
+    private void build(final EntityIndexWriterImpl writer, final String... versions) {
+        for (final String version : versions) {
+            writer.addFieldToCurrentDocument("version", version);
+            writer.save();
+        }
+        writer.close();
+    }
+
+    /**
+     * @return the versions in the live index
+     * @throws IOException if the index could not be read
+     */
+    private List<String> getVersions() throws IOException {
+        final Directory directory = FSDirectory.open(this.live);
+        final IndexReader reader = IndexReader.open(directory, true);
+        try {
+            final List<String> versions = new ArrayList<String>();
+            for (int ii = 0; ii < reader.maxDoc(); ii++) {
+                versions.add(reader.document(ii).get("version"));
+            }
+            return versions;
+        } finally {
+            reader.close();
+            directory.close();
+        }
+    }
+}
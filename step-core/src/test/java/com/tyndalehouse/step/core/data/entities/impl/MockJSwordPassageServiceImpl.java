@@ -32,8 +32,10 @@
  ******************************************************************************/
 package com.tyndalehouse.step.core.data.entities.impl;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import com.tyndalehouse.step.core.data.common.OrdinalRange;
 import com.tyndalehouse.step.core.models.*;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.passage.Key;
@@ -205,6 +207,11 @@ public class MockJSwordPassageServiceImpl implements JSwordPassageService {
         return null;
     }
 
+    @Override
+    public List<OrdinalRange> getOrdinalRanges(final String references, final String version) {
+        return new ArrayList<OrdinalRange>(0);
+    }
+
      /**
      * Gets the first verse excluding zero.
      * 
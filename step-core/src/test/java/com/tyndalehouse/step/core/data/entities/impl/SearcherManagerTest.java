@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.data.entities.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+/**
+ * Tests the {@link SearcherManager}
+ * 
+ * @author chrisburrell
+ * 
+ */
+public class SearcherManagerTest {
+
+    /** a searcher that is swapped out stays open until the last query using it has released it */
+    @Test
+    public void testSwapDefersClose() throws IOException {
+        final SearcherManager manager = new SearcherManager();
+        final IndexSearcher first = newSearcher();
+        manager.swap(first, null);
+
+        final SearcherManager.SearcherReference running = manager.acquire();
+        assertSame(first, running.getSearcher());
+
+        final IndexSearcher second = newSearcher();
+        manager.swap(second, null);
+        assertEquals(1, first.getIndexReader().getRefCount());
+
+        final SearcherManager.SearcherReference next = manager.acquire();
+        assertSame(second, next.getSearcher());
+        next.release();
+
+        running.release();
+        assertEquals(0, first.getIndexReader().getRefCount());
+        assertEquals(1, second.getIndexReader().getRefCount());
+
+        manager.close();
+        assertEquals(0, second.getIndexReader().getRefCount());
+        assertNull(manager.acquire());
+    }
+
+    /**
+     * @return a searcher on an empty index
+     * @throws IOException failure to create the index
+     */
+    private IndexSearcher newSearcher() throws IOException {
+        final RAMDirectory directory = new RAMDirectory();
+        new IndexWriter(directory, new WhitespaceAnalyzer(), true, MaxFieldLength.UNLIMITED).close();
+        return new IndexSearcher(directory, true);
+    }
+}
@@ -25,14 +25,14 @@ public class TestEntityIndexWriterImpl extends EntityIndexWriterImpl {
     }
 
     @Override
-    Directory getNewRamDirectory() {
+    Directory getNewDirectory() {
         return TestLuceneIndexDirectory.getEntityDirectory(getEntityName());
     }
 
     @Override
     public synchronized int close() {
         try {
-            final IndexWriter ramWriter = getRamWriter();
+            final IndexWriter ramWriter = getWriter();
             ramWriter.maybeMerge();
             ramWriter.optimize(true);
             ramWriter.close();
@@ -1,8 +1,5 @@
 package com.tyndalehouse.step.core.data.entities.impl;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import com.google.inject.Binder;
 import com.google.inject.Guice;
 import com.google.inject.Module;
@@ -16,31 +13,22 @@ import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
  * 
  */
 public class TestEntityManager extends EntityManagerImpl {
-    private final Map<String, EntityIndexReader> indexReaders;
-
     /**
      * constructs a memory mapped entity manager
      */
     public TestEntityManager() {
-        super(true, "test/step/entities/", Guice.createInjector(new Module() {
+        super(true, true, "test/step/entities/", Guice.createInjector(new Module() {
 
             @Override
             public void configure(final Binder binder) {
                 binder.bind(JSwordPassageService.class).to(MockJSwordPassageServiceImpl.class);
             }
         }));
-        this.indexReaders = new HashMap<String, EntityIndexReader>();
-        super.setIndexReaders(this.indexReaders);
     }
 
     @Override
-    public EntityIndexReader getReader(final String entity) {
-        EntityIndexReader entityIndexReader = this.indexReaders.get(entity);
-        if (entityIndexReader == null) {
-            entityIndexReader = new TestEntityIndexReaderImpl(getConfig(entity));
-            this.indexReaders.put(entity, entityIndexReader);
-        }
-        return entityIndexReader;
+    protected EntityIndexReader createReader(final String entity) {
+        return new TestEntityIndexReaderImpl(getConfig(entity));
     }
 
     /**
@@ -46,6 +46,7 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.tyndalehouse.step.core.service.jsword.impl.JSwordIndexScheduler;
 import com.tyndalehouse.step.core.service.jsword.impl.JSwordModuleServiceImpl;
 import com.tyndalehouse.step.core.utils.TestUtils;
 
@@ -71,7 +72,8 @@ public class DownloadJSwordBiblesPreReq {
                 "ASV", "Montgomery", "FreCrampon", "SBLGNT", "TR", "WHNU", "OSMHB", "Chiuns" };
 
         final JSwordModuleServiceImpl jsword = new JSwordModuleServiceImpl(getInstallers(),
-                new ArrayList<Installer>(0), TestUtils.mockVersificationService(), TestUtils.mockVersionResolver());
+                new ArrayList<Installer>(0), TestUtils.mockVersificationService(), TestUtils.mockVersionResolver(),
+                new JSwordIndexScheduler(1, 3600000));
 
         for (final String moduleInitials : modules) {
             LOGGER.debug("Checking [{}] for install", moduleInitials);
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.tyndalehouse.step.core.data.EntityDoc;
+import com.tyndalehouse.step.core.data.EntityIndexReader;
+import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.data.IndexReaderCallback;
+import com.tyndalehouse.step.core.data.common.TermsAndMaxCount;
+
+/**
+ * Tests the lookups built from the definitions
+ *
+ * @author chrisburrell
+ */
+public class AncientSuggestionIndexTest {
+    private static final long TIMEOUT_MILLIS = 10000;
+    private RAMDirectory directory;
+    private Map<String, AncientSuggestionIndex.Lookup> lookups;
+
+    /**
+     * indexes a few greek and hebrew definitions
+     *
+     * @throws IOException uncaught exception
+     */
+    @Before
+    public void setUp() throws IOException {
+        this.directory = index(getDefinition("G0001", "love", "love", "10", null),
+                getDefinition("G0002", "lovely", "lovely", "50", null),
+                getDefinition("G0003", "lord", "love", "5", null),
+                getDefinition("G0004", "love", "love", "1000", "true"),
+                getDefinition("H0001", "love", "love", "100", null),
+                getDefinition("G0005", "Lamb", "lamb", "1", null),
+                getDefinition("G0006", "label", "lamb", "2", null));
+
+        final IndexReader reader = IndexReader.open(this.directory, true);
+        try {
+            this.lookups = AncientSuggestionIndex.readLookups(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** exact matches are sorted by popularity or by gloss, leaving out stop words and the other language */
+    @Test
+    public void testExactMatches() {
+        final AncientSuggestionIndex.Lookup greek = this.lookups.get("G" + AncientSuggestionIndex.Kind.MEANINGS.name());
+
+        assertStrongNumbers(greek.getExactMatches(Arrays.asList("love"), 5, true), "G0001", "G0003");
+        assertStrongNumbers(greek.getExactMatches(Arrays.asList("love"), 5, false), "G0003", "G0001");
+        assertStrongNumbers(greek.getExactMatches(Arrays.asList("love"), 1, true), "G0001");
+    }
+
+    /** prefix matches leave out what has already been retrieved, but count everything else */
+    @Test
+    public void testPrefixMatches() {
+        final AncientSuggestionIndex.Lookup greek = this.lookups.get("G" + AncientSuggestionIndex.Kind.MEANINGS.name());
+        final TermsAndMaxCount<EntityDoc> counts = new TermsAndMaxCount<EntityDoc>();
+
+        final EntityDoc[] matches = greek.getPrefixMatches(Arrays.asList("lo"),
+                new HashSet<String>(Arrays.asList("G0001")), 5, true, counts);
+        assertStrongNumbers(matches, "G0002", "G0003");
+        assertEquals(2, counts.getTotalCount());
+
+        greek.getPrefixMatches(Arrays.asList("lo", "lov"), Collections.<String>emptySet(), 5, false, counts);
+        assertEquals(3, counts.getTotalCount());
+
+        assertEquals(0, greek.getPrefixMatches(Arrays.asList("x"), Collections.<String>emptySet(), 5, true,
+                counts).length);
+        assertEquals(0, counts.getTotalCount());
+    }
+
+    /** each language only holds its own definitions */
+    @Test
+    public void testLanguages() {
+        final AncientSuggestionIndex.Lookup hebrew = this.lookups.get("H" + AncientSuggestionIndex.Kind.MEANINGS.name());
+        assertStrongNumbers(hebrew.getExactMatches(Arrays.asList("love"), 5, true), "H0001");
+    }
+
+    /** sorting on the gloss ignores its case */
+    @Test
+    public void testSortIgnoresCase() {
+        final AncientSuggestionIndex.Lookup greek = this.lookups.get("G" + AncientSuggestionIndex.Kind.MEANINGS.name());
+        assertStrongNumbers(greek.getExactMatches(Arrays.asList("lamb"), 5, false), "G0006", "G0005");
+    }
+
+    /**
+     * the previous tries are used whilst the re-indexed definitions are read, and replaced once they are built
+     *
+     * @throws Exception uncaught exception
+     */
+    @Test
+    public void testReindexKeepsServingPreviousTries() throws Exception {
+        final RAMDirectory reindexed = index(getDefinition("G0007", "light", "light", "1", null));
+        final CountDownLatch rebuilding = new CountDownLatch(1);
+        final CountDownLatch built = new CountDownLatch(1);
+        final AtomicInteger reads = new AtomicInteger();
+        final EntityIndexReader reader = mock(EntityIndexReader.class);
+        final EntityManager manager = mock(EntityManager.class);
+        when(manager.getReader("definition")).thenReturn(reader);
+        when(reader.read(any(IndexReaderCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                final boolean first = reads.getAndIncrement() == 0;
+                if (!first) {
+                    rebuilding.countDown();
+                    assertTrue(built.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+                }
+
+                final IndexReader indexReader = IndexReader.open(
+                        first ? AncientSuggestionIndexTest.this.directory : reindexed, true);
+                try {
+                    return ((IndexReaderCallback<?>) invocation.getArguments()[0]).read(indexReader);
+                } finally {
+                    indexReader.close();
+                }
+            }
+        });
+
+        final AncientSuggestionIndex index = new AncientSuggestionIndex(manager);
+        assertStrongNumbers(getMeanings(index, "love"), "G0001", "G0003");
+
+        index.entityChanged("definition");
+        assertTrue(rebuilding.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertStrongNumbers(getMeanings(index, "love"), "G0001", "G0003");
+
+        built.countDown();
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (getMeanings(index, "light").length == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertStrongNumbers(getMeanings(index, "light"), "G0007");
+        assertStrongNumbers(getMeanings(index, "love"));
+    }
+
+    private EntityDoc[] getMeanings(final AncientSuggestionIndex index, final String key) {
+        return index.get(true, AncientSuggestionIndex.Kind.MEANINGS).getExactMatches(Arrays.asList(key), 5, true);
+    }
+
+    private RAMDirectory index(final Document... definitions) throws IOException {
+        final RAMDirectory indexDirectory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(indexDirectory, new WhitespaceAnalyzer(), true,
+                IndexWriter.MaxFieldLength.UNLIMITED);
+        for (final Document definition : definitions) {
+            writer.addDocument(definition);
+        }
+        writer.close();
+        return indexDirectory;
+    }
+
+    private void assertStrongNumbers(final EntityDoc[] docs, final String... strongNumbers) {
+        final String[] actual = new String[docs.length];
+        for (int ii = 0; ii < docs.length; ii++) {
+            actual[ii] = docs[ii].get(OriginalWordUtils.STRONG_NUMBER_FIELD);
+        }
+        assertEquals(Arrays.asList(strongNumbers), Arrays.asList(actual));
+    }
+
+    private Document getDefinition(final String strongNumber, final String gloss, final String translation,
+                                   final String popularity, final String stopWord) {
+        final Document doc = new Document();
+        doc.add(new Field(OriginalWordUtils.STRONG_NUMBER_FIELD, strongNumber, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        doc.add(new Field("stepGloss", gloss, Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field("translations", translation, Field.Store.NO, Field.Index.ANALYZED));
+        doc.add(new Field("popularity", popularity, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        if (stopWord != null) {
+            doc.add(new Field("stopWord", stopWord, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        }
+        return doc;
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.lucene.search.Query;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.tyndalehouse.step.core.data.EntityDoc;
+import com.tyndalehouse.step.core.data.EntityIndexReader;
+import com.tyndalehouse.step.core.data.EntityManager;
+
+/**
+ * Tests the {@link MorphologyTable}
+ *
+ * @author chrisburrell
+ */
+public class MorphologyTableTest {
+    private EntityIndexReader reader;
+    private MorphologyTable table;
+
+    /**
+     * sets up a morphology index with a noun and a verb
+     */
+    @Before
+    public void setUp() {
+        final EntityManager manager = mock(EntityManager.class);
+        this.reader = mock(EntityIndexReader.class);
+        when(manager.getReader("morphology")).thenReturn(this.reader);
+
+        final EntityDoc noun = getMorphology("N-NSM", "noun", null, null, null);
+        final EntityDoc verb = getMorphology("V-2AMP-NSM", "Verb", "2nd Aorist", "Middle", "Participle");
+        when(this.reader.search(any(Query.class))).thenReturn(new EntityDoc[]{noun, verb});
+        this.table = new MorphologyTable(manager);
+    }
+
+    /** the classes of a noun are taken as they are */
+    @Test
+    public void testNounClasses() {
+        assertEquals("nsm", this.table.get("N-NSM").getColorClass());
+        assertNull(this.table.get("N-GSM"));
+    }
+
+    /** verbs get an extra class made up of their tense, voice and mood */
+    @Test
+    public void testVerbClasses() {
+        assertEquals("nsm vamp", this.table.get("V-2AMP-NSM").getColorClass());
+    }
+
+    /** the table is only read once, and read again after the morphology is re-indexed */
+    @Test
+    public void testRebuiltOnRefresh() {
+        final MorphologyTable.Morphology noun = this.table.get("N-NSM");
+        assertSame(noun, this.table.get("N-NSM"));
+
+        this.table.entityChanged("definition");
+        this.table.get("N-NSM");
+        verify(this.reader, times(1)).search(any(Query.class));
+
+        this.table.entityChanged("morphology");
+        this.table.get("N-NSM");
+        verify(this.reader, times(2)).search(any(Query.class));
+    }
+
+    /** a table read while the morphology was being re-indexed is read again on next use */
+    @Test
+    public void testRefreshDuringLoad() {
+        final EntityDoc oldNoun = getMorphology("N-NSM", "noun", null, null, null);
+        final EntityDoc newNoun = getMorphology("N-NSM", "noun", null, null, null);
+        when(newNoun.get("cssClasses")).thenReturn("new");
+        when(this.reader.search(any(Query.class))).thenAnswer(new Answer<EntityDoc[]>() {
+            private int calls;
+
+            @Override
+            public EntityDoc[] answer(final InvocationOnMock invocation) {
+                if (this.calls++ == 0) {
+                    MorphologyTableTest.this.table.entityChanged("morphology");
+                    return new EntityDoc[]{oldNoun};
+                }
+                return new EntityDoc[]{newNoun};
+            }
+        });
+
+        this.table.get("N-NSM");
+        assertEquals("new", this.table.get("N-NSM").getColorClass());
+        verify(this.reader, times(2)).search(any(Query.class));
+    }
+
+    /**
+     * @param code     the code
+     * @param function the function of the word
+     * @param tense    the tense
+     * @param voice    the voice
+     * @param mood     the mood
+     * @return the mocked morphology
+     */
+    private EntityDoc getMorphology(final String code, final String function, final String tense,
+                                    final String voice, final String mood) {
+        final EntityDoc doc = mock(EntityDoc.class);
+        when(doc.get("code")).thenReturn(code);
+        when(doc.get("cssClasses")).thenReturn("nsm");
+        when(doc.get("function")).thenReturn(function);
+        when(doc.get("tense")).thenReturn(tense);
+        when(doc.get("voice")).thenReturn(voice);
+        when(doc.get("mood")).thenReturn(mood);
+        return doc;
+    }
+}
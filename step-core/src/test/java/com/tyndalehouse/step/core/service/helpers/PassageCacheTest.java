@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tyndalehouse.step.core.models.InterlinearMode;
+import com.tyndalehouse.step.core.models.KeyWrapper;
+import com.tyndalehouse.step.core.models.LexiconSuggestion;
+import com.tyndalehouse.step.core.models.LookupOption;
+import com.tyndalehouse.step.core.models.OsisWrapper;
+import com.tyndalehouse.step.core.models.TrimmedLookupOption;
+import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
+
+/**
+ * Tests the {@link PassageCache}
+ *
+ * @author chrisburrell
+ */
+public class PassageCacheTest {
+    private final Versification kjv = Versifications.instance().getVersification("KJV");
+    private PassageCache cache;
+
+    /** sets up a cache large enough for a few passages */
+    @Before
+    public void setUp() {
+        this.cache = new PassageCache(1024 * 1024, mock(JSwordModuleService.class));
+    }
+
+    /** a passage is only returned for the key it was stored against */
+    @Test
+    public void testHitsAndMisses() throws NoSuchKeyException {
+        assertNull(this.cache.get(key("Gen.1", Locale.ENGLISH)));
+        this.cache.put(key("Gen.1", Locale.ENGLISH), passage("Gen.1"), this.cache.getGeneration());
+
+        assertEquals("Gen.1", this.cache.get(key("Gen.1", Locale.ENGLISH)).getOsisId());
+        assertNull(this.cache.get(key("Gen.2", Locale.ENGLISH)));
+        assertNull(this.cache.get(key("Gen.1", Locale.FRENCH)));
+        assertEquals(1, this.cache.getHitCount());
+        assertEquals(3, this.cache.getMissCount());
+    }
+
+    /** changes made to one copy of a passage never show up in the cache, or in other copies */
+    @Test
+    public void testCopiesAreIsolated() throws NoSuchKeyException {
+        final OsisWrapper original = passage("Gen.1");
+        this.cache.put(key("Gen.1", Locale.ENGLISH), original, this.cache.getGeneration());
+        original.setValue("changed after caching");
+        original.getRemovedOptions().clear();
+
+        final OsisWrapper first = this.cache.get(key("Gen.1", Locale.ENGLISH));
+        assertEquals("<div>Gen.1</div>", first.getValue());
+        assertEquals(1, first.getRemovedOptions().size());
+
+        first.setValue("decorated");
+        first.getRemovedOptions().clear();
+        first.getStrongNumbers().get("H0001").get(0).setGloss("changed");
+        first.getStrongNumbers().clear();
+        first.getKey().clear();
+        first.getPreviousChapter().setName("changed");
+        first.getLanguageCode()[0] = "fr";
+
+        final OsisWrapper second = this.cache.get(key("Gen.1", Locale.ENGLISH));
+        assertNotSame(first, second);
+        assertEquals("<div>Gen.1</div>", second.getValue());
+        assertEquals(1, second.getRemovedOptions().size());
+        assertEquals("father", second.getStrongNumbers().get("H0001").get(0).getGloss());
+        assertEquals("Gen.1", second.getKey().getOsisRef());
+        assertEquals("Genesis 1", second.getPreviousChapter().getName());
+        assertEquals("en", second.getLanguageCode()[0]);
+        assertNull(second.getNextChapter());
+    }
+
+    /** any change to a module empties the cache */
+    @Test
+    public void testModuleChangeClearsCache() throws NoSuchKeyException {
+        this.cache.put(key("Gen.1", Locale.ENGLISH), passage("Gen.1"), this.cache.getGeneration());
+        this.cache.moduleChanged("KJV");
+        assertNull(this.cache.get(key("Gen.1", Locale.ENGLISH)));
+    }
+
+    /** a passage rendered before a module changed is not kept, since it may show the old module */
+    @Test
+    public void testPassageRenderedBeforeChangeIsNotKept() throws NoSuchKeyException {
+        final long generation = this.cache.getGeneration();
+        this.cache.moduleChanged("KJV");
+        this.cache.put(key("Gen.1", Locale.ENGLISH), passage("Gen.1"), generation);
+        assertNull(this.cache.get(key("Gen.1", Locale.ENGLISH)));
+    }
+
+    /**
+     * @param reference the reference
+     * @param locale    the user's locale
+     * @return the key of a passage in the KJV
+     */
+    private PassageCacheKey key(final String reference, final Locale locale) {
+        return new PassageCacheKey(Arrays.asList("KJV"), reference, new ArrayList<LookupOption>(),
+                InterlinearMode.NONE, locale);
+    }
+
+    /**
+     * @param reference the reference
+     * @return a fully decorated passage
+     * @throws NoSuchKeyException if the reference is not valid
+     */
+    private OsisWrapper passage(final String reference) throws NoSuchKeyException {
+        final OsisWrapper passage = new OsisWrapper("<div>" + reference + "</div>",
+                PassageKeyFactory.instance().getKey(this.kjv, reference), new String[] { "en" }, this.kjv, "KJV",
+                InterlinearMode.NONE, "");
+
+        final List<TrimmedLookupOption> removed = new ArrayList<TrimmedLookupOption>();
+        removed.add(new TrimmedLookupOption("not available", LookupOption.NOTES));
+        passage.setRemovedOptions(removed);
+
+        final LexiconSuggestion suggestion = new LexiconSuggestion();
+        suggestion.setGloss("father");
+        final List<LexiconSuggestion> suggestions = new ArrayList<LexiconSuggestion>();
+        suggestions.add(suggestion);
+        final Map<String, List<LexiconSuggestion>> strongs = new HashMap<String, List<LexiconSuggestion>>();
+        strongs.put("H0001", suggestions);
+        passage.setStrongNumbers(strongs);
+
+        final KeyWrapper previous = new KeyWrapper();
+        previous.setName("Genesis 1");
+        passage.setPreviousChapter(previous);
+        return passage;
+    }
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import com.tyndalehouse.step.core.service.impl.SearchQuery;
+
+/**
+ * Tests the keys of the {@link SearchResultCache}
+ *
+ * @author chrisburrell
+ */
+public class SearchResultCacheTest {
+    private static final String[] VERSIONS = new String[] { "ESV_th", "KJV" };
+
+    /** moving to another page or changing the context is served by the same search */
+    @Test
+    public void testKeyIgnoresPageAndContext() {
+        assertEquals(SearchResultCache.getKey(new SearchQuery("t=elijah", VERSIONS, "false", 0, 1, null)),
+                SearchResultCache.getKey(new SearchQuery("t=elijah", VERSIONS, "false", 3, 4, null)));
+    }
+
+    /** a different sort, set of versions or range is a different search */
+    @Test
+    public void testKeyDistinguishesSearches() {
+        final String key = SearchResultCache.getKey(new SearchQuery("t=elijah", VERSIONS, "false", 0, 1, null));
+        assertFalse(key.equals(SearchResultCache.getKey(new SearchQuery("t=elijah", VERSIONS, "true", 0, 1,
+                null))));
+        assertFalse(key.equals(SearchResultCache.getKey(new SearchQuery("t=elijah", new String[] { "KJV" },
+                "false", 0, 1, null))));
+        assertFalse(key.equals(SearchResultCache.getKey(new SearchQuery("t=elijah", VERSIONS, "false", 0, 1,
+                "Gen"))));
+    }
+}
@@ -1,9 +1,21 @@
 package com.tyndalehouse.step.core.service.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import org.apache.lucene.document.Document;
+
+import com.tyndalehouse.step.core.data.EntityDoc;
+import com.tyndalehouse.step.core.data.EntityIndexReader;
+import com.tyndalehouse.step.core.data.EntityManager;
 import com.tyndalehouse.step.core.service.StrongAugmentationService;
+import com.tyndalehouse.step.core.service.StrongAugmentationService.AugmentedStrongs;
 import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
 import org.junit.Test;
 
@@ -21,7 +33,7 @@ public class VocabularyServiceImplTest {
      */
     @Test
     public void testKeyExtraction() {
-        final VocabularyServiceImpl vocab = new VocabularyServiceImpl(mock(EntityManagerImpl.class), mock(StrongAugmentationService.class));
+        final VocabularyServiceImpl vocab = new VocabularyServiceImpl(mock(EntityManagerImpl.class), mock(StrongAugmentationService.class), 16);
         assertEquals("G0016", vocab.getKeys("strong:G16")[0]);
         assertEquals("G0016", vocab.getKeys("strong:G16,strong:G019")[0]);
 
@@ -32,11 +44,38 @@ public class VocabularyServiceImplTest {
      */
     @Test
     public void testMultipleKeyExtraction() {
-        final VocabularyServiceImpl vocab = new VocabularyServiceImpl(mock(EntityManagerImpl.class), mock(StrongAugmentationService.class));
+        final VocabularyServiceImpl vocab = new VocabularyServiceImpl(mock(EntityManagerImpl.class), mock(StrongAugmentationService.class), 16);
         final String[] keys = vocab.getKeys("strong:G16,strong:G09");
         assertEquals("G0016", keys[0]);
         assertEquals("G0009", keys[1]);
 
     }
 
+    /**
+     * Repeated lookups of the same definition are served from the cache until the definitions change
+     */
+    @Test
+    public void testRepeatedLookupsAreCached() {
+        final EntityManager manager = mock(EntityManager.class);
+        final EntityIndexReader definitions = mock(EntityIndexReader.class);
+        when(manager.getReader("definition")).thenReturn(definitions);
+
+        final EntityDoc definition = new EntityDoc(new Document());
+        when(definitions.searchUniqueBySingleField("strongNumber", "G0016")).thenReturn(
+                new EntityDoc[] { definition });
+
+        final StrongAugmentationService augmentation = mock(StrongAugmentationService.class);
+        when(augmentation.augment(eq("ESV"), eq("John.1.1"), any(String[].class))).thenReturn(
+                new AugmentedStrongs(new String[] { "G0016" }, null));
+
+        final VocabularyServiceImpl vocab = new VocabularyServiceImpl(manager, augmentation, 16);
+        assertSame(definition, vocab.getLexiconDefinitions("strong:G16", "ESV", "John.1.1")[0]);
+        assertSame(definition, vocab.getLexiconDefinitions("strong:G16", "ESV", "John.1.1")[0]);
+        verify(definitions, times(1)).searchUniqueBySingleField("strongNumber", "G0016");
+
+        vocab.entityChanged("definition");
+        vocab.getLexiconDefinitions("strong:G16", "ESV", "John.1.1");
+        verify(definitions, times(2)).searchUniqueBySingleField("strongNumber", "G0016");
+    }
+
 }
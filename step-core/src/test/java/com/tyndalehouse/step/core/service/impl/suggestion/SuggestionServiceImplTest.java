@@ -0,0 +1,212 @@
+package com.tyndalehouse.step.core.service.impl.suggestion;
+
+import com.tyndalehouse.step.core.data.EntityDoc;
+import com.tyndalehouse.step.core.data.common.TermsAndMaxCount;
+import com.tyndalehouse.step.core.models.BookName;
+import com.tyndalehouse.step.core.models.LexiconSuggestion;
+import com.tyndalehouse.step.core.models.SearchToken;
+import com.tyndalehouse.step.core.models.SingleSuggestionsSummary;
+import com.tyndalehouse.step.core.models.SuggestionsSummary;
+import com.tyndalehouse.step.core.models.search.PopularSuggestion;
+import com.tyndalehouse.step.core.models.search.TextSuggestion;
+import com.tyndalehouse.step.core.service.SuggestionService;
+import com.tyndalehouse.step.core.service.helpers.SuggestionContext;
+import org.crosswire.jsword.internationalisation.LocaleProvider;
+import org.crosswire.jsword.internationalisation.LocaleProviderManager;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the sharing out of slots between the providers, once they have all been queried
+ *
+ * @author chrisburrell
+ */
+public class SuggestionServiceImplTest {
+    private static final Answer<Object> NO_RESULTS = new Answer<Object>() {
+        @Override
+        public Object answer(final InvocationOnMock invocation) {
+            final Class<?> returnType = invocation.getMethod().getReturnType();
+            if (returnType.isArray()) {
+                return Array.newInstance(returnType.getComponentType(), 0);
+            }
+            if (List.class.isAssignableFrom(returnType)) {
+                return new ArrayList<PopularSuggestion>();
+            }
+            return new TermsAndMaxCount<String>();
+        }
+    };
+
+    private final GreekAncientMeaningServiceImpl greekMeanings = mock(GreekAncientMeaningServiceImpl.class, NO_RESULTS);
+    private final HebrewAncientMeaningServiceImpl hebrewMeanings = mock(HebrewAncientMeaningServiceImpl.class, NO_RESULTS);
+    private final TextSuggestionServiceImpl text = mock(TextSuggestionServiceImpl.class, NO_RESULTS);
+    private final ReferenceSuggestionServiceImpl references = mock(ReferenceSuggestionServiceImpl.class, NO_RESULTS);
+    private final List<SuggestionServiceImpl> services = new ArrayList<SuggestionServiceImpl>(2);
+
+    /**
+     * stops the pools of the services, and puts back JSword's default locale provider, which uses the default locale
+     */
+    @After
+    public void tearDown() {
+        for (final SuggestionServiceImpl service : this.services) {
+            service.close();
+        }
+        LocaleProviderManager.setLocaleProvider(new LocaleProvider() {
+            @Override
+            public Locale getUserLocale() {
+                return Locale.getDefault();
+            }
+        });
+    }
+
+    /**
+     * Greek meanings give up a slot to the Hebrew meanings, whichever of them returns first
+     */
+    @Test
+    public void testSlotsAreSharedOutInOrder() {
+        doReturn(suggestions(5)).when(greekMeanings).convertToSuggestions(any(EntityDoc[].class), any(EntityDoc[].class));
+        doReturn(suggestions(5)).when(hebrewMeanings).convertToSuggestions(any(EntityDoc[].class), any(EntityDoc[].class));
+
+        final Map<String, SingleSuggestionsSummary> results = getTopSuggestions(createService(1000));
+
+        final SingleSuggestionsSummary greek = results.get(SearchToken.GREEK_MEANINGS);
+        assertEquals(2, greek.getPopularSuggestions().size());
+        assertEquals(2, greek.getExtraExamples().size());
+
+        final SingleSuggestionsSummary hebrew = results.get(SearchToken.HEBREW_MEANINGS);
+        assertEquals(2, hebrew.getPopularSuggestions().size());
+        assertEquals(2, hebrew.getExtraExamples().size());
+        assertEquals(8, results.size());
+    }
+
+    /**
+     * A provider that doesn't return in time shows as having more results
+     */
+    @Test
+    public void testSlowProviderShowsMoreResults() {
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws InterruptedException {
+                release.await(10, TimeUnit.SECONDS);
+                return suggestions(5);
+            }
+        }).when(text).convertToSuggestions(any(TextSuggestion[].class), any(TextSuggestion[].class));
+        doReturn(suggestions(5)).when(greekMeanings).convertToSuggestions(any(EntityDoc[].class), any(EntityDoc[].class));
+
+        try {
+            final Map<String, SingleSuggestionsSummary> results = getTopSuggestions(createService(50));
+
+            final SingleSuggestionsSummary slow = results.get(SearchToken.TEXT_SEARCH);
+            assertTrue(slow.getPopularSuggestions().isEmpty());
+            assertEquals(SuggestionService.MAX_RESULTS_NON_GROUPED, slow.getMoreResults());
+            assertEquals(2, results.get(SearchToken.GREEK_MEANINGS).getPopularSuggestions().size());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    /**
+     * Providers that cannot be queued show as having more results, while the others are still returned
+     */
+    @Test
+    public void testRejectedProvidersShowMoreResults() {
+        doReturn(suggestions(1)).when(references).convertToSuggestions(any(BookName[].class), any(BookName[].class));
+        final SuggestionServiceImpl service = createService(1000);
+        service.close();
+
+        final Map<String, SingleSuggestionsSummary> results = getTopSuggestions(service);
+
+        final SingleSuggestionsSummary rejected = results.get(SearchToken.TEXT_SEARCH);
+        assertTrue(rejected.getPopularSuggestions().isEmpty());
+        assertEquals(SuggestionService.MAX_RESULTS_NON_GROUPED, rejected.getMoreResults());
+        assertEquals(1, results.get(SearchToken.REFERENCE).getPopularSuggestions().size());
+        assertEquals(8, results.size());
+    }
+
+    /**
+     * Book names are looked up in the language of the request, which, like the request scope, is only known to the
+     * request thread
+     */
+    @Test
+    public void testReferencesUseRequestLanguage() {
+        final ThreadLocal<Locale> requestLocale = new ThreadLocal<Locale>();
+        LocaleProviderManager.setLocaleProvider(new LocaleProvider() {
+            @Override
+            public Locale getUserLocale() {
+                final Locale locale = requestLocale.get();
+                return locale == null ? Locale.ENGLISH : locale;
+            }
+        });
+
+        final AtomicReference<Locale> referenceLocale = new AtomicReference<Locale>();
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                referenceLocale.set(LocaleProviderManager.getLocale());
+                return NO_RESULTS.answer(invocation);
+            }
+        }).when(references).getExactTerms(any(SuggestionContext.class), anyInt(), anyBoolean());
+
+        try {
+            requestLocale.set(Locale.GERMAN);
+            getTopSuggestions(createService(1000));
+            assertEquals(Locale.GERMAN, referenceLocale.get());
+        } finally {
+            requestLocale.remove();
+        }
+    }
+
+    private SuggestionServiceImpl createService(final long timeoutMillis) {
+        final SuggestionServiceImpl service = new SuggestionServiceImpl(hebrewMeanings, greekMeanings,
+                mock(HebrewAncientLanguageServiceImpl.class, NO_RESULTS),
+                mock(GreekAncientLanguageServiceImpl.class, NO_RESULTS),
+                mock(MeaningSuggestionServiceImpl.class, NO_RESULTS),
+                mock(SubjectSuggestionServiceImpl.class, NO_RESULTS),
+                references, text, 8, timeoutMillis);
+        this.services.add(service);
+        return service;
+    }
+
+    private Map<String, SingleSuggestionsSummary> getTopSuggestions(final SuggestionServiceImpl service) {
+        final SuggestionContext context = new SuggestionContext();
+        context.setInput("lo");
+        final SuggestionsSummary summary = service.getTopSuggestions(context);
+
+        final Map<String, SingleSuggestionsSummary> results = new HashMap<String, SingleSuggestionsSummary>();
+        for (final SingleSuggestionsSummary s : summary.getSuggestionsSummaries()) {
+            results.put(s.getSearchType(), s);
+        }
+        return results;
+    }
+
+    private List<PopularSuggestion> suggestions(final int count) {
+        final List<PopularSuggestion> suggestions = new ArrayList<PopularSuggestion>(count);
+        for (int ii = 0; ii < count; ii++) {
+            final LexiconSuggestion suggestion = new LexiconSuggestion();
+            suggestion.setGloss("love" + ii);
+            suggestions.add(suggestion);
+        }
+        return suggestions;
+    }
+}
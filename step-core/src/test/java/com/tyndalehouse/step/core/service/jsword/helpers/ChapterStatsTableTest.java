@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.models.stats.StatType;
+import com.tyndalehouse.step.core.service.StrongAugmentationService;
+import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.utils.TestUtils;
+
+/**
+ * Tests the counts of words in each chapter
+ *
+ * @author chrisburrell
+ */
+public class ChapterStatsTableTest {
+    @Rule
+    public TemporaryFolder statsDirectory = new TemporaryFolder();
+    private JSwordVersificationService versificationService;
+    private ChapterStatsTable table;
+
+    /**
+     * Sets up the table, saving its counts in a directory of its own that is deleted after each test
+     *
+     * @throws IOException if the directory could not be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        this.versificationService = TestUtils.mockVersificationService();
+        this.table = new ChapterStatsTable(this.versificationService, mock(StrongAugmentationService.class),
+                mock(EntityManager.class), mock(JSwordModuleService.class), this.statsDirectory.newFolder(),
+                16777216, 8388608);
+    }
+
+    /**
+     * Words on the stop list are left out, ignoring case and accents
+     */
+    @Test
+    public void testRemoveStopWords() {
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+        counts.put("And", 3);
+        counts.put("café", 2);
+        counts.put("light", 1);
+        final Set<String> stopList = new HashSet<String>();
+        stopList.add("AND");
+        stopList.add("CAFE");
+
+        final Map<String, Integer> stats = this.table.removeStopWords(StatType.TEXT, counts, stopList);
+        assertEquals(1, stats.size());
+        assertEquals(Integer.valueOf(1), stats.get("light"));
+    }
+
+    /**
+     * Adding up the counts of each chapter gives the same result as counting the whole passage
+     *
+     * @throws NoSuchKeyException uncaught exception
+     */
+    @Test
+    public void testChaptersAddUpToPassage() throws NoSuchKeyException {
+        final Book kjv = this.versificationService.getBookFromVersion("KJV");
+        final Versification v11n = this.versificationService.getVersificationForVersion(kjv);
+        final VerseRange ruth = new VerseRange(v11n, new Verse(v11n, BibleBook.RUTH, 1, 0), new Verse(v11n,
+                BibleBook.RUTH, 2, v11n.getLastVerse(BibleBook.RUTH, 2)));
+        final Key passage = kjv.getKey(ruth.getOsisRef());
+
+        final Set<String> noStopWords = new HashSet<String>();
+        final Map<String, Integer> summed = this.table.getStats(StatType.TEXT, kjv, ruth, true, noStopWords);
+        final Map<String, Integer> counted = this.table.count(StatType.TEXT, kjv, passage);
+        assertEquals(counted, summed);
+        assertTrue(summed.containsKey("Naomi"));
+
+        // cached results are not to be changed by callers
+        assertFalse(summed instanceof HashMap);
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import static org.junit.Assert.assertEquals;
+
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.PassageTally;
+import org.crosswire.jsword.passage.PassageTally.Order;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.Test;
+
+/**
+ * Tests the {@link OrderedVerses}
+ *
+ * @author chrisburrell
+ */
+public class OrderedVersesTest {
+    private final Versification kjv = Versifications.instance().getVersification("KJV");
+
+    /** unranked pages skip across ranges, and agree with the materialised results */
+    @Test
+    public void testUnrankedPages() throws NoSuchKeyException {
+        final Passage passage = (Passage) PassageKeyFactory.instance().getKey(this.kjv,
+                "Gen.1.1-Gen.1.3;Gen.2.1-Gen.2.4;Exod.1.1");
+
+        assertEquals("Gen.1.1-Gen.1.3", OrderedVerses.getPage(passage, 0, 3, false).getOsisRef());
+        assertEquals("Gen.1.3 Gen.2.1-Gen.2.2", OrderedVerses.getPage(passage, 2, 3, false).getOsisRef());
+        assertEquals("Exod.1.1", OrderedVerses.getPage(passage, 7, 3, false).getOsisRef());
+        assertEquals("", OrderedVerses.getPage(passage, 9, 3, false).getOsisRef());
+
+        final OrderedVerses ordered = OrderedVerses.of(passage, false);
+        assertEquals(8, ordered.size());
+        assertEquals("Gen.1.3 Gen.2.1-Gen.2.2", ordered.getPage(2, 3).getOsisRef());
+    }
+
+    /** ranked pages keep the best verses in a heap, agree with JSword's ordering and leave the tally's ordering alone */
+    @Test
+    public void testRankedPages() throws NoSuchKeyException {
+        final PassageTally tally = createTally();
+        tally.setOrdering(Order.TALLY);
+
+        // best verses are Gen.1.2 (3), Exod.1.1 (3), Gen.1.3 (2), Gen.1.1 (1)
+        assertEquals("Gen.1.2 Exod.1.1", OrderedVerses.getPage(tally, 0, 2, true).getOsisRef());
+        assertEquals("Gen.1.1 Gen.1.3", OrderedVerses.getPage(tally, 2, 5, true).getOsisRef());
+        assertEquals(Order.TALLY, tally.getOrdering());
+
+        final OrderedVerses ordered = OrderedVerses.of(tally, true);
+        assertEquals(4, ordered.size());
+        int position = 0;
+        for (final Key verse : tally) {
+            assertEquals(verse.getOsisRef(), ordered.getPage(position++, 1).getOsisRef());
+        }
+        assertEquals(Order.TALLY, tally.getOrdering());
+    }
+
+    /** tallies of unranked searches are paged in biblical order, without being ranked */
+    @Test
+    public void testUnrankedTally() throws NoSuchKeyException {
+        final PassageTally tally = createTally();
+        tally.setOrdering(Order.BIBLICAL);
+
+        assertEquals("Gen.1.1-Gen.1.2", OrderedVerses.getPage(tally, 0, 2, false).getOsisRef());
+        assertEquals("Gen.1.3 Exod.1.1", OrderedVerses.of(tally, false).getPage(2, 2).getOsisRef());
+        assertEquals(Order.BIBLICAL, tally.getOrdering());
+    }
+
+    /**
+     * @return a tally of four verses
+     * @throws NoSuchKeyException if a reference is invalid
+     */
+    private PassageTally createTally() throws NoSuchKeyException {
+        final PassageKeyFactory keys = PassageKeyFactory.instance();
+        final PassageTally tally = new PassageTally(this.kjv);
+        tally.add(keys.getKey(this.kjv, "Gen.1.1"), 1);
+        tally.add(keys.getKey(this.kjv, "Gen.1.2"), 3);
+        tally.add(keys.getKey(this.kjv, "Gen.1.3"), 2);
+        tally.add(keys.getKey(this.kjv, "Exod.1.1"), 3);
+        return tally;
+    }
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.RAMDirectory;
+import org.crosswire.jsword.index.lucene.LuceneIndex;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.tyndalehouse.step.core.data.EntityDoc;
+import com.tyndalehouse.step.core.data.EntityIndexReader;
+import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.models.search.BookAndBibleCount;
+import com.tyndalehouse.step.core.service.StrongAugmentationService;
+import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
+import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
+
+/**
+ * Tests the {@link StrongFrequencyTable}
+ *
+ * @author chrisburrell
+ */
+public class StrongFrequencyTableTest {
+
+    /** strong numbers are counted in the whole Bible and per book, augmented ones only in their own verses */
+    @Test
+    public void testCounts() throws IOException {
+        final StrongFrequencyTable table = getTable();
+        final IndexReader reader = getIndex();
+        final StrongFrequencyTable.StrongCounts counts = table.count(reader, reader.getVersion());
+
+        assertCounts(4, 3, table.getCounts(counts, "H0001", "Gen"));
+        assertCounts(4, 1, table.getCounts(counts, "H0001", "Exod"));
+        assertCounts(1, 1, table.getCounts(counts, "H0002", "Gen"));
+        assertCounts(1, 0, table.getCounts(counts, "H0002", "Exod"));
+
+        assertCounts(3, 2, table.getCounts(counts, "H0001A", "Gen"));
+        assertCounts(3, 1, table.getCounts(counts, "H0001A", "Exod"));
+
+        // augmented strong numbers that aren't in the entity fall back to the whole strong number
+        assertCounts(1, 1, table.getCounts(counts, "H0002B", "Gen"));
+        assertCounts(0, 0, table.getCounts(counts, "H9999", "Gen"));
+    }
+
+    /**
+     * @param bible the expected count in the Bible
+     * @param book  the expected count in the book
+     * @param count the count
+     */
+    private void assertCounts(final int bible, final int book, final BookAndBibleCount count) {
+        assertEquals(bible, count.getBible());
+        assertEquals(book, count.getBook());
+    }
+
+    /**
+     * @return the table, with the augmented strong H0001A applying to Gen.1.2 and Exod.1.1
+     */
+    private StrongFrequencyTable getTable() {
+        final StrongAugmentationService augmentation = mock(StrongAugmentationService.class);
+        when(augmentation.reduce(anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(final InvocationOnMock invocation) {
+                final String strong = (String) invocation.getArguments()[0];
+                return Character.isLetter(strong.charAt(strong.length() - 1)) ?
+                        strong.substring(0, strong.length() - 1) : strong;
+            }
+        });
+
+        final EntityDoc augmented = mock(EntityDoc.class);
+        when(augmented.get("augmentedStrong")).thenReturn("H0001A");
+        when(augmented.get("references")).thenReturn("Gen.1.2 Exod.1.1");
+        final EntityIndexReader augmentedStrongs = mock(EntityIndexReader.class);
+        when(augmentedStrongs.search(any(Query.class), anyString(), anyString())).thenReturn(
+                new EntityDoc[]{augmented});
+        final EntityManager manager = mock(EntityManager.class);
+        when(manager.getReader("augmentedStrongs")).thenReturn(augmentedStrongs);
+
+        return new StrongFrequencyTable(mock(JSwordSearchService.class), augmentation, manager,
+                mock(JSwordModuleService.class), "step/entities/");
+    }
+
+    /**
+     * @return an index with three verses
+     * @throws IOException failure to create the index
+     */
+    private IndexReader getIndex() throws IOException {
+        final RAMDirectory directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(), true,
+                MaxFieldLength.UNLIMITED);
+        addVerse(writer, "Gen.1.1", "H0001 H0002");
+        addVerse(writer, "Gen.1.2", "H0001 H0001");
+        addVerse(writer, "Exod.1.1", "H0001");
+        writer.close();
+        return IndexReader.open(directory, true);
+    }
+
+    /**
+     * @param writer    the writer
+     * @param reference the reference of the verse
+     * @param strongs   the strong numbers in the verse
+     * @throws IOException failure to write to the index
+     */
+    private void addVerse(final IndexWriter writer, final String reference, final String strongs)
+            throws IOException {
+        final Document doc = new Document();
+        doc.add(new Field(LuceneIndex.FIELD_KEY, reference, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        doc.add(new Field(LuceneIndex.FIELD_STRONG, strongs, Field.Store.NO, Field.Index.ANALYZED));
+        writer.addDocument(doc);
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.VersificationsMapper;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.Test;
+
+/**
+ * Tests the {@link VerseBitSet}
+ *
+ * @author chrisburrell
+ */
+public class VerseBitSetTest {
+    private final Versification kjv = Versifications.instance().getVersification("KJV");
+    private final Versification leningrad = Versifications.instance().getVersification("Leningrad");
+
+    /** intersections, unions and differences within a single versification */
+    @Test
+    public void testAlgebra() throws NoSuchKeyException {
+        final VerseBitSet first = VerseBitSet.fromKey(passage(this.kjv, "Gen.1.1-Gen.1.5"));
+        final VerseBitSet second = VerseBitSet.fromKey(passage(this.kjv, "Gen.1.4-Gen.1.8"));
+
+        assertEquals("Gen.1.4-Gen.1.5", VerseBitSet.fromKey(passage(this.kjv, "Gen.1.1-Gen.1.5")).and(second)
+                .toPassage().getOsisRef());
+        assertEquals("Gen.1.1-Gen.1.8", VerseBitSet.fromKey(passage(this.kjv, "Gen.1.1-Gen.1.5")).or(second)
+                .toPassage().getOsisRef());
+        assertEquals("Gen.1.1-Gen.1.3", first.andNot(second).toPassage().getOsisRef());
+        assertEquals(3, first.cardinality());
+    }
+
+    /** keys in other versifications are mapped the same way as the versifications mapper would */
+    @Test
+    public void testMapsAcrossVersifications() throws NoSuchKeyException {
+        final Passage malachi = passage(this.kjv, "Mal.4.1-Mal.4.6");
+        final Passage expected = VersificationsMapper.instance().map(malachi, this.leningrad);
+
+        final VerseBitSet mapped = VerseBitSet.fromKey(malachi, this.leningrad);
+        assertEquals(this.leningrad, mapped.getVersification());
+        assertEquals(expected.getOsisRef(), mapped.toPassage().getOsisRef());
+        assertTrue(VerseBitSet.fromKey(expected).and(mapped).cardinality() == expected.getCardinality());
+    }
+
+    /**
+     * @param versification the versification
+     * @param reference the reference
+     * @return the passage
+     * @throws NoSuchKeyException unable to parse the reference
+     */
+    private Passage passage(final Versification versification, final String reference) throws NoSuchKeyException {
+        return (Passage) PassageKeyFactory.instance().getKey(versification, reference);
+    }
+}
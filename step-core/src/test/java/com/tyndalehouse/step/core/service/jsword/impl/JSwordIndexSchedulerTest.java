@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.service.jsword.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.index.IndexStatus;
+import org.crosswire.jsword.index.IndexStatusEvent;
+import org.crosswire.jsword.index.IndexStatusListener;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests the scheduling of modules for indexing, JSword being replaced by modules that are indexed as soon as they are
+ * handed over, unless they are marked as slow
+ *
+ * @author chrisburrell
+ */
+public class JSwordIndexSchedulerTest {
+    private static final long TIMEOUT_MILLIS = 10000;
+    private final Set<String> indexed = Collections.synchronizedSet(new HashSet<String>());
+    private final Set<String> slow = Collections.synchronizedSet(new HashSet<String>());
+    private final BlockingQueue<String> started = new LinkedBlockingQueue<String>();
+    private final Map<String, IndexStatusListener> listeners = new ConcurrentHashMap<String, IndexStatusListener>();
+    private IndexStatusEvent done;
+
+    /**
+     * sets up the event sent once a module is indexed
+     */
+    @Before
+    public void setUp() {
+        this.done = mock(IndexStatusEvent.class);
+        when(this.done.getIndexStatus()).thenReturn(IndexStatus.DONE);
+    }
+
+    /**
+     * a scheduled module is handed to JSword, and is no longer pending once awaited
+     */
+    @Test
+    public void testScheduleAndAwait() throws InterruptedException {
+        final JSwordIndexScheduler scheduler = createScheduler(2, TIMEOUT_MILLIS);
+        final IndexStatusListener listener = mock(IndexStatusListener.class);
+
+        scheduler.schedule(createBook("KJV"), listener);
+        assertTrue(scheduler.await("KJV"));
+
+        assertEquals("KJV", this.started.poll());
+        assertFalse(scheduler.isPending("KJV"));
+        verify(listener).statusChanged(this.done);
+
+        // modules that were never scheduled are not waited for
+        assertTrue(scheduler.await("ESV"));
+    }
+
+    /**
+     * a module scheduled while it is already pending is only indexed once
+     */
+    @Test
+    public void testDuplicatesAreIgnored() throws InterruptedException {
+        final JSwordIndexScheduler scheduler = createScheduler(2, TIMEOUT_MILLIS);
+        final Book kjv = createBook("KJV");
+        this.slow.add("KJV");
+
+        scheduler.schedule(kjv, null);
+        assertEquals("KJV", this.started.poll(5, TimeUnit.SECONDS));
+        scheduler.schedule(kjv, null);
+        scheduler.scheduleRebuild(kjv, null);
+        finish("KJV");
+        assertTrue(scheduler.await("KJV"));
+
+        assertNull(this.started.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * modules waiting for a thread show as queued, and the module being indexed as pending only
+     */
+    @Test
+    public void testProgress() throws InterruptedException {
+        final JSwordIndexScheduler scheduler = createScheduler(1, TIMEOUT_MILLIS);
+        this.slow.add("KJV");
+
+        scheduler.schedule(createBook("KJV"), null);
+        scheduler.schedule(createBook("ESV"), null);
+        assertEquals("KJV", this.started.poll(5, TimeUnit.SECONDS));
+
+        assertTrue(scheduler.isPending("KJV"));
+        assertFalse(scheduler.isQueued("KJV"));
+        assertTrue(scheduler.isPending("ESV"));
+        assertTrue(scheduler.isQueued("ESV"));
+
+        finish("KJV");
+        assertTrue(scheduler.await("ESV"));
+        assertEquals("ESV", this.started.poll());
+        assertFalse(scheduler.isPending("ESV"));
+    }
+
+    /**
+     * a module indexed while it was queued is not indexed again, unless it is being rebuilt
+     */
+    @Test
+    public void testIndexedWhileQueued() throws InterruptedException {
+        final JSwordIndexScheduler scheduler = createScheduler(1, TIMEOUT_MILLIS);
+        this.slow.add("KJV");
+
+        scheduler.schedule(createBook("KJV"), null);
+        scheduler.schedule(createBook("ESV"), null);
+        assertEquals("KJV", this.started.poll(5, TimeUnit.SECONDS));
+        this.indexed.add("ESV");
+        finish("KJV");
+        assertTrue(scheduler.await("ESV"));
+        assertTrue(this.started.isEmpty());
+
+        scheduler.scheduleRebuild(createBook("ESV"), null);
+        assertTrue(scheduler.await("ESV"));
+        assertEquals("ESV", this.started.poll());
+    }
+
+    /**
+     * a module whose index is never finished is given up on, so that the modules behind it are indexed, and is no
+     * longer marked as failed once it is queued again
+     */
+    @Test
+    public void testHungIndexIsGivenUp() throws InterruptedException {
+        final JSwordIndexScheduler scheduler = createScheduler(1, 200);
+        this.slow.add("KJV");
+
+        scheduler.schedule(createBook("KJV"), null);
+        scheduler.schedule(createBook("ESV"), null);
+        assertEquals("KJV", this.started.poll(5, TimeUnit.SECONDS));
+        assertEquals("ESV", this.started.poll(5, TimeUnit.SECONDS));
+        assertTrue(scheduler.await("ESV"));
+
+        assertTrue(scheduler.hasFailed("KJV"));
+        assertFalse(scheduler.isPending("KJV"));
+        assertFalse(scheduler.hasFailed("ESV"));
+
+        this.slow.remove("KJV");
+        scheduler.schedule(createBook("KJV"), null);
+        assertTrue(scheduler.await("KJV"));
+        assertFalse(scheduler.hasFailed("KJV"));
+    }
+
+    /**
+     * @param threads       the number of modules handed to JSword at a time
+     * @param timeoutMillis the time allowed for each module to be indexed
+     * @return a scheduler that records the modules it hands over, rather than indexing them
+     */
+    private JSwordIndexScheduler createScheduler(final int threads, final long timeoutMillis) {
+        return new JSwordIndexScheduler(threads, timeoutMillis) {
+            @Override
+            boolean isIndexed(final Book book) {
+                return JSwordIndexSchedulerTest.this.indexed.contains(book.getInitials());
+            }
+
+            @Override
+            void startIndexing(final Book book) {
+                JSwordIndexSchedulerTest.this.started.add(book.getInitials());
+                if (!JSwordIndexSchedulerTest.this.slow.contains(book.getInitials())) {
+                    finish(book.getInitials());
+                }
+            }
+        };
+    }
+
+    /**
+     * @param initials the initials of the module
+     * @return a module that keeps hold of its index status listener
+     */
+    private Book createBook(final String initials) {
+        final Book book = mock(Book.class);
+        when(book.getInitials()).thenReturn(initials);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                JSwordIndexSchedulerTest.this.listeners.put(initials,
+                        (IndexStatusListener) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(book).addIndexStatusListener(any(IndexStatusListener.class));
+        return book;
+    }
+
+    /**
+     * Tells the scheduler that JSword has indexed a module
+     *
+     * @param initials the initials of the module
+     */
+    private void finish(final String initials) {
+        this.indexed.add(initials);
+        this.listeners.get(initials).statusChanged(this.done);
+    }
+}
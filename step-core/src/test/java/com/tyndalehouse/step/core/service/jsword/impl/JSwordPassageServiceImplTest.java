@@ -82,7 +82,8 @@ public class JSwordPassageServiceImplTest {
     @Before
     public void setUp() {
         this.jsi = new JSwordPassageServiceImpl(TestUtils.mockVersificationService(), null, mock(VocabularyService.class),
-                mock(ColorCoderProviderImpl.class), TestUtils.mockVersionResolver(), null);
+                mock(ColorCoderProviderImpl.class), TestUtils.mockVersionResolver(), null,
+                TestUtils.interlinearWordIndexCache());
     }
 
     /**
@@ -1,16 +1,30 @@
 package com.tyndalehouse.step.core.service.jsword.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.tyndalehouse.step.core.models.AvailableFeatures;
 import com.tyndalehouse.step.core.models.InterlinearMode;
 import com.tyndalehouse.step.core.service.PassageOptionsValidationService;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.index.search.DefaultSearchModifier;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -19,7 +33,9 @@ import org.slf4j.LoggerFactory;
 import com.tyndalehouse.step.core.models.search.SearchEntry;
 import com.tyndalehouse.step.core.models.search.VerseSearchEntry;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
+import com.tyndalehouse.step.core.service.impl.IndividualSearch;
 import com.tyndalehouse.step.core.service.impl.SearchQuery;
+import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.utils.TestUtils;
 
@@ -31,6 +47,9 @@ import com.tyndalehouse.step.core.utils.TestUtils;
 @SuppressWarnings("unchecked")
 public class JSwordSearchServiceImplTest {
     private static final Logger LOGGER = LoggerFactory.getLogger(JSwordSearchServiceImplTest.class);
+    private JSwordVersificationService versificationService;
+    private JSwordPassageServiceImpl passageService;
+    private JSwordModuleService moduleService;
     private JSwordSearchServiceImpl search;
 
     /**
@@ -42,8 +61,88 @@ public class JSwordSearchServiceImplTest {
         final PassageOptionsValidationService mockOptionsService = mock(PassageOptionsValidationService.class);
         when(mockOptionsService.getAvailableFeaturesForVersion(any(String.class), any(List.class), any(String.class), any(InterlinearMode.class)))
                 .thenReturn(new AvailableFeatures());
-        this.search = new JSwordSearchServiceImpl(mockVersificationService, null, new JSwordPassageServiceImpl(
-                mockVersificationService, null, null, null, TestUtils.mockVersionResolver(), mockOptionsService));
+        this.versificationService = mockVersificationService;
+        this.passageService = new JSwordPassageServiceImpl(
+                mockVersificationService, null, null, null, TestUtils.mockVersionResolver(), mockOptionsService, null);
+        this.moduleService = mock(JSwordModuleService.class);
+        this.search = new JSwordSearchServiceImpl(mockVersificationService, null, this.passageService,
+                this.moduleService);
+    }
+
+    /**
+     * stops the threads of the search service
+     */
+    @After
+    public void tearDown() {
+        this.search.close();
+    }
+
+    /**
+     * versions that cannot be queued are given no results, and leave the search partial
+     */
+    @Test
+    public void testRejectedVersionLeavesSearchPartial() {
+        final JSwordSearchServiceImpl closedSearch = new JSwordSearchServiceImpl(this.versificationService, null,
+                this.passageService, this.moduleService, 2, 10000, 1024 * 1024);
+        closedSearch.close();
+
+        final SearchQuery sq = new SearchQuery("John", new String[] {"ESV_th", "KJV"}, "false", 0, 0, 0, null);
+        assertEquals(0, closedSearch.searchKeys(sq).getCardinality());
+        assertTrue(sq.isPartial());
+    }
+
+    /**
+     * a version that misses the deadline leaves the search partial, and is left to finish rather than interrupted
+     */
+    @Test
+    public void testSlowVersionMissesDeadline() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch slowSearchFinished = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final JSwordSearchServiceImpl slowSearch = new JSwordSearchServiceImpl(this.versificationService, null,
+                this.passageService, this.moduleService, 2, 200, 1024 * 1024) {
+            @Override
+            Key doSearch(final DefaultSearchModifier modifier, final IndividualSearch currentSearch,
+                         final Book bible) {
+                if ("KJV".equals(bible.getInitials())) {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (final InterruptedException e) {
+                        interrupted.set(true);
+                    } finally {
+                        slowSearchFinished.countDown();
+                    }
+                }
+                return super.doSearch(modifier, currentSearch, bible);
+            }
+        };
+
+        final SearchQuery sq = new SearchQuery("John", new String[] {"ESV_th", "KJV"}, "false", 0, 0, 0, null);
+        try {
+            assertTrue(slowSearch.searchKeys(sq).getCardinality() > 100);
+            assertTrue(sq.isPartial());
+        } finally {
+            release.countDown();
+        }
+
+        assertTrue(slowSearchFinished.await(10, TimeUnit.SECONDS));
+        assertFalse(interrupted.get());
+    }
+
+    /**
+     * searches that only differ by their range are ordered and paged separately, and the ordered results are
+     * forgotten when a module changes
+     */
+    @Test
+    public void testOrderedResults() throws NoSuchKeyException {
+        final Passage results = (Passage) PassageKeyFactory.instance().getKey(
+                Versifications.instance().getVersification(Versifications.DEFAULT_V11N), "Gen.1");
+        final SearchQuery ot = new SearchQuery("+[Gen-Mal] good", new String[] {"ESV_th"}, "false", 0, 2, 10, null);
+        final SearchQuery nt = new SearchQuery("+[Mat-Rev] good", new String[] {"ESV_th"}, "false", 0, 2, 10, null);
+
+        assertNotEquals(JSwordSearchServiceImpl.getOrderedResultsKey(ot, results),
+                JSwordSearchServiceImpl.getOrderedResultsKey(nt, results));
+        verify(this.moduleService).addModuleChangeListener(this.search);
     }
 
     /**
@@ -7,6 +7,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import com.tyndalehouse.step.core.models.AvailableFeatures;
@@ -29,6 +30,7 @@ import com.tyndalehouse.step.core.models.search.SearchResult;
 import com.tyndalehouse.step.core.models.search.SubjectHeadingSearchEntry;
 import com.tyndalehouse.step.core.models.search.TimelineEventSearchEntry;
 import com.tyndalehouse.step.core.models.search.VerseSearchEntry;
+import com.tyndalehouse.step.core.service.helpers.SearchResultCache;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.service.jsword.impl.JSwordPassageServiceImpl;
@@ -44,6 +46,7 @@ public class SearchServiceImplTest {
     private static final Logger LOGGER = LoggerFactory.getLogger(SearchServiceImplTest.class);
     private TestEntityManager entityManager;
     private SubjectSearchServiceImpl subjects;
+    private SearchResultCache searchResults;
     private SearchServiceImpl searchServiceUnderTest;
 
     @Before
@@ -80,6 +83,65 @@ public class SearchServiceImplTest {
         assertTrue(searchSubject.getResults().size() > 0);
     }
 
+    /**
+     * a search served from the cache, whether for the same page or a later one, matches the same search run afresh,
+     * both in biblical and ranked order
+     */
+    @Test
+    public void testCachedSearchMatchesFreshSearch() {
+        for (final String sort : new String[]{"false", "true"}) {
+            for (int page = 1; page <= 3; page++) {
+                this.searchResults.invalidateAll();
+                final SearchResult fresh = searchForLove(sort, page);
+
+                final long hits = this.searchResults.getHitCount();
+                final SearchResult samePage = searchForLove(sort, page);
+                assertEquals(hits + 1, this.searchResults.getHitCount());
+                assertSameResults(fresh, samePage);
+
+                this.searchResults.invalidateAll();
+                searchForLove(sort, 1);
+                final SearchResult laterPage = searchForLove(sort, page);
+                assertSameResults(fresh, laterPage);
+            }
+        }
+    }
+
+    /**
+     * @param sort the sort order, "true" to rank the results
+     * @param page the page number
+     * @return the page of results
+     */
+    private SearchResult searchForLove(final String sort, final int page) {
+        return this.searchServiceUnderTest.search(
+                new SearchQuery("t=love", new String[]{"ESV_th"}, sort, 0, page, 10, null));
+    }
+
+    /**
+     * @param expected the results of a fresh search
+     * @param actual   the results of the same search, served from the cache
+     */
+    private void assertSameResults(final SearchResult expected, final SearchResult actual) {
+        assertEquals(expected.getTotal(), actual.getTotal());
+        assertEquals(expected.getPageNumber(), actual.getPageNumber());
+        assertEquals(expected.getSearchType(), actual.getSearchType());
+        assertFalse(expected.getResults().isEmpty());
+        assertEquals(getVerses(expected), getVerses(actual));
+    }
+
+    /**
+     * @param result the search result
+     * @return the references and previews of the verses, in the order they are shown
+     */
+    private List<String> getVerses(final SearchResult result) {
+        final List<String> verses = new ArrayList<String>();
+        for (final SearchEntry entry : result.getResults()) {
+            final VerseSearchEntry verse = (VerseSearchEntry) entry;
+            verses.add(verse.getKey() + ": " + verse.getPreview());
+        }
+        return verses;
+    }
+
     @Test
     public void testLuceneScope() {
         System.out.println(this.subjects.getLuceneScopeFragment(new String[]{"OSMHB"}));
@@ -114,7 +176,7 @@ public class SearchServiceImplTest {
         final JSwordVersificationService versificationService = TestUtils.mockVersificationService();
         final PassageOptionsValidationService optionsValidationService = mock(PassageOptionsValidationService.class);
         final JSwordPassageServiceImpl jsword = new JSwordPassageServiceImpl(versificationService, null,
-                null, null, TestUtils.mockVersionResolver(), optionsValidationService);
+                null, null, TestUtils.mockVersionResolver(), optionsValidationService, null);
 
         when(optionsValidationService.getAvailableFeaturesForVersion(any(String.class), any(List.class), any(String.class), any(InterlinearMode.class)))
                 .thenReturn(new AvailableFeatures());
@@ -123,11 +185,12 @@ public class SearchServiceImplTest {
         when(module.isIndexed(any(String.class))).thenReturn(true);
         when(meta.supportsFeature(any(String.class), any(LookupOption.class))).thenReturn(true);
 
-        final JSwordSearchServiceImpl jswordSearch = new JSwordSearchServiceImpl(versificationService, null, jsword);
+        final JSwordSearchServiceImpl jswordSearch = new JSwordSearchServiceImpl(versificationService, null, jsword, module);
+        searchResults = new SearchResultCache(1048576, 60000, module);
         subjects = new SubjectSearchServiceImpl(entityManager,
                 jswordSearch, meta, module, versificationService);
         return new SearchServiceImpl(jswordSearch, meta, versificationService, subjects, new TimelineServiceImpl(entityManager, jsword), null, entityManager, TestUtils.mockVersionResolver(),
-                mock(LexiconDefinitionServiceImpl.class), null, null
+                mock(LexiconDefinitionServiceImpl.class), null, null, searchResults
         );
     }
 }
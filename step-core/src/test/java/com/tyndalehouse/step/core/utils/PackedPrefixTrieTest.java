@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link PackedPrefixTrie} class
+ *
+ * @author chrisburrell
+ */
+public class PackedPrefixTrieTest {
+    private final PackedPrefixTrie trie = new PackedPrefixTrie.Builder()
+            .add("love", 3).add("love", 1).add("loved", 2).add("lord", 0).add("light", 5).add("love", 1).add("a", 7)
+            .build(2);
+
+    /** exact ranks are those of the key only, without duplicates */
+    @Test
+    public void testExact() {
+        assertArrayEquals(new int[]{1, 3}, this.trie.getExact(this.trie.find("love")));
+        assertArrayEquals(new int[0], this.trie.getExact(this.trie.find("lo")));
+    }
+
+    /** the best ranks and the count cover every key under the prefix */
+    @Test
+    public void testPrefix() {
+        final int node = this.trie.find("lo");
+        assertArrayEquals(new int[]{0, 1}, this.trie.getTop(node));
+        assertEquals(4, this.trie.getCount(node));
+        assertEquals(6, this.trie.getCount(this.trie.find("")));
+        assertArrayEquals(new int[]{7}, this.trie.getTop(this.trie.find("a")));
+    }
+
+    /** all the ranks under a prefix can be collected */
+    @Test
+    public void testCollect() {
+        final BitSet ranks = new BitSet();
+        this.trie.collect(this.trie.find("l"), ranks);
+
+        final BitSet expected = new BitSet();
+        for (final int rank : new int[]{0, 1, 2, 3, 5}) {
+            expected.set(rank);
+        }
+        assertEquals(expected, ranks);
+    }
+
+    /** unknown keys are not found, and nodes know what is under them */
+    @Test
+    public void testFind() {
+        assertEquals(PackedPrefixTrie.NOT_FOUND, this.trie.find("lx"));
+        assertEquals(PackedPrefixTrie.NOT_FOUND, this.trie.find("loves"));
+        assertTrue(this.trie.contains(this.trie.find("lo"), this.trie.find("loved")));
+        assertFalse(this.trie.contains(this.trie.find("lo"), this.trie.find("light")));
+        assertEquals(PackedPrefixTrie.NOT_FOUND, new PackedPrefixTrie.Builder().build(2).find("a"));
+    }
+}
@@ -41,7 +41,9 @@ import org.mockito.stubbing.Answer;
 
 import com.tyndalehouse.step.core.data.entities.impl.EntityIndexWriterImpl;
 import com.tyndalehouse.step.core.data.entities.impl.TestEntityManager;
+import com.tyndalehouse.step.core.service.helpers.InterlinearWordIndexCache;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
+import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.service.jsword.impl.JSwordVersificationServiceImpl;
 
@@ -88,6 +90,15 @@ public final class TestUtils {
         return versification;
     }
 
+    /**
+     * A cache of interlinear words that is never notified of module changes
+     * 
+     * @return the interlinear word index cache
+     */
+    public static InterlinearWordIndexCache interlinearWordIndexCache() {
+        return new InterlinearWordIndexCache(mock(JSwordModuleService.class), 16777216);
+    }
+
     /**
      * Mocks a version resolver.
      * 
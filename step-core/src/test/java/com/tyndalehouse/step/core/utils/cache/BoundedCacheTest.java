@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.utils.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link BoundedCache} class
+ * 
+ * @author chrisburrell
+ * 
+ */
+public class BoundedCacheTest {
+    private static final BoundedCache.Weigher<String> LENGTH = new BoundedCache.Weigher<String>() {
+        @Override
+        public long weigh(final String value) {
+            return value.length();
+        }
+    };
+
+    /** hits and misses are counted */
+    @Test
+    public void testHitsAndMisses() {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>(100, LENGTH);
+        cache.put("a", "alpha");
+
+        assertEquals("alpha", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    /** the least recently used entries are evicted once the total weight is exceeded */
+    @Test
+    public void testEvictsLeastRecentlyUsedByWeight() {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>(10, LENGTH);
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        cache.get("a");
+        cache.put("c", "cccc");
+
+        assertNull(cache.get("b"));
+        assertEquals("aaaa", cache.get("a"));
+        assertEquals("cccc", cache.get("c"));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(8, cache.getWeight());
+    }
+
+    /** values heavier than the whole cache are never stored */
+    @Test
+    public void testIgnoresOversizedValues() {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>(3, LENGTH);
+        cache.put("a", "aaaa");
+
+        assertEquals(0, cache.size());
+    }
+
+    /** replacing and invalidating keep the weight accurate */
+    @Test
+    public void testInvalidate() {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>(10, LENGTH);
+        cache.put("a", "aaaa");
+        cache.put("a", "aa");
+        assertEquals(2, cache.getWeight());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getWeight());
+        assertNull(cache.get("a"));
+    }
+
+    /** a value worked out before the cache was emptied is not stored */
+    @Test
+    public void testStaleGenerationIsDiscarded() {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>(10, LENGTH);
+        final long generation = cache.getGeneration();
+        cache.invalidateAll();
+
+        assertFalse(cache.put("a", "aaaa", generation));
+        assertNull(cache.get("a"));
+        assertTrue(cache.put("a", "aaaa", cache.getGeneration()));
+        assertEquals("aaaa", cache.get("a"));
+    }
+
+    /** expired entries are discarded and count as misses */
+    @Test
+    public void testExpiry() throws InterruptedException {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 1, LENGTH);
+        cache.put("a", "aaaa");
+        Thread.sleep(20);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getWeight());
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.utils.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link ComputeOnceMap} class
+ * 
+ * @author chrisburrell
+ * 
+ */
+public class ComputeOnceMapTest {
+
+    /** concurrent requests for the same key share a single computation */
+    @Test
+    public void testComputesOnceUnderContention() throws InterruptedException {
+        final AtomicInteger loads = new AtomicInteger();
+        final ComputeOnceMap<String, Object> map = new ComputeOnceMap<String, Object>(
+                new ComputeOnceMap.Loader<String, Object>() {
+                    @Override
+                    public Object load(final String key) {
+                        loads.incrementAndGet();
+                        return new Object();
+                    }
+                });
+
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final Object[] results = new Object[threads];
+        for (int ii = 0; ii < threads; ii++) {
+            final int index = ii;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        results[index] = map.get("key");
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+
+        assertEquals(1, loads.get());
+        for (final Object result : results) {
+            assertSame(results[0], result);
+        }
+        assertEquals(1, map.values().size());
+    }
+
+    /** failed computations are not remembered */
+    @Test
+    public void testRetriesAfterFailure() {
+        final AtomicInteger loads = new AtomicInteger();
+        final ComputeOnceMap<String, String> map = new ComputeOnceMap<String, String>(
+                new ComputeOnceMap.Loader<String, String>() {
+                    @Override
+                    public String load(final String key) {
+                        if (loads.incrementAndGet() == 1) {
+                            throw new IllegalStateException("first attempt fails");
+                        }
+                        return key;
+                    }
+                });
+
+        try {
+            map.get("a");
+            fail("The first load should have failed");
+        } catch (final IllegalStateException ex) {
+            // expected
+        }
+        assertNull(map.getIfPresent("a"));
+        assertEquals("a", map.get("a"));
+        assertEquals("a", map.getIfPresent("a"));
+    }
+}
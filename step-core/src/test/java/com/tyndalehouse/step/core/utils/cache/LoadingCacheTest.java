@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.utils.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link LoadingCache} class
+ * 
+ * @author chrisburrell
+ * 
+ */
+public class LoadingCacheTest {
+    private static final BoundedCache.Weigher<Object> UNIT = new BoundedCache.Weigher<Object>() {
+        @Override
+        public long weigh(final Object value) {
+            return 1;
+        }
+    };
+
+    /** values are loaded once, then served from the cache until they are evicted */
+    @Test
+    public void testLoadsOnceUntilEvicted() {
+        final AtomicInteger loads = new AtomicInteger();
+        final LoadingCache<String, String> cache = new LoadingCache<String, String>(2, UNIT,
+                new ComputeOnceMap.Loader<String, String>() {
+                    @Override
+                    public String load(final String key) {
+                        loads.incrementAndGet();
+                        return key.toLowerCase();
+                    }
+                });
+
+        assertEquals("a", cache.get("A"));
+        assertEquals("a", cache.get("A"));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        cache.get("B");
+        cache.get("C");
+        cache.get("A");
+        assertEquals(4, loads.get());
+
+        cache.invalidateAll();
+        cache.get("A");
+        assertEquals(5, loads.get());
+    }
+
+    /** callers asking for the same key at the same time share a single load */
+    @Test
+    public void testConcurrentCallersLoadOnce() throws Exception {
+        final int callers = 8;
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final LoadingCache<String, String> cache = new LoadingCache<String, String>(2, UNIT,
+                new ComputeOnceMap.Loader<String, String>() {
+                    @Override
+                    public String load(final String key) {
+                        loads.incrementAndGet();
+                        try {
+                            release.await(5, TimeUnit.SECONDS);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return key.toLowerCase();
+                    }
+                });
+
+        final ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        start.await();
+                        return cache.get("A");
+                    }
+                }));
+            }
+
+            start.countDown();
+            Thread.sleep(100);
+            release.countDown();
+
+            for (final Future<String> result : results) {
+                assertEquals("a", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** a load under way when the cache is emptied is returned to its callers, but not kept */
+    @Test
+    public void testLoadDuringInvalidationIsNotCached() {
+        final AtomicInteger loads = new AtomicInteger();
+        final AtomicReference<LoadingCache<String, String>> cache =
+                new AtomicReference<LoadingCache<String, String>>();
+        cache.set(new LoadingCache<String, String>(2, UNIT, new ComputeOnceMap.Loader<String, String>() {
+            @Override
+            public String load(final String key) {
+                if (loads.incrementAndGet() == 1) {
+                    cache.get().invalidateAll();
+                    return "stale";
+                }
+                return "fresh";
+            }
+        }));
+
+        assertEquals("stale", cache.get().get("A"));
+        assertEquals("fresh", cache.get().get("A"));
+        assertEquals("fresh", cache.get().get("A"));
+        assertEquals(2, loads.get());
+    }
+
+    /** a load that fails is tried again the next time */
+    @Test
+    public void testFailureIsNotCached() {
+        final AtomicInteger loads = new AtomicInteger();
+        final LoadingCache<String, String> cache = new LoadingCache<String, String>(2, UNIT,
+                new ComputeOnceMap.Loader<String, String>() {
+                    @Override
+                    public String load(final String key) {
+                        if (loads.incrementAndGet() == 1) {
+                            throw new IllegalStateException("first load fails");
+                        }
+                        return key;
+                    }
+                });
+
+        try {
+            cache.get("A");
+            fail("Expected the first load to fail");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+        assertEquals("A", cache.get("A"));
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.core.utils.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link ReloadableValue} class
+ * 
+ * @author chrisburrell
+ * 
+ */
+public class ReloadableValueTest {
+
+    /** the value is loaded once, and again after it is invalidated */
+    @Test
+    public void testLoadsOnceUntilInvalidated() {
+        final AtomicInteger loads = new AtomicInteger();
+        final ReloadableValue<Integer> value = new ReloadableValue<Integer>() {
+            @Override
+            protected Integer load() {
+                return loads.incrementAndGet();
+            }
+        };
+
+        assertEquals(Integer.valueOf(1), value.get());
+        assertEquals(Integer.valueOf(1), value.get());
+        value.invalidate();
+        assertEquals(Integer.valueOf(2), value.get());
+        assertEquals(2, loads.get());
+    }
+
+    /** a value invalidated while it was being loaded is loaded again on next use */
+    @Test
+    public void testInvalidatedDuringLoad() {
+        final AtomicInteger loads = new AtomicInteger();
+        final AtomicReference<ReloadableValue<String>> self = new AtomicReference<ReloadableValue<String>>();
+        final ReloadableValue<String> value = new ReloadableValue<String>() {
+            @Override
+            protected String load() {
+                if (loads.incrementAndGet() == 1) {
+                    self.get().invalidate();
+                    return "stale";
+                }
+                return "fresh";
+            }
+        };
+        self.set(value);
+
+        assertEquals("stale", value.get());
+        assertEquals("fresh", value.get());
+        assertEquals("fresh", value.get());
+        assertEquals(2, loads.get());
+    }
+}
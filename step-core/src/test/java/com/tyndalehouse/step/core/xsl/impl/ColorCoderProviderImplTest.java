@@ -33,8 +33,11 @@
 package com.tyndalehouse.step.core.xsl.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.when;
 
+import org.apache.lucene.search.Query;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -44,6 +47,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 import com.tyndalehouse.step.core.data.EntityDoc;
 import com.tyndalehouse.step.core.data.EntityIndexReader;
 import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.service.helpers.MorphologyTable;
 
 /**
  * The color coder tests
@@ -63,19 +67,24 @@ public class ColorCoderProviderImplTest {
     @Before
     public void setUp() {
         when(this.mockManager.getReader("morphology")).thenReturn(this.mockReader);
-        when(this.mockReader.searchExactTermBySingleField("code", 1, "abc")).thenReturn(
-                new EntityDoc[] { this.mockDoc });
-
-        when(this.mockReader.searchExactTermBySingleField("code", 1, "def")).thenReturn(new EntityDoc[] {});
+        when(this.mockReader.search(any(Query.class))).thenReturn(new EntityDoc[] { this.mockDoc });
+        when(this.mockDoc.get("code")).thenReturn("abc");
         when(this.mockDoc.get("cssClasses")).thenReturn("css");
     }
 
+    /**
+     * @return the color coder, backed by the mocked morphology
+     */
+    private ColorCoderProviderImpl getColorCoder() {
+        return new ColorCoderProviderImpl(new MorphologyTable(this.mockManager));
+    }
+
     /**
      * Test color coder.
      */
     @Test
     public void testColorCoder() {
-        final String colorClass = new ColorCoderProviderImpl(this.mockManager).getColorClass("robinson:abc");
+        final String colorClass = getColorCoder().getColorClass("robinson:abc");
         assertEquals("css", colorClass);
     }
 
@@ -84,7 +93,7 @@ public class ColorCoderProviderImplTest {
      */
     @Test
     public void testColorCoderMultiple() {
-        final String colorClass = new ColorCoderProviderImpl(this.mockManager)
+        final String colorClass = getColorCoder()
                 .getColorClass("robinson:def robinson:abc");
         assertEquals("css", colorClass);
     }
@@ -94,7 +103,7 @@ public class ColorCoderProviderImplTest {
      */
     @Test
     public void testColorCoderNoHits() {
-        final String colorClass = new ColorCoderProviderImpl(this.mockManager).getColorClass("robinson:def");
+        final String colorClass = getColorCoder().getColorClass("robinson:def");
         assertEquals("", colorClass);
     }
 
@@ -103,7 +112,7 @@ public class ColorCoderProviderImplTest {
      */
     @Test
     public void testColorCoderNoMultipleHits() {
-        final String colorClass = new ColorCoderProviderImpl(this.mockManager)
+        final String colorClass = getColorCoder()
                 .getColorClass("robinson:def robinson:def");
         assertEquals("", colorClass);
     }
@@ -42,6 +42,7 @@ import java.lang.reflect.Method;
 import com.tyndalehouse.step.core.service.VocabularyService;
 import org.crosswire.common.util.Language;
 import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.KeyFactory;
 import org.crosswire.jsword.passage.NoSuchKeyException;
 import org.crosswire.jsword.passage.PassageKeyFactory;
@@ -69,7 +70,11 @@ public class InterlinearProviderImplTest {
      */
     @Test
     public void testInterlinearStrongMorphBased() throws NoSuchKeyException {
-        final InterlinearProviderImpl interlinear = new InterlinearProviderImpl();
+        Versification NRSV = Versifications.instance().getVersification("NRSV");
+        final InterlinearWordIndex.Builder builder = new InterlinearWordIndex.Builder(NRSV, true);
+        builder.addTextualInfo(VerseFactory.fromString(NRSV, "Gen.1.1"), "strong", "word", "");
+
+        final InterlinearProviderImpl interlinear = new InterlinearProviderImpl(builder.build());
         final Book mock = mock(Book.class);
         final VocabularyService vocabularyService = mock(VocabularyService.class);
         interlinear.setCurrentBook(mock);
@@ -81,11 +86,32 @@ public class InterlinearProviderImplTest {
         // break
         // the initialisation, of the provider, we use reflection to open up its access for testing purposes!
 
-        Versification NRSV = Versifications.instance().getVersification("NRSV");
-        interlinear.addTextualInfo(VerseFactory.fromString(NRSV, "Gen.1.1"), "strong", "word", "");
         assertEquals(interlinear.getWord(PassageKeyFactory.instance().getKey(
                 NRSV, "Gen.1.1"), "strong", false), "word");
         assertEquals(interlinear.getWord(PassageKeyFactory.instance().getKey(
                 NRSV, "Gen.2.1"), "strong", false), "");
     }
+
+    /**
+     * The index of a chapter is shared, so each provider must be able to use all of its words, regardless of the
+     * words used by other providers
+     */
+    @Test
+    public void testWordsAreUsedOncePerProvider() throws NoSuchKeyException {
+        final Versification kjv = Versifications.instance().getVersification("KJV");
+        final InterlinearWordIndex.Builder builder = new InterlinearWordIndex.Builder(kjv, false);
+        builder.addTextualInfo(VerseFactory.fromString(kjv, "John.1.1"), "3056", "Word", "");
+        builder.addTextualInfo(VerseFactory.fromString(kjv, "John.1.1"), "3056", "Word", " the ");
+        final InterlinearWordIndex index = builder.build();
+        assertEquals(2, index.size());
+
+        final Key verse = PassageKeyFactory.instance().getKey(kjv, "John.1.1");
+        final InterlinearProviderImpl first = new InterlinearProviderImpl(index);
+        assertEquals("Word", first.getWord(verse, "3056", false));
+        assertEquals(" the Word", first.getWord(verse, "3056", false));
+        assertEquals("", first.getWord(verse, "3056", false));
+
+        final InterlinearProviderImpl second = new InterlinearProviderImpl(index);
+        assertEquals("Word", second.getWord(verse, "3056", false));
+    }
 }
@@ -1,27 +1,48 @@
 package com.tyndalehouse.step.tools.modules;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.crosswire.common.util.CWProject;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookCategory;
+
 import com.google.inject.Binder;
 import com.google.inject.Guice;
+import com.google.inject.Injector;
 import com.google.inject.Module;
 import com.google.inject.Provider;
 import com.tyndalehouse.step.core.guice.StepCoreModule;
 import com.tyndalehouse.step.core.models.ClientSession;
 import com.tyndalehouse.step.core.service.BibleInformationService;
+import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
 
 /**
- * Indexes all modules
- * 
+ * Indexes all modules. JSword only writes one index at a time in each JVM, so the modules are shared out between
+ * -Dstep.index.processes runs of {@link IndexModule} (by default, half the number of processors), which build their
+ * indexes in parallel. With a single process, the modules are indexed here.
+ *
  * @author chrisburrell
  *
  */
 public class IndexAll {
+    private static final int DEFAULT_PROCESSES = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
     /**
      * main method
-     * 
+     *
      * @param args list of arguments
+     * @throws IOException if a process could not be started
+     * @throws InterruptedException if interrupted while waiting for the processes
      */
-    public static void main(final String[] args) {
-        final BibleInformationService instance = Guice.createInjector(new StepCoreModule(), new Module() {
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        // the same modules as the IndexModule processes, which index the STEP home
+        CWProject.instance().setFrontendName("step");
+
+        final Injector injector = Guice.createInjector(new StepCoreModule(), new Module() {
 
             @Override
             public void configure(final Binder binder) {
@@ -35,7 +56,62 @@ public class IndexAll {
                 });
             }
 
-        }).getInstance(BibleInformationService.class);
-        instance.indexAll();
+        });
+
+        final int processes = Integer.getInteger("step.index.processes", DEFAULT_PROCESSES);
+        if (processes <= 1) {
+            injector.getInstance(BibleInformationService.class).indexAll();
+            return;
+        }
+
+        // modules are dealt out in turn, so that each process has about the same number to index
+        final List<Book> bibles = injector.getInstance(JSwordModuleService.class).getInstalledModules(
+                BookCategory.BIBLE);
+        final List<List<String>> shares = new ArrayList<List<String>>(processes);
+        for (int ii = 0; ii < Math.min(processes, bibles.size()); ii++) {
+            shares.add(new ArrayList<String>());
+        }
+        for (int ii = 0; ii < bibles.size(); ii++) {
+            shares.get(ii % shares.size()).add(bibles.get(ii).getInitials());
+        }
+
+        final long start = System.currentTimeMillis();
+        final List<Process> workers = new ArrayList<Process>(shares.size());
+        for (final List<String> share : shares) {
+            System.out.println("Indexing " + share);
+            workers.add(new ProcessBuilder(getIndexModuleCommand(share)).inheritIO().start());
+        }
+
+        int failed = 0;
+        for (final Process worker : workers) {
+            if (worker.waitFor() != 0) {
+                failed++;
+            }
+        }
+        System.out.println(String.format("Indexed %d modules in %d processes in %d ms, %d processes failed",
+                bibles.size(), workers.size(), System.currentTimeMillis() - start, failed));
+        if (failed != 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param initials the modules to index
+     * @return the command running {@link IndexModule} with the same JVM, classpath and options as this one
+     */
+    private static List<String> getIndexModuleCommand(final List<String> initials) {
+        final List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        for (final String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // a debugger can only be attached to one process on a given port
+            if (!argument.startsWith("-agentlib:jdwp") && !argument.startsWith("-Xrunjdwp")) {
+                command.add(argument);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(IndexModule.class.getName());
+        command.addAll(initials);
+        return command;
     }
 }
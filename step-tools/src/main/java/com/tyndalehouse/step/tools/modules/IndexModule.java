@@ -9,8 +9,13 @@ import org.crosswire.common.util.CWProject;
 import org.crosswire.jsword.book.sword.ConfigEntry;
 import org.crosswire.jsword.book.sword.ConfigValueInterceptor;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
- * Indexes a single module modules
+ * Indexes the modules given as arguments, handing them to JSword up to app.index.threads at a time. Exits with status
+ * 1 if any of them could not be indexed.
  * 
  * @author chrisburrell
  *
@@ -19,7 +24,7 @@ public class IndexModule {
     /**
      * main method
      * 
-     * @param args list of arguments
+     * @param args the initials of the modules to index
      */
     public static void main(final String[] args) {
         CWProject.instance().setFrontendName("step");
@@ -43,9 +48,23 @@ public class IndexModule {
         ConfigEntry.setConfigValueInterceptor(injector.getInstance(ConfigValueInterceptor.class));
 
 
-        System.out.println("Indexing " + args[0]);
-        instance.index(args[0]);
+        for (final String initials : args) {
+            System.out.println("Indexing " + initials);
+            instance.index(initials);
+        }
+        instance.waitForIndexes(args);
+
+        final List<String> failed = new ArrayList<String>();
+        for (final String initials : args) {
+            if (!instance.isIndexed(initials)) {
+                failed.add(initials);
+            }
+        }
 
-        System.out.println("Finished indexing " + args[0]);
+        if (!failed.isEmpty()) {
+            System.out.println("Unable to index " + failed);
+            System.exit(1);
+        }
+        System.out.println("Finished indexing " + Arrays.toString(args));
     }
 }
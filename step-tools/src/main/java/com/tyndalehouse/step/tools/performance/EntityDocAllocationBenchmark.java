@@ -0,0 +1,143 @@
+package com.tyndalehouse.step.tools.performance;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Version;
+
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.tyndalehouse.step.core.data.AllResultsCollector;
+import com.tyndalehouse.step.core.data.EntityDoc;
+import com.tyndalehouse.step.core.data.EntityIndexReader;
+import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.guice.StepCoreModule;
+import com.tyndalehouse.step.core.models.ClientSession;
+
+/**
+ * Compares the bytes allocated per query when collecting doc ids into a List&lt;Integer&gt; and loading every stored
+ * field of each matching definition, against the primitive collector and loading only the strong number.
+ * <p/>
+ * Relies on the HotSpot extension of the ThreadMXBean to measure allocations. Run against an installed set of
+ * entity indexes.
+ */
+public class EntityDocAllocationBenchmark {
+    private static final String[] QUERIES = { "love", "god", "king", "water", "the" };
+    private static final int WARM_UP = 50;
+    private static final int ITERATIONS = 500;
+    private static final int SYNTHETIC_HITS = 10000;
+
+    /**
+     * @param args no arguments are required
+     * @throws Exception any exception
+     */
+    public static void main(final String[] args) throws Exception {
+        final EntityManager manager = Guice.createInjector(new StepCoreModule(), new Module() {
+            @Override
+            public void configure(final Binder binder) {
+                binder.bind(ClientSession.class).toProvider(new Provider<ClientSession>() {
+                    @Override
+                    public ClientSession get() {
+                        return null;
+                    }
+                });
+            }
+        }).getInstance(EntityManager.class);
+
+        final EntityIndexReader definitions = manager.getReader("definition");
+        final QueryParser parser = new QueryParser(Version.LUCENE_30, "translationsStem",
+                definitions.getAnalyzer());
+        final List<Query> queries = new ArrayList<Query>();
+        for (final String q : QUERIES) {
+            queries.add(parser.parse(q));
+        }
+
+        final long allFields = measure(new Runnable() {
+            @Override
+            public void run() {
+                for (final Query q : queries) {
+                    consume(definitions.search(q));
+                }
+            }
+        });
+        final long strongOnly = measure(new Runnable() {
+            @Override
+            public void run() {
+                for (final Query q : queries) {
+                    consume(definitions.search(q, "strongNumber"));
+                }
+            }
+        });
+        System.out.println(String.format("All stored fields: %d bytes / query", allFields / QUERIES.length));
+        System.out.println(String.format("Strong number only: %d bytes / query", strongOnly / QUERIES.length));
+
+        final long boxed = measure(new Runnable() {
+            @Override
+            public void run() {
+                final List<Integer> docIds = new ArrayList<Integer>(32);
+                for (int ii = 0; ii < SYNTHETIC_HITS; ii++) {
+                    docIds.add(ii * 7);
+                }
+            }
+        });
+        final long primitive = measure(new Runnable() {
+            @Override
+            public void run() {
+                final AllResultsCollector collector = new AllResultsCollector();
+                try {
+                    for (int ii = 0; ii < SYNTHETIC_HITS; ii++) {
+                        collector.collect(ii * 7);
+                    }
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        System.out.println(String.format("List<Integer> collection of %d hits: %d bytes", SYNTHETIC_HITS, boxed));
+        System.out.println(String.format("int[] collection of %d hits: %d bytes", SYNTHETIC_HITS, primitive));
+        manager.close();
+    }
+
+    /**
+     * Runs the task repeatedly, returning the average number of bytes allocated by one run
+     *
+     * @param task the task
+     * @return the bytes allocated per run
+     */
+    private static long measure(final Runnable task) {
+        for (int ii = 0; ii < WARM_UP; ii++) {
+            task.run();
+        }
+
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(threadId);
+        for (int ii = 0; ii < ITERATIONS; ii++) {
+            task.run();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+    }
+
+    /**
+     * Reads the field that the search service reads, so that nothing is optimised away
+     *
+     * @param docs the documents
+     */
+    private static void consume(final EntityDoc[] docs) {
+        int length = 0;
+        for (final EntityDoc doc : docs) {
+            final String strong = doc.get("strongNumber");
+            length += strong == null ? 0 : strong.length();
+        }
+        if (length == -1) {
+            System.out.println(length);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.tyndalehouse.step.tools.performance;
+
+import java.net.URI;
+
+import org.crosswire.common.xml.SAXEventProvider;
+import org.crosswire.common.xml.TransformingSAXEventProvider;
+import org.crosswire.common.xml.XMLUtil;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookData;
+import org.crosswire.jsword.book.Books;
+
+import com.tyndalehouse.step.core.service.jsword.impl.JSwordPassageServiceImpl;
+import com.tyndalehouse.step.core.xsl.XslConversionType;
+import com.tyndalehouse.step.core.xsl.impl.TransformerSAXEventProvider;
+import com.tyndalehouse.step.core.xsl.impl.XslTemplatesCache;
+
+/**
+ * Compares passages per second for the ways the passage stylesheet can be applied.
+ * <p>
+ * JSword's TransformingSAXEventProvider already keeps the compiled Templates for each stylesheet URI, so the
+ * "before" run does not recompile the stylesheet: it measures what the passage service used to do on each
+ * request, i.e. resolving the stylesheet URI, JSword's modification check and cache lookup, and a new
+ * Transformer. The "recompiled" run puts JSword in development mode, which bypasses its cache, to show the cost
+ * of compiling the stylesheet on every request. The "after" run uses the compiled templates cache of the
+ * passage service.
+ */
+public class PassageTransformationBenchmark {
+    private static final String[] VERSIONS = { "KJV", "ESV_th" };
+    private static final String[] REFERENCES = { "Rom.2", "John.7", "2Kgs.2", "Ps.23", "Acts.3.4-Acts.3.6" };
+    private static final int WARM_UP = 200;
+    private static final int ITERATIONS = 2000;
+
+    /**
+     * Interface for each of the strategies we are measuring
+     */
+    private interface Strategy {
+        /**
+         * @param osissep the osis to be transformed
+         * @return a provider of the html
+         * @throws Exception any exception
+         */
+        SAXEventProvider transform(SAXEventProvider osissep) throws Exception;
+    }
+
+    /**
+     * @param args no arguments are required
+     * @throws Exception any exception
+     */
+    public static void main(final String[] args) throws Exception {
+        final XslConversionType type = XslConversionType.DEFAULT;
+        final URI stylesheet = JSwordPassageServiceImpl.class.getResource(type.getFile()).toURI();
+        final XslTemplatesCache cache = new XslTemplatesCache(JSwordPassageServiceImpl.class);
+
+        final Strategy before = new Strategy() {
+            @Override
+            public SAXEventProvider transform(final SAXEventProvider osissep) throws Exception {
+                final TransformingSAXEventProvider tsep = new TransformingSAXEventProvider(stylesheet, osissep);
+                tsep.setParameter("baseVersion", "KJV");
+                tsep.setParameter("direction", "ltr");
+                return tsep;
+            }
+        };
+
+        final Strategy after = new Strategy() {
+            @Override
+            public SAXEventProvider transform(final SAXEventProvider osissep) {
+                final TransformerSAXEventProvider tsep = new TransformerSAXEventProvider(
+                        cache.newTransformer(type), osissep);
+                tsep.setParameter("baseVersion", "KJV");
+                tsep.setParameter("direction", "ltr");
+                return tsep;
+            }
+        };
+
+        TransformingSAXEventProvider.setDevelopmentMode(true);
+        final double recompiledRate;
+        try {
+            recompiledRate = run("recompiled (stylesheet compiled per request)", before);
+        } finally {
+            TransformingSAXEventProvider.setDevelopmentMode(false);
+        }
+        final double beforeRate = run("before (JSword templates cache, stylesheet resolved per request)", before);
+        final double afterRate = run("after (compiled templates cache)", after);
+        System.out.println(String.format("Speed up over JSword's cache: %.2fx", afterRate / beforeRate));
+        System.out.println(String.format("Speed up over recompiling: %.2fx", afterRate / recompiledRate));
+    }
+
+    /**
+     * Runs a strategy, reporting passages per second
+     *
+     * @param name the name of the strategy
+     * @param strategy the strategy
+     * @return the number of passages per second
+     * @throws Exception any exception
+     */
+    private static double run(final String name, final Strategy strategy) throws Exception {
+        for (int ii = 0; ii < WARM_UP; ii++) {
+            transformOnce(strategy, ii);
+        }
+
+        final long start = System.nanoTime();
+        for (int ii = 0; ii < ITERATIONS; ii++) {
+            transformOnce(strategy, ii);
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        final double rate = ITERATIONS / (elapsed / 1000000000.0);
+        System.out.println(String.format("%s: %d passages in %d ms, %.1f passages / second", name, ITERATIONS,
+                elapsed / 1000000, rate));
+        return rate;
+    }
+
+    /**
+     * Transforms a single passage
+     *
+     * @param strategy the strategy to use
+     * @param ii the iteration number, used to vary the passage
+     * @throws Exception any exception
+     */
+    private static void transformOnce(final Strategy strategy, final int ii) throws Exception {
+        final Book book = Books.installed().getBook(VERSIONS[ii % VERSIONS.length]);
+        final BookData data = new BookData(book, book.getKey(REFERENCES[ii % REFERENCES.length]));
+        XMLUtil.writeToString(strategy.transform(data.getSAXEventProvider()));
+    }
+}
@@ -32,7 +32,8 @@ public class PerformancePassageRetrieval {
         final ThreadMXBean thbean = ManagementFactory.getThreadMXBean();
         thbean.setThreadContentionMonitoringEnabled(true);
         final JSwordPassageServiceImpl jsi = new JSwordPassageServiceImpl(
-                TestUtils.mockVersificationService(), null, null, null, TestUtils.mockVersionResolver(), null);
+                TestUtils.mockVersificationService(), null, null, null, TestUtils.mockVersionResolver(), null,
+                TestUtils.interlinearWordIndexCache());
 
         final Queue<Long> times = new ConcurrentLinkedQueue<Long>();
         final AtomicLong iterations = new AtomicLong();
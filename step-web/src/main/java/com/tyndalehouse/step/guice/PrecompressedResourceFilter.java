@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.guice;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+
+import javax.inject.Singleton;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Serves the gzipped copy of a minified resource, made when the web app is built, to clients that accept gzip. The
+ * container's default servlet serves the copy, so this works the same whichever container the app runs in.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class PrecompressedResourceFilter implements Filter {
+    static final String GZIP_SUFFIX = ".gz";
+    private static final String GZIP = "gzip";
+    private ServletContext servletContext;
+
+    @Override
+    public void init(final FilterConfig filterConfig) throws ServletException {
+        this.servletContext = filterConfig.getServletContext();
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain)
+            throws IOException, ServletException {
+        final HttpServletRequest httpRequest = (HttpServletRequest) request;
+        final HttpServletResponse httpResponse = (HttpServletResponse) response;
+        final String path = httpRequest.getRequestURI().substring(httpRequest.getContextPath().length());
+        final String compressedPath = path + GZIP_SUFFIX;
+        if (!hasResource(compressedPath)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        // the response now depends on the encodings the client accepts, whichever one it gets
+        httpResponse.addHeader("Vary", "Accept-Encoding");
+        if (!acceptsGzip(httpRequest.getHeader("Accept-Encoding"))) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        final String contentType = this.servletContext.getMimeType(path);
+        request.getRequestDispatcher(compressedPath).forward(request,
+                new GzippedResourceResponse(httpResponse, contentType));
+    }
+
+    /**
+     * @param path the path of the resource within the web app
+     * @return true if the resource exists
+     */
+    private boolean hasResource(final String path) {
+        try {
+            return this.servletContext.getResource(path) != null;
+        } catch (final MalformedURLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param acceptEncoding the Accept-Encoding header
+     * @return true if gzip is amongst the encodings, and is not refused with a quality of 0
+     */
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        for (final String encoding : acceptEncoding.split(",")) {
+            final String[] parts = encoding.split(";");
+            final String name = parts[0].trim();
+            if (!GZIP.equalsIgnoreCase(name) && !"*".equals(name)) {
+                continue;
+            }
+
+            boolean refused = false;
+            for (int ii = 1; ii < parts.length; ii++) {
+                final String parameter = parts[ii].trim().replace(" ", "");
+                refused |= parameter.matches("q=0(\\.0*)?");
+            }
+            return !refused;
+        }
+        return false;
+    }
+
+    @Override
+    public void destroy() {
+        // nothing to destroy
+    }
+
+    /**
+     * Marks the response as gzipped, and keeps the content type of the uncompressed resource, rather than the one
+     * the default servlet would give a .gz file
+     */
+    private static final class GzippedResourceResponse extends HttpServletResponseWrapper {
+        /**
+         * @param response    the response
+         * @param contentType the content type of the uncompressed resource
+         */
+        private GzippedResourceResponse(final HttpServletResponse response, final String contentType) {
+            super(response);
+            response.setHeader("Content-Encoding", GZIP);
+            if (contentType != null) {
+                response.setContentType(contentType);
+            }
+        }
+
+        @Override
+        public void setContentType(final String type) {
+            // keeps the type of the uncompressed resource
+        }
+
+        @Override
+        public void setHeader(final String name, final String value) {
+            if (!isContentHeader(name)) {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(final String name, final String value) {
+            if (!isContentHeader(name)) {
+                super.addHeader(name, value);
+            }
+        }
+
+        /**
+         * @param name the name of a header
+         * @return true for the content type and encoding, which are already set
+         */
+        private boolean isContentHeader(final String name) {
+            return "Content-Type".equalsIgnoreCase(name) || "Content-Encoding".equalsIgnoreCase(name);
+        }
+    }
+}
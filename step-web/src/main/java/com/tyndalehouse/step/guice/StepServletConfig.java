@@ -36,12 +36,15 @@ import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Provider;
 import com.google.inject.ProvisionException;
+import com.google.inject.Singleton;
 import com.google.inject.servlet.GuiceServletContextListener;
 import com.google.inject.servlet.ServletModule;
 import com.tyndalehouse.step.core.data.EntityManager;
 import com.tyndalehouse.step.core.data.create.Loader;
 import com.tyndalehouse.step.core.guice.StepCoreModule;
 import com.tyndalehouse.step.core.models.ClientSession;
+import com.tyndalehouse.step.core.service.SuggestionService;
+import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
 import com.tyndalehouse.step.rest.controllers.ImageController;
 import com.tyndalehouse.step.rest.controllers.IndexRedirect;
 import com.tyndalehouse.step.rest.controllers.InternationalJsonController;
@@ -49,6 +52,7 @@ import com.tyndalehouse.step.rest.controllers.SearchPageController;
 import com.tyndalehouse.step.rest.controllers.SetupPageController;
 import com.tyndalehouse.step.rest.controllers.SiteMapController;
 import com.tyndalehouse.step.rest.framework.FrontController;
+import com.planetj.servlet.filter.compression.CompressingFilter;
 import org.crosswire.common.util.CWProject;
 import org.crosswire.common.util.Reporter;
 import org.crosswire.common.util.ReporterEvent;
@@ -66,7 +70,9 @@ import org.slf4j.LoggerFactory;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Configures the listener for the web app to return the injector used to configure the whole of the application.
@@ -75,6 +81,7 @@ import java.util.Locale;
  */
 public class StepServletConfig extends GuiceServletContextListener {
     private static final Logger LOGGER = LoggerFactory.getLogger(StepServletConfig.class);
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
     private Injector injector = null;
 
     @Override
@@ -84,6 +91,13 @@ public class StepServletConfig extends GuiceServletContextListener {
                 ServletModule servletModule = new ServletModule() {
                     @Override
                     protected void configureServlets() {
+                        // compress the JSON responses, which come first so that it wraps all other filters
+                        bind(CompressingFilter.class).in(Singleton.class);
+                        filter("/rest/*", "/" + ExternalPoweredByFilter.EXTERNAL_PREFIX + "*")
+                                .through(CompressingFilter.class, getCompressionParameters());
+                        // serves the gzipped copies of the minified resources made by the build
+                        filter("*.min.js", "*.min.css").through(PrecompressedResourceFilter.class);
+
                         serve("/" + ExternalPoweredByFilter.EXTERNAL_PREFIX + "*")
                                 .with(FrontController.class);
                         serve("/rest/*").with(FrontController.class);
@@ -117,6 +131,20 @@ public class StepServletConfig extends GuiceServletContextListener {
         return this.injector;
     }
 
+    /**
+     * Responses are compressed with gzip or deflate, depending on what the client accepts, as long as they are
+     * bigger than -Dstep.compression.threshold bytes.
+     *
+     * @return the parameters of the compressing filter
+     */
+    private Map<String, String> getCompressionParameters() {
+        final Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("compressionThreshold", String.valueOf(Integer.getInteger("step.compression.threshold",
+                DEFAULT_COMPRESSION_THRESHOLD)));
+        parameters.put("includeContentTypes", "application/json,text/html,text/plain");
+        return parameters;
+    }
+
     /**
      * Context initialized.
      *
@@ -140,6 +168,9 @@ public class StepServletConfig extends GuiceServletContextListener {
             getInjector().getInstance(Loader.class).init();
         }
 
+        // open the entity indexes in the background, rather than on the first requests
+        getInjector().getInstance(EntityManager.class).warmUp();
+
     }
 
     /**
@@ -201,6 +232,8 @@ public class StepServletConfig extends GuiceServletContextListener {
 
         sc.removeAttribute(Injector.class.getName());
         getInjector().getInstance(EntityManager.class).close();
+        getInjector().getInstance(SuggestionService.class).close();
+        getInjector().getInstance(JSwordSearchService.class).close();
 
         super.contextDestroyed(servletContextEvent);
     }
@@ -51,6 +51,7 @@ import org.codehaus.jackson.map.ObjectMapper;
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.rest.framework.FrontController;
 import com.tyndalehouse.step.rest.framework.JsonResourceBundle;
+import com.tyndalehouse.step.rest.framework.ResponseCachePolicy;
 import org.crosswire.common.xml.TransformingSAXEventProvider;
 
 /**
@@ -64,10 +65,13 @@ public class InternationalJsonController extends HttpServlet {
     private static final Map<Locale, String> BUNDLES = new HashMap<Locale, String>();
     private final ObjectMapper objectMapper;
     private final Provider<ClientSession> clientSessionProvider;
+    private final ResponseCachePolicy cachePolicy;
 
     @Inject
-    public InternationalJsonController(final Provider<ObjectMapper> objectMapperProvider, final Provider<ClientSession> clientSessionProvider) {
+    public InternationalJsonController(final Provider<ObjectMapper> objectMapperProvider, final Provider<ClientSession> clientSessionProvider,
+                                       final ResponseCachePolicy cachePolicy) {
         this.clientSessionProvider = clientSessionProvider;
+        this.cachePolicy = cachePolicy;
         this.objectMapper = objectMapperProvider.get();
     }
     
@@ -84,6 +88,13 @@ public class InternationalJsonController extends HttpServlet {
         } else {
             locale = clientSessionProvider.get().getLocale();
         }
+
+        final String cacheControl = this.cachePolicy.getCacheControl(ResponseCachePolicy.INTERNATIONAL);
+        final String eTag = this.cachePolicy.getETag(req, locale);
+        if (this.cachePolicy.sendNotModified(req, response, eTag, cacheControl)) {
+            return;
+        }
+
         String qualifiedResponse = BUNDLES.get(locale);
         if (qualifiedResponse == null) {
             qualifiedResponse = readBundle(locale, "HtmlBundle", "InteractiveBundle");
@@ -93,6 +104,7 @@ public class InternationalJsonController extends HttpServlet {
         response.setCharacterEncoding(FrontController.UTF_8_ENCODING);
         response.setLocale(locale);
         response.setContentType("application/json");
+        this.cachePolicy.setupHeaders(response, eTag, cacheControl);
         response.getOutputStream().write(qualifiedResponse.getBytes(FrontController.UTF_8_ENCODING));
         response.flushBuffer();
         response.getOutputStream().close();
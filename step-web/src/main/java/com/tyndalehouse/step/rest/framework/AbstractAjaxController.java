@@ -6,7 +6,9 @@ import com.tyndalehouse.step.core.exceptions.TranslatedException;
 import com.tyndalehouse.step.core.exceptions.ValidationException;
 import com.tyndalehouse.step.core.models.ClientSession;
 import com.tyndalehouse.step.core.service.AppManagerService;
+import org.codehaus.jackson.JsonEncoding;
 import org.codehaus.jackson.JsonGenerationException;
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.map.JsonMappingException;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
@@ -18,40 +20,74 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import static java.lang.String.format;
 
 /**
+ * Executes requests and writes their results as JSON. By default, each response is encoded in full before being
+ * written. Starting with -Dstep.json.streaming=true writes the JSON straight to the response instead, through a
+ * pooled buffer of -Dstep.json.maxBufferedBytes: responses fitting in the buffer are still sent with their length,
+ * larger responses are sent in chunks as they are encoded.
+ *
  * @author chrisburrell
  */
 @MultipartConfig
 public abstract class AbstractAjaxController extends HttpServlet {
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractAjaxController.class);
+    private static final int DEFAULT_MAX_BUFFERED_BYTES = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 32;
     private final ObjectMapper jsonMapper;
     private final transient ClientErrorResolver errorResolver;
     private final AppManagerService appManagerService;
     private final Provider<ClientSession> clientSessionProvider;
+    private final ResponseCachePolicy cachePolicy;
+    private final boolean streamJson;
+    private final int maxBufferedBytes;
+    private final transient BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(MAX_POOLED_BUFFERS);
 
     public AbstractAjaxController(final AppManagerService appManagerService,
                                   final Provider<ClientSession> clientSessionProvider,
                                   final ClientErrorResolver errorResolver,
-                                  final Provider<ObjectMapper> objectMapperProvider) {
+                                  final Provider<ObjectMapper> objectMapperProvider,
+                                  final ResponseCachePolicy cachePolicy) {
         this.appManagerService = appManagerService;
+        this.cachePolicy = cachePolicy;
         this.clientSessionProvider = clientSessionProvider;
         this.errorResolver = errorResolver;
         this.jsonMapper = objectMapperProvider.get();
+        this.streamJson = Boolean.getBoolean("step.json.streaming");
+        this.maxBufferedBytes = Integer.getInteger("step.json.maxBufferedBytes", DEFAULT_MAX_BUFFERED_BYTES);
     }
 
     @Override
     protected void doGet(final HttpServletRequest request, final HttpServletResponse response) {
         // CHECKSTYLE:ON
         try {
+            // responses that only change with the installed modules are not worked out again if the client has them
+            final String cacheControl = getCacheControl(request);
+            final String eTag = cacheControl == null ? null
+                    : this.cachePolicy.getETag(request, this.clientSessionProvider.get().getLocale());
+            if (eTag != null && this.cachePolicy.sendNotModified(request, response, eTag, cacheControl)) {
+                return;
+            }
+
             Object returnVal = executeRestMethod(request);
-            byte[] jsonEncoded = getEncodedJsonResponse(returnVal);
-            setupHeaders(response, jsonEncoded.length);
-            response.getOutputStream().write(jsonEncoded);
+            if (eTag != null && !(returnVal instanceof ClientHandledIssue)) {
+                this.cachePolicy.setupHeaders(response, eTag, cacheControl);
+            }
+
+            if (this.streamJson) {
+                writeJsonResponse(response, returnVal);
+            } else {
+                byte[] jsonEncoded = getEncodedJsonResponse(returnVal);
+                setupHeaders(response, jsonEncoded.length);
+                response.getOutputStream().write(jsonEncoded);
+            }
             // CHECKSTYLE:OFF We allow catching errors here, since we are at the top of the structure
         } catch (final Exception e) {
             // CHECKSTYLE:ON
@@ -80,6 +116,21 @@ public abstract class AbstractAjaxController extends HttpServlet {
 
     protected abstract Object invokeMethod(HttpServletRequest request) throws Exception;
 
+    /**
+     * @return the policy deciding which responses can be cached
+     */
+    protected ResponseCachePolicy getCachePolicy() {
+        return this.cachePolicy;
+    }
+
+    /**
+     * @param request the request
+     * @return the Cache-Control value to send with the response, or null if the response is not to be cached
+     */
+    protected String getCacheControl(final HttpServletRequest request) {
+        return null;
+    }
+
     /**
      * We attempt here to rethrow the exception that caused the invocation target exception, so that we can handle it
      * nicely for the user
@@ -122,6 +173,51 @@ public abstract class AbstractAjaxController extends HttpServlet {
         }
     }
 
+    /**
+     * Writes the JSON response straight to the servlet output stream. Failures before anything has been sent are
+     * thrown, to be handled as usual. Once part of the response has been sent, it is too late to send an error, so
+     * failures are only logged. Either way, the response is only completed once the whole value has been written,
+     * so a failure never sends what was buffered so far as if it were the full response.
+     *
+     * @param response      the response
+     * @param responseValue the value that should be encoded
+     */
+    void writeJsonResponse(final HttpServletResponse response, final Object responseValue) {
+        LOGGER.debug("Streaming the following response [{}]", responseValue);
+        if (responseValue == null) {
+            setupHeaders(response, 0);
+            return;
+        }
+
+        final JsonResponseOutputStream out = new JsonResponseOutputStream(response);
+        try {
+            // the mapper would otherwise close the generator, and with it our stream, when the value fails to encode
+            final JsonGenerator generator = this.jsonMapper.getJsonFactory().createJsonGenerator(out,
+                    JsonEncoding.UTF8);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.jsonMapper.writeValue(generator, responseValue);
+            generator.close();
+            out.close();
+        } catch (final IOException e) {
+            handleStreamingError(out, e);
+        } catch (final RuntimeException e) {
+            handleStreamingError(out, e);
+        } finally {
+            out.release();
+        }
+    }
+
+    /**
+     * @param out the stream that failed to be written
+     * @param e   the failure
+     */
+    private void handleStreamingError(final JsonResponseOutputStream out, final Exception e) {
+        if (!out.isStreaming()) {
+            throw new StepInternalException(e.getMessage(), e);
+        }
+        LOGGER.error("Unable to complete response after it was partially sent", e);
+    }
+
     /**
      * sets up the headers and the length of the message
      *
@@ -129,15 +225,122 @@ public abstract class AbstractAjaxController extends HttpServlet {
      * @param length   the length of the message
      */
     void setupHeaders(final HttpServletResponse response, final int length) {
+        setupHeaders(response);
+        response.setContentLength(length);
+    }
+
+    /**
+     * sets up the headers for a message whose length is not known up front, and which will therefore be chunked
+     *
+     * @param response the response
+     */
+    void setupHeaders(final HttpServletResponse response) {
         // we ensure that headers are set up appropriately
         response.addDateHeader("Date", System.currentTimeMillis());
         response.setCharacterEncoding(FrontController.UTF_8_ENCODING);
         response.setContentType("application/json");
-        response.setContentLength(length);
         response.setHeader("step-language", this.clientSessionProvider.get().getLocale().getLanguage());
         response.setHeader("step-version", this.appManagerService.getAppVersion());
     }
 
+    /**
+     * Buffers the start of a JSON response in a pooled buffer. If the whole response fits, it is sent with its
+     * length. Otherwise, the headers are sent without a length as soon as the buffer fills up, and the rest of the
+     * response is written straight through.
+     */
+    private final class JsonResponseOutputStream extends OutputStream {
+        private final HttpServletResponse response;
+        private byte[] buffer;
+        private int count;
+        private OutputStream out;
+        private boolean closed;
+
+        /**
+         * @param response the response to write to
+         */
+        private JsonResponseOutputStream(final HttpServletResponse response) {
+            this.response = response;
+            final byte[] pooled = AbstractAjaxController.this.buffers.poll();
+            this.buffer = pooled != null ? pooled : new byte[AbstractAjaxController.this.maxBufferedBytes];
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (this.out == null && this.count == this.buffer.length) {
+                startStreaming();
+            }
+
+            if (this.out != null) {
+                this.out.write(b);
+            } else {
+                this.buffer[this.count++] = (byte) b;
+            }
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (this.out == null && this.count + len > this.buffer.length) {
+                startStreaming();
+            }
+
+            if (this.out != null) {
+                this.out.write(b, off, len);
+            } else {
+                System.arraycopy(b, off, this.buffer, this.count, len);
+                this.count += len;
+            }
+        }
+
+        /**
+         * Sends whatever has not been sent yet. The servlet output stream itself is left for the container to close.
+         *
+         * @throws IOException the response could not be written
+         */
+        @Override
+        public void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+
+            if (this.out == null) {
+                setupHeaders(this.response, this.count);
+                this.response.getOutputStream().write(this.buffer, 0, this.count);
+            } else {
+                this.out.flush();
+            }
+        }
+
+        /**
+         * @return true if part of the response has already been sent
+         */
+        private boolean isStreaming() {
+            return this.out != null;
+        }
+
+        /**
+         * Returns the buffer to the pool, once the response has been written or has failed
+         */
+        private void release() {
+            if (this.buffer != null) {
+                AbstractAjaxController.this.buffers.offer(this.buffer);
+                this.buffer = null;
+            }
+        }
+
+        /**
+         * Sends the headers without a length, followed by the buffered start of the response
+         *
+         * @throws IOException the response could not be written
+         */
+        private void startStreaming() throws IOException {
+            setupHeaders(this.response);
+            this.out = this.response.getOutputStream();
+            this.out.write(this.buffer, 0, this.count);
+            this.count = 0;
+        }
+    }
+
     /**
      * deals with an error whilst executing the request
      *
@@ -150,6 +353,9 @@ public abstract class AbstractAjaxController extends HttpServlet {
             if (e != null) {
                 final ClientHandledIssue issue = new ClientHandledIssue(getExceptionMessageAndLog(e));
                 final byte[] errorMessage = this.getEncodedJsonResponse(issue);
+                // errors are never cached, even if the response was going to be, nor validated later on
+                response.setHeader("Cache-Control", "no-store");
+                response.setHeader("ETag", null);
                 response.getOutputStream().write(errorMessage);
                 setupHeaders(response, errorMessage.length);
             }
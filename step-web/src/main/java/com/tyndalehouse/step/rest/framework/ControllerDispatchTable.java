@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.rest.framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import javax.servlet.http.HttpServlet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+
+/**
+ * The methods that can be called on the controllers, built once when the front controller starts by looking through
+ * the controllers package. Each controller method taking only strings is bound to a method handle, keyed on the
+ * controller, the method name and the number of arguments, so that requests are routed without any further
+ * reflection and without any shared state being modified.
+ *
+ * @author chrisburrell
+ */
+final class ControllerDispatchTable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ControllerDispatchTable.class);
+    private static final String CONTROLLER_SUFFIX = "Controller";
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String EXTERNAL_KEY_PREFIX = "external/";
+    private final Map<String, Class<?>> controllers;
+    private final Map<String, Route> routes;
+
+    /**
+     * A controller method, ready to be invoked
+     */
+    static final class Route {
+        private final Class<?> controllerClass;
+        private final MethodHandle handle;
+
+        /**
+         * @param controllerClass the class of the controller
+         * @param handle          the method, taking the controller and an array of arguments
+         */
+        private Route(final Class<?> controllerClass, final MethodHandle handle) {
+            this.controllerClass = controllerClass;
+            this.handle = handle;
+        }
+
+        /**
+         * @return the class of the controller
+         */
+        Class<?> getControllerClass() {
+            return this.controllerClass;
+        }
+
+        /**
+         * @param controller the controller
+         * @param args       the arguments
+         * @return the value returned by the method, or null for void methods
+         * @throws Throwable any exception thrown by the method
+         */
+        Object invoke(final Object controller, final Object[] args) throws Throwable {
+            return (Object) this.handle.invokeExact(controller, args);
+        }
+    }
+
+    /**
+     * @param controllerPackage  the package containing the controllers
+     * @param externalSubPackage the sub-package containing the controllers for external requests
+     */
+    ControllerDispatchTable(final String controllerPackage, final String externalSubPackage) {
+        final Map<String, Class<?>> foundControllers = new HashMap<String, Class<?>>(32);
+        final Map<String, Route> foundRoutes = new HashMap<String, Route>(256);
+        for (final Class<?> controllerClass : findClasses(controllerPackage)) {
+            final boolean external = controllerClass.getPackage().getName().equals(
+                    controllerPackage + '.' + externalSubPackage);
+            if (!external && !controllerClass.getPackage().getName().equals(controllerPackage)) {
+                continue;
+            }
+
+            final String simpleName = controllerClass.getSimpleName();
+            final String controllerKey = getControllerKey(
+                    simpleName.substring(0, simpleName.length() - CONTROLLER_SUFFIX.length()), external);
+            foundControllers.put(controllerKey, controllerClass);
+            addRoutes(foundRoutes, controllerKey, controllerClass);
+        }
+
+        this.controllers = Collections.unmodifiableMap(foundControllers);
+        this.routes = Collections.unmodifiableMap(foundRoutes);
+        LOGGER.info("Found [{}] controllers exposing [{}] methods", this.controllers.size(), this.routes.size());
+    }
+
+    /**
+     * @param controllerName the name of the controller, as it appears in the request
+     * @param external       true if the request is an external request
+     * @return the class of the controller, or null if there is no such controller
+     */
+    Class<?> getControllerClass(final String controllerName, final boolean external) {
+        return this.controllers.get(getControllerKey(controllerName, external));
+    }
+
+    /**
+     * @param controllerName the name of the controller, as it appears in the request
+     * @param external       true if the request is an external request
+     * @param methodName     the name of the method
+     * @param arity          the number of arguments
+     * @return the route, or null if there is no such method
+     */
+    Route getRoute(final String controllerName, final boolean external, final String methodName, final int arity) {
+        return this.routes.get(getRouteKey(getControllerKey(controllerName, external), methodName, arity));
+    }
+
+    /**
+     * Binds every public method of the controller that takes only strings
+     *
+     * @param routes          the routes found so far
+     * @param controllerKey   the key of the controller
+     * @param controllerClass the class of the controller
+     */
+    private void addRoutes(final Map<String, Route> routes, final String controllerKey,
+                           final Class<?> controllerClass) {
+        final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        for (final Method method : controllerClass.getMethods()) {
+            if (method.getDeclaringClass() == Object.class || Modifier.isStatic(method.getModifiers())
+                    || !takesOnlyStrings(method)) {
+                continue;
+            }
+
+            final int arity = method.getParameterTypes().length;
+            try {
+                // (Controller, String...)R becomes (Object, Object[])Object, so that all routes are invoked alike
+                final MethodHandle handle = lookup.unreflect(method)
+                        .asType(MethodType.genericMethodType(arity + 1))
+                        .asSpreader(Object[].class, arity);
+                routes.put(getRouteKey(controllerKey, method.getName(), arity), new Route(controllerClass, handle));
+            } catch (final IllegalAccessException e) {
+                LOGGER.warn("Unable to bind [{}]", method);
+                LOGGER.trace("Trace for exception:", e);
+            }
+        }
+    }
+
+    /**
+     * @param method the method
+     * @return true if all the arguments of the method are strings
+     */
+    private boolean takesOnlyStrings(final Method method) {
+        for (final Class<?> parameter : method.getParameterTypes()) {
+            if (parameter != String.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param controllerName the name of the controller, whose first letter may be in either case
+     * @param external       true for external controllers
+     * @return the key of the controller
+     */
+    private String getControllerKey(final String controllerName, final boolean external) {
+        if (controllerName.isEmpty()) {
+            return controllerName;
+        }
+
+        final String name = Character.toLowerCase(controllerName.charAt(0)) + controllerName.substring(1);
+        return external ? EXTERNAL_KEY_PREFIX + name : name;
+    }
+
+    /**
+     * @param controllerKey the key of the controller
+     * @param methodName    the name of the method
+     * @param arity         the number of arguments
+     * @return the key of the route
+     */
+    private String getRouteKey(final String controllerKey, final String methodName, final int arity) {
+        return controllerKey + '/' + methodName + '/' + arity;
+    }
+
+    /**
+     * Lists the controllers in the package and its sub-packages, whether they are in a directory or in a jar. Servlets
+     * are served directly rather than through the front controller, so are left out.
+     *
+     * @param packageName the package
+     * @return the controller classes
+     */
+    private List<Class<?>> findClasses(final String packageName) {
+        final ClassLoader classLoader = ControllerDispatchTable.class.getClassLoader();
+        final String packagePath = packageName.replace('.', '/');
+        final List<String> classNames = new ArrayList<String>(32);
+        try {
+            final Enumeration<URL> resources = classLoader.getResources(packagePath);
+            while (resources.hasMoreElements()) {
+                final URL resource = resources.nextElement();
+                if ("file".equals(resource.getProtocol())) {
+                    addClassNames(classNames, new File(resource.toURI()), packageName);
+                } else if ("jar".equals(resource.getProtocol())) {
+                    addClassNames(classNames, ((JarURLConnection) resource.openConnection()).getJarFile(),
+                            packagePath);
+                } else {
+                    LOGGER.warn("Unable to look for controllers in [{}]", resource);
+                }
+            }
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to look for controllers in " + packageName, e);
+        } catch (final URISyntaxException e) {
+            throw new StepInternalException("Unable to look for controllers in " + packageName, e);
+        }
+
+        final List<Class<?>> classes = new ArrayList<Class<?>>(classNames.size());
+        for (final String className : classNames) {
+            try {
+                final Class<?> controllerClass = Class.forName(className, false, classLoader);
+                if (!HttpServlet.class.isAssignableFrom(controllerClass)
+                        && Modifier.isPublic(controllerClass.getModifiers())) {
+                    classes.add(controllerClass);
+                }
+            } catch (final ClassNotFoundException e) {
+                throw new StepInternalException("Unable to find a controller for " + className, e);
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @param classNames  the names of the controllers found so far
+     * @param directory   the directory of the package
+     * @param packageName the package
+     */
+    private void addClassNames(final List<String> classNames, final File directory, final String packageName) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (final File f : files) {
+            final String name = f.getName();
+            if (f.isDirectory()) {
+                addClassNames(classNames, f, packageName + '.' + name);
+            } else if (name.endsWith(CONTROLLER_SUFFIX + CLASS_SUFFIX)) {
+                classNames.add(packageName + '.' + name.substring(0, name.length() - CLASS_SUFFIX.length()));
+            }
+        }
+    }
+
+    /**
+     * @param classNames  the names of the controllers found so far
+     * @param jar         the jar containing the package
+     * @param packagePath the path of the package within the jar
+     */
+    private void addClassNames(final List<String> classNames, final JarFile jar, final String packagePath) {
+        // the trailing separator keeps out sibling packages whose names merely start the same way
+        final String prefix = packagePath + '/';
+        final Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            final String name = entries.nextElement().getName();
+            if (name.startsWith(prefix) && name.endsWith(CONTROLLER_SUFFIX + CLASS_SUFFIX)) {
+                classNames.add(name.substring(0, name.length() - CLASS_SUFFIX.length()).replace('/', '.'));
+            }
+        }
+    }
+}
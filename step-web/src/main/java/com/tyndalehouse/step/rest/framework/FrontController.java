@@ -46,11 +46,8 @@ import javax.inject.Provider;
 import javax.servlet.annotation.MultipartConfig;
 import javax.servlet.http.HttpServletRequest;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.Map;
-
-import static java.lang.String.format;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * The FrontController acts like a minimal REST server. The paths are resolved as follows:
@@ -66,13 +63,10 @@ public class FrontController extends AbstractAjaxController {
     private static final String EXTERNAL_CONTROLLER_SUB_PACKAGE = "external";
     private static final Logger LOGGER = LoggerFactory.getLogger(FrontController.class);
     private static final String CONTROLLER_PACKAGE = "com.tyndalehouse.step.rest.controllers";
-    private static final char PACKAGE_SEPARATOR = '.';
     private static final long serialVersionUID = 7898656504631346047L;
-    private static final String CONTROLLER_SUFFIX = "Controller";
     private final transient Injector guiceInjector;
-
-    private final transient Map<String, Method> methodNames = new HashMap<String, Method>();
-    private final transient Map<String, Object> controllers = new HashMap<String, Object>();
+    private final transient ControllerDispatchTable dispatchTable;
+    private final transient ConcurrentMap<Class<?>, Object> controllers = new ConcurrentHashMap<Class<?>, Object>();
 
     /**
      * creates the front controller which will dispatch all the requests
@@ -81,15 +75,18 @@ public class FrontController extends AbstractAjaxController {
      * @param guiceInjector         the injector used to call the relevant controllers
      * @param errorResolver         the error resolver is the object that helps us translate errors for the client
      * @param clientSessionProvider the client session provider
+     * @param cachePolicy           decides which responses can be cached
      */
     @Inject
     public FrontController(final Injector guiceInjector,
                            final AppManagerService appManagerService,
                            final ClientErrorResolver errorResolver,
                            final Provider<ClientSession> clientSessionProvider,
-                           final Provider<ObjectMapper> objectMapperProvider) {
-        super(appManagerService, clientSessionProvider, errorResolver, objectMapperProvider);
+                           final Provider<ObjectMapper> objectMapperProvider,
+                           final ResponseCachePolicy cachePolicy) {
+        super(appManagerService, clientSessionProvider, errorResolver, objectMapperProvider, cachePolicy);
         this.guiceInjector = guiceInjector;
+        this.dispatchTable = new ControllerDispatchTable(CONTROLLER_PACKAGE, EXTERNAL_CONTROLLER_SUB_PACKAGE);
     }
 
     /**
@@ -103,6 +100,15 @@ public class FrontController extends AbstractAjaxController {
         return invokeMethodWithStepRequest(sr);
     }
 
+    @Override
+    protected String getCacheControl(final HttpServletRequest servletRequest) {
+        final StepRequest sr = new StepRequest(servletRequest, UTF_8_ENCODING);
+        if (sr.isExternal()) {
+            return null;
+        }
+        return getCachePolicy().getCacheControl(sr.getControllerName(), sr.getMethodName());
+    }
+
     /**
      * @param sr allows to pass a StepRequest instead of the normal HttpServletRequest
      * @return the object as a result of the call
@@ -116,101 +122,60 @@ public class FrontController extends AbstractAjaxController {
         final Object controllerInstance = getController(sr.getControllerName(), sr.isExternal());
 
         // resolve method
-        final Method controllerMethod = getControllerMethod(sr.getMethodName(), controllerInstance,
-                sr.getArgs(), sr.getCacheKey().getMethodKey());
-
-        // invoke the three together
-        return controllerMethod.invoke(controllerInstance, (Object[]) sr.getArgs());
+        final ControllerDispatchTable.Route route = getRoute(sr.getControllerName(), sr.isExternal(),
+                sr.getMethodName(), sr.getArgs().length);
+
+        // invoke the two together, wrapping exceptions as reflection would have done
+        try {
+            return route.invoke(controllerInstance, sr.getArgs());
+            // CHECKSTYLE:OFF
+        } catch (final Throwable t) {
+            // CHECKSTYLE:ON
+            throw new InvocationTargetException(t);
+        }
     }
 
 
     /**
      * Retrieves a controller, either from the cache, or from Guice.
      *
-     * @param controllerName the name of the controller (used as the key for the cache)
+     * @param controllerName the name of the controller
      * @param isExternal     indicates whether the request should be found in the external controllers
      * @return the controller object
      */
     Object getController(final String controllerName, final boolean isExternal) {
-        Object controllerInstance = this.controllers.get(controllerName);
-
-        // if retrieving yields null, get controller from Guice, and put in cache
-        if (controllerInstance == null) {
-            // make up the full class name
-            final String packageName = CONTROLLER_PACKAGE;
-            final StringBuilder className = new StringBuilder(packageName.length() + controllerName.length()
-                    + CONTROLLER_SUFFIX.length() + 1);
-
-            className.append(packageName);
-            className.append(PACKAGE_SEPARATOR);
-            if (isExternal) {
-                className.append(EXTERNAL_CONTROLLER_SUB_PACKAGE);
-                className.append(PACKAGE_SEPARATOR);
-            }
-
-            className.append(Character.toUpperCase(controllerName.charAt(0)));
-            className.append(controllerName.substring(1));
-            className.append(CONTROLLER_SUFFIX);
-
-            try {
-                final Class<?> controllerClass = Class.forName(className.toString());
-                controllerInstance = this.guiceInjector.getInstance(controllerClass);
+        final Class<?> controllerClass = this.dispatchTable.getControllerClass(controllerName, isExternal);
+        if (controllerClass == null) {
+            throw new StepInternalException("Unable to find a controller for " + controllerName);
+        }
 
-                // we use the controller name as it came in to key the map
-                this.controllers.put(controllerName, controllerInstance);
-            } catch (final ClassNotFoundException e) {
-                throw new StepInternalException("Unable to find a controller for " + className, e);
-            }
+        final Object controllerInstance = this.controllers.get(controllerClass);
+        if (controllerInstance != null) {
+            return controllerInstance;
         }
-        return controllerInstance;
+
+        // if retrieving yields null, get controller from Guice, and put in cache
+        final Object created = this.guiceInjector.getInstance(controllerClass);
+        final Object existing = this.controllers.putIfAbsent(controllerClass, created);
+        return existing != null ? existing : created;
     }
 
     /**
      * Returns the method to be invoked upon the controller
      *
-     * @param methodName         the method name
-     * @param controllerInstance the instance of the controller
-     * @param args               the list of arguments, required to resolve the correct method if they have arguments
-     * @param cacheKey           the key to retrieve in the cache
+     * @param controllerName the name of the controller
+     * @param isExternal     indicates whether the request should be found in the external controllers
+     * @param methodName     the method name
+     * @param arity          the number of arguments passed to the method
      * @return the method to be invoked
      */
-    Method getControllerMethod(final String methodName, final Object controllerInstance, final Object[] args,
-                               final String cacheKey) {
-        final Class<?> controllerClass = controllerInstance.getClass();
-
-        // retrieve method from cache, or put in cache if not there
-        Method controllerMethod = this.methodNames.get(cacheKey);
-        if (controllerMethod == null) {
-            // resolve method
-
-            try {
-                final Class<?>[] classes = getClasses(args);
-                controllerMethod = controllerClass.getMethod(methodName, classes);
-                // put method in cache
-                this.methodNames.put(cacheKey, controllerMethod);
-            } catch (final NoSuchMethodException e) {
-                throw new StepInternalException("Unable to find matching method for " + methodName, e);
-            }
-        }
-
-        return controllerMethod;
-    }
-
-    /**
-     * @param args a number of arguments
-     * @return an array of classes matching the list of arguments passed in
-     */
-    Class<?>[] getClasses(final Object[] args) {
-        if (args == null) {
-            return new Class<?>[0];
+    ControllerDispatchTable.Route getRoute(final String controllerName, final boolean isExternal,
+                                           final String methodName, final int arity) {
+        final ControllerDispatchTable.Route route = this.dispatchTable.getRoute(controllerName, isExternal,
+                methodName, arity);
+        if (route == null) {
+            throw new StepInternalException("Unable to find matching method for " + methodName);
         }
-
-        final Class<?>[] classes = new Class<?>[args.length];
-
-        for (int ii = 0; ii < classes.length; ii++) {
-            classes[ii] = args[ii].getClass();
-        }
-
-        return classes;
+        return route;
     }
 }
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.rest.framework;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.tyndalehouse.step.core.service.AppManagerService;
+import com.tyndalehouse.step.core.service.jsword.helpers.ModuleFingerprint;
+
+/**
+ * Decides which responses can be cached by browsers and proxies. These are the responses that only change when
+ * the application is upgraded or the installed modules change, so they are given an ETag derived from the
+ * application version, the fingerprint of the installed modules, the language and the request itself. The ETag is
+ * weak, since the compressing filter sends the same response either compressed or not, and the two are not
+ * byte-for-byte identical.
+ * <p>
+ * The language may be picked by a cookie as well as by the Accept-Language header, so responses are only ever
+ * cached privately by the client, and vary on both headers.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class ResponseCachePolicy {
+    /** the key used for the translated messages, which are served outside of the front controller */
+    public static final String INTERNATIONAL = "international";
+    private static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String WEAK_PREFIX = "W/";
+    private final Map<String, String> cacheControls = new HashMap<String, String>(8);
+    private final AppManagerService appManager;
+    private final ModuleFingerprint moduleFingerprint;
+
+    /**
+     * @param appManager        the app manager, giving the application version
+     * @param moduleFingerprint the fingerprint of the installed modules
+     * @param passagePolicy     the Cache-Control value for passages and the information about them, made private
+     * @param referencePolicy   the Cache-Control value for reference data, such as book names or messages, made
+     *                          private
+     */
+    @Inject
+    public ResponseCachePolicy(final AppManagerService appManager, final ModuleFingerprint moduleFingerprint,
+                               @Named("app.web.cache.passages") final String passagePolicy,
+                               @Named("app.web.cache.reference") final String referencePolicy) {
+        this.appManager = appManager;
+        this.moduleFingerprint = moduleFingerprint;
+        final String privatePassagePolicy = toPrivate(passagePolicy);
+        final String privateReferencePolicy = toPrivate(referencePolicy);
+        this.cacheControls.put(getKey("bible", "getBibleText"), privatePassagePolicy);
+        this.cacheControls.put(getKey("module", "getInfo"), privatePassagePolicy);
+        this.cacheControls.put(getKey("bible", "getBibleBookNames"), privateReferencePolicy);
+        this.cacheControls.put(getKey("search", "getExactForms"), privateReferencePolicy);
+        this.cacheControls.put(INTERNATIONAL, privateReferencePolicy);
+    }
+
+    /**
+     * @param controllerName the name of the controller, as it appears in the request
+     * @param methodName     the name of the method
+     * @return the Cache-Control value for the method, or null if its responses are not to be cached
+     */
+    public String getCacheControl(final String controllerName, final String methodName) {
+        return this.cacheControls.get(getKey(controllerName, methodName));
+    }
+
+    /**
+     * @param cacheKey the key of the cached responses, i.e. {@link #INTERNATIONAL}
+     * @return the Cache-Control value, or null if the responses are not to be cached
+     */
+    public String getCacheControl(final String cacheKey) {
+        return this.cacheControls.get(cacheKey);
+    }
+
+    /**
+     * @param request the request
+     * @param locale  the language of the response
+     * @return the weak ETag of the response to the request
+     */
+    public String getETag(final HttpServletRequest request, final Locale locale) {
+        final StringBuilder identity = new StringBuilder(256);
+        identity.append(this.appManager.getAppVersion()).append('|');
+        identity.append(this.moduleFingerprint.getFingerprint()).append('|');
+        identity.append(locale).append('|');
+        identity.append(request.getRequestURI());
+        if (request.getQueryString() != null) {
+            identity.append('?').append(request.getQueryString());
+        }
+        return WEAK_PREFIX + '"' + ModuleFingerprint.digest(identity.toString()) + '"';
+    }
+
+    /**
+     * Sends a 304 if the client already holds the response identified by the ETag
+     *
+     * @param request  the request
+     * @param response the response
+     * @param eTag     the ETag of the response
+     * @param cacheControl the Cache-Control value
+     * @return true if a 304 was sent, in which case there is nothing more to do
+     */
+    public boolean sendNotModified(final HttpServletRequest request, final HttpServletResponse response,
+                                   final String eTag, final String cacheControl) {
+        if (!matches(request.getHeader(IF_NONE_MATCH), eTag)) {
+            return false;
+        }
+
+        setupHeaders(response, eTag, cacheControl);
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return true;
+    }
+
+    /**
+     * @param response     the response
+     * @param eTag         the ETag of the response
+     * @param cacheControl the Cache-Control value
+     */
+    public void setupHeaders(final HttpServletResponse response, final String eTag, final String cacheControl) {
+        response.setHeader("ETag", eTag);
+        response.setHeader("Cache-Control", cacheControl);
+        // added rather than set, so as to keep the Accept-Encoding added by the compressing filter
+        response.addHeader("Vary", "Accept-Language, Cookie");
+    }
+
+    /**
+     * @param ifNoneMatch the If-None-Match header, listing the ETags held by the client
+     * @param eTag        the ETag of the response
+     * @return true if the client holds the response
+     */
+    boolean matches(final String ifNoneMatch, final String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        // If-None-Match uses the weak comparison, ignoring whether either ETag is weak
+        final String opaqueTag = getOpaqueTag(eTag);
+        for (final String candidate : ifNoneMatch.split(",")) {
+            final String trimmed = getOpaqueTag(candidate.trim());
+            if ("*".equals(trimmed) || opaqueTag.equals(trimmed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param eTag the ETag, weak or not
+     * @return the ETag without its weak prefix
+     */
+    private String getOpaqueTag(final String eTag) {
+        return eTag.startsWith(WEAK_PREFIX) ? eTag.substring(WEAK_PREFIX.length()) : eTag;
+    }
+
+    /**
+     * @param cacheControl the configured Cache-Control value
+     * @return the same value, but only allowing the client to cache the response
+     */
+    static String toPrivate(final String cacheControl) {
+        final StringBuilder privateControl = new StringBuilder(cacheControl.length() + 8).append("private");
+        for (final String directive : cacheControl.split(",")) {
+            final String trimmed = directive.trim();
+            if (trimmed.length() != 0 && !"public".equalsIgnoreCase(trimmed) && !"private".equalsIgnoreCase(trimmed)) {
+                privateControl.append(", ").append(trimmed);
+            }
+        }
+        return privateControl.toString();
+    }
+
+    /**
+     * @param controllerName the name of the controller
+     * @param methodName     the name of the method
+     * @return the key for the policies
+     */
+    private String getKey(final String controllerName, final String methodName) {
+        return controllerName + '/' + methodName;
+    }
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.guice;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URL;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the gzipped copies of the minified resources are served to the clients accepting them
+ *
+ * @author chrisburrell
+ */
+public class PrecompressedResourceFilterTest {
+    private static final String PATH = "/js/step.1.0.min.js";
+    private ServletContext servletContext;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private RequestDispatcher dispatcher;
+    private FilterChain chain;
+    private PrecompressedResourceFilter filter;
+
+    /**
+     * sets up a request for a minified resource, which has a gzipped copy
+     *
+     * @throws Exception uncaught exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        this.servletContext = mock(ServletContext.class);
+        when(this.servletContext.getResource(PATH + PrecompressedResourceFilter.GZIP_SUFFIX)).thenReturn(
+                new URL("file:/step.1.0.min.js.gz"));
+        when(this.servletContext.getMimeType(PATH)).thenReturn("application/javascript");
+        final FilterConfig config = mock(FilterConfig.class);
+        when(config.getServletContext()).thenReturn(this.servletContext);
+
+        this.request = mock(HttpServletRequest.class);
+        when(this.request.getContextPath()).thenReturn("/step-web");
+        when(this.request.getRequestURI()).thenReturn("/step-web" + PATH);
+        this.dispatcher = mock(RequestDispatcher.class);
+        when(this.request.getRequestDispatcher(PATH + PrecompressedResourceFilter.GZIP_SUFFIX)).thenReturn(
+                this.dispatcher);
+        this.response = mock(HttpServletResponse.class);
+        this.chain = mock(FilterChain.class);
+
+        this.filter = new PrecompressedResourceFilter();
+        this.filter.init(config);
+    }
+
+    /**
+     * the gzipped copy is served with the content type of the resource
+     *
+     * @throws Exception uncaught exception
+     */
+    @Test
+    public void testServesGzippedCopy() throws Exception {
+        when(this.request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+
+        this.filter.doFilter(this.request, this.response, this.chain);
+
+        verify(this.dispatcher).forward(eq(this.request), any(ServletResponse.class));
+        verify(this.response).setHeader("Content-Encoding", "gzip");
+        verify(this.response).setContentType("application/javascript");
+        verify(this.response).addHeader("Vary", "Accept-Encoding");
+        verify(this.chain, never()).doFilter(this.request, this.response);
+    }
+
+    /**
+     * clients not accepting gzip get the resource itself
+     *
+     * @throws Exception uncaught exception
+     */
+    @Test
+    public void testServesResourceWithoutGzip() throws Exception {
+        when(this.request.getHeader("Accept-Encoding")).thenReturn("gzip;q=0, deflate");
+
+        this.filter.doFilter(this.request, this.response, this.chain);
+
+        verify(this.chain).doFilter(this.request, this.response);
+        verify(this.response).addHeader("Vary", "Accept-Encoding");
+        verify(this.response, never()).setHeader("Content-Encoding", "gzip");
+    }
+
+    /**
+     * resources without a gzipped copy are served as normal
+     *
+     * @throws Exception uncaught exception
+     */
+    @Test
+    public void testServesResourceWithoutCopy() throws Exception {
+        when(this.request.getHeader("Accept-Encoding")).thenReturn("gzip");
+        when(this.request.getRequestURI()).thenReturn("/step-web/js/other.min.js");
+
+        this.filter.doFilter(this.request, this.response, this.chain);
+
+        verify(this.chain).doFilter(this.request, this.response);
+        verify(this.response, never()).addHeader("Vary", "Accept-Encoding");
+    }
+
+    /**
+     * gzip is accepted unless it is missing or refused
+     */
+    @Test
+    public void testAcceptsGzip() {
+        assertTrue(PrecompressedResourceFilter.acceptsGzip("gzip"));
+        assertTrue(PrecompressedResourceFilter.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(PrecompressedResourceFilter.acceptsGzip("*"));
+        assertFalse(PrecompressedResourceFilter.acceptsGzip(null));
+        assertFalse(PrecompressedResourceFilter.acceptsGzip("deflate"));
+        assertFalse(PrecompressedResourceFilter.acceptsGzip("gzip; q=0.0"));
+    }
+}
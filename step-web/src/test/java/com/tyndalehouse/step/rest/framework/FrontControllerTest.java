@@ -32,21 +32,23 @@
  ******************************************************************************/
 package com.tyndalehouse.step.rest.framework;
 
-import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.Locale;
 
 import javax.inject.Provider;
@@ -56,6 +58,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import com.tyndalehouse.step.core.service.AppManagerService;
 import org.codehaus.jackson.JsonGenerationException;
+import org.codehaus.jackson.annotate.JsonPropertyOrder;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
@@ -94,6 +97,9 @@ public class FrontControllerTest {
     @Mock
     private Provider<ObjectMapper> objectMapper;
 
+    @Mock
+    private ResponseCachePolicy cachePolicy;
+
     /**
      * Simply setting up the FrontController under test
      */
@@ -107,7 +113,7 @@ public class FrontControllerTest {
         when(this.objectMapper.get()).thenReturn(mockMapper);
         
         this.fcUnderTest = new FrontController(this.guiceInjector, mock(AppManagerService.class), this.errorResolver,
-                this.clientSessionProvider, objectMapper);
+                this.clientSessionProvider, objectMapper, this.cachePolicy);
     }
 
     /**
@@ -158,6 +164,32 @@ public class FrontControllerTest {
 
     }
 
+    /**
+     * A client already holding a cacheable response gets a 304, without the controller being invoked
+     *
+     * @throws Exception uncaught exception
+     */
+    @Test
+    public void testDoGetNotModified() throws Exception {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getRequestURI()).thenReturn("/step-web/rest/bible/getBibleText/KJV/Gen.1");
+        when(request.getContextPath()).thenReturn("/step-web");
+        when(request.getServletPath()).thenReturn("/rest");
+        when(this.cachePolicy.getCacheControl("bible", "getBibleText")).thenReturn("public, max-age=3600");
+        when(this.cachePolicy.getETag(request, Locale.ENGLISH)).thenReturn("\"etag\"");
+        when(this.cachePolicy.sendNotModified(request, response, "\"etag\"", "public, max-age=3600")).thenReturn(true);
+
+        final FrontController fc = spy(this.fcUnderTest);
+
+        // do the test
+        fc.doGet(request, response);
+
+        // check
+        verify(fc, never()).invokeMethodWithStepRequest(any(StepRequest.class));
+        verify(response, never()).getOutputStream();
+    }
+
     /**
      * tests that the headers are setup correctly
      */
@@ -178,20 +210,18 @@ public class FrontControllerTest {
     /**
      * tests that resolving method works
      *
-     * @throws IllegalAccessException    uncaught exception
-     * @throws InvocationTargetException uncaught exception
+     * @throws Throwable uncaught exception
      */
     @Test
-    public void testGetControllerMethod() throws IllegalAccessException, InvocationTargetException {
+    public void testGetRoute() throws Throwable {
         final BibleInformationService bibleInfo = mock(BibleInformationService.class);
         final BibleController controllerInstance = new BibleController(bibleInfo, this.clientSessionProvider, null);
 
         // when
-        final Method controllerMethod = this.fcUnderTest.getControllerMethod("getAllFeatures",
-                controllerInstance, null, null);
+        final ControllerDispatchTable.Route route = this.fcUnderTest.getRoute("bible", false, "getAllFeatures", 0);
 
         // then
-        controllerMethod.invoke(controllerInstance);
+        route.invoke(controllerInstance, new Object[0]);
         verify(bibleInfo).getAllFeatures();
     }
 
@@ -212,15 +242,31 @@ public class FrontControllerTest {
     }
 
     /**
-     * tests various combinations for getClasses
+     * methods are resolved on the number of arguments, and exceptions are wrapped as reflection would have done
      */
     @Test
-    public void testGetClasses() {
-        assertEquals(0, this.fcUnderTest.getClasses(null).length);
-        assertEquals(0, this.fcUnderTest.getClasses(new Object[0]).length);
-        assertArrayEquals(new Class<?>[]{String.class, Integer.class},
-                this.fcUnderTest.getClasses(new Object[]{"hello", Integer.valueOf(1)}));
+    public void testRoutesByArity() throws Exception {
+        assertNotNull(this.fcUnderTest.getRoute("bible", false, "getBibleText", 2));
+        assertNotNull(this.fcUnderTest.getRoute("Bible", false, "getBibleText", 3));
+
+        try {
+            this.fcUnderTest.getRoute("bible", false, "getBibleText", 9);
+            fail("No method takes 9 arguments");
+        } catch (final StepInternalException e) {
+            // expected
+        }
 
+        final BibleController testController = mock(BibleController.class);
+        final StepInternalException exception = new StepInternalException("A test exception");
+        when(testController.getAllFeatures()).thenThrow(exception);
+        final FrontController fc = spy(this.fcUnderTest);
+        doReturn(testController).when(fc).getController("bible", false);
+        try {
+            fc.invokeMethodWithStepRequest(new StepRequest("blah", "bible", "getAllFeatures", new String[]{}));
+            fail("The exception should have been rethrown");
+        } catch (final InvocationTargetException e) {
+            assertEquals(exception, e.getCause());
+        }
     }
 
     /**
@@ -242,6 +288,8 @@ public class FrontControllerTest {
 
         // check
         verify(outputStream).write(any(byte[].class));
+        verify(response).setHeader("Cache-Control", "no-store");
+        verify(response).setHeader("ETag", null);
     }
 
     /**
@@ -261,4 +309,105 @@ public class FrontControllerTest {
         // verify
         verify(testController).getAllFeatures();
     }
+
+    /**
+     * When streaming, a response that fits in the buffer is still sent with its length
+     *
+     * @throws IOException uncaught exception
+     */
+    @Test
+    public void testStreamingSmallResponseHasLength() throws IOException {
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        final ServletOutputStream outputStream = mock(ServletOutputStream.class);
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        // do test
+        streamingController(16).writeJsonResponse(response, "short");
+
+        // check
+        verify(response).setContentLength(7);
+        verify(outputStream).write(any(byte[].class), eq(0), eq(7));
+    }
+
+    /**
+     * When streaming, a response larger than the buffer is sent without a length, i.e. chunked
+     *
+     * @throws IOException uncaught exception
+     */
+    @Test
+    public void testStreamingLargeResponseIsChunked() throws IOException {
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        final ServletOutputStream outputStream = mock(ServletOutputStream.class);
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        // do test
+        streamingController(16).writeJsonResponse(response, "a response that is longer than the buffer");
+
+        // check
+        verify(response, never()).setContentLength(anyInt());
+        verify(response).setContentType("application/json");
+    }
+
+    /**
+     * When streaming, a value that fails to encode is reported as an error, without sending what was buffered
+     *
+     * @throws IOException uncaught exception
+     */
+    @Test
+    public void testStreamingFailureSendsNothing() throws IOException {
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        final ServletOutputStream outputStream = mock(ServletOutputStream.class);
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        // do test
+        try {
+            streamingController(1024).writeJsonResponse(response, new FailingValue());
+            fail("Expected the failure to be reported");
+        } catch (final StepInternalException e) {
+            // expected
+        }
+
+        // check
+        verify(response, never()).getOutputStream();
+        verify(response, never()).setContentLength(anyInt());
+    }
+
+    /**
+     * A value which fails to encode part way through
+     */
+    @JsonPropertyOrder({ "encoded", "failing" })
+    public static final class FailingValue {
+        /**
+         * @return a property that is encoded successfully
+         */
+        public String getEncoded() {
+            return "encoded";
+        }
+
+        /**
+         * @return never returns
+         */
+        public String getFailing() {
+            throw new IllegalStateException("Unable to encode");
+        }
+    }
+
+    /**
+     * @param maxBufferedBytes the size of the buffer
+     * @return a front controller streaming its responses, with a real object mapper
+     */
+    private FrontController streamingController(final int maxBufferedBytes) {
+        System.setProperty("step.json.streaming", "true");
+        System.setProperty("step.json.maxBufferedBytes", String.valueOf(maxBufferedBytes));
+        try {
+            @SuppressWarnings("unchecked")
+            final Provider<ObjectMapper> mapperProvider = mock(Provider.class);
+            when(mapperProvider.get()).thenReturn(new ObjectMapper());
+            return new FrontController(this.guiceInjector, mock(AppManagerService.class), this.errorResolver,
+                    this.clientSessionProvider, mapperProvider, this.cachePolicy);
+        } finally {
+            System.clearProperty("step.json.streaming");
+            System.clearProperty("step.json.maxBufferedBytes");
+        }
+    }
 }
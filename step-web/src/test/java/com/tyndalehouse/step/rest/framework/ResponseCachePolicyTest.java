@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2012, Directors of the Tyndale STEP Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright 
+ * notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright 
+ * notice, this list of conditions and the following disclaimer in 
+ * the documentation and/or other materials provided with the 
+ * distribution.
+ * Neither the name of the Tyndale House, Cambridge (www.TyndaleHouse.com)  
+ * nor the names of its contributors may be used to endorse or promote 
+ * products derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.tyndalehouse.step.rest.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Locale;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tyndalehouse.step.core.service.AppManagerService;
+import com.tyndalehouse.step.core.service.jsword.helpers.ModuleFingerprint;
+
+/**
+ * Tests which responses are cached, and how their ETags are worked out
+ *
+ * @author chrisburrell
+ */
+public class ResponseCachePolicyTest {
+    private ResponseCachePolicy policy;
+    private ModuleFingerprint fingerprint;
+
+    /**
+     * Sets up the policy
+     */
+    @Before
+    public void setUp() {
+        final AppManagerService appManager = mock(AppManagerService.class);
+        when(appManager.getAppVersion()).thenReturn("2.0");
+        this.fingerprint = mock(ModuleFingerprint.class);
+        when(this.fingerprint.getFingerprint()).thenReturn("modules");
+        this.policy = new ResponseCachePolicy(appManager, this.fingerprint, "max-age=3600", "max-age=86400");
+    }
+
+    /**
+     * Only the read-only methods are cached
+     */
+    @Test
+    public void testCacheControl() {
+        assertEquals("private, max-age=3600", this.policy.getCacheControl("bible", "getBibleText"));
+        assertEquals("private, max-age=86400", this.policy.getCacheControl("bible", "getBibleBookNames"));
+        assertEquals("private, max-age=86400", this.policy.getCacheControl(ResponseCachePolicy.INTERNATIONAL));
+        assertNull(this.policy.getCacheControl("search", "masterSearch"));
+    }
+
+    /**
+     * Responses depend on the language, which shared caches cannot see when it is picked by a cookie
+     */
+    @Test
+    public void testPoliciesArePrivate() {
+        assertEquals("private, max-age=60", ResponseCachePolicy.toPrivate("public, max-age=60"));
+        assertEquals("private, max-age=60", ResponseCachePolicy.toPrivate("max-age=60, Public"));
+        assertEquals("private, max-age=60", ResponseCachePolicy.toPrivate("private, max-age=60"));
+    }
+
+    /**
+     * Cached responses vary on the cookie that may hold the language, as well as the Accept-Language header
+     */
+    @Test
+    public void testVariesOnLanguageCookie() {
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        this.policy.setupHeaders(response, "\"a\"", "private");
+
+        verify(response).addHeader("Vary", "Accept-Language, Cookie");
+    }
+
+    /**
+     * The ETag changes with the request, the language and the installed modules
+     */
+    @Test
+    public void testETag() {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getRequestURI()).thenReturn("/rest/bible/getBibleText/KJV/Gen.1");
+        final String eTag = this.policy.getETag(request, Locale.ENGLISH);
+
+        assertTrue(eTag.startsWith("W/\"") && eTag.endsWith("\""));
+        assertEquals(eTag, this.policy.getETag(request, Locale.ENGLISH));
+        assertFalse(eTag.equals(this.policy.getETag(request, Locale.FRENCH)));
+
+        when(this.fingerprint.getFingerprint()).thenReturn("other modules");
+        assertFalse(eTag.equals(this.policy.getETag(request, Locale.ENGLISH)));
+    }
+
+    /**
+     * If-None-Match may list several ETags, weakened or not
+     */
+    @Test
+    public void testMatches() {
+        assertFalse(this.policy.matches(null, "\"a\""));
+        assertTrue(this.policy.matches("\"a\"", "\"a\""));
+        assertTrue(this.policy.matches("\"b\", W/\"a\"", "\"a\""));
+        assertTrue(this.policy.matches("*", "\"a\""));
+        assertFalse(this.policy.matches("\"b\"", "\"a\""));
+        assertTrue(this.policy.matches("\"a\"", "W/\"a\""));
+        assertTrue(this.policy.matches("W/\"a\"", "W/\"a\""));
+        assertFalse(this.policy.matches("W/\"b\"", "W/\"a\""));
+    }
+}